@@ -0,0 +1,72 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.reporters.AggregatingReporter;
+import io.ultrabrew.metrics.reporters.AsyncReporter;
+import io.ultrabrew.metrics.reporters.AsyncReporter.OverflowPolicy;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares 64 threads emitting the same counter series directly to an aggregating reporter against
+ * emitting through an asynchronous reporter draining into the same aggregating reporter.
+ */
+@Threads(64)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class AsyncReporterBenchmark {
+
+  @Param({"direct", "async"})
+  private String mode;
+
+  private AsyncReporter asyncReporter;
+  private Counter.Bound counter;
+
+  @Setup
+  public void setup() {
+    final AggregatingReporter reporter = new AggregatingReporter() {
+    };
+    final MetricRegistry metricRegistry = new MetricRegistry();
+    if ("async".equals(mode)) {
+      asyncReporter = AsyncReporter.builder()
+          .withReporter(reporter)
+          .withOverflowPolicy(OverflowPolicy.BLOCK)
+          .build();
+      metricRegistry.addReporter(asyncReporter);
+    } else {
+      metricRegistry.addReporter(reporter);
+    }
+    counter = metricRegistry.counter("counter").bind("host", "web01");
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (asyncReporter != null) {
+      asyncReporter.close();
+    }
+  }
+
+  @Benchmark
+  public void emit() {
+    counter.inc();
+  }
+}
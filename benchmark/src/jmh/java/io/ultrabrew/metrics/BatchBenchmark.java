@@ -0,0 +1,68 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.reporters.AggregatingReporter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares incrementing a counter for a batch of tag sets one by one against incrementing it for
+ * the whole batch at once, with an aggregating reporter subscribed. Reported per increment.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+  private static final int BATCH_SIZE = 256;
+
+  @Param({"16", "4096"})
+  private int cardinality;
+
+  private Counter counter;
+  private final String[][] tagSets = new String[BATCH_SIZE][];
+  private final long[] changes = new long[BATCH_SIZE];
+
+  @Setup
+  public void setup() {
+    final MetricRegistry metricRegistry = new MetricRegistry();
+    metricRegistry.addReporter(new AggregatingReporter() {
+    });
+    counter = metricRegistry.counter("counter", cardinality);
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      tagSets[i] = new String[]{"host", "web" + (i * 7919 % cardinality)};
+      changes[i] = i;
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void oneByOne() {
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      counter.inc(changes[i], tagSets[i]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void batch() {
+    counter.incAll(tagSets, changes);
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.reporters.AggregatingReporter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares emitting a counter with a varargs tag array against emitting through a counter bound
+ * to the same tags, with a number of aggregating reporters subscribed.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class BindBenchmark {
+
+  @Param({"1", "4"})
+  private int reporters;
+
+  private Counter counter;
+  private Counter.Bound bound;
+
+  @Setup
+  public void setup() {
+    final MetricRegistry metricRegistry = new MetricRegistry();
+    for (int i = 0; i < reporters; i++) {
+      metricRegistry.addReporter(new AggregatingReporter() {
+      });
+    }
+    counter = metricRegistry.counter("counter");
+    bound = counter.bind("endpoint", "/api/v1/users/profile", "method", "GET", "status", "200");
+  }
+
+  @Benchmark
+  public void varargs() {
+    counter.inc("endpoint", "/api/v1/users/profile", "method", "GET", "status", "200");
+  }
+
+  @Benchmark
+  public void bound() {
+    bound.inc();
+  }
+}
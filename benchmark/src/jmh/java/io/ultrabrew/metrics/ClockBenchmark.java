@@ -0,0 +1,71 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.util.CachedClock;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of a measurement when the metric registry reads the system time on every event
+ * against reading a time cached by a {@link CachedClock}.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class ClockBenchmark {
+
+  @Param({"system", "cached"})
+  private String clock;
+
+  private CachedClock cachedClock;
+  private Clock source;
+  private Counter.Bound counter;
+
+  @Setup
+  public void setup() {
+    if ("cached".equals(clock)) {
+      cachedClock = new CachedClock();
+      source = cachedClock;
+    } else {
+      source = Clock.SYSTEM;
+    }
+    final MetricRegistry metricRegistry = new MetricRegistry(source);
+    metricRegistry.addReporter((metric, timestamp, value, tags) -> {
+    });
+    counter = metricRegistry.counter("counter").bind("host", "web01");
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (cachedClock != null) {
+      cachedClock.close();
+    }
+  }
+
+  @Benchmark
+  public long currentTimeMillis() {
+    return source.currentTimeMillis();
+  }
+
+  @Benchmark
+  public void emit() {
+    counter.inc();
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.BasicCounterAggregator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the emit throughput of a counter aggregator that has grown from its default initial
+ * capacity into a chain of tables with the same aggregator after consolidation into a single table.
+ * With the default parameters the chained aggregator has grown six times, so a tag set in the last
+ * table is only found after probing all the earlier tables.
+ */
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ConsolidationBenchmark {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  @Param({"2000"})
+  private int cardinality;
+
+  private String[][] tagSets;
+  private BasicCounterAggregator chained;
+  private BasicCounterAggregator consolidated;
+
+  @Setup
+  public void setup() {
+    tagSets = new String[cardinality][];
+    for (int i = 0; i < cardinality; i++) {
+      tagSets[i] = new String[]{"host", "host" + i, "region", "region" + (i % 10)};
+    }
+    chained = new BasicCounterAggregator("test", cardinality * 2, INITIAL_CAPACITY);
+    consolidated = new BasicCounterAggregator("test", cardinality * 2, INITIAL_CAPACITY);
+    for (final String[] tags : tagSets) {
+      chained.apply(tags, 1L, 0L);
+      consolidated.apply(tags, 1L, 0L);
+    }
+    consolidated.consolidate();
+  }
+
+  private String[] nextTags() {
+    return tagSets[ThreadLocalRandom.current().nextInt(cardinality)];
+  }
+
+  @Benchmark
+  public void emitChained() {
+    chained.apply(nextTags(), 1L, 0L);
+  }
+
+  @Benchmark
+  public void emitConsolidated() {
+    consolidated.apply(nextTags(), 1L, 0L);
+  }
+}
@@ -0,0 +1,55 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.BasicCounterAggregator;
+import io.ultrabrew.metrics.data.BasicTimerAggregator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the emit throughput of many threads updating the same untagged series of a counter and
+ * a timer aggregator, which stripes the contended record.
+ */
+@Threads(8)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+
+  private static final String[] TAGS = new String[0];
+
+  private BasicCounterAggregator counter;
+  private BasicTimerAggregator timer;
+
+  @Setup
+  public void setup() {
+    counter = new BasicCounterAggregator("counter", 16, 16);
+    timer = new BasicTimerAggregator("timer", 16, 16);
+  }
+
+  @Benchmark
+  public void counter() {
+    counter.apply(TAGS, 1L, 0L);
+  }
+
+  @Benchmark
+  public void timer() {
+    timer.apply(TAGS, System.nanoTime() & 0xFFFFL, 0L);
+  }
+}
@@ -0,0 +1,85 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.BasicHistogramAggregator;
+import io.ultrabrew.metrics.data.LogLinearDistributionBucket;
+import io.ultrabrew.metrics.data.TableOptions;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the memory per series and the cost of emitting to histograms with 8-, 16- and 32-bit
+ * bucket counters. The series are filled with a few measurements each, as low-rate series would be,
+ * and a fraction of them are then hit by the benchmark until they are promoted to wide counters.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class CounterWidthBenchmark {
+
+  private static final int SERIES = 10_000;
+  private static final int HOT_SERIES = 100;
+
+  @Param({"8", "16", "32"})
+  private int counterBits;
+
+  private String[][] tags;
+  private BasicHistogramAggregator aggregator;
+  private int invocations;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class MemoryCounters {
+
+    public long bytesPerSeries;
+  }
+
+  @Setup
+  public void setup() {
+    // Latencies from 1 microsecond to 1 minute in nanoseconds, with 1 significant digit
+    final LogLinearDistributionBucket bucket =
+        new LogLinearDistributionBucket(1_000L, 60_000_000_000L, 1);
+    aggregator = new BasicHistogramAggregator("latency", bucket, SERIES * 2, SERIES,
+        TableOptions.builder().withCounterBits(counterBits).build());
+    tags = new String[SERIES][];
+    for (int i = 0; i < SERIES; i++) {
+      tags[i] = new String[]{"endpoint", "/api/" + i};
+      for (int j = 0; j < 10; j++) {
+        aggregator.apply(tags[i], latency(), 0L);
+      }
+    }
+  }
+
+  private static long latency() {
+    // Log-uniformly distributed from 1 microsecond to about 1 second
+    return 1_000L << ThreadLocalRandom.current().nextInt(20)
+        | ThreadLocalRandom.current().nextInt(1_000);
+  }
+
+  @Benchmark
+  public void apply(final MemoryCounters counters) {
+    aggregator.apply(tags[ThreadLocalRandom.current().nextInt(HOT_SERIES)], latency(), 0L);
+    // Sample the memory usage, so that estimating it does not dominate the emit cost
+    if ((++invocations & 1023) == 0 || counters.bytesPerSeries == 0L) {
+      counters.bytesPerSeries = aggregator.memoryUsage() / SERIES;
+    }
+  }
+}
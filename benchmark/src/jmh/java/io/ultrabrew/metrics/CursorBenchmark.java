@@ -0,0 +1,65 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.BasicCounterAggregator;
+import io.ultrabrew.metrics.data.Cursor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the time to read all rows of a counter aggregator, as done by a reporter on every
+ * report.
+ */
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class CursorBenchmark {
+
+  @Param({"200000"})
+  private int cardinality;
+
+  private BasicCounterAggregator aggregator;
+
+  @Setup
+  public void setup() {
+    aggregator = new BasicCounterAggregator("test", cardinality, cardinality);
+    for (int i = 0; i < cardinality; i++) {
+      aggregator.apply(new String[]{"host", "host" + i, "region", "region" + (i % 10)}, 1L, 0L);
+    }
+  }
+
+  @Benchmark
+  public void cursor(final Blackhole bh) {
+    final Cursor cursor = aggregator.cursor();
+    while (cursor.next()) {
+      bh.consume(cursor.readAndResetLong(0));
+    }
+  }
+
+  @Benchmark
+  public void sortedCursor(final Blackhole bh) {
+    final Cursor cursor = aggregator.sortedCursor();
+    while (cursor.next()) {
+      bh.consume(cursor.readAndResetLong(0));
+    }
+  }
+}
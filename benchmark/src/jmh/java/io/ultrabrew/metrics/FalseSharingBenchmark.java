@@ -0,0 +1,90 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.BasicCounterAggregator;
+import io.ultrabrew.metrics.data.TableOptions;
+import io.ultrabrew.metrics.util.Hashing;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the emit throughput of threads that each update their own series in an off-heap counter
+ * aggregator, with and without aligning the records to cache lines. The series are inserted in
+ * the order of their slots in the table, so that the records of the threads are neighbours, and
+ * without alignment each record shares a cache line with both of its neighbours.
+ */
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FalseSharingBenchmark {
+
+  private static final int SERIES = 4;
+
+  @Param({"false", "true"})
+  private boolean aligned;
+
+  private final AtomicInteger threads = new AtomicInteger();
+  private BasicCounterAggregator aggregator;
+  private String[][] tagSets;
+
+  @Setup
+  public void setup() {
+    aggregator = new BasicCounterAggregator("test", SERIES * 2, SERIES * 2,
+        TableOptions.builder().withOffHeap(true).withAlignedRecords(aligned).build());
+    // Pick tag sets that hash to consecutive slots of the table
+    tagSets = new String[SERIES][];
+    final int tableSize = 11; // the next prime after 130% of the capacity
+    for (int found = 0, i = 0; found < SERIES; i++) {
+      final String[] tags = new String[]{"thread", String.valueOf(i)};
+      final int slot = Math.abs((int) Hashing.fingerprint(tags)) % tableSize;
+      if (slot == found) {
+        tagSets[found++] = tags;
+      }
+    }
+    for (final String[] tags : tagSets) {
+      aggregator.apply(tags, 0L, 0L);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    aggregator.close();
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadState {
+
+    private String[] tags;
+
+    @Setup
+    public void setup(final FalseSharingBenchmark benchmark) {
+      tags = benchmark.tagSets[benchmark.threads.getAndIncrement() % SERIES];
+    }
+  }
+
+  @Benchmark
+  public void emit(final ThreadState state) {
+    aggregator.apply(state.tags, 1L, 0L);
+  }
+}
@@ -0,0 +1,103 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.BasicCounterAggregator;
+import io.ultrabrew.metrics.data.TableOptions;
+import io.ultrabrew.metrics.util.Hashing;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the cost of the 64-bit tag set fingerprint to the 32-bit {@link Arrays#hashCode(Object[])}
+ * it replaced, and the emit throughput of a counter aggregator with and without tag verification.
+ * Both hashes read the cached {@link String#hashCode()} of each tag, so the emit throughput should
+ * not change.
+ */
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class FingerprintBenchmark {
+
+  private static final int VALUE_CARDINALITY = 1000;
+
+  @Param({"50000"})
+  private int cardinality;
+
+  @Param({"6"})
+  private int tagCount;
+
+  private String[][] tagSets;
+  private BasicCounterAggregator aggregator;
+  private BasicCounterAggregator verifyingAggregator;
+
+  @Setup
+  public void setup() {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    // Tag keys and values come from a limited vocabulary and are shared between tag sets
+    final String[] keys = new String[tagCount];
+    final String[] values = new String[VALUE_CARDINALITY];
+    for (int j = 0; j < tagCount; j++) {
+      keys[j] = "tag" + j;
+    }
+    for (int j = 0; j < VALUE_CARDINALITY; j++) {
+      values[j] = "value" + j;
+    }
+    tagSets = new String[cardinality][];
+    for (int i = 0; i < cardinality; i++) {
+      final String[] tags = new String[tagCount * 2];
+      for (int j = 0; j < tagCount; j++) {
+        tags[j * 2] = keys[j];
+        tags[j * 2 + 1] = values[random.nextInt(VALUE_CARDINALITY)];
+      }
+      tagSets[i] = tags;
+    }
+    aggregator = new BasicCounterAggregator("test", cardinality * 2, cardinality);
+    verifyingAggregator = new BasicCounterAggregator("test", cardinality * 2, cardinality,
+        TableOptions.builder().withVerifyTags(true).build());
+  }
+
+  private String[] nextTags() {
+    return tagSets[ThreadLocalRandom.current().nextInt(cardinality)];
+  }
+
+  @Benchmark
+  public void arraysHashCode(final Blackhole bh) {
+    bh.consume(Arrays.hashCode(nextTags()));
+  }
+
+  @Benchmark
+  public void fingerprint(final Blackhole bh) {
+    bh.consume(Hashing.fingerprint(nextTags()));
+  }
+
+  @Benchmark
+  public void emit() {
+    aggregator.apply(nextTags(), 1L, 0L);
+  }
+
+  @Benchmark
+  public void emitWithVerifyTags() {
+    verifyingAggregator.apply(nextTags(), 1L, 0L);
+  }
+}
@@ -0,0 +1,96 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.BasicHistogramAggregator;
+import io.ultrabrew.metrics.data.DDSketchAggregator;
+import io.ultrabrew.metrics.data.DistributionBucket;
+import io.ultrabrew.metrics.data.LogLinearDistributionBucket;
+import io.ultrabrew.metrics.data.TableOptions;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares locating the bucket of a latency by searching the boundaries of a wide distribution
+ * against computing it in a log-linear distribution, and the resulting cost of emitting to a
+ * histogram aggregator or a quantile sketch aggregator.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class HistogramBenchmark {
+
+  private static final String[] TAGS = {"endpoint", "/api/v1/users/profile"};
+
+  private DistributionBucket searched;
+  private LogLinearDistributionBucket logLinear;
+  private BasicHistogramAggregator searchedAggregator;
+  private BasicHistogramAggregator logLinearAggregator;
+  private DDSketchAggregator sketchAggregator;
+
+  @Setup
+  public void setup() {
+    // Latencies from 1 microsecond to 1 minute in nanoseconds, with 1 significant digit
+    logLinear = new LogLinearDistributionBucket(1_000L, 60_000_000_000L, 1);
+    // The same boundaries, searched
+    final String[] names = logLinear.getBucketNames();
+    final long[] boundaries = new long[names.length - 1];
+    for (int i = 0; i < names.length - 2; i++) {
+      final String[] range = names[i].split("_");
+      boundaries[i] = Long.parseLong(range[0]);
+      boundaries[i + 1] = Long.parseLong(range[1]);
+    }
+    searched = new DistributionBucket(boundaries);
+    searchedAggregator = new BasicHistogramAggregator("searched", searched, 16, 16);
+    logLinearAggregator = new BasicHistogramAggregator("logLinear", logLinear, 16, 16);
+    sketchAggregator = new DDSketchAggregator("sketch", 0.05, 60_000_000_000L, 16, 16,
+        TableOptions.DEFAULT, BasicHistogramAggregator.DEFAULT_PERCENTILES);
+  }
+
+  private static long latency() {
+    // Log-uniformly distributed from 1 microsecond to about 1 second
+    return 1_000L << ThreadLocalRandom.current().nextInt(20)
+        | ThreadLocalRandom.current().nextInt(1_000);
+  }
+
+  @Benchmark
+  public void searchedIndex(final Blackhole bh) {
+    bh.consume(searched.getBucketIndex(latency()));
+  }
+
+  @Benchmark
+  public void logLinearIndex(final Blackhole bh) {
+    bh.consume(logLinear.getBucketIndex(latency()));
+  }
+
+  @Benchmark
+  public void searchedApply() {
+    searchedAggregator.apply(TAGS, latency(), 0L);
+  }
+
+  @Benchmark
+  public void logLinearApply() {
+    logLinearAggregator.apply(TAGS, latency(), 0L);
+  }
+
+  @Benchmark
+  public void sketchApply() {
+    sketchAggregator.apply(TAGS, latency(), 0L);
+  }
+}
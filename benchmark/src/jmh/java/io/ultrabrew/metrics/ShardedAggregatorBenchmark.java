@@ -0,0 +1,105 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.data.Aggregator;
+import io.ultrabrew.metrics.data.BasicTimerAggregator;
+import io.ultrabrew.metrics.data.ShardedAggregator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the emit throughput of a single timer aggregator shared by all threads with a sharded
+ * timer aggregator, when the threads update a few hot tag sets.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class ShardedAggregatorBenchmark {
+
+  private static final int CARDINALITY = 4;
+
+  private String[][] tagSets;
+  private Aggregator table;
+  private Aggregator sharded;
+
+  @Setup
+  public void setup() {
+    tagSets = new String[CARDINALITY][];
+    for (int i = 0; i < CARDINALITY; i++) {
+      tagSets[i] = new String[]{"endpoint", "endpoint" + i};
+    }
+    table = new BasicTimerAggregator("test", CARDINALITY * 2, CARDINALITY * 2);
+    sharded = new ShardedAggregator(
+        () -> new BasicTimerAggregator("test", CARDINALITY * 2, CARDINALITY * 2));
+  }
+
+  private void emit(final Aggregator aggregator) {
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    aggregator.apply(tagSets[random.nextInt(CARDINALITY)], random.nextInt(1000), 0L);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void table1() {
+    emit(table);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void table8() {
+    emit(table);
+  }
+
+  @Benchmark
+  @Threads(32)
+  public void table32() {
+    emit(table);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void table64() {
+    emit(table);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void sharded1() {
+    emit(sharded);
+  }
+
+  @Benchmark
+  @Threads(8)
+  public void sharded8() {
+    emit(sharded);
+  }
+
+  @Benchmark
+  @Threads(32)
+  public void sharded32() {
+    emit(sharded);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void sharded64() {
+    emit(sharded);
+  }
+}
@@ -0,0 +1,62 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.reporters.AggregatingReporter;
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares emitting a counter with a tag array, which is hashed by every reporter, against a tag
+ * set carrying its fingerprint, with a number of aggregating reporters subscribed.
+ */
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class TagSetBenchmark {
+
+  private static final String[] TAGS = new String[]{"endpoint", "/api/v1/users/profile", "host",
+      "web-frontend-01.example.com", "method", "GET", "status", "200"};
+  private static final TagSet TAG_SET = TagSet.of(TAGS);
+
+  @Param({"1", "4"})
+  private int reporters;
+
+  private Counter counter;
+
+  @Setup
+  public void setup() {
+    final MetricRegistry metricRegistry = new MetricRegistry();
+    for (int i = 0; i < reporters; i++) {
+      metricRegistry.addReporter(new AggregatingReporter() {
+      });
+    }
+    counter = metricRegistry.counter("counter");
+  }
+
+  @Benchmark
+  public void tagArray() {
+    counter.inc(TAGS);
+  }
+
+  @Benchmark
+  public void tagSet() {
+    counter.inc(TAG_SET);
+  }
+}
@@ -0,0 +1,37 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics;
+
+import io.ultrabrew.metrics.util.CachedClock;
+
+/**
+ * Source of the time used by the metrics of a {@link MetricRegistry} to timestamp the measurement
+ * events and to measure durations.
+ *
+ * @see CachedClock
+ */
+public interface Clock {
+
+  /**
+   * Clock reading the system time on every call.
+   */
+  Clock SYSTEM = System::currentTimeMillis;
+
+  /**
+   * Get the current time used as the timestamp of measurement events.
+   *
+   * @return current time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   */
+  long currentTimeMillis();
+
+  /**
+   * Get the current value of a monotonic time source, used to measure durations.
+   *
+   * @return current time in nanoseconds, relative to an arbitrary origin
+   */
+  default long nanoTime() {
+    return System.nanoTime();
+  }
+}
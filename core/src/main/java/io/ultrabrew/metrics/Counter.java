@@ -4,6 +4,8 @@
 
 package io.ultrabrew.metrics;
 
+import io.ultrabrew.metrics.util.TagSet;
+
 /**
  * Counter increments or decrements a long value.
  *
@@ -30,6 +32,9 @@ package io.ultrabrew.metrics;
  *
  * Note: The tag key-value array must always be sorted in the same order.
  *
+ * <p>A counter measured with a fixed tag set should be bound to it once with {@link
+ * #bind(String...)}.</p>
+ *
  * <p>This class is thread-safe.</p>
  */
 public class Counter extends Metric {
@@ -75,4 +80,111 @@ public class Counter extends Metric {
   public void dec(long change, final String... tags) {
     emit(-change, tags);
   }
+
+  /**
+   * Increment the counter by 1.
+   *
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void inc(final TagSet tags) {
+    emitTagSet(1L, tags);
+  }
+
+  /**
+   * Decrement the counter by 1.
+   *
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void dec(final TagSet tags) {
+    emitTagSet(-1L, tags);
+  }
+
+  /**
+   * Increment the counter by given change value.
+   *
+   * @param change value by which to increment the counter
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void inc(long change, final TagSet tags) {
+    emitTagSet(change, tags);
+  }
+
+  /**
+   * Decrement the counter by given change value.
+   *
+   * @param change value by which to decrement the counter
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void dec(long change, final TagSet tags) {
+    emitTagSet(-change, tags);
+  }
+
+  /**
+   * Increment the counter by a batch of change values, each identified with the tag set at the same
+   * index. All changes are applied with the same timestamp and dispatched to the subscribers at
+   * once, which is cheaper than incrementing them one by one.
+   *
+   * @param tagSets sorted arrays of tag key-value pairs in a flattened array, one for each change
+   * @param changes values by which to increment the counter
+   * @throws IllegalArgumentException if the number of tag arrays differs from the number of changes
+   */
+  public void incAll(final String[][] tagSets, final long[] changes) {
+    emitBatch(changes, tagSets);
+  }
+
+  /**
+   * Bind the counter to a fixed tag set. The returned handle emits measurements with a tag set whose
+   * fingerprint is calculated once, so that a measurement neither allocates a tag array nor hashes
+   * the tags in any of the reporters.
+   *
+   * @param tags a sorted array of tag key-value pairs in a flattened array
+   * @return counter bound to the tag set
+   */
+  public Bound bind(final String... tags) {
+    return new Bound(tags);
+  }
+
+  /**
+   * A {@link Counter} bound to a fixed tag set.
+   *
+   * <p>This class is thread-safe.</p>
+   */
+  public final class Bound extends Metric.Bound {
+
+    private Bound(final String[] tags) {
+      super(tags);
+    }
+
+    /**
+     * Increment the counter by 1.
+     */
+    public void inc() {
+      emit(1L);
+    }
+
+    /**
+     * Decrement the counter by 1.
+     */
+    public void dec() {
+      emit(-1L);
+    }
+
+    /**
+     * Increment the counter by given change value.
+     *
+     * @param change value by which to increment the counter
+     */
+    public void inc(final long change) {
+      emit(change);
+    }
+
+    /**
+     * Decrement the counter by given change value.
+     *
+     * @param change value by which to decrement the counter
+     */
+    public void dec(final long change) {
+      emit(-change);
+    }
+  }
 }
@@ -4,6 +4,8 @@
 
 package io.ultrabrew.metrics;
 
+import io.ultrabrew.metrics.util.TagSet;
+
 /**
  * Gauge measures a long value at given time.
  *
@@ -29,6 +31,9 @@ package io.ultrabrew.metrics;
  *
  * Note: The tag key-value array must always be sorted in the same order.
  *
+ * <p>A gauge measured with a fixed tag set should be bound to it once with {@link
+ * #bind(String...)}.</p>
+ *
  * <p>This class is thread-safe.</p>
  */
 public class Gauge extends Metric {
@@ -46,4 +51,47 @@ public class Gauge extends Metric {
   public void set(final long value, final String... tags) {
     emit(value, tags);
   }
+
+  /**
+   * Measure the gauge's value.
+   *
+   * @param value set value of gauge
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void set(final long value, final TagSet tags) {
+    emitTagSet(value, tags);
+  }
+
+  /**
+   * Bind the gauge to a fixed tag set. The returned handle emits measurements with a tag set whose
+   * fingerprint is calculated once, so that a measurement neither allocates a tag array nor hashes
+   * the tags in any of the reporters.
+   *
+   * @param tags a sorted array of tag key-value pairs in a flattened array
+   * @return gauge bound to the tag set
+   */
+  public Bound bind(final String... tags) {
+    return new Bound(tags);
+  }
+
+  /**
+   * A {@link Gauge} bound to a fixed tag set.
+   *
+   * <p>This class is thread-safe.</p>
+   */
+  public final class Bound extends Metric.Bound {
+
+    private Bound(final String[] tags) {
+      super(tags);
+    }
+
+    /**
+     * Measure the gauge's value.
+     *
+     * @param value set value of gauge
+     */
+    public void set(final long value) {
+      emit(value);
+    }
+  }
 }
@@ -4,6 +4,8 @@
 
 package io.ultrabrew.metrics;
 
+import io.ultrabrew.metrics.util.TagSet;
+
 /**
  * GaugeDouble measures a double value at given time.
  *
@@ -27,6 +29,9 @@ package io.ultrabrew.metrics;
  *
  * Note: The tag key-value array must always be sorted in the same order.
  *
+ * <p>A gauge measured with a fixed tag set should be bound to it once with {@link
+ * #bind(String...)}.</p>
+ *
  * <p>This class is thread-safe.</p>
  */
 public class GaugeDouble extends Metric {
@@ -45,4 +50,49 @@ public class GaugeDouble extends Metric {
     final long l = Double.doubleToRawLongBits(value);
     emit(l, tags);
   }
+
+  /**
+   * Measure the gauge's value.
+   *
+   * @param value set value of gauge
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void set(final double value, final TagSet tags) {
+    final long l = Double.doubleToRawLongBits(value);
+    emitTagSet(l, tags);
+  }
+
+  /**
+   * Bind the gauge to a fixed tag set. The returned handle emits measurements with a tag set whose
+   * fingerprint is calculated once, so that a measurement neither allocates a tag array nor hashes
+   * the tags in any of the reporters.
+   *
+   * @param tags a sorted array of tag key-value pairs in a flattened array
+   * @return gauge bound to the tag set
+   */
+  public Bound bind(final String... tags) {
+    return new Bound(tags);
+  }
+
+  /**
+   * A {@link GaugeDouble} bound to a fixed tag set.
+   *
+   * <p>This class is thread-safe.</p>
+   */
+  public final class Bound extends Metric.Bound {
+
+    private Bound(final String[] tags) {
+      super(tags);
+    }
+
+    /**
+     * Measure the gauge's value.
+     *
+     * @param value set value of gauge
+     */
+    public void set(final double value) {
+      final long l = Double.doubleToRawLongBits(value);
+      emit(l);
+    }
+  }
 }
@@ -4,6 +4,9 @@
 
 package io.ultrabrew.metrics;
 
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.Arrays;
+
 /**
  * The base class of a system of measurement producing a single reportable metric. The system may
  * consist of related measures that facilitates the quantification of some particular
@@ -22,6 +25,8 @@ public abstract class Metric {
   public static final int DEFAULT_CARDINALITY = 128;
   public static final int DEFAULT_MAX_CARDINALITY = 4096; //4k
 
+  static final Reporter[] NO_ROUTES = new Reporter[0];
+
   /**
    * Identifier of the metric
    */
@@ -34,7 +39,13 @@ public abstract class Metric {
    */
   public final int maxCardinality;
 
-  private final MetricRegistry registry;
+  private final Clock clock;
+
+  /**
+   * Consumers of the measurement events of the metric, one for each subscribed reporter that does
+   * not ignore the metric. Replaced as a whole by the metric registry when a reporter is added.
+   */
+  volatile Reporter[] routes = NO_ROUTES;
 
   /**
    * Create a metric associated with a metric registry.
@@ -55,19 +66,106 @@ public abstract class Metric {
    * @param maxCardinality max cardinality. New dimensions will dropped beyond this value.
    */
   protected Metric(final MetricRegistry registry, final String id, final int maxCardinality) {
-    this.registry = registry;
+    this.clock = registry != null ? registry.getClock() : Clock.SYSTEM;
     this.id = id;
     this.cardinality = DEFAULT_CARDINALITY;
     this.maxCardinality = maxCardinality;
   }
 
   /**
-   * Publish a measured value to all subscribers through the metric registry.
+   * Get the clock of the metric registry the metric is associated with.
+   *
+   * @return clock
+   */
+  protected Clock getClock() {
+    return clock;
+  }
+
+  /**
+   * Publish a measured value to all subscribers of the metric registry.
    *
    * @param value measurement value
    * @param tags a sorted and flattened array of tag key-value pairs
    */
   protected void emit(final long value, final String[] tags) {
-    registry.emit(this, System.currentTimeMillis(), value, tags);
+    final Reporter[] routes = this.routes;
+    if (routes.length == 0) {
+      return;
+    }
+    final long timestamp = clock.currentTimeMillis();
+    for (int i = 0; i < routes.length; i++) {
+      routes[i].emit(this, timestamp, value, tags);
+    }
+  }
+
+  /**
+   * Publish a measured value to all subscribers of the metric registry.
+   *
+   * @param value measurement value
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  protected void emitTagSet(final long value, final TagSet tags) {
+    final Reporter[] routes = this.routes;
+    if (routes.length == 0) {
+      return;
+    }
+    final long timestamp = clock.currentTimeMillis();
+    for (int i = 0; i < routes.length; i++) {
+      routes[i].emitTagSet(this, timestamp, value, tags);
+    }
+  }
+
+  /**
+   * Publish a batch of measured values sharing the same timestamp to all subscribers of the metric
+   * registry. The clock is read and the subscribers are dispatched to once for the whole batch.
+   *
+   * @param values measurement values
+   * @param tags sorted and flattened arrays of tag key-value pairs, one for each value
+   * @throws IllegalArgumentException if the number of tag arrays differs from the number of values
+   */
+  protected void emitBatch(final long[] values, final String[][] tags) {
+    if (values.length != tags.length) {
+      throw new IllegalArgumentException(
+          "Got " + values.length + " values, but " + tags.length + " tag arrays");
+    }
+    final Reporter[] routes = this.routes;
+    if (routes.length == 0 || values.length == 0) {
+      return;
+    }
+    final long timestamp = clock.currentTimeMillis();
+    for (int i = 0; i < routes.length; i++) {
+      routes[i].emitBatch(this, timestamp, values, tags);
+    }
+  }
+
+  /**
+   * The base class of the handles of a metric bound to a fixed tag set. The tag set is copied and
+   * hashed once when the handle is created, and remembers the positions of its records in the
+   * aggregators it is applied to, so that a measurement emitted through the handle neither allocates
+   * nor hashes the tags nor looks the records up again.
+   *
+   * <p>This class is thread-safe.</p>
+   */
+  public abstract class Bound {
+
+    private final TagSet tags;
+
+    /**
+     * Create a handle bound to a tag set.
+     *
+     * @param tags a sorted array of tag key-value pairs in a flattened array
+     */
+    protected Bound(final String[] tags) {
+      this.tags = TagSet.bound(Arrays.copyOf(tags, tags.length));
+    }
+
+    /**
+     * Publish a measured value with the bound tag set to all subscribers of the metric registry.
+     *
+     * @param value measurement value
+     */
+    protected void emit(final long value) {
+      emitTagSet(value, tags);
+    }
   }
 }
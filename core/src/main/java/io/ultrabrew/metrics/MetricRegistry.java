@@ -7,8 +7,9 @@ package io.ultrabrew.metrics;
 import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A collection of metrics, which may be subscribed by a reporter. Each metric is always associated
@@ -21,19 +22,47 @@ import java.util.Map;
  * result into a {@link IllegalStateException}. You should create all the metric instances you need
  * at the start of your application, and share them between your threads.</p>
  *
+ * <p>Looking up an existing metric does not lock. A metric created for a short-lived entity, e.g.,
+ * a tenant, can be removed together with its aggregators with {@link #remove(String)}.</p>
+ *
  * <p>This class is thread-safe.</p>
  */
 public class MetricRegistry {
 
+  /**
+   * Metrics by identifier. Read without locking, but modified only while holding its monitor,
+   * which also guards the routes of the metrics.
+   */
   private final Map<String, Metric> measurements;
-  private final List<Reporter> reporters;
+  private volatile Reporter[] reporters;
+  private final Clock clock;
 
   /**
-   * Create a registry of metrics.
+   * Create a registry of metrics reading the system time on every measurement.
    */
   public MetricRegistry() {
-    measurements = new java.util.HashMap<>();
-    reporters = new java.util.ArrayList<>();
+    this(Clock.SYSTEM);
+  }
+
+  /**
+   * Create a registry of metrics reading the time from the given clock.
+   *
+   * @param clock source of the timestamps and durations measured by the metrics
+   * @see io.ultrabrew.metrics.util.CachedClock
+   */
+  public MetricRegistry(final Clock clock) {
+    measurements = new ConcurrentHashMap<>();
+    reporters = new Reporter[0];
+    this.clock = clock;
+  }
+
+  /**
+   * Get the clock used by the metrics of this registry.
+   *
+   * @return clock
+   */
+  public Clock getClock() {
+    return clock;
   }
 
   /**
@@ -175,11 +204,76 @@ public class MetricRegistry {
 
   /**
    * Subscribe a reporter to all measurement events produced by the metrics in the metric registry.
+   * A reporter may be added concurrently with the metrics emitting events.
    *
    * @param reporter reporter to subscribe
+   * @see Reporter#route(Metric)
    */
   public void addReporter(final Reporter reporter) {
-    reporters.add(reporter);
+    synchronized (measurements) {
+      final Reporter[] current = reporters;
+      final Reporter[] next = Arrays.copyOf(current, current.length + 1);
+      next[current.length] = reporter;
+      reporters = next;
+      for (final Metric metric : measurements.values()) {
+        final Reporter route = reporter.route(metric);
+        if (route != null) {
+          final Reporter[] routes = Arrays.copyOf(metric.routes, metric.routes.length + 1);
+          routes[routes.length - 1] = route;
+          metric.routes = routes;
+        }
+      }
+    }
+  }
+
+  /**
+   * Remove the metric registered under this id, and the state held for it by the subscribed
+   * reporters, e.g., its aggregators. The removed metric instance stops emitting measurement events
+   * to the reporters, and a metric later created with the same id starts from scratch. The metric
+   * should no longer be measured by other threads when it is removed.
+   *
+   * @param id identifier of the measurement
+   * @return the removed metric, or null if no metric was registered under this id
+   * @see Reporter#remove(Metric)
+   */
+  public Metric remove(final String id) {
+    synchronized (measurements) {
+      final Metric metric = measurements.remove(id);
+      if (metric == null) {
+        return null;
+      }
+      metric.routes = Metric.NO_ROUTES;
+      for (final Reporter reporter : reporters) {
+        reporter.remove(metric);
+      }
+      return metric;
+    }
+  }
+
+  /**
+   * Get the number of metrics in the metric registry.
+   *
+   * @return number of metrics
+   */
+  public int size() {
+    return measurements.size();
+  }
+
+  /**
+   * Estimate the memory held for the metrics of the metric registry by the subscribed reporters.
+   *
+   * @return estimated number of bytes
+   * @see Reporter#memoryUsage(Metric)
+   */
+  public long memoryUsage() {
+    final Reporter[] reporters = this.reporters;
+    long bytes = 0L;
+    for (final Metric metric : measurements.values()) {
+      for (final Reporter reporter : reporters) {
+        bytes += reporter.memoryUsage(metric);
+      }
+    }
+    return bytes;
   }
 
   private <T extends Metric> T getOrCreate(final String id, final Class<T> klass, final int maxCardinality) {
@@ -195,6 +289,7 @@ public class MetricRegistry {
       try {
         T instance = klass.getDeclaredConstructor(MetricRegistry.class, String.class, int.class)
             .newInstance(this, id, maxCardinality);
+        instance.routes = routes(instance);
         measurements.put(id, instance);
         return instance;
       } catch (InstantiationException | IllegalAccessException | InvocationTargetException |
@@ -212,11 +307,19 @@ public class MetricRegistry {
         "Metric '" + m.id + "' is already defined with different type: " + m.getClass());
   }
 
-  //--- INTERNAL METHODS ---
-
-  void emit(final Metric metric, final long timestamp, final long value, final String[] tags) {
-    for (int i = 0; i < reporters.size(); i++) {
-      reporters.get(i).emit(metric, timestamp, value, tags);
+  /**
+   * Route the measurement events of a metric to each subscribed reporter not ignoring the metric.
+   */
+  private Reporter[] routes(final Metric metric) {
+    final Reporter[] reporters = this.reporters;
+    final Reporter[] routes = new Reporter[reporters.length];
+    int count = 0;
+    for (final Reporter reporter : reporters) {
+      final Reporter route = reporter.route(metric);
+      if (route != null) {
+        routes[count++] = route;
+      }
     }
+    return count == routes.length ? routes : Arrays.copyOf(routes, count);
   }
 }
@@ -5,6 +5,7 @@
 package io.ultrabrew.metrics;
 
 import io.ultrabrew.metrics.reporters.AggregatingReporter;
+import io.ultrabrew.metrics.util.TagSet;
 
 /**
  * Reporter is a thread-safe consumer subscribing to measurement events in {@link MetricRegistry}.
@@ -24,4 +25,70 @@ public interface Reporter {
    * @param tags a sorted and flattened array of tag key-value pairs
    */
   void emit(final Metric metric, final long timestamp, final long value, final String[] tags);
+
+  /**
+   * Consume subscribed measurement event identified with a tag set carrying its fingerprint. A
+   * reporter aggregating the events should pass the tag set on to its aggregators, so that the tags
+   * are not hashed again.
+   *
+   * @param metric metric instance emitting the event
+   * @param timestamp update time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   * @param value measurement value
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  default void emitTagSet(final Metric metric, final long timestamp, final long value,
+      final TagSet tags) {
+    emit(metric, timestamp, value, tags.toArray());
+  }
+
+  /**
+   * Consume a batch of subscribed measurement events sharing the same timestamp. A reporter
+   * aggregating the events should pass the batch on to its aggregator, so that the aggregator is
+   * looked up once for the whole batch.
+   *
+   * @param metric metric instance emitting the events
+   * @param timestamp update time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   * @param values measurement values
+   * @param tags sorted and flattened arrays of tag key-value pairs, one for each value
+   */
+  default void emitBatch(final Metric metric, final long timestamp, final long[] values,
+      final String[][] tags) {
+    for (int i = 0; i < values.length; i++) {
+      emit(metric, timestamp, values[i], tags[i]);
+    }
+  }
+
+  /**
+   * Get the consumer of the measurement events of the given metric. Called by the metric registry
+   * once for each metric when the metric or the reporter is registered, after which the events of
+   * the metric are emitted directly to the returned consumer. A reporter may return a consumer
+   * specific to the metric to avoid looking up the state of the metric on every event.
+   *
+   * @param metric metric instance emitting the events
+   * @return consumer of the events of the metric, or null if the reporter ignores the metric
+   */
+  default Reporter route(final Metric metric) {
+    return this;
+  }
+
+  /**
+   * Release the state held for a metric removed from a metric registry the reporter subscribes to.
+   * Called by the metric registry after the metric has stopped emitting events to the reporter.
+   *
+   * @param metric removed metric instance
+   * @see MetricRegistry#remove(String)
+   */
+  default void remove(final Metric metric) {
+    // nothing to release by default
+  }
+
+  /**
+   * Estimate the memory held by the reporter for the given metric, e.g., by its aggregator.
+   *
+   * @param metric metric instance
+   * @return estimated number of bytes, or 0 if the reporter holds no state for the metric
+   */
+  default long memoryUsage(final Metric metric) {
+    return 0L;
+  }
 }
@@ -4,6 +4,8 @@
 
 package io.ultrabrew.metrics;
 
+import io.ultrabrew.metrics.util.TagSet;
+
 /**
  * Timer measures time in nanoseconds between two events and acts as a counter to count the
  * events.
@@ -37,6 +39,9 @@ package io.ultrabrew.metrics;
  *
  * Note: The tag key-value array must always be sorted in the same order.
  *
+ * <p>A timer measured with a fixed tag set should be bound to it once with {@link
+ * #bind(String...)}.</p>
+ *
  * <p>This class is thread-safe.</p>
  */
 public class Timer extends Metric {
@@ -51,7 +56,7 @@ public class Timer extends Metric {
    * @return start time in nanoseconds
    */
   public long start() {
-    return System.nanoTime();
+    return getClock().nanoTime();
   }
 
   /**
@@ -61,7 +66,7 @@ public class Timer extends Metric {
    * @param tags a sorted and flattened array of tag key-value pairs
    */
   public void stop(final long startTime, final String... tags) {
-    final long duration = System.nanoTime() - startTime;
+    final long duration = getClock().nanoTime() - startTime;
     emit(duration, tags);
   }
 
@@ -74,4 +79,90 @@ public class Timer extends Metric {
   public void update(final long duration, final String... tags) {
     emit(duration, tags);
   }
+
+  /**
+   * Stop and update the timer.
+   *
+   * @param startTime start time in nanoseconds from {@link #start()}
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void stop(final long startTime, final TagSet tags) {
+    final long duration = getClock().nanoTime() - startTime;
+    emitTagSet(duration, tags);
+  }
+
+  /**
+   * Update the timer.
+   *
+   * @param duration duration in nanoseconds
+   * @param tags a tag set of sorted tag key-value pairs
+   */
+  public void update(final long duration, final TagSet tags) {
+    emitTagSet(duration, tags);
+  }
+
+  /**
+   * Update the timer with a batch of durations, each identified with the tag set at the same index.
+   * All durations are applied with the same timestamp and dispatched to the subscribers at once.
+   *
+   * @param tagSets sorted arrays of tag key-value pairs in a flattened array, one for each duration
+   * @param durations durations in nanoseconds
+   * @throws IllegalArgumentException if the number of tag arrays differs from the number of
+   * durations
+   */
+  public void updateAll(final String[][] tagSets, final long[] durations) {
+    emitBatch(durations, tagSets);
+  }
+
+  /**
+   * Bind the timer to a fixed tag set. The returned handle emits measurements with a tag set whose
+   * fingerprint is calculated once, so that a measurement neither allocates a tag array nor hashes
+   * the tags in any of the reporters.
+   *
+   * @param tags a sorted array of tag key-value pairs in a flattened array
+   * @return timer bound to the tag set
+   */
+  public Bound bind(final String... tags) {
+    return new Bound(tags);
+  }
+
+  /**
+   * A {@link Timer} bound to a fixed tag set.
+   *
+   * <p>This class is thread-safe.</p>
+   */
+  public final class Bound extends Metric.Bound {
+
+    private Bound(final String[] tags) {
+      super(tags);
+    }
+
+    /**
+     * Start the timer.
+     *
+     * @return start time in nanoseconds
+     */
+    public long start() {
+      return getClock().nanoTime();
+    }
+
+    /**
+     * Stop and update the timer.
+     *
+     * @param startTime start time in nanoseconds from {@link #start()}
+     */
+    public void stop(final long startTime) {
+      final long duration = getClock().nanoTime() - startTime;
+      emit(duration);
+    }
+
+    /**
+     * Update the timer.
+     *
+     * @param duration duration in nanoseconds
+     */
+    public void update(final long duration) {
+      emit(duration);
+    }
+  }
 }
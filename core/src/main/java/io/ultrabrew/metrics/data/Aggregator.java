@@ -4,6 +4,8 @@
 
 package io.ultrabrew.metrics.data;
 
+import io.ultrabrew.metrics.util.TagSet;
+
 /**
  * Aggregator is a thread-safe aggregator for a single metric's measurement values. It may use
  * multiple different aggregation functions to calculate multiple fields on the given values. For
@@ -11,8 +13,10 @@ package io.ultrabrew.metrics.data;
  * may be dependent on the time interval of reporter, i.e. when reading a field, it may reset it, or
  * the implementation might update the current time interval values, but allow read only to the last
  * time interval's aggregates.
+ *
+ * <p>An aggregator holding resources outside of the Java heap releases them when closed.</p>
  */
-public interface Aggregator {
+public interface Aggregator extends AutoCloseable {
 
   /**
    * Apply aggregation functions to given value identified with a given a tag set. An aggregator may
@@ -24,6 +28,34 @@ public interface Aggregator {
    */
   void apply(final String[] tags, final long value, final long timestamp);
 
+  /**
+   * Apply aggregation functions to given value identified with a given tag set carrying its
+   * fingerprint. An aggregator identifying its rows by the fingerprint uses the carried one
+   * instead of hashing the tags again.
+   *
+   * @param tags a tag set of sorted tag key-value pairs
+   * @param value measurement value
+   * @param timestamp update time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   */
+  default void applyTagSet(final TagSet tags, final long value, final long timestamp) {
+    apply(tags.toArray(), value, timestamp);
+  }
+
+  /**
+   * Apply aggregation functions to a batch of values sharing the same timestamp, each identified
+   * with the tag set at the same index. An aggregator may reorder the updates to improve the
+   * locality of its lookups.
+   *
+   * @param tags sorted arrays of tag key-value pairs in a flattened array or empty arrays
+   * @param values measurement values
+   * @param timestamp update time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   */
+  default void applyBatch(final String[][] tags, final long[] values, final long timestamp) {
+    for (int i = 0; i < values.length; i++) {
+      apply(tags[i], values[i], timestamp);
+    }
+  }
+
   /**
    * Retrieve a cursor to iterate all rows in the aggregator.
    *
@@ -37,4 +69,60 @@ public interface Aggregator {
    * @return a cursor sorted lexically by the tag sets
    */
   Cursor sortedCursor();
+
+  /**
+   * Retrieve how the value of each field is merged with the value of the same field in a row with
+   * the same tag set in another aggregator of the same kind, e.g., when the rows of the shards of a
+   * {@link ShardedAggregator} are combined.
+   *
+   * @return merge of each field, in the same order as the fields, or null if the rows can not be
+   * merged
+   */
+  default Merge[] merges() {
+    return null;
+  }
+
+  /**
+   * Reorganize the internal storage of the aggregator to speed up subsequent lookups, e.g., by
+   * rehashing a hash table that has grown in multiple steps into a single table. Should be called
+   * when the aggregator is not being actively written to, as updates applied during the
+   * reorganization may be lost.
+   *
+   * @return true if the storage was reorganized
+   */
+  default boolean consolidate() {
+    return false;
+  }
+
+  /**
+   * Evict the rows that have not been updated within the idle timeout of the aggregator, so that
+   * their storage can be reused by new rows. Should be called when the aggregator is not being
+   * actively written to, as updates applied to a row while it is evicted may be lost.
+   *
+   * @param currentTime current time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   * @return number of evicted rows
+   * @see TableOptions.Builder#withIdleTimeoutMillis(long)
+   */
+  default int evictIdle(final long currentTime) {
+    return 0;
+  }
+
+  /**
+   * Estimate the memory held by the aggregator for its rows, excluding the tag strings, which may
+   * be shared with other aggregators.
+   *
+   * @return estimated number of bytes
+   */
+  default long memoryUsage() {
+    return 0L;
+  }
+
+  /**
+   * Release any resources held by the aggregator. The aggregator must not be used after it has been
+   * closed, and it must not be closed while other threads are still using it.
+   */
+  @Override
+  default void close() {
+    // nothing to release by default
+  }
 }
@@ -24,6 +24,7 @@ public class BasicCounterAggregator extends ConcurrentMonoidLongTable {
   private static final String[] FIELDS = {"sum"};
   private static final Type[] TYPES = {Type.LONG};
   private static final long[] IDENTITY = {0L};
+  private static final Merge[] MERGES = {Merge.SUM};
 
   /**
    * Create a monoid for common aggregation functions for a Counter.
@@ -65,11 +66,31 @@ public class BasicCounterAggregator extends ConcurrentMonoidLongTable {
    */
   public BasicCounterAggregator(final String metricId, final int maxCardinality,
       final int cardinality) {
-    super(metricId, maxCardinality, cardinality, FIELDS, TYPES, IDENTITY);
+    this(metricId, maxCardinality, cardinality, TableOptions.DEFAULT);
+  }
+
+  /**
+   * Create a monoid for common aggregation functions for a Counter with requested initial capacity,
+   * max capacity and table options.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * this
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   */
+  public BasicCounterAggregator(final String metricId, final int maxCardinality,
+      final int cardinality, final TableOptions options) {
+    super(metricId, maxCardinality, cardinality, FIELDS, TYPES, IDENTITY, options);
   }
 
   @Override
   public void combine(final long[] table, final long baseOffset, final long value) {
     add(table, baseOffset, 0, value);
   }
+
+  @Override
+  public Merge[] merges() {
+    return MERGES;
+  }
 }
@@ -42,6 +42,7 @@ import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
 public class BasicDoubleValuedHistogramAggregator extends BasicGaugeDoubleAggregator {
 
   private final DoubleValuedDistributionBucket buckets;
+  private final Merge[] merges;
 
   /**
    * Creates a monoid for the histogram buckets for a {@link GaugeDouble}
@@ -81,14 +82,34 @@ public class BasicDoubleValuedHistogramAggregator extends BasicGaugeDoubleAggreg
       final DoubleValuedDistributionBucket bucket,
       final int maxCardinality,
       final int cardinality) {
+    this(metricId, bucket, maxCardinality, cardinality, TableOptions.DEFAULT);
+  }
+
+  /**
+   * Creates a monoid for the histogram buckets for a {@link GaugeDouble}
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param bucket distribution bucket spec
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   */
+  public BasicDoubleValuedHistogramAggregator(
+      final String metricId,
+      final DoubleValuedDistributionBucket bucket,
+      final int maxCardinality,
+      final int cardinality,
+      final TableOptions options) {
     super(
         metricId,
         maxCardinality,
         cardinality,
         buildFields(bucket),
         buildTypes(bucket),
-        buildIdentity(bucket));
+        buildIdentity(bucket),
+        options);
     this.buckets = bucket;
+    this.merges = buildMerges(bucket);
   }
 
   /**
@@ -124,6 +145,21 @@ public class BasicDoubleValuedHistogramAggregator extends BasicGaugeDoubleAggreg
     return types;
   }
 
+  /**
+   * Creates an array of {@link Merge} of the aggregation field followed by sums for the histogram
+   * buckets.
+   *
+   * @param buckets distribution bucket spec
+   * @return array of {@link Merge}s of the fields
+   * @see {@link BasicGaugeDoubleAggregator#MERGES}
+   */
+  private static Merge[] buildMerges(DoubleValuedDistributionBucket buckets) {
+    Merge[] merges = new Merge[MERGES.length + buckets.getCount()];
+    System.arraycopy(MERGES, 0, merges, 0, MERGES.length);
+    Arrays.fill(merges, MERGES.length, merges.length, Merge.SUM);
+    return merges;
+  }
+
   /**
    * Creates an array of names of the aggregation field and histogram buckets.
    *
@@ -152,4 +188,9 @@ public class BasicDoubleValuedHistogramAggregator extends BasicGaugeDoubleAggreg
     int bucketIndex = buckets.getBucketIndex(d);
     add(table, baseOffset, FIELDS.length + bucketIndex, 1);
   }
+
+  @Override
+  public Merge[] merges() {
+    return merges;
+  }
 }
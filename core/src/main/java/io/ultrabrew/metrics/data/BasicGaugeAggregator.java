@@ -28,6 +28,8 @@ public class BasicGaugeAggregator extends ConcurrentMonoidLongTable {
   private static final String[] FIELDS = {"count", "sum", "min", "max", "lastValue"};
   private static final Type[] TYPES = {Type.LONG, Type.LONG, Type.LONG, Type.LONG, Type.LONG};
   private static final long[] IDENTITY = {0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE, 0L};
+  private static final Merge[] MERGES =
+      {Merge.SUM, Merge.SUM, Merge.MIN, Merge.MAX, Merge.LAST};
 
   /**
    * Create a monoid for common aggregation functions for a Gauge.
@@ -69,7 +71,22 @@ public class BasicGaugeAggregator extends ConcurrentMonoidLongTable {
    */
   public BasicGaugeAggregator(final String metricId, final int maxCardinality,
       final int cardinality) {
-    super(metricId, maxCardinality, cardinality, FIELDS, TYPES, IDENTITY);
+    this(metricId, maxCardinality, cardinality, TableOptions.DEFAULT);
+  }
+
+  /**
+   * Create a monoid for common aggregation functions for a Gauge with requested initial capacity,
+   * max capacity and table options.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * this
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   */
+  public BasicGaugeAggregator(final String metricId, final int maxCardinality,
+      final int cardinality, final TableOptions options) {
+    super(metricId, maxCardinality, cardinality, FIELDS, TYPES, IDENTITY, options);
   }
 
   @Override
@@ -80,4 +97,9 @@ public class BasicGaugeAggregator extends ConcurrentMonoidLongTable {
     max(table, baseOffset, 3, value);
     set(table, baseOffset, 4, value);
   }
+
+  @Override
+  public Merge[] merges() {
+    return MERGES;
+  }
 }
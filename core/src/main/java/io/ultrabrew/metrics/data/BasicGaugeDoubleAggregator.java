@@ -28,6 +28,7 @@ public class BasicGaugeDoubleAggregator extends ConcurrentMonoidLongTable {
   static final String[] FIELDS = {"count", "sum", "min", "max", "lastValue"};
   static final Type[] TYPES = {Type.LONG, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE, Type.DOUBLE};
   static final long[] IDENTITY = {0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE, 0L};
+  static final Merge[] MERGES = {Merge.SUM, Merge.SUM, Merge.MIN, Merge.MAX, Merge.LAST};
 
 
   /**
@@ -70,12 +71,33 @@ public class BasicGaugeDoubleAggregator extends ConcurrentMonoidLongTable {
    */
   public BasicGaugeDoubleAggregator(final String metricId, final int maxCardinality,
       final int cardinality) {
-    this(metricId, maxCardinality, cardinality, FIELDS, TYPES, IDENTITY);
+    this(metricId, maxCardinality, cardinality, TableOptions.DEFAULT);
+  }
+
+  /**
+   * Create a monoid for common aggregation functions for a GaugeDouble with requested initial
+   * capacity, max capacity and table options.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * this
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   */
+  public BasicGaugeDoubleAggregator(final String metricId, final int maxCardinality,
+      final int cardinality, final TableOptions options) {
+    this(metricId, maxCardinality, cardinality, FIELDS, TYPES, IDENTITY, options);
   }
 
   protected BasicGaugeDoubleAggregator(final String metricId, final int maxCardinality,
       final int cardinality, final String[] fields, final Type[] types, final long[] identity) {
-    super(metricId, maxCardinality, cardinality, fields, types, identity);
+    this(metricId, maxCardinality, cardinality, fields, types, identity, TableOptions.DEFAULT);
+  }
+
+  protected BasicGaugeDoubleAggregator(final String metricId, final int maxCardinality,
+      final int cardinality, final String[] fields, final Type[] types, final long[] identity,
+      final TableOptions options) {
+    super(metricId, maxCardinality, cardinality, fields, types, identity, options);
   }
 
   @Override
@@ -88,4 +110,9 @@ public class BasicGaugeDoubleAggregator extends ConcurrentMonoidLongTable {
     set(table, baseOffset, 4, d);
   }
 
+
+  @Override
+  public Merge[] merges() {
+    return MERGES;
+  }
 }
@@ -7,10 +7,11 @@ package io.ultrabrew.metrics.data;
 import static io.ultrabrew.metrics.Metric.DEFAULT_CARDINALITY;
 import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
 
+import io.ultrabrew.metrics.util.TagSet;
+import java.math.BigDecimal;
 import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import sun.misc.Unsafe;
 
 /**
  * A monoid to generate histogram buckets along with the common aggregation functions for a given
@@ -35,6 +36,12 @@ import sun.misc.Unsafe;
  * <li>underflow</li>
  * </ul>
  *
+ * <p>The aggregator may optionally estimate percentiles of the measurements from the bucket
+ * counts when the rows are read. The estimates are exposed as additional fields following the
+ * buckets, named after the percentile, e.g., {@code p99.9} for 0.999. A reporter may send these
+ * fields instead of the individual buckets. Each estimate is interpolated linearly within its
+ * bucket and bounded by the minimum and maximum measured values.</p>
+ *
  * @see DistributionBucket
  */
 public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implements Aggregator {
@@ -42,12 +49,23 @@ public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implement
   private static final Logger LOGGER = LoggerFactory.getLogger(BasicHistogramAggregator.class);
   private static final String[] AGGREGATION_FIELDS = {"count", "sum", "min", "max", "lastValue"};
   private static final long[] IDENTITY = {0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE, 0L};
+  private static final Merge[] MERGES =
+      {Merge.SUM, Merge.SUM, Merge.MIN, Merge.MAX, Merge.LAST};
+
+  /**
+   * Commonly reported percentiles: the median, p90, p99 and p99.9.
+   */
+  public static final double[] DEFAULT_PERCENTILES = {0.5, 0.9, 0.99, 0.999};
 
   private final DistributionBucket buckets;
+  private final double[] percentiles;
+  // Index of the first percentile field, i.e., the number of fields stored in a record
+  private final int percentileOffset;
 
   private final String[] fields;
   private final Type[] types;
   private final long[] identity;
+  private final Merge[] merges;
 
   /**
    * Creates a monoid for the histogram buckets for a metric.
@@ -81,11 +99,52 @@ public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implement
    */
   public BasicHistogramAggregator(final String metricId, final DistributionBucket buckets,
       final int maxCardinality, final int cardinality) {
-    super(metricId, AGGREGATION_FIELDS.length + buckets.getCount(), maxCardinality, cardinality, IDENTITY);
+    this(metricId, buckets, maxCardinality, cardinality, TableOptions.DEFAULT);
+  }
+
+  /**
+   * Creates a monoid for the histogram buckets for a metric.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param buckets distribution bucket spec
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   */
+  public BasicHistogramAggregator(final String metricId, final DistributionBucket buckets,
+      final int maxCardinality, final int cardinality, final TableOptions options) {
+    this(metricId, buckets, maxCardinality, cardinality, options, new double[0]);
+  }
+
+  /**
+   * Creates a monoid for the histogram buckets for a metric, estimating the given percentiles of
+   * the measurements when the rows are read.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param buckets distribution bucket spec
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   * @param percentiles percentiles to estimate, each greater than 0 and at most 1
+   * @see #DEFAULT_PERCENTILES
+   */
+  public BasicHistogramAggregator(final String metricId, final DistributionBucket buckets,
+      final int maxCardinality, final int cardinality, final TableOptions options,
+      final double[] percentiles) {
+    super(metricId, AGGREGATION_FIELDS.length + buckets.getCount(), maxCardinality, cardinality,
+        IDENTITY, options);
+    for (final double percentile : percentiles) {
+      if (!(percentile > 0.0 && percentile <= 1.0)) {
+        throw new IllegalArgumentException("Percentile must be greater than 0 and at most 1");
+      }
+    }
     this.buckets = buckets;
+    this.percentiles = percentiles.clone();
+    this.percentileOffset = AGGREGATION_FIELDS.length + buckets.getCount();
     this.fields = buildFields();
     this.types = buildTypes();
     this.identity = buildIdentity();
+    this.merges = buildMerges();
   }
 
   @Override
@@ -93,6 +152,11 @@ public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implement
     super.apply(tags, value, timestamp);
   }
 
+  @Override
+  public void applyTagSet(final TagSet tags, final long value, final long timestamp) {
+    super.applyTagSet(tags, value, timestamp);
+  }
+
   @Override
   protected void combine(final int[] table, final long baseOffset, final long value) {
     addToAggField(table, baseOffset, 0, 1);
@@ -128,44 +192,89 @@ public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implement
    * @see #IDENTITY
    */
   private long[] buildIdentity() {
-    long[] identity = new long[IDENTITY.length + buckets.getCount()];
+    long[] identity = new long[IDENTITY.length + buckets.getCount() + percentiles.length];
     System.arraycopy(IDENTITY, 0, identity, 0, IDENTITY.length);
     Arrays.fill(identity, IDENTITY.length, identity.length, 0L);
     return identity;
   }
 
   /**
-   * Creates an array of names of the aggregation field and histogram buckets.
+   * Creates an array of names of the aggregation field, histogram buckets and percentiles.
    *
    * @see #AGGREGATION_FIELDS
    */
   private String[] buildFields() {
-    String[] fields = new String[AGGREGATION_FIELDS.length + buckets.getCount()];
+    String[] fields = new String[percentileOffset + percentiles.length];
     String[] bucketNames = buckets.getBucketNames();
     System.arraycopy(AGGREGATION_FIELDS, 0, fields, 0, AGGREGATION_FIELDS.length);
     System.arraycopy(bucketNames, 0, fields, AGGREGATION_FIELDS.length, bucketNames.length);
+    for (int i = 0; i < percentiles.length; i++) {
+      fields[percentileOffset + i] = percentileName(percentiles[i]);
+    }
     return fields;
   }
 
+  /**
+   * Name the field of a percentile after the percentage, e.g., {@code p99.9} for 0.999.
+   */
+  static String percentileName(final double percentile) {
+    return 'p' + BigDecimal.valueOf(percentile).movePointRight(2).stripTrailingZeros()
+        .toPlainString();
+  }
+
   private Type[] buildTypes() {
-    Type[] types = new Type[AGGREGATION_FIELDS.length + buckets.getCount()];
+    Type[] types = new Type[percentileOffset + percentiles.length];
     Arrays.fill(types, Type.LONG);
     return types;
   }
 
+  /**
+   * Creates an array of merges of the aggregation field followed by sums for the histogram
+   * buckets.
+   *
+   * @see #AGGREGATION_FIELDS
+   */
+  private Merge[] buildMerges() {
+    Merge[] merges = new Merge[MERGES.length + buckets.getCount()];
+    System.arraycopy(MERGES, 0, merges, 0, MERGES.length);
+    Arrays.fill(merges, MERGES.length, merges.length, Merge.SUM);
+    return merges;
+  }
+
+  /**
+   * Retrieve how the fields are merged, or null if percentiles are estimated, as the estimates of
+   * the rows can not be merged.
+   */
+  @Override
+  public Merge[] merges() {
+    return percentiles.length == 0 ? merges : null;
+  }
+
   private class CursorImpl implements Cursor {
 
     private final String[][] tagSets;
+    // Index of each sorted tag set in the tag set array of the table, or null if not sorted
+    private final int[] tagIndexes;
     private int i = -1;
     private long base = 0;
     private int[] table;
+    // Bucket counts and estimated percentiles of the current row, and whether each bucket of the
+    // row has been reset by the reader
+    private final long[] counts = new long[buckets.getCount()];
+    private final long[] estimates = new long[percentiles.length];
+    private final boolean[] resetBuckets = new boolean[buckets.getCount()];
 
     private CursorImpl(final String[][] tagSets, final boolean sorted) {
       if (sorted) {
-        this.tagSets = tagSets.clone();
-        Arrays.sort(this.tagSets, TagSetsHelper::compare);
+        final String[][] snapshot = tagSets.clone();
+        this.tagIndexes = TagSetsHelper.sortedIndexes(snapshot);
+        this.tagSets = new String[snapshot.length][];
+        for (int j = 0; j < snapshot.length; j++) {
+          this.tagSets[j] = snapshot[tagIndexes[j]];
+        }
       } else {
         this.tagSets = tagSets;
+        this.tagIndexes = null;
       }
     }
 
@@ -176,28 +285,44 @@ public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implement
 
     @Override
     public boolean next() {
-      i++;
-      if (i >= tagSets.length || tagSets[i] == null) {
-        return false;
+      for (; ; ) {
+        i++;
+        if (i >= tagSets.length || isClosed()) {
+          return false;
+        }
+        if (tagSets[i] == null) {
+          if (hasIdleTimeout()) {
+            continue; // skip the released tag set of an evicted record
+          }
+          return false;
+        }
+
+        final Chain chain = currentChain();
+        long index = index(chain, tagIndexes == null ? i : tagIndexes[i], tagSets[i]);
+
+        if (NOT_FOUND == index) {
+          if (hasIdleTimeout()) {
+            continue; // the record has been evicted after the cursor was created
+          }
+          LOGGER.error("Missing index on Read. Tags: {}. Concurrency error or bug",
+              Arrays.asList(tagSets[i]));
+          return false;
+        }
+
+        // Decode table index and slot index from long.
+        // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
+        // This logic is replicated in multiple places for performance reasons.
+        int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+        int slotIndex = (int) (index & SLOT_MASK);
+
+        table = table(chain, tableIndex);
+        base = baseOffset(chain, tableIndex, slotIndex);
+        if (percentiles.length > 0) {
+          estimatePercentiles();
+          Arrays.fill(resetBuckets, false);
+        }
+        return true;
       }
-
-      long index = index(tagSets[i], true);
-
-      if (NOT_FOUND == index) {
-        LOGGER.error("Missing index on Read. Tags: {}. Concurrency error or bug",
-            Arrays.asList(tagSets[i]));
-        return false;
-      }
-
-      // Decode table index and slot index from long.
-      // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
-      // This logic is replicated in multiple places for performance reasons.
-      int tableIndex = (int) ((index & TABLE_MASK) >> 32);
-      int slotIndex = (int) (index & SLOT_MASK);
-
-      table = tables.get(tableIndex);
-      base = Unsafe.ARRAY_INT_BASE_OFFSET + slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
-      return true;
     }
 
     @Override
@@ -224,6 +349,9 @@ public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implement
       if (index < 0 || index >= fields.length) {
         throw new IndexOutOfBoundsException("Not a valid field index: " + index);
       }
+      if (index >= percentileOffset) {
+        return estimates[index - percentileOffset];
+      }
       return read(table, base, index);
     }
 
@@ -240,9 +368,63 @@ public class BasicHistogramAggregator extends ConcurrentMonoidIntTable implement
       if (index < 0 || index >= fields.length) {
         throw new IndexOutOfBoundsException("Not a valid field index: " + index);
       }
+      if (index >= percentileOffset) {
+        // Reset the buckets the estimates are based on, unless the reader has reset them already
+        for (int j = 0; j < resetBuckets.length; j++) {
+          if (!resetBuckets[j]) {
+            readAndReset(table, base, AGGREGATION_FIELDS.length + j, 0L);
+            resetBuckets[j] = true;
+          }
+        }
+        return estimates[index - percentileOffset];
+      }
+      if (index >= AGGREGATION_FIELDS.length) {
+        resetBuckets[index - AGGREGATION_FIELDS.length] = true;
+      }
       return readAndReset(table, base, index, identity[index]);
     }
 
+    /**
+     * Estimate the percentiles of the current row from a snapshot of its bucket counts, taken
+     * before the reader resets any of them. The buckets are walked in the order of their values,
+     * from the underflow bucket through the regular buckets to the overflow bucket.
+     */
+    private void estimatePercentiles() {
+      final long[] boundaries = buckets.getBoundaries();
+      final int overflow = boundaries.length - 1;
+      final int underflow = boundaries.length;
+      long total = 0L;
+      for (int j = 0; j < counts.length; j++) {
+        counts[j] = read(table, base, AGGREGATION_FIELDS.length + j);
+        total += counts[j];
+      }
+      final long min = read(table, base, 2);
+      final long max = read(table, base, 3);
+
+      for (int p = 0; p < percentiles.length; p++) {
+        if (total == 0L) {
+          estimates[p] = 0L;
+          continue;
+        }
+        final double rank = percentiles[p] * total;
+        long estimate = max;
+        long before = 0L;
+        for (int k = 0; k <= boundaries.length; k++) {
+          final int bucket = k == 0 ? underflow : k - 1;
+          final long count = counts[bucket];
+          if (count > 0L && before + count >= rank) {
+            final long lower = bucket == underflow ? min : boundaries[bucket];
+            final long upper = bucket == underflow ? boundaries[0]
+                : bucket == overflow ? max : boundaries[bucket + 1];
+            estimate = lower + (long) ((double) (upper - lower) * ((rank - before) / count));
+            break;
+          }
+          before += count;
+        }
+        estimates[p] = min <= max ? Math.max(min, Math.min(max, estimate)) : estimate;
+      }
+    }
+
     @Override
     public double readAndResetDouble(final int index) {
       throw new UnsupportedOperationException("Invalid operation");
@@ -4,11 +4,21 @@
 
 package io.ultrabrew.metrics.data;
 
+import io.ultrabrew.metrics.util.Hashing;
+import io.ultrabrew.metrics.util.TagDictionary;
+import io.ultrabrew.metrics.util.TagSet;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sun.misc.Unsafe;
@@ -22,10 +32,23 @@ public abstract class ConcurrentMonoidIntTable {
   private static final int DEFAULT_INITIAL_CAPACITY = 16;
   private static final float DEFAULT_LOAD_FACTOR = 0.7f;
   private static final int TAGSETS_MAX_INCREMENT = 131072; // 128k
-  private static final int RESERVED_FIELDS = 2;
+  // The key, the update timestamp and the identifier of the promoted counters of the record
+  private static final int RESERVED_FIELDS = 3;
+  private static final int PROMOTION_FIELD = 2;
+  // Estimated size of the header of an array object
+  private static final int ARRAY_HEADER_SIZE = 16;
+  private static final int CACHE_LINE_SIZE = 64;
+  private static final int LONGS_PER_CACHE_LINE = CACHE_LINE_SIZE / Long.BYTES;
+  // Number of stripes of the writer counts of an off-heap chain, a power of two
+  private static final int WRITER_STRIPES =
+      Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
   protected static final long TABLE_MASK = 0x0FFFFFFF00000000L;
   protected static final long SLOT_MASK = 0x00000000FFFFFFFFL;
   protected static final long NOT_FOUND = 0x1000000000000000L;
+  private static final long RETRY = 0x2000000000000000L;
+  // Reserved keys of evicted records, never returned by key(String[])
+  private static final long TOMBSTONE = 1L;
+  private static final long EVICTING = 2L;
   protected static final Unsafe unsafe = UnsafeHelper.unsafe;
   private static final long usedOffset;
 
@@ -45,23 +68,48 @@ public abstract class ConcurrentMonoidIntTable {
   ///CLOVER:ON
 
   /**
-   * The multiple int array objects to manipulate with the unsafe atomic operations.
+   * The chain of tables currently holding the records.
    */
-  protected List<int[]> tables;
+  private volatile Chain chain;
   /**
-   * Number of entries in the corresponding table in {@link #tables}
+   * The off-heap chains replaced by consolidations, kept until no writer is left in them so that a
+   * thread still holding one does not access released memory. Guarded by the lock.
    */
-  private List<AtomicInteger> recordCounts;
+  private final List<Chain> retiredChains = new ArrayList<>();
+  private final boolean verifyTags;
+  // Whether a subclass filters the tags by overriding hashCode(String[]), so that the fingerprint
+  // carried by a tag set is not the key of its record
+  private final boolean filtersTags;
+  // Key of the record positions of the hash table in bound tag sets
+  private final long positionOwner = TagSet.newPositionOwner();
+  private final TagDictionary tagDictionary;
+  private final long idleTimeoutMillis;
   /**
-   * Max number of entries allowed in the corresponding table in {@link #tables}.
+   * Indexes of the entries in {@link #tagSets} released by evicted records, to be reused by new
+   * records.
    */
-  private final List<Integer> tableCapacities;
+  private final Queue<Integer> releasedTagIndexes = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger released = new AtomicInteger();
   private final int recordSize;
   private final int maxCapacity;
   private final long[] identity;
   private final int numAggFields;
+  private final int dataSize;
+  private final int counterBits;
+  private final int counterMask;
+  // Binary logarithm of the number of counters packed in an int
+  private final int laneBits;
+  /**
+   * The wide counters of the records promoted on overflow of a data field, by the identifier
+   * stored in the reserved promotion field of the record.
+   */
+  private final Map<Long, AtomicLongArray> promoted = new ConcurrentHashMap<>();
+  private final AtomicLong promotions = new AtomicLong();
+  private final boolean offHeap;
+  private final boolean alignedRecords;
 
   private volatile int capacity;
+  private volatile boolean closed = false;
   protected volatile String[][] tagSets;
   private volatile int used = 0;
 
@@ -74,11 +122,27 @@ public abstract class ConcurrentMonoidIntTable {
    */
   protected ConcurrentMonoidIntTable(final String metricId, final int recordSize, final int maxCapacity, int initialCapacity,
                                      final long[] identity) {
-    this(metricId, identity.length, recordSize - identity.length, maxCapacity, initialCapacity, identity);
+    this(metricId, recordSize, maxCapacity, initialCapacity, identity, TableOptions.DEFAULT);
+  }
+
+  /**
+   * @param metricId identifier of the metric
+   * @param recordSize number of fields in a record
+   * @param maxCapacity maximum capacity of table in records. Table doesn't grow beyond this value.
+   * @param initialCapacity requested capacity of table in records
+   * @param identity monoid's identity for the agg fields
+   * @param options optional table settings
+   */
+  protected ConcurrentMonoidIntTable(final String metricId, final int recordSize,
+      final int maxCapacity, int initialCapacity, final long[] identity,
+      final TableOptions options) {
+    this(metricId, identity.length, recordSize - identity.length, maxCapacity, initialCapacity,
+        identity, options);
   }
 
   private ConcurrentMonoidIntTable(final String metricId, final int numAggFields, final int dataSize,
-      final int maxCapacity, int initialCapacity, final long[] identity) {
+      final int maxCapacity, int initialCapacity, final long[] identity,
+      final TableOptions options) {
 
     if (initialCapacity < 0) {
       throw new IllegalArgumentException("Illegal initial capacity");
@@ -94,17 +158,27 @@ public abstract class ConcurrentMonoidIntTable {
     }
     this.metricId = metricId;
     this.numAggFields = numAggFields;
-    final int numInts = (RESERVED_FIELDS + numAggFields) * 2 + dataSize;
+    this.dataSize = dataSize;
+    this.counterBits = options.getCounterBits();
+    this.counterMask = (int) ((1L << counterBits) - 1);
+    this.laneBits = Integer.numberOfTrailingZeros(Integer.SIZE / counterBits);
+    final int numInts = (RESERVED_FIELDS + numAggFields) * 2
+        + ((dataSize + (1 << laneBits) - 1) >> laneBits);
     // Align to L1 cache line (64-byte)
     this.recordSize = ((int) Math.ceil(numInts / 16.0)) << 4;
     this.capacity = initialCapacity;
     this.maxCapacity = maxCapacity;
     this.identity = identity.clone();
-    this.tables = new ArrayList<>();
-    this.recordCounts = new ArrayList<>();
-    this.tableCapacities = new ArrayList<>();
+    this.offHeap = options.isOffHeap();
+    this.alignedRecords = options.isAlignedRecords();
+    this.verifyTags = options.isVerifyTags();
+    this.filtersTags = overridesHashCode(getClass());
+    this.tagDictionary = options.getTagDictionary();
+    this.idleTimeoutMillis = options.getIdleTimeoutMillis();
     this.tagSets = new String[initialCapacity][];
-    addTable(initialCapacity, sizeTableFor(initialCapacity));
+    final Chain chain = new Chain(verifyTags, offHeap, initialCapacity);
+    addTable(chain, initialCapacity, sizeTableFor(initialCapacity));
+    this.chain = chain;
   }
 
   /**
@@ -121,17 +195,39 @@ public abstract class ConcurrentMonoidIntTable {
   }
 
   /**
+   * @param chain, chain of tables to add the table to
    * @param tableCapacity, max number of entries allowed in this table
    * @param tableSize, actual table length. Which is around 30% more than the capacity.
    */
-  private void addTable(final int tableCapacity, final int tableSize) {
-    tables.add(new int[tableSize * recordSize]);
-    recordCounts.add(new AtomicInteger());
-    tableCapacities.add(tableCapacity);
+  private void addTable(final Chain chain, final int tableCapacity, final int tableSize) {
+    final int tableLength = tableSize * recordSize;
+    if (offHeap) {
+      final long bytes = (long) tableLength * Unsafe.ARRAY_INT_INDEX_SCALE;
+      // Over-allocate to start the first record, and thus every record, on a cache line boundary
+      final long address =
+          unsafe.allocateMemory(alignedRecords ? bytes + CACHE_LINE_SIZE - 1 : bytes);
+      final long tableOffset =
+          alignedRecords ? (address + CACHE_LINE_SIZE - 1) & -CACHE_LINE_SIZE : address;
+      unsafe.setMemory(tableOffset, bytes, (byte) 0);
+      chain.addresses.add(address);
+      chain.tableOffsets.add(tableOffset);
+    } else {
+      chain.tableOffsets.add((long) Unsafe.ARRAY_INT_BASE_OFFSET);
+    }
+    chain.tableLengths.add(tableLength);
+    chain.recordCounts.add(new AtomicInteger());
+    chain.tableCapacities.add(tableCapacity);
+    chain.slotTagIndexes.add(new int[tableSize]);
+    if (verifyTags) {
+      chain.slotTags.add(new String[tableSize][]);
+    }
+    // Add the table last, as its size bounds the iteration of the other lists
+    chain.tables.add(offHeap ? null : new int[tableLength]);
   }
 
   /**
-   * Calculates the aggregations for the histogram
+   * Calculates the aggregations for the histogram. When the table is stored off-heap, the given
+   * table is {@code null} and the base offset is an absolute memory address.
    *
    * @param table the table containing the histogram
    * @param baseOffset base offset of the record in the table
@@ -140,27 +236,155 @@ public abstract class ConcurrentMonoidIntTable {
   protected abstract void combine(int[] table, final long baseOffset, final long value);
 
   protected void apply(final String[] tags, final long value, final long timestamp) {
+    apply(tags, key(tags), value, timestamp);
+  }
 
-    final long index = index(tags, false);
-
-    // Failed to grow table, silently drop the measurement
-    if (index == NOT_FOUND) {
+  /**
+   * Apply the aggregations to the record of the given tag set, using the fingerprint carried by the
+   * tag set instead of hashing the tags again, unless {@link #hashCode(String[])} is overridden.
+   * The position of the record is remembered by a bound tag set, see {@link
+   * #applyBound(TagSet, long, long)}.
+   */
+  protected void applyTagSet(final TagSet tags, final long value, final long timestamp) {
+    if (tags.isBound()) {
+      applyBound(tags, value, timestamp);
       return;
     }
+    final String[] array = tags.toArray();
+    apply(array, filtersTags ? key(array) : key(tags.fingerprint()), value, timestamp);
+  }
+
+  /**
+   * Apply the aggregations to the record of a bound tag set at the position the tag set remembers
+   * for this hash table, looking the record up only if the position is missing or stale.
+   * A position is stale once the chain it was found in has been replaced by a consolidation, or a
+   * record has been evicted from the chain since. Growing the hash table appends tables to the chain
+   * and leaves the positions of the existing records unchanged.
+   */
+  private void applyBound(final TagSet tags, final long value, final long timestamp) {
+    for (; ; ) {
+      final Chain chain = enter();
+      try {
+        final long index;
+        final Object cached = tags.getPosition(positionOwner);
+        if (cached instanceof Position && ((Position) cached).chain == chain.id
+            && ((Position) cached).evictions == chain.evictions && !closed) {
+          index = ((Position) cached).index;
+        } else {
+          final int evictions = chain.evictions;
+          final String[] array = tags.toArray();
+          index = index(chain, array, filtersTags ? key(array) : key(tags.fingerprint()), false);
+          if (index == RETRY) {
+            continue;
+          }
+
+          // Failed to grow table, silently drop the measurement
+          if (index == NOT_FOUND) {
+            return;
+          }
+          // A position found while records are being evicted may be evicted before it is used
+          if ((evictions & 1) == 0) {
+            tags.setPosition(positionOwner, new Position(chain.id, evictions, index));
+          }
+        }
+        update(chain, index, value, timestamp);
+        return;
+      } finally {
+        leave(chain);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the given subclass overrides {@link #hashCode(String[])}.
+   */
+  private static boolean overridesHashCode(final Class<?> type) {
+    for (Class<?> c = type; c != ConcurrentMonoidIntTable.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("hashCode", String[].class);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // check the superclass
+      }
+    }
+    return false;
+  }
+
+  private void apply(final String[] tags, final long key, final long value, final long timestamp) {
 
+    for (; ; ) {
+      final Chain chain = enter();
+      try {
+        final long index = index(chain, tags, key, false);
+        if (index == RETRY) {
+          continue;
+        }
+
+        // Failed to grow table, silently drop the measurement
+        if (index == NOT_FOUND) {
+          return;
+        }
+
+        update(chain, index, value, timestamp);
+        return;
+      } finally {
+        leave(chain);
+      }
+    }
+  }
+
+  /**
+   * Apply the aggregations to the record at the given index in the chain.
+   */
+  private void update(final Chain chain, final long index, final long value,
+      final long timestamp) {
     // Decode table index and slot index from a long.
     // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
     // This logic is replicated in multiple places for performance reasons.
     int tableIndex = (int) ((index & TABLE_MASK) >> 32);
     int slotIndex = (int) (index & SLOT_MASK);
-    int[] table = tables.get(tableIndex);
+    int[] table = chain.tables.get(tableIndex);
 
-    final long base = Unsafe.ARRAY_INT_BASE_OFFSET + slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
+    final long base = baseOffset(chain, tableIndex, slotIndex);
     unsafe.putLongVolatile(table, base + Unsafe.ARRAY_LONG_INDEX_SCALE, timestamp);
 
     combine(table, base, value);
   }
 
+  /**
+   * Returns the chain of tables currently holding the records. The table and slot indexes returned
+   * by {@link #index(Chain, String[], boolean)} are only valid within the same chain.
+   *
+   * @return the current chain of tables
+   */
+  protected Chain currentChain() {
+    return chain;
+  }
+
+  /**
+   * Returns the table of the given index in a chain, or {@code null} if the tables are stored
+   * off-heap.
+   *
+   * @param chain chain of tables
+   * @param tableIndex index of the table in the chain
+   * @return the table
+   */
+  protected int[] table(final Chain chain, final int tableIndex) {
+    return chain.tables.get(tableIndex);
+  }
+
+  /**
+   * Returns the base offset of a record to be used with the table of the given index.
+   *
+   * @param chain chain of tables
+   * @param tableIndex index of the table in the chain
+   * @param slotIndex index of the record's first int in the table
+   * @return base offset of the record
+   */
+  protected long baseOffset(final Chain chain, final int tableIndex, final int slotIndex) {
+    return chain.tableOffsets.get(tableIndex) + (long) slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
+  }
+
   /**
    * Retrieves the value of the field at a given index
    *
@@ -209,9 +433,17 @@ public abstract class ConcurrentMonoidIntTable {
     return baseOffset + (RESERVED_FIELDS + index) * Unsafe.ARRAY_LONG_INDEX_SCALE;
   }
 
+  /**
+   * Offset of the int holding the counter of a data field, which may be packed with the counters
+   * of its neighbouring fields.
+   */
   private long getDataFieldOffset(long baseOffset, int index) {
     return baseOffset + (RESERVED_FIELDS + numAggFields) * Unsafe.ARRAY_LONG_INDEX_SCALE
-        + (index - numAggFields) * Unsafe.ARRAY_INT_INDEX_SCALE;
+        + ((index - numAggFields) >> laneBits) * Unsafe.ARRAY_INT_INDEX_SCALE;
+  }
+
+  private int getDataFieldShift(int index) {
+    return ((index - numAggFields) & ((1 << laneBits) - 1)) * counterBits;
   }
 
   private long readAggField(final int[] table, final long baseOffset, final int index) {
@@ -219,14 +451,80 @@ public abstract class ConcurrentMonoidIntTable {
     return unsafe.getLongVolatile(table, offset);
   }
 
-  private int readDataField(final int[] table, final long baseOffset, final int index) {
+  private long readDataField(final int[] table, final long baseOffset, final int index) {
     final long offset = getDataFieldOffset(baseOffset, index);
-    return unsafe.getIntVolatile(table, offset);
+    final int word = unsafe.getIntVolatile(table, offset);
+    return ((word >>> getDataFieldShift(index)) & (counterMask & 0xFFFFFFFFL))
+        + readPromoted(table, baseOffset, index, false);
   }
 
-  private int readAndResetDataField(int[] table, long baseOffset, int index, int identity) {
+  private long readAndResetDataField(int[] table, long baseOffset, int index, int identity) {
     final long offset = getDataFieldOffset(baseOffset, index);
-    return unsafe.getAndSetInt(table, offset, identity);
+    final long narrow;
+    if (counterBits == Integer.SIZE) {
+      narrow = unsafe.getAndSetInt(table, offset, identity) & 0xFFFFFFFFL;
+    } else {
+      final int shift = getDataFieldShift(index);
+      int word;
+      do {
+        word = unsafe.getIntVolatile(table, offset);
+        ///CLOVER:OFF
+        // No reliable way to test without being able to mock unsafe
+      } while (!unsafe.compareAndSwapInt(table, offset, word,
+          (word & ~(counterMask << shift)) | ((identity & counterMask) << shift)));
+      ///CLOVER:ON
+      narrow = (word >>> shift) & counterMask;
+    }
+    return narrow + readPromoted(table, baseOffset, index, true);
+  }
+
+  /**
+   * Read the count carried to the wide counter of a data field of a promoted record.
+   */
+  private long readPromoted(final int[] table, final long baseOffset, final int index,
+      final boolean reset) {
+    final long id = unsafe.getLongVolatile(table,
+        baseOffset + PROMOTION_FIELD * Unsafe.ARRAY_LONG_INDEX_SCALE);
+    if (id == 0L) {
+      return 0L;
+    }
+    final AtomicLongArray wide = promoted.get(id);
+    if (wide == null) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between reading and evicting a record
+      return 0L;
+      ///CLOVER:ON
+    }
+    return reset ? wide.getAndSet(index - numAggFields, 0L) : wide.get(index - numAggFields);
+  }
+
+  /**
+   * Carry the overflow of the counter of a data field to its wide counter, promoting the record
+   * to wide counters on its first overflow.
+   */
+  private void promote(final int[] table, final long baseOffset, final int index,
+      final long carry) {
+    final long offset = baseOffset + PROMOTION_FIELD * Unsafe.ARRAY_LONG_INDEX_SCALE;
+    long id = unsafe.getLongVolatile(table, offset);
+    if (id == 0L) {
+      final long newId = promotions.incrementAndGet();
+      // Publish the counters before their identifier, so that any thread reading the identifier
+      // finds them
+      promoted.put(newId, new AtomicLongArray(dataSize));
+      if (unsafe.compareAndSwapLong(table, offset, 0L, newId)) {
+        id = newId;
+      } else {
+        ///CLOVER:OFF
+        // No reliable way to test the race between promoting the same record
+        promoted.remove(newId);
+        id = unsafe.getLongVolatile(table, offset);
+        ///CLOVER:ON
+      }
+    }
+    final AtomicLongArray wide = promoted.get(id);
+    if (wide != null) {
+      wide.addAndGet(index - numAggFields, carry);
+    }
   }
 
   private long readAndResetAggField(int[] table, long baseOffset, int index, long identity) {
@@ -235,17 +533,39 @@ public abstract class ConcurrentMonoidIntTable {
   }
 
   /**
-   * Adds a new value to the existing value in the given data field index.
+   * Adds a new value to the existing value in the given data field index. The data fields are
+   * unsigned counters of the width given in {@link TableOptions}, and the overflow of a counter is
+   * carried to a wide counter of the record, so that a counter never wraps.
    *
    * @param table the table containing the values
    * @param baseOffset base offset of the record in the table containing the left hand value
    * @param index index of the field
    * @param value value to be added
-   * @return new accumulated value of the field index
    */
-  protected int addToDataField(final int[] table, final long baseOffset, final int index, final int value) {
+  protected void addToDataField(final int[] table, final long baseOffset, final int index,
+      final int value) {
     final long offset = getDataFieldOffset(baseOffset, index);
-    return unsafe.getAndAddInt(table, offset, value) + value;
+    if (counterBits == Integer.SIZE) {
+      final int old = unsafe.getAndAddInt(table, offset, value);
+      if (value > 0 && Integer.compareUnsigned(old + value, old) < 0) {
+        promote(table, baseOffset, index, 1L << Integer.SIZE);
+      }
+      return;
+    }
+    final int shift = getDataFieldShift(index);
+    int word;
+    long sum;
+    do {
+      word = unsafe.getIntVolatile(table, offset);
+      sum = ((word >>> shift) & counterMask) + (long) value;
+      ///CLOVER:OFF
+      // No reliable way to test without being able to mock unsafe
+    } while (!unsafe.compareAndSwapInt(table, offset, word,
+        (word & ~(counterMask << shift)) | ((int) (sum & counterMask) << shift)));
+    ///CLOVER:ON
+    if (sum < 0 || sum > counterMask) {
+      promote(table, baseOffset, index, sum - (sum & counterMask));
+    }
   }
 
   /**
@@ -297,6 +617,53 @@ public abstract class ConcurrentMonoidIntTable {
     unsafe.putLongVolatile(table, offset, value);
   }
 
+  /**
+   * Replaces the value in the given data field index if it equals the expected value.
+   *
+   * @param table the table containing the values
+   * @param baseOffset base offset of the record in the table containing the left hand value
+   * @param index index of the field
+   * @param expected expected current value
+   * @param value new value
+   * @return true if the value was replaced
+   */
+  protected boolean compareAndSetDataField(final int[] table, final long baseOffset,
+      final int index, final int expected, final int value) {
+    final long offset = getDataFieldOffset(baseOffset, index);
+    if (counterBits == Integer.SIZE) {
+      return unsafe.compareAndSwapInt(table, offset, expected, value);
+    }
+    final int shift = getDataFieldShift(index);
+    int word;
+    do {
+      word = unsafe.getIntVolatile(table, offset);
+      if (((word >>> shift) & counterMask) != expected) {
+        return false;
+      }
+      ///CLOVER:OFF
+      // No reliable way to test without being able to mock unsafe
+    } while (!unsafe.compareAndSwapInt(table, offset, word,
+        (word & ~(counterMask << shift)) | ((value & counterMask) << shift)));
+    ///CLOVER:ON
+    return true;
+  }
+
+  /**
+   * Replaces the value in the given agg field index if it equals the expected value.
+   *
+   * @param table the table containing the values
+   * @param baseOffset base offset of the record in the table containing the left hand value
+   * @param index index of the field
+   * @param expected expected current value
+   * @param value new value
+   * @return true if the value was replaced
+   */
+  protected boolean compareAndSetAggField(final int[] table, final long baseOffset,
+      final int index, final long expected, final long value) {
+    final long offset = getAggFieldOffset(baseOffset, index);
+    return unsafe.compareAndSwapLong(table, offset, expected, value);
+  }
+
   /**
    * Set a new value as minimum if its lower than existing value in the given agg field index.
    *
@@ -320,20 +687,51 @@ public abstract class ConcurrentMonoidIntTable {
   }
 
   protected long index(String[] tags, boolean isReading) {
-    final long key = hashCode(tags);
-    for (int tableIndex = 0; tableIndex < tables.size(); tableIndex++) {
-      int[] table = tables.get(tableIndex);
-      AtomicInteger recordCount = recordCounts.get(tableIndex);
-      int tableCapacity = tableCapacities.get(tableIndex);
-      final int slot = getSlot(key, table.length / recordSize);
+    long index;
+    do {
+      index = index(chain, tags, isReading);
+    } while (index == RETRY);
+    return index;
+  }
+
+  /**
+   * Find index of the record for the given key in the given chain of tables. A read never returns
+   * {@link #RETRY}.
+   *
+   * @param chain chain of tables to search
+   * @param tags key to use for table
+   * @param isReading true if a missing record should not be inserted
+   * @return index position in the chain for the record, {@link #NOT_FOUND} if record not found, or
+   * {@link #RETRY} if the chain was replaced and the lookup must be retried with the current chain.
+   */
+  protected long index(final Chain chain, final String[] tags, final boolean isReading) {
+    return index(chain, tags, key(tags), isReading);
+  }
+
+  private long index(final Chain chain, final String[] tags, final long key,
+      final boolean isReading) {
+    if (closed) {
+      return NOT_FOUND;
+    }
+    // An eviction started after this point may create a tombstone the probe has passed already
+    final int evictions = chain.evictions;
+    // The first tombstone on the probe path, reused if the key is not found
+    long tombstone = NOT_FOUND;
+    for (int tableIndex = 0; tableIndex < chain.tables.size(); tableIndex++) {
+      int[] table = chain.tables.get(tableIndex);
+      final long tableOffset = chain.tableOffsets.get(tableIndex);
+      final int tableLength = chain.tableLengths.get(tableIndex);
+      AtomicInteger recordCount = chain.recordCounts.get(tableIndex);
+      int tableCapacity = chain.tableCapacities.get(tableIndex);
+      final int slot = getSlot(key, tableLength / recordSize);
       final int startIndex = slot * recordSize;
       int slotIndex = startIndex;
       for (; ; ) {
-        long offset = Unsafe.ARRAY_INT_BASE_OFFSET + slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
+        long offset = tableOffset + (long) slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
         long candidate = unsafe.getLongVolatile(table, offset);
 
         // check if we found our key
-        if (key == candidate) {
+        if (key == candidate && (!verifyTags || matches(chain, tableIndex, slotIndex, tags))) {
           // Encode table index and slot index into a long.
           // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
           // This logic is replicated in multiple places for performance reasons.
@@ -348,50 +746,24 @@ public abstract class ConcurrentMonoidIntTable {
             break; // If the slot is empty while reading, skip to the next table.
           } else if (recordCount.get() >= tableCapacity) {
             break; // we're writing but the table is 70% full
+          } else if (tombstone != NOT_FOUND) {
+            // The key is not in the chain, so take over the tombstone instead of the empty slot
+            final long index = insert(chain, tombstone, TOMBSTONE, key, tags, evictions);
+            return index == NOT_FOUND ? RETRY : index;
           } else {
-            ///CLOVER:OFF
-            // No reliable way to test without being able to mock unsafe
-            if (unsafe.compareAndSwapLong(table, offset, 0L, key)) { // try to reserve it
-              ///CLOVER:ON
-
-              //increment the record count
-              recordCount.incrementAndGet();
-
-              // reset timestamp
-              unsafe.putLongVolatile(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE, 0L);
-              // It is ok if we lose some data from other threads while writing identity
-              for (int i = 0; i < identity.length; i++) {
-                unsafe.putLongVolatile(table,
-                    offset + (RESERVED_FIELDS + i) * Unsafe.ARRAY_LONG_INDEX_SCALE, identity[i]);
-              }
-
-              //increment the total size;
-              int tagIndex = unsafe.getAndAddInt(this, usedOffset, 1);
-              if (tagIndex >= tagSets.length) {
-                // grow tag set
-                synchronized (this) {
-                  if (tagIndex >= tagSets.length) {
-                    final int oldLength = tagSets.length;
-                    final int newLength =
-                        oldLength > TAGSETS_MAX_INCREMENT ? oldLength + TAGSETS_MAX_INCREMENT
-                            : oldLength * 2;
-                    tagSets = Arrays.copyOf(tagSets, newLength);
-                  }
-                }
-              }
-
-              // Store tags in the tag array for iteration purposes only
-              tagSets[tagIndex] = Arrays.copyOf(tags, tags.length);
-
-              // Encode table index and slot index into a long.
-              // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
-              // This logic is replicated in multiple places for performance reasons.
-              return ((long) tableIndex) << 32 | ((long) slotIndex);
+            final long index = insert(chain, ((long) tableIndex) << 32 | ((long) slotIndex), 0L,
+                key, tags, evictions);
+            if (index != NOT_FOUND) {
+              return index;
             }
+            // Another thread took the slot, check it again
           }
         } else {
+          if (TOMBSTONE == candidate && tombstone == NOT_FOUND && !isReading) {
+            tombstone = ((long) tableIndex) << 32 | ((long) slotIndex);
+          }
           slotIndex += recordSize;
-          if (slotIndex >= table.length) {
+          if (slotIndex >= tableLength) {
             slotIndex = 0;
           }
           if (slotIndex == startIndex) {
@@ -402,15 +774,223 @@ public abstract class ConcurrentMonoidIntTable {
     }
     if (isReading) {
       return NOT_FOUND;
+    } else if (tombstone != NOT_FOUND) {
+      final long index = insert(chain, tombstone, TOMBSTONE, key, tags, evictions);
+      return index == NOT_FOUND ? RETRY : index;
     } else {
       if (growTable()) {
-        return index(tags, isReading);
+        return chain == this.chain ? index(chain, tags, key, isReading) : RETRY;
       } else {
         return NOT_FOUND;
       }
     }
   }
 
+  /**
+   * Find index of the record of an entry in {@link #tagSets} in the given chain of tables. The
+   * position stored on insertion is used if the entry still holds the given tag set, and the tag
+   * set is looked up otherwise.
+   *
+   * @param chain chain of tables to search
+   * @param tagIndex index of the entry in {@link #tagSets}
+   * @param tags tag set read from the entry
+   * @return index position in the chain for the record, or {@link #NOT_FOUND} if record not found
+   */
+  protected long index(final Chain chain, final int tagIndex, final String[] tags) {
+    final String[][] tagSets = this.tagSets;
+    final long[] positions = chain.positions;
+    if (tagIndex < tagSets.length && tagSets[tagIndex] == tags && tagIndex < positions.length) {
+      final long position = positions[tagIndex];
+      if (position != 0L) {
+        return position - 1;
+      }
+    }
+    return index(chain, tags, true);
+  }
+
+  /**
+   * Insert a new record for the given key to a free slot in the given chain, i.e. to an empty slot
+   * or a tombstone of an evicted record.
+   *
+   * @param chain chain of tables to insert to
+   * @param index index of the free slot in the chain
+   * @param expected current key of the free slot, either {@code 0L} or {@link #TOMBSTONE}
+   * @param key key of the new record
+   * @param tags tag set of the new record
+   * @param evictions value of {@link Chain#evictions} read before the free slot was looked up
+   * @return index of the new record, {@link #NOT_FOUND} if another thread took the slot first, or
+   * {@link #RETRY} if the chain is being consolidated or records were evicted since the lookup
+   */
+  private long insert(final Chain chain, final long index, final long expected, final long key,
+      final String[] tags, final int evictions) {
+    // Decode table index and slot index from a long.
+    // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
+    // This logic is replicated in multiple places for performance reasons.
+    final int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+    final int slotIndex = (int) (index & SLOT_MASK);
+    final int[] table = chain.tables.get(tableIndex);
+    final long offset =
+        chain.tableOffsets.get(tableIndex) + (long) slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
+
+    final String[] copy =
+        tagDictionary != null ? tagDictionary.intern(tags) : Arrays.copyOf(tags, tags.length);
+    final int tagIndex;
+
+    // Announce the insertion, so that the chain is not consolidated or evicted meanwhile
+    chain.inserting.incrementAndGet();
+    if (chain.sealed) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between inserting and consolidating
+      chain.inserting.decrementAndGet();
+      awaitConsolidation(chain);
+      return RETRY;
+      ///CLOVER:ON
+    }
+    if (chain.evictions != evictions || (evictions & 1) != 0) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between inserting and evicting
+      // The lookup may have missed the key in a slot being evicted and a tombstone created behind
+      // it, so another thread could insert the same key to that tombstone
+      chain.inserting.decrementAndGet();
+      awaitEviction(chain);
+      return RETRY;
+      ///CLOVER:ON
+    }
+    try {
+      ///CLOVER:OFF
+      // No reliable way to test without being able to mock unsafe
+      if (!unsafe.compareAndSwapLong(table, offset, expected, key)) { // try to reserve it
+        return NOT_FOUND;
+      }
+      ///CLOVER:ON
+
+      if (expected == 0L) {
+        //increment the record count
+        chain.recordCounts.get(tableIndex).incrementAndGet();
+      } else {
+        // clear the fields of the evicted record
+        chain.tombstones.decrementAndGet();
+        unsafe.setMemory(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE,
+            (long) recordSize * Unsafe.ARRAY_INT_INDEX_SCALE - Unsafe.ARRAY_LONG_INDEX_SCALE,
+            (byte) 0);
+      }
+
+      // reset update timestamp
+      unsafe.putLongVolatile(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE, 0L);
+      // It is ok if we lose some data from other threads while writing identity
+      for (int j = 0; j < identity.length; j++) {
+        unsafe.putLongVolatile(table,
+            offset + (RESERVED_FIELDS + j) * Unsafe.ARRAY_LONG_INDEX_SCALE, identity[j]);
+      }
+
+      final Integer releasedTagIndex = releasedTagIndexes.poll();
+      if (releasedTagIndex != null) {
+        // reuse the tag set entry of an evicted record
+        released.decrementAndGet();
+        tagIndex = releasedTagIndex;
+      } else {
+        //increment the total size;
+        tagIndex = unsafe.getAndAddInt(this, usedOffset, 1);
+      }
+      chain.slotTagIndexes.get(tableIndex)[slotIndex / recordSize] = tagIndex;
+
+      if (verifyTags) {
+        unsafe.putObjectVolatile(chain.slotTags.get(tableIndex),
+            Unsafe.ARRAY_OBJECT_BASE_OFFSET
+                + (slotIndex / recordSize) * Unsafe.ARRAY_OBJECT_INDEX_SCALE, copy);
+      }
+    } finally {
+      chain.inserting.decrementAndGet();
+    }
+
+    // Grow the tag sets only after the insertion, as a concurrent consolidation holding the lock
+    // waits for the insertion to complete
+    if (tagIndex >= tagSets.length) {
+      // grow tag set
+      synchronized (this) {
+        if (tagIndex >= tagSets.length) {
+          final int oldLength = tagSets.length;
+          final int newLength =
+              oldLength > TAGSETS_MAX_INCREMENT ? oldLength + TAGSETS_MAX_INCREMENT
+                  : oldLength * 2;
+          tagSets = Arrays.copyOf(tagSets, newLength);
+          final Chain current = this.chain;
+          current.positions =
+              Arrays.copyOf(current.positions, Math.max(newLength, current.positions.length));
+        }
+      }
+    }
+
+    // Store the position of the record, so that cursors need not look it up. A position lost to
+    // a concurrent growth of the array, or stored to a replaced chain, is looked up instead.
+    final long[] positions = chain.positions;
+    if (tagIndex < positions.length) {
+      positions[tagIndex] = index + 1;
+    }
+
+    // Store tags in the tag array for iteration purposes only
+    tagSets[tagIndex] = copy;
+    return index;
+  }
+
+  /**
+   * Compare the tag set stored in the given slot to the given tag set. The slot is reserved before
+   * its tag set is stored, so wait for a concurrent writer to complete storing it.
+   */
+  private boolean matches(final Chain chain, final int tableIndex, final int slotIndex,
+      final String[] tags) {
+    final String[][] stored = chain.slotTags.get(tableIndex);
+    final long offset = Unsafe.ARRAY_OBJECT_BASE_OFFSET
+        + (slotIndex / recordSize) * Unsafe.ARRAY_OBJECT_INDEX_SCALE;
+    String[] candidate;
+    while ((candidate = (String[]) unsafe.getObjectVolatile(stored, offset)) == null) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between reserving the slot and storing the tag set
+      Thread.yield();
+      ///CLOVER:ON
+    }
+    return Arrays.equals(candidate, tags);
+  }
+
+  /**
+   * Wait for a concurrent consolidation of the given chain to complete.
+   */
+  private void awaitConsolidation(final Chain chain) {
+    ///CLOVER:OFF
+    // No reliable way to test the race between inserting and consolidating
+    while (chain == this.chain && chain.sealed) {
+      Thread.yield();
+    }
+    ///CLOVER:ON
+  }
+
+  /**
+   * Wait for a concurrent eviction of records from the given chain to complete.
+   */
+  private void awaitEviction(final Chain chain) {
+    ///CLOVER:OFF
+    // No reliable way to test the race between inserting and evicting
+    while ((chain.evictions & 1) != 0) {
+      Thread.yield();
+    }
+    ///CLOVER:ON
+  }
+
+  /**
+   * Mark the start of an eviction of records from the given chain and wait for the insertions in
+   * progress to complete. Insertions looked up before the mark are retried, as their probe may
+   * have passed a slot that the eviction turns into a tombstone. Must be called with the lock held.
+   */
+  private static void beginEviction(final Chain chain) {
+    chain.evictions++;
+    while (chain.inserting.get() != 0) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between inserting and evicting
+      Thread.yield();
+      ///CLOVER:ON
+    }
+  }
+
   private boolean growTable() {
 
     if (capacity >= maxCapacity) {
@@ -420,13 +1000,20 @@ public abstract class ConcurrentMonoidIntTable {
     }
 
     synchronized (this) {
-      int lastTableIndex = tables.size() - 1;
-      int lastRecordCount = recordCounts.get(lastTableIndex).get();
-      int lastTableCapacity = tableCapacities.get(lastTableIndex);
+      ///CLOVER:OFF
+      // No reliable way to test the race between closing and growing the table
+      if (closed) {
+        return false;
+      }
+      ///CLOVER:ON
+      final Chain chain = this.chain;
+      int lastTableIndex = chain.tables.size() - 1;
+      int lastRecordCount = chain.recordCounts.get(lastTableIndex).get();
+      int lastTableCapacity = chain.tableCapacities.get(lastTableIndex);
       if (lastRecordCount >= lastTableCapacity && capacity < maxCapacity) {
         int nextTableCapacity = nextTableCapacity(lastTableCapacity);
         int newCapacity = capacity + nextTableCapacity;
-        addTable(nextTableCapacity, sizeTableFor(nextTableCapacity));
+        addTable(chain, nextTableCapacity, sizeTableFor(nextTableCapacity));
         capacity = newCapacity;
       }
     }
@@ -445,13 +1032,29 @@ public abstract class ConcurrentMonoidIntTable {
   }
 
   /**
-   * Returns the hash code for a given tag set
+   * Returns the key of the record for a given tag set, which is its fingerprint unless that
+   * collides with a key reserved for evicted records.
+   */
+  private long key(final String[] tags) {
+    return key(hashCode(tags));
+  }
+
+  /**
+   * Returns the key of the record for a tag set with the given fingerprint.
+   */
+  private static long key(final long fingerprint) {
+    return fingerprint == TOMBSTONE || fingerprint == EVICTING ? ~fingerprint : fingerprint;
+  }
+
+  /**
+   * Returns the 64-bit fingerprint for a given tag set
    *
    * @param tags a flattened array of tag key-value pairs
-   * @return hash code
+   * @return fingerprint, never {@code 0L}
+   * @see Hashing#fingerprint(String[])
    */
   long hashCode(final String[] tags) {
-    return Arrays.hashCode(tags);
+    return Hashing.fingerprint(tags);
   }
 
   private int getSlot(final long key, final int tableSize) {
@@ -465,7 +1068,7 @@ public abstract class ConcurrentMonoidIntTable {
    * @return the number of elements in this hash table
    */
   public int size() {
-    return unsafe.getInt(this, usedOffset);
+    return unsafe.getInt(this, usedOffset) - released.get();
   }
 
   /**
@@ -477,4 +1080,452 @@ public abstract class ConcurrentMonoidIntTable {
     return capacity;
   }
 
+  /**
+   * Close the hash table and release the off-heap memory, if any. Any measurements applied after
+   * closing are silently dropped.
+   *
+   * <p>The off-heap memory is released once the threads that were applying measurements when the
+   * hash table was closed have left it, so closing waits for them. Cursors are not tracked, so the
+   * caller <b>MUST</b> make sure that no other thread is iterating the hash table while or after it
+   * is closed.</p>
+   */
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (tagDictionary != null) {
+        final String[][] tagSets = this.tagSets;
+        for (int i = 0; i < Math.min(used, tagSets.length); i++) {
+          if (tagSets[i] != null) {
+            tagDictionary.release(tagSets[i]);
+          }
+        }
+      }
+      promoted.clear();
+      if (offHeap) {
+        // Writers that entered before closed was set may still write to the chains, later writers
+        // find the hash table closed and leave without writing
+        retiredChains.add(chain);
+        for (final Chain retired : retiredChains) {
+          while (retired.hasWriters()) {
+            Thread.yield();
+          }
+          release(retired);
+        }
+        retiredChains.clear();
+      }
+    }
+  }
+
+  /**
+   * Consolidate the chain of tables created by growing the hash table into a single table with the
+   * current capacity, so that each lookup probes only one table. The tombstones of evicted records
+   * are dropped. The new table is published atomically. Returns immediately if the hash table
+   * consists of a single table without tombstones already.
+   *
+   * <p>Inserting new records is paused during consolidation, but updates applied to existing
+   * records during consolidation may be lost. Therefore, the hash table should only be consolidated
+   * when it is not being actively written to, e.g., after its time window has been reported.</p>
+   *
+   * <p>The off-heap memory of the replaced chain is released as soon as no thread is writing to it
+   * any more, by this or a later consolidation. Cursors are not tracked, so a cursor must not be
+   * iterated concurrently with a consolidation.</p>
+   *
+   * @return true if the tables were consolidated
+   */
+  public boolean consolidate() {
+    synchronized (this) {
+      releaseRetired();
+      final Chain old = chain;
+      if (closed || (old.tables.size() < 2 && old.tombstones.get() == 0)) {
+        return false;
+      }
+      old.sealed = true;
+      try {
+        while (old.inserting.get() != 0) {
+          ///CLOVER:OFF
+          // No reliable way to test the race between inserting and consolidating
+          Thread.yield();
+          ///CLOVER:ON
+        }
+        final Chain next = new Chain(verifyTags, offHeap, Math.max(tagSets.length, used));
+        addTable(next, capacity, sizeTableFor(capacity));
+        for (int tableIndex = 0; tableIndex < old.tables.size(); tableIndex++) {
+          copyRecords(old, tableIndex, next);
+        }
+        chain = next;
+      } finally {
+        old.sealed = false;
+      }
+      if (offHeap) {
+        // Writers may still be in the old chain, so release it only once they have left
+        retiredChains.add(old);
+        releaseRetired();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Copy all records from a table in a chain to the first table of a new chain, which is not yet
+   * visible to other threads.
+   */
+  private void copyRecords(final Chain from, final int tableIndex, final Chain to) {
+    final int[] source = from.tables.get(tableIndex);
+    final long sourceOffset = from.tableOffsets.get(tableIndex);
+    final int sourceLength = from.tableLengths.get(tableIndex);
+    final int[] target = to.tables.get(0);
+    final long targetOffset = to.tableOffsets.get(0);
+    final int targetLength = to.tableLengths.get(0);
+    int records = 0;
+    for (int slotIndex = 0; slotIndex < sourceLength; slotIndex += recordSize) {
+      final long offset = sourceOffset + (long) slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
+      final long key = unsafe.getLongVolatile(source, offset);
+      if (key == 0L || key == TOMBSTONE) {
+        continue;
+      }
+      int targetIndex = getSlot(key, targetLength / recordSize) * recordSize;
+      while (unsafe.getLong(target,
+          targetOffset + (long) targetIndex * Unsafe.ARRAY_INT_INDEX_SCALE) != 0L) {
+        targetIndex += recordSize;
+        if (targetIndex >= targetLength) {
+          targetIndex = 0;
+        }
+      }
+      unsafe.copyMemory(source, offset, target,
+          targetOffset + (long) targetIndex * Unsafe.ARRAY_INT_INDEX_SCALE,
+          (long) recordSize * Unsafe.ARRAY_INT_INDEX_SCALE);
+      final int tagIndex = from.slotTagIndexes.get(tableIndex)[slotIndex / recordSize];
+      to.slotTagIndexes.get(0)[targetIndex / recordSize] = tagIndex;
+      to.positions[tagIndex] = targetIndex + 1;
+      if (verifyTags) {
+        to.slotTags.get(0)[targetIndex / recordSize] =
+            from.slotTags.get(tableIndex)[slotIndex / recordSize];
+      }
+      records++;
+    }
+    to.recordCounts.get(0).addAndGet(records);
+  }
+
+  /**
+   * Evict the records that have not been updated within the idle timeout given in {@link
+   * TableOptions}. The slot of an evicted record is marked with a tombstone and its tag set is
+   * released, so that both can be reused by a new record. Does nothing if no idle timeout is set.
+   *
+   * <p>Inserting new records is paused while records are evicted, so that a tag set is never
+   * inserted twice, but an update applied to a record while it is being evicted may be lost.
+   * Therefore, the hash table should only be evicted when it is not being actively written to,
+   * e.g., after its time window has been reported.</p>
+   *
+   * @param currentTime current time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   * @return number of evicted records
+   */
+  public int evictIdle(final long currentTime) {
+    if (idleTimeoutMillis == 0) {
+      return 0;
+    }
+    synchronized (this) {
+      if (closed) {
+        return 0;
+      }
+      final Chain chain = this.chain;
+      final String[][] tagSets = this.tagSets;
+      final int used = Math.min(this.used, tagSets.length);
+      final long threshold = currentTime - idleTimeoutMillis;
+      int evicted = 0;
+      for (int i = 0; i < used; i++) {
+        final String[] tags = tagSets[i];
+        if (tags == null) {
+          continue;
+        }
+        final long index = index(chain, i, tags);
+        if (index == NOT_FOUND) {
+          continue; // the record is still being inserted
+        }
+        final int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+        final int slotIndex = (int) (index & SLOT_MASK);
+        final int[] table = chain.tables.get(tableIndex);
+        final long offset =
+            chain.tableOffsets.get(tableIndex) + (long) slotIndex * Unsafe.ARRAY_INT_INDEX_SCALE;
+        if (unsafe.getLongVolatile(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE) >= threshold) {
+          continue;
+        }
+        if (evicted == 0) {
+          beginEviction(chain);
+        }
+        // Keep the slot reserved until its tag set is cleared, so that a new record can not take
+        // over the slot before
+        unsafe.putLongVolatile(table, offset, EVICTING);
+        final long id = unsafe.getLongVolatile(table,
+            offset + PROMOTION_FIELD * Unsafe.ARRAY_LONG_INDEX_SCALE);
+        if (id != 0L) {
+          promoted.remove(id);
+        }
+        evicted(table, offset);
+        if (verifyTags) {
+          unsafe.putObjectVolatile(chain.slotTags.get(tableIndex),
+              Unsafe.ARRAY_OBJECT_BASE_OFFSET
+                  + (slotIndex / recordSize) * Unsafe.ARRAY_OBJECT_INDEX_SCALE, null);
+        }
+        chain.tombstones.incrementAndGet();
+        unsafe.putLongVolatile(table, offset, TOMBSTONE);
+
+        chain.positions[i] = 0L;
+        tagSets[i] = null;
+        if (tagDictionary != null) {
+          tagDictionary.release(tags);
+        }
+        released.incrementAndGet();
+        releasedTagIndexes.offer(i);
+        evicted++;
+      }
+      if (evicted != 0) {
+        // Let insertions proceed again
+        chain.evictions++;
+      }
+      return evicted;
+    }
+  }
+
+  /**
+   * Called when a record is evicted, before its slot may be reused by a new record, so that a
+   * subclass can release any resources referred to by the fields of the record.
+   *
+   * @param table the table containing the record
+   * @param baseOffset base offset of the record in the table
+   */
+  protected void evicted(final int[] table, final long baseOffset) {
+  }
+
+  /**
+   * Estimate the memory held by the chain of tables, on or off the heap, together with the
+   * per-slot tag indexes, the tag set array and the wide counters of the promoted records.
+   *
+   * @return estimated number of bytes
+   */
+  public long memoryUsage() {
+    final Chain chain = this.chain;
+    long longs = chain.positions.length;
+    long ints = 0L;
+    long references = tagSets.length;
+    for (int i = 0; i < chain.tables.size(); i++) {
+      final int tableLength = chain.tableLengths.get(i);
+      final int tableSize = tableLength / recordSize;
+      ints += tableLength + tableSize;
+      if (verifyTags) {
+        references += tableSize;
+      }
+    }
+    longs += (long) promoted.size() * dataSize;
+    return longs * Unsafe.ARRAY_LONG_INDEX_SCALE + ints * Unsafe.ARRAY_INT_INDEX_SCALE
+        + references * Unsafe.ARRAY_OBJECT_INDEX_SCALE + promoted.size() * ARRAY_HEADER_SIZE;
+  }
+
+  /**
+   * Release the retired chains no writer is left in. Must hold the lock.
+   */
+  private void releaseRetired() {
+    for (final Iterator<Chain> iterator = retiredChains.iterator(); iterator.hasNext(); ) {
+      final Chain retired = iterator.next();
+      if (!retired.hasWriters()) {
+        release(retired);
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Get the current chain to write to, and count the calling thread as a writer in it until it
+   * calls {@link #leave(Chain)}, so that an off-heap chain replaced by a concurrent consolidation
+   * is not released while the thread still writes to it.
+   *
+   * @return the current chain
+   */
+  private Chain enter() {
+    for (; ; ) {
+      final Chain chain = this.chain;
+      if (chain.writers == null) {
+        return chain;
+      }
+      final int stripe = writerStripe();
+      chain.writers.incrementAndGet(stripe);
+      // A consolidation publishes the new chain before checking the writers of the old one, so
+      // either it sees this writer, or this writer sees the new chain
+      if (chain == this.chain) {
+        return chain;
+      }
+      ///CLOVER:OFF
+      // No reliable way to test the race between writing and consolidating
+      chain.writers.decrementAndGet(stripe);
+      ///CLOVER:ON
+    }
+  }
+
+  /**
+   * Stop counting the calling thread as a writer in a chain returned by {@link #enter()}.
+   */
+  private void leave(final Chain chain) {
+    if (chain.writers != null) {
+      chain.writers.decrementAndGet(writerStripe());
+    }
+  }
+
+  /**
+   * Index of the writer count of the calling thread in {@link Chain#writers}, each count on a
+   * cache line of its own.
+   */
+  private static int writerStripe() {
+    return ((int) Thread.currentThread().getId() & (WRITER_STRIPES - 1)) * LONGS_PER_CACHE_LINE;
+  }
+
+  /**
+   * Release the off-heap memory of a chain, if any.
+   */
+  private void release(final Chain chain) {
+    if (offHeap && chain != null) {
+      for (final long address : chain.addresses) {
+        unsafe.freeMemory(address);
+      }
+    }
+  }
+
+  /**
+   * Returns whether records are evicted after an idle timeout, in which case the tag sets of
+   * evicted records are released.
+   *
+   * @return true if an idle timeout is set in {@link TableOptions}
+   */
+  protected boolean hasIdleTimeout() {
+    return idleTimeoutMillis > 0;
+  }
+
+  /**
+   * Returns whether the hash table has been closed.
+   *
+   * @return true if {@link #close()} has been called
+   */
+  protected boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Position of the record of a bound tag set in the chain with the given identifier, valid until
+   * the chain is replaced or a record is evicted from it.
+   */
+  private static final class Position {
+
+    private final long chain;
+    private final int evictions;
+    private final long index;
+
+    private Position(final long chain, final int evictions, final long index) {
+      this.chain = chain;
+      this.evictions = evictions;
+      this.index = index;
+    }
+  }
+
+  /**
+   * A chain of tables holding the records. The hash table grows by adding new tables to the chain,
+   * and the whole chain is replaced when it is consolidated.
+   */
+  protected static final class Chain {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    /**
+     * Unique identifier of the chain, so that a record position refers to the chain without keeping
+     * it reachable after it has been replaced.
+     */
+    private final long id = NEXT_ID.incrementAndGet();
+
+    /**
+     * The multiple int array objects to manipulate with the unsafe atomic operations, or nulls if
+     * the tables are stored off-heap.
+     */
+    private final List<int[]> tables = new ArrayList<>();
+    /**
+     * Base offset of the corresponding table in {@link #tables}. For off-heap tables this is the
+     * absolute address of the first record in the allocated memory.
+     */
+    private final List<Long> tableOffsets = new ArrayList<>();
+
+    /**
+     * Address of the native memory allocated for the corresponding table in {@link #tables}, which
+     * precedes the first record if the records are aligned, or empty if the tables are on-heap.
+     */
+    private final List<Long> addresses = new ArrayList<>();
+    /**
+     * Length in ints of the corresponding table in {@link #tables}.
+     */
+    private final List<Integer> tableLengths = new ArrayList<>();
+    /**
+     * Number of entries in the corresponding table in {@link #tables}
+     */
+    private final List<AtomicInteger> recordCounts = new ArrayList<>();
+    /**
+     * Max number of entries allowed in the corresponding table in {@link #tables}.
+     */
+    private final List<Integer> tableCapacities = new ArrayList<>();
+    /**
+     * The tag set stored in each slot of the corresponding table in {@link #tables}, or null if
+     * tag sets are not verified on lookup.
+     */
+    private final List<String[][]> slotTags;
+    /**
+     * The index in {@link #tagSets} of the tag set stored in each slot of the corresponding table
+     * in {@link #tables}.
+     */
+    private final List<int[]> slotTagIndexes = new ArrayList<>();
+    /**
+     * Position of the record of each entry in {@link #tagSets} in this chain, encoded like the
+     * index returned by {@link #index(Chain, String[], boolean)} plus one, or 0 if unknown.
+     */
+    private volatile long[] positions;
+    /**
+     * Number of threads currently inserting a new record to the chain.
+     */
+    private final AtomicInteger inserting = new AtomicInteger();
+    /**
+     * Number of tombstones of evicted records in the chain, which are counted as records in
+     * {@link #recordCounts} until they are reused.
+     */
+    private final AtomicInteger tombstones = new AtomicInteger();
+    /**
+     * Whether the chain is being consolidated, and new records must not be inserted to it.
+     */
+    private volatile boolean sealed = false;
+    /**
+     * Number of times an eviction of records from the chain started or completed, which is odd
+     * while tombstones are being created. Modified only under the lock.
+     */
+    private volatile int evictions;
+
+    /**
+     * Number of threads currently writing to the chain, striped by thread, or null if the tables
+     * are on-heap and need not be released explicitly.
+     */
+    private final AtomicLongArray writers;
+
+    private Chain(final boolean verifyTags, final boolean offHeap, final int positionsLength) {
+      this.slotTags = verifyTags ? new ArrayList<>() : null;
+      this.positions = new long[positionsLength];
+      this.writers = offHeap ? new AtomicLongArray(WRITER_STRIPES * LONGS_PER_CACHE_LINE) : null;
+    }
+
+    /**
+     * Returns whether any thread is writing to the chain.
+     */
+    private boolean hasWriters() {
+      for (int i = 0; i < WRITER_STRIPES; i++) {
+        if (writers.get(i * LONGS_PER_CACHE_LINE) != 0L) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
 }
@@ -4,11 +4,20 @@
 
 package io.ultrabrew.metrics.data;
 
+import io.ultrabrew.metrics.util.Hashing;
+import io.ultrabrew.metrics.util.TagDictionary;
+import io.ultrabrew.metrics.util.TagSet;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sun.misc.Unsafe;
@@ -33,6 +42,32 @@ import sun.misc.Unsafe;
  * hash table with cursor, the reading and writing may interleave, which may cause slight
  * inaccuracy.</p>
  *
+ * <p>Each record is keyed by a 64-bit fingerprint of its tag set. When tag verification is enabled
+ * in {@link TableOptions}, the stored tag set is also compared on every fingerprint match, so that
+ * two different tag sets are never merged into one record.</p>
+ *
+ * <p>The records are stored in {@code long[]} arrays on the heap by default. When off-heap storage
+ * is enabled in {@link TableOptions}, the records are stored in native memory allocated with {@link
+ * Unsafe} instead, and the memory is released when the hash table is closed with {@link
+ * #close()}. The size of a record is rounded up to a multiple of a 64-byte cache line, and when
+ * aligned records are enabled in {@link TableOptions}, each record also starts on a cache line
+ * boundary, so that updates to neighbouring records never contend for the same line.</p>
+ *
+ * <p>Records are never removed by default. When an idle timeout is set in {@link TableOptions},
+ * records that have not been updated within the timeout are evicted by {@link #evictIdle(long)},
+ * and their slots and tag sets are reused by new records.</p>
+ *
+ * <p>A record updated by many threads at once turns into a single contended cache line. The
+ * failed compare-and-swaps on the fields of a record detected by {@link #add(long[], long, long,
+ * long)} are counted, and once a record has been contended repeatedly, it is inflated into stripes
+ * of cells, LongAdder-style, and each thread adds to the cell of its own stripe from then on. The
+ * cells are merged into the values read by the cursors. When a cursor resets a striped record,
+ * the record is deflated back to the compact layout and its cells are released, so that only
+ * records contended in every time window stay striped. Uncontended records keep the compact
+ * layout. A deflated record keeps its entry in the stripe array until it is evicted, so that a
+ * thread still adding to the cells it looked up before the record was deflated never adds to the
+ * cells of another record.</p>
+ *
  * <p>The monoid implementation may choose to ignore some tags by overriding the {@link
  * #hashCode(String[])} method to skip any tag key-value pairs the aggregator is not interested
  * on.</p>
@@ -51,6 +86,7 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
   private static final int TAGSETS_MAX_INCREMENT = 131072; // 128k
 
   private static final int RESERVED_FIELDS = 2;
+  private static final int CACHE_LINE_SIZE = 64;
   private static final long usedOffset;
 
   private static final int DEFAULT_INITIAL_CAPACITY = 16;
@@ -62,6 +98,23 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
   private static final long TABLE_MASK = 0x0FFFFFFF00000000L;
   private static final long SLOT_MASK = 0x00000000FFFFFFFFL;
   private static final long NOT_FOUND = 0x1000000000000000L;
+  private static final long RETRY = 0x2000000000000000L;
+  // Reserved keys of evicted records, never returned by key(String[])
+  private static final long TOMBSTONE = 1L;
+  private static final long EVICTING = 2L;
+
+  // Number of stripes of a contended record, a power of two
+  private static final int STRIPES =
+      Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+  // Number of failed compare-and-swaps on a record after which it is striped
+  private static final int CONTENTION_THRESHOLD = 8;
+  // State of a striped record in the lower half of its stripe field
+  private static final int STRIPED = 1;
+  private static final long STRIPE_INDEX_MASK = 0xFFFFFFFF00000000L;
+  private static final long STRIPE_STATE_MASK = 0xFFFFFFFFL;
+  // Number of stripes of the writer counts of an off-heap chain
+  private static final int WRITER_STRIPES = STRIPES;
+  private static final int LONGS_PER_CACHE_LINE = CACHE_LINE_SIZE / Long.BYTES;
 
 
   ///CLOVER:OFF
@@ -84,19 +137,31 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
   public final String metricId;
 
   /**
-   * The multiple long array objects to manipulate with the unsafe atomic operations.
+   * The chain of tables currently holding the records.
    */
-  private List<long[]> tables;
+  private volatile Chain chain;
 
   /**
-   * Number of entries in the corresponding table in {@link #tables}
+   * The off-heap chains replaced by consolidations, kept until no writer is left in them so that a
+   * thread still holding one does not access released memory. Guarded by the lock.
    */
-  private List<AtomicInteger> recordCounts;
+  private final List<Chain> retiredChains = new ArrayList<>();
+
+  private final boolean verifyTags;
+  // Whether a subclass filters the tags by overriding hashCode(String[]), so that the fingerprint
+  // carried by a tag set is not the key of its record
+  private final boolean filtersTags;
+  // Key of the record positions of the hash table in bound tag sets
+  private final long positionOwner = TagSet.newPositionOwner();
+  private final TagDictionary tagDictionary;
+  private final long idleTimeoutMillis;
 
   /**
-   * Max number of entries allowed in the corresponding table in {@link #tables}.
+   * Indexes of the entries in {@link #tagSets} released by evicted records, to be reused by new
+   * records.
    */
-  private List<Integer> tableCapacities;
+  private final Queue<Integer> releasedTagIndexes = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger released = new AtomicInteger();
 
   /**
    * The monoid's identity
@@ -108,11 +173,31 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
    */
   private volatile String[][] tagSets;
 
+  /**
+   * The cells of the contended records. The upper half of the field following the monoid fields
+   * of a record holds the index to this array the record owns plus one, or zero if it has never
+   * been striped. The lower half holds {@link #STRIPED} if the record is striped. Otherwise, it
+   * holds the number of failed compare-and-swaps on the record since it was last reset, negated.
+   */
+  private volatile long[][] stripes = new long[0][];
+  private int stripeCount = 0;
+
+  /**
+   * Indexes of the entries in {@link #stripes} released by evicted records, guarded by the lock.
+   * Like the slot of an evicted record, its stripe may be reused by a new record while an update
+   * applied concurrently to the evicted record is still in flight.
+   */
+  private final Queue<Integer> releasedStripes = new ArrayDeque<>();
+
   private final int recordSize;
+  private final int stripeSize;
   private final String[] fields;
   private final Type[] types;
   private final int maxCapacity;
+  private final boolean offHeap;
+  private final boolean alignedRecords;
   private volatile int capacity;
+  private volatile boolean closed = false;
 
   private volatile int used = 0;
 
@@ -126,7 +211,24 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
    * @param identity monoid's identity, where each value is corresponding to the given fields names
    */
   protected ConcurrentMonoidLongTable(final String metricId, final int maxCapacity,
-      int initialCapacity, final String[] fields, final Type[] types, final long[] identity) {
+      final int initialCapacity, final String[] fields, final Type[] types,
+      final long[] identity) {
+    this(metricId, maxCapacity, initialCapacity, fields, types, identity, TableOptions.DEFAULT);
+  }
+
+  /**
+   * Create a simple linear probing hash table for a monoid operation.
+   * @param metricId identifier of the metric
+   * @param maxCapacity maximum capacity of table in records.
+   * @param initialCapacity requested capacity of table in records
+   * @param fields sorted array of field names used in reporting
+   * @param types type of each corresponding field
+   * @param identity monoid's identity, where each value is corresponding to the given fields names
+   * @param options optional table settings
+   */
+  protected ConcurrentMonoidLongTable(final String metricId, final int maxCapacity,
+      int initialCapacity, final String[] fields, final Type[] types, final long[] identity,
+      final TableOptions options) {
 
     if (fields.length == 0 || fields.length != identity.length) {
       throw new IllegalArgumentException(
@@ -146,37 +248,165 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
     this.metricId = metricId;
     // Align to L1 cache line (64-byte)
     this.recordSize = (((fields.length + RESERVED_FIELDS) >> 3) + 1) << 3;
+    this.stripeSize = ((fields.length >> 3) + 1) << 3;
     this.fields = fields;
     this.types = types;
     this.identity = identity;
     this.maxCapacity = maxCapacity;
     this.capacity = initialCapacity;
-    this.tables = new ArrayList<>();
-    this.recordCounts = new ArrayList<>();
-    this.tableCapacities = new ArrayList<>();
+    this.offHeap = options.isOffHeap();
+    this.alignedRecords = options.isAlignedRecords();
+    this.verifyTags = options.isVerifyTags();
+    this.filtersTags = overridesHashCode(getClass());
+    this.tagDictionary = options.getTagDictionary();
+    this.idleTimeoutMillis = options.getIdleTimeoutMillis();
     this.tagSets = new String[initialCapacity][];
-    addTable(initialCapacity, sizeTableFor(initialCapacity));
+    final Chain chain = new Chain(verifyTags, offHeap, initialCapacity);
+    addTable(chain, initialCapacity, sizeTableFor(initialCapacity));
+    this.chain = chain;
   }
 
   @Override
   public void apply(final String[] tags, final long value, final long timestamp) {
+    apply(tags, key(tags), value, timestamp);
+  }
 
-    final long index = index(tags, false);
-
-    // Failed to grow table, silently drop the measurement
-    if (index == NOT_FOUND) {
+  /**
+   * Apply the monoid binary operation to the record of the given tag set, using the fingerprint
+   * carried by the tag set instead of hashing the tags again, unless {@link #hashCode(String[])}
+   * is overridden. The position of the record is remembered by a bound tag set, see {@link
+   * #applyBound(TagSet, long, long)}.
+   */
+  @Override
+  public void applyTagSet(final TagSet tags, final long value, final long timestamp) {
+    if (tags.isBound()) {
+      applyBound(tags, value, timestamp);
       return;
     }
+    final String[] array = tags.toArray();
+    apply(array, filtersTags ? key(array) : key(tags.fingerprint()), value, timestamp);
+  }
+
+  /**
+   * Apply the monoid binary operation to the record of a bound tag set at the position the tag set
+   * remembers for this hash table, looking the record up only if the position is missing or stale.
+   * A position is stale once the chain it was found in has been replaced by a consolidation, or a
+   * record has been evicted from the chain since. Growing the hash table appends tables to the chain
+   * and leaves the positions of the existing records unchanged.
+   */
+  private void applyBound(final TagSet tags, final long value, final long timestamp) {
+    for (; ; ) {
+      final Chain chain = enter();
+      try {
+        final long index;
+        final Object cached = tags.getPosition(positionOwner);
+        if (cached instanceof Position && ((Position) cached).chain == chain.id
+            && ((Position) cached).evictions == chain.evictions && !closed) {
+          index = ((Position) cached).index;
+        } else {
+          final int evictions = chain.evictions;
+          final String[] array = tags.toArray();
+          index = index(chain, array, filtersTags ? key(array) : key(tags.fingerprint()), false);
+          if (index == RETRY) {
+            continue;
+          }
+
+          // Failed to grow table, silently drop the measurement
+          if (index == NOT_FOUND) {
+            return;
+          }
+          // A position found while records are being evicted may be evicted before it is used
+          if ((evictions & 1) == 0) {
+            tags.setPosition(positionOwner, new Position(chain.id, evictions, index));
+          }
+        }
+        update(chain, index, value, timestamp);
+        return;
+      } finally {
+        leave(chain);
+      }
+    }
+  }
+
+  /**
+   * Returns whether the given subclass overrides {@link #hashCode(String[])}.
+   */
+  private static boolean overridesHashCode(final Class<?> type) {
+    for (Class<?> c = type; c != ConcurrentMonoidLongTable.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("hashCode", String[].class);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // check the superclass
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Apply the monoid binary operation to the records of a batch of tag sets in the order of their
+   * slots in the first table of the chain, so that the records are visited sequentially in memory
+   * rather than at random.
+   */
+  @Override
+  public void applyBatch(final String[][] tags, final long[] values, final long timestamp) {
+    final int tableSize = chain.tableLengths.get(0) / recordSize;
+    // Pack the slot into the upper and the batch index into the lower 32 bits of each order entry,
+    // so that a primitive sort orders the updates by slot.
+    final long[] keys = new long[values.length];
+    final long[] order = new long[values.length];
+    for (int i = 0; i < values.length; i++) {
+      keys[i] = key(tags[i]);
+      order[i] = ((long) getSlot(keys[i], tableSize)) << 32 | i;
+    }
+    Arrays.sort(order);
+    for (final long entry : order) {
+      final int i = (int) (entry & SLOT_MASK);
+      apply(tags[i], keys[i], values[i], timestamp);
+    }
+  }
+
+  private void apply(final String[] tags, final long key, final long value, final long timestamp) {
+
+    for (; ; ) {
+      final Chain chain = enter();
+      try {
+        final long index = index(chain, tags, key, false);
+        if (index == RETRY) {
+          continue;
+        }
+
+        // Failed to grow table, silently drop the measurement
+        if (index == NOT_FOUND) {
+          return;
+        }
+
+        update(chain, index, value, timestamp);
+        return;
+      } finally {
+        leave(chain);
+      }
+    }
+  }
 
+  /**
+   * Apply the monoid binary operation to the record at the given index in the chain.
+   */
+  private void update(final Chain chain, final long index, final long value,
+      final long timestamp) {
     // Decode table index and slot index from a long.
     // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
     // This logic is replicated in multiple places for performance reasons.
     int tableIndex = (int) ((index & TABLE_MASK) >> 32);
     int slotIndex = (int) (index & SLOT_MASK);
-    long[] table = tables.get(tableIndex);
+    long[] table = chain.tables.get(tableIndex);
 
-    final long base = Unsafe.ARRAY_LONG_BASE_OFFSET + slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
-    unsafe.putLongVolatile(table, base + Unsafe.ARRAY_LONG_INDEX_SCALE, timestamp);
+    final long base =
+        chain.tableOffsets.get(tableIndex) + (long) slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
+    // Avoid writing to a contended record when the timestamp has not changed
+    if (unsafe.getLong(table, base + Unsafe.ARRAY_LONG_INDEX_SCALE) != timestamp) {
+      unsafe.putLongVolatile(table, base + Unsafe.ARRAY_LONG_INDEX_SCALE, timestamp);
+    }
 
     combine(table, base, value);
   }
@@ -197,7 +427,7 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
    * @return the number of elements in this hash table
    */
   public int size() {
-    return unsafe.getInt(this, usedOffset);
+    return unsafe.getInt(this, usedOffset) - released.get();
   }
 
   /**
@@ -209,12 +439,502 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
     return capacity;
   }
 
+  /**
+   * Close the hash table and release the off-heap memory, if any. Any measurements applied after
+   * closing are silently dropped and cursors return no more rows.
+   *
+   * <p>The off-heap memory is released once the threads that were applying measurements when the
+   * hash table was closed have left it, so closing waits for them. Cursors are not tracked, so the
+   * caller <b>MUST</b> make sure that no other thread is iterating the hash table while or after it
+   * is closed.</p>
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (tagDictionary != null) {
+        final String[][] tagSets = this.tagSets;
+        for (int i = 0; i < Math.min(used, tagSets.length); i++) {
+          if (tagSets[i] != null) {
+            tagDictionary.release(tagSets[i]);
+          }
+        }
+      }
+      if (offHeap) {
+        // Writers that entered before closed was set may still write to the chains, later writers
+        // find the hash table closed and leave without writing
+        retiredChains.add(chain);
+        for (final Chain retired : retiredChains) {
+          while (retired.hasWriters()) {
+            Thread.yield();
+          }
+          release(retired);
+        }
+        retiredChains.clear();
+      }
+    }
+  }
+
+  /**
+   * Consolidate the chain of tables created by growing the hash table into a single table with the
+   * current capacity, so that each lookup probes only one table. The tombstones of evicted records
+   * are dropped. The new table is published atomically. Returns immediately if the hash table
+   * consists of a single table without tombstones already.
+   *
+   * <p>Inserting new records is paused during consolidation, but updates applied to existing
+   * records during consolidation may be lost. Therefore, the hash table should only be consolidated
+   * when it is not being actively written to, e.g., after its time window has been reported.</p>
+   *
+   * <p>The off-heap memory of the replaced chain is released as soon as no thread is writing to it
+   * any more, by this or a later consolidation. Cursors are not tracked, so a cursor must not be
+   * iterated concurrently with a consolidation.</p>
+   *
+   * @return true if the tables were consolidated
+   */
+  @Override
+  public boolean consolidate() {
+    synchronized (this) {
+      releaseRetired();
+      final Chain old = chain;
+      if (closed || (old.tables.size() < 2 && old.tombstones.get() == 0)) {
+        return false;
+      }
+      old.sealed = true;
+      try {
+        while (old.inserting.get() != 0) {
+          ///CLOVER:OFF
+          // No reliable way to test the race between inserting and consolidating
+          Thread.yield();
+          ///CLOVER:ON
+        }
+        final Chain next = new Chain(verifyTags, offHeap, Math.max(tagSets.length, used));
+        addTable(next, capacity, sizeTableFor(capacity));
+        for (int tableIndex = 0; tableIndex < old.tables.size(); tableIndex++) {
+          copyRecords(old, tableIndex, next);
+        }
+        chain = next;
+      } finally {
+        old.sealed = false;
+      }
+      if (offHeap) {
+        // Writers may still be in the old chain, so release it only once they have left
+        retiredChains.add(old);
+        releaseRetired();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Copy all records from a table in a chain to the first table of a new chain, which is not yet
+   * visible to other threads.
+   */
+  private void copyRecords(final Chain from, final int tableIndex, final Chain to) {
+    final long[] source = from.tables.get(tableIndex);
+    final long sourceOffset = from.tableOffsets.get(tableIndex);
+    final int sourceLength = from.tableLengths.get(tableIndex);
+    final long[] target = to.tables.get(0);
+    final long targetOffset = to.tableOffsets.get(0);
+    final int targetLength = to.tableLengths.get(0);
+    int records = 0;
+    for (int slotIndex = 0; slotIndex < sourceLength; slotIndex += recordSize) {
+      final long offset = sourceOffset + (long) slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
+      final long key = unsafe.getLongVolatile(source, offset);
+      if (key == 0L || key == TOMBSTONE) {
+        continue;
+      }
+      int targetIndex = getSlot(key, targetLength / recordSize) * recordSize;
+      while (unsafe.getLong(target,
+          targetOffset + (long) targetIndex * Unsafe.ARRAY_LONG_INDEX_SCALE) != 0L) {
+        targetIndex += recordSize;
+        if (targetIndex >= targetLength) {
+          targetIndex = 0;
+        }
+      }
+      unsafe.copyMemory(source, offset, target,
+          targetOffset + (long) targetIndex * Unsafe.ARRAY_LONG_INDEX_SCALE,
+          (long) recordSize * Unsafe.ARRAY_LONG_INDEX_SCALE);
+      final int tagIndex = from.slotTagIndexes.get(tableIndex)[slotIndex / recordSize];
+      to.slotTagIndexes.get(0)[targetIndex / recordSize] = tagIndex;
+      to.positions[tagIndex] = targetIndex + 1;
+      if (verifyTags) {
+        to.slotTags.get(0)[targetIndex / recordSize] =
+            from.slotTags.get(tableIndex)[slotIndex / recordSize];
+      }
+      records++;
+    }
+    to.recordCounts.get(0).addAndGet(records);
+  }
+
+  /**
+   * Estimate the memory held by the chain of tables, on or off the heap, together with the
+   * per-slot tag indexes, the tag set array and the cells of the contended records.
+   */
+  @Override
+  public long memoryUsage() {
+    final Chain chain = this.chain;
+    long longs = chain.positions.length;
+    long ints = 0L;
+    long references = tagSets.length + stripes.length;
+    for (int i = 0; i < chain.tables.size(); i++) {
+      final int tableLength = chain.tableLengths.get(i);
+      final int tableSize = tableLength / recordSize;
+      longs += tableLength;
+      ints += tableSize;
+      if (verifyTags) {
+        references += tableSize;
+      }
+    }
+    for (final long[] cells : stripes) {
+      if (cells != null) {
+        longs += cells.length;
+      }
+    }
+    return longs * Unsafe.ARRAY_LONG_INDEX_SCALE + ints * Unsafe.ARRAY_INT_INDEX_SCALE
+        + references * Unsafe.ARRAY_OBJECT_INDEX_SCALE;
+  }
+
+  /**
+   * Evict the records that have not been updated within the idle timeout given in {@link
+   * TableOptions}. The slot of an evicted record is marked with a tombstone and its tag set is
+   * released, so that both can be reused by a new record. Does nothing if no idle timeout is set.
+   *
+   * <p>Inserting new records is paused while records are evicted, so that a tag set is never
+   * inserted twice, but an update applied to a record while it is being evicted may be lost.
+   * Therefore, the hash table should only be evicted when it is not being actively written to,
+   * e.g., after its time window has been reported.</p>
+   *
+   * @param currentTime current time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   * @return number of evicted records
+   */
+  @Override
+  public int evictIdle(final long currentTime) {
+    if (idleTimeoutMillis == 0) {
+      return 0;
+    }
+    synchronized (this) {
+      if (closed) {
+        return 0;
+      }
+      final Chain chain = this.chain;
+      final String[][] tagSets = this.tagSets;
+      final int used = Math.min(this.used, tagSets.length);
+      final long threshold = currentTime - idleTimeoutMillis;
+      int evicted = 0;
+      for (int i = 0; i < used; i++) {
+        final String[] tags = tagSets[i];
+        if (tags == null) {
+          continue;
+        }
+        final long index = index(chain, i, tags);
+        if (index == NOT_FOUND) {
+          continue; // the record is still being inserted
+        }
+        final int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+        final int slotIndex = (int) (index & SLOT_MASK);
+        final long[] table = chain.tables.get(tableIndex);
+        final long offset =
+            chain.tableOffsets.get(tableIndex) + (long) slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
+        if (unsafe.getLongVolatile(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE) >= threshold) {
+          continue;
+        }
+        if (evicted == 0) {
+          beginEviction(chain);
+        }
+        // Keep the slot reserved until its tag set is cleared, so that a new record can not take
+        // over the slot before
+        unsafe.putLongVolatile(table, offset, EVICTING);
+        releaseStripe(table, offset);
+        if (verifyTags) {
+          unsafe.putObjectVolatile(chain.slotTags.get(tableIndex),
+              Unsafe.ARRAY_OBJECT_BASE_OFFSET
+                  + (slotIndex / recordSize) * Unsafe.ARRAY_OBJECT_INDEX_SCALE, null);
+        }
+        chain.tombstones.incrementAndGet();
+        unsafe.putLongVolatile(table, offset, TOMBSTONE);
+
+        chain.positions[i] = 0L;
+        tagSets[i] = null;
+        if (tagDictionary != null) {
+          tagDictionary.release(tags);
+        }
+        released.incrementAndGet();
+        releasedTagIndexes.offer(i);
+        evicted++;
+      }
+      if (evicted != 0) {
+        // Let insertions proceed again
+        chain.evictions++;
+      }
+      return evicted;
+    }
+  }
+
+  /**
+   * Stripe the record with the given base offset in the table into cells, unless it is striped
+   * already.
+   *
+   * @param table the table containing the record
+   * @param baseOffset base offset of the record in the table
+   * @return cells of the record, or null if the record has been evicted
+   */
+  long[] inflate(final long[] table, final long baseOffset) {
+    synchronized (this) {
+      final long stripe = unsafe.getLongVolatile(table, baseOffset + stripeFieldOffset());
+      if ((int) stripe == STRIPED) {
+        return stripes[stripeIndex(stripe)];
+      }
+      int stripeIndex = stripeIndex(stripe);
+      if (stripeIndex < 0) {
+        final Integer releasedStripe = releasedStripes.poll();
+        stripeIndex = releasedStripe != null ? releasedStripe : stripeCount++;
+      }
+      long[][] stripes = this.stripes;
+      if (stripeIndex >= stripes.length) {
+        stripes = Arrays.copyOf(stripes, Math.max(16, stripes.length * 2));
+      }
+      // Leave the first stripe empty to pad the cells from the array header
+      final long[] cells = new long[(STRIPES + 1) * stripeSize];
+      stripes[stripeIndex] = cells;
+      this.stripes = stripes;
+      unsafe.putLongVolatile(table, baseOffset + stripeFieldOffset(),
+          (long) (stripeIndex + 1) << 32 | STRIPED);
+      return cells;
+    }
+  }
+
+  /**
+   * Count a failed compare-and-swap on a field of the record with the given base offset in the
+   * table, and stripe the record once it has been contended {@link #CONTENTION_THRESHOLD} times
+   * since it was last reset.
+   *
+   * @param table the table containing the record
+   * @param baseOffset base offset of the record in the table
+   * @return cells of the record, or null if the record is not striped or has just been deflated
+   */
+  long[] contended(final long[] table, final long baseOffset) {
+    final long offset = baseOffset + stripeFieldOffset();
+    for (; ; ) {
+      final long stripe = unsafe.getLongVolatile(table, offset);
+      if ((int) stripe == STRIPED) {
+        return stripes[stripeIndex(stripe)];
+      }
+      if ((int) stripe <= 1 - CONTENTION_THRESHOLD) {
+        return inflate(table, baseOffset);
+      }
+      if (unsafe.compareAndSwapLong(table, offset, stripe,
+          (stripe & STRIPE_INDEX_MASK) | (((int) stripe - 1) & STRIPE_STATE_MASK))) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Deflate the record with the given base offset in the table back to the compact layout after a
+   * cursor has reset it, and clear its contention count. The values added to the cells of a
+   * striped record since they were reset are added to the record, and the cells are released. The
+   * record keeps its stripe, so an update applied to the cells concurrently may be lost, but is
+   * never added to another record.
+   *
+   * @param table the table containing the record
+   * @param baseOffset base offset of the record in the table
+   */
+  private void deflate(final long[] table, final long baseOffset) {
+    final long offset = baseOffset + stripeFieldOffset();
+    final long stripe = unsafe.getLongVolatile(table, offset);
+    if ((int) stripe < 0) {
+      unsafe.compareAndSwapLong(table, offset, stripe, stripe & STRIPE_INDEX_MASK);
+      return;
+    }
+    if ((int) stripe == 0) {
+      return;
+    }
+    synchronized (this) {
+      if (closed || unsafe.getLongVolatile(table, offset) != stripe) {
+        return; // the record has been evicted meanwhile
+      }
+      // New updates go to the record from now on, and a thread that still finds the record
+      // striped finds no cells and falls back to the record
+      unsafe.putLongVolatile(table, offset, stripe & STRIPE_INDEX_MASK);
+      final int stripeIndex = stripeIndex(stripe);
+      final long[] cells = stripes[stripeIndex];
+      stripes[stripeIndex] = null;
+      for (int index = 0; index < fields.length; index++) {
+        final long cell = merge(cells, index, 0L, true);
+        if (cell == 0L) {
+          continue;
+        }
+        final long fieldOffset =
+            baseOffset + (RESERVED_FIELDS + index) * Unsafe.ARRAY_LONG_INDEX_SCALE;
+        if (types[index] == Type.DOUBLE) {
+          add(table, fieldOffset, Double.longBitsToDouble(cell));
+        } else {
+          unsafe.getAndAddLong(table, fieldOffset, cell);
+        }
+      }
+    }
+  }
+
+  /**
+   * Release the cells and the stripe of an evicted record, if it owns one. Must hold the lock.
+   */
+  private void releaseStripe(final long[] table, final long baseOffset) {
+    releaseStripe(unsafe.getLongVolatile(table, baseOffset + stripeFieldOffset()));
+  }
+
+  /**
+   * Release the cells and the stripe of the given stripe field value, if it owns one. Must hold
+   * the lock.
+   */
+  private void releaseStripe(final long stripe) {
+    final int stripeIndex = stripeIndex(stripe);
+    if (stripeIndex >= 0) {
+      stripes[stripeIndex] = null;
+      releasedStripes.offer(stripeIndex);
+    }
+  }
+
+  /**
+   * Returns the cells of the record with the given base offset in the table, or null if the record
+   * is not striped or has just been deflated.
+   */
+  private long[] stripe(final long[] table, final long baseOffset) {
+    final long stripe = unsafe.getLongVolatile(table, baseOffset + stripeFieldOffset());
+    return (int) stripe == STRIPED ? stripes[stripeIndex(stripe)] : null;
+  }
+
+  /**
+   * Index to {@link #stripes} held by the given stripe field value, or -1 if none.
+   */
+  private static int stripeIndex(final long stripe) {
+    return (int) (stripe >>> 32) - 1;
+  }
+
+  /**
+   * Offset of the field holding the stripe of a record, which follows the monoid fields. The
+   * record size is rounded up so that there is always room for it.
+   */
+  private long stripeFieldOffset() {
+    return (long) (RESERVED_FIELDS + fields.length) * Unsafe.ARRAY_LONG_INDEX_SCALE;
+  }
+
+  /**
+   * Offset of a field in the cells of the stripe of the calling thread.
+   */
+  private long cellOffset(final long index) {
+    final int stripe = ((int) Thread.currentThread().getId() & (STRIPES - 1)) + 1;
+    return Unsafe.ARRAY_LONG_BASE_OFFSET
+        + ((long) stripe * stripeSize + index) * Unsafe.ARRAY_LONG_INDEX_SCALE;
+  }
+
+  /**
+   * Merge the cells of a field in all stripes to the given value of the field in the record.
+   *
+   * @param cells cells of a striped record
+   * @param index index of the field
+   * @param value value of the field in the record
+   * @param reset whether to reset the cells
+   * @return merged value of the field
+   */
+  private long merge(final long[] cells, final int index, final long value, final boolean reset) {
+    long merged = value;
+    for (int stripe = 1; stripe <= STRIPES; stripe++) {
+      final long offset = Unsafe.ARRAY_LONG_BASE_OFFSET
+          + ((long) stripe * stripeSize + index) * Unsafe.ARRAY_LONG_INDEX_SCALE;
+      final long cell =
+          reset ? unsafe.getAndSetLong(cells, offset, 0L) : unsafe.getLongVolatile(cells, offset);
+      // Only added fields have non-zero cells
+      if (cell == 0L) {
+        continue;
+      }
+      if (types[index] == Type.DOUBLE) {
+        merged = Double.doubleToRawLongBits(
+            Double.longBitsToDouble(merged) + Double.longBitsToDouble(cell));
+      } else {
+        merged += cell;
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Release the retired chains no writer is left in. Must hold the lock.
+   */
+  private void releaseRetired() {
+    for (final Iterator<Chain> iterator = retiredChains.iterator(); iterator.hasNext(); ) {
+      final Chain retired = iterator.next();
+      if (!retired.hasWriters()) {
+        release(retired);
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Get the current chain to write to, and count the calling thread as a writer in it until it
+   * calls {@link #leave(Chain)}, so that an off-heap chain replaced by a concurrent consolidation
+   * is not released while the thread still writes to it.
+   *
+   * @return the current chain
+   */
+  private Chain enter() {
+    for (; ; ) {
+      final Chain chain = this.chain;
+      if (chain.writers == null) {
+        return chain;
+      }
+      final int stripe = writerStripe();
+      chain.writers.incrementAndGet(stripe);
+      // A consolidation publishes the new chain before checking the writers of the old one, so
+      // either it sees this writer, or this writer sees the new chain
+      if (chain == this.chain) {
+        return chain;
+      }
+      ///CLOVER:OFF
+      // No reliable way to test the race between writing and consolidating
+      chain.writers.decrementAndGet(stripe);
+      ///CLOVER:ON
+    }
+  }
+
+  /**
+   * Stop counting the calling thread as a writer in a chain returned by {@link #enter()}.
+   */
+  private void leave(final Chain chain) {
+    if (chain.writers != null) {
+      chain.writers.decrementAndGet(writerStripe());
+    }
+  }
+
+  /**
+   * Index of the writer count of the calling thread in {@link Chain#writers}, each count on a
+   * cache line of its own.
+   */
+  private static int writerStripe() {
+    return ((int) Thread.currentThread().getId() & (WRITER_STRIPES - 1)) * LONGS_PER_CACHE_LINE;
+  }
+
+  /**
+   * Release the off-heap memory of a chain, if any.
+   */
+  private void release(final Chain chain) {
+    if (offHeap && chain != null) {
+      for (final long address : chain.addresses) {
+        unsafe.freeMemory(address);
+      }
+    }
+  }
+
   /**
    * Execute the monoid binary operation on given value to the record with the given base offset in
    * the table.
    *
    * <p>The following methods have been provided to allow atomic thread-safe modification of fields
-   * in the record</p>
+   * in the record. When the table is stored off-heap, the given table is {@code null} and the base
+   * offset is an absolute memory address, which these methods handle transparently.</p>
    *
    * <ul>
    * <li>{@link #set(long[], long, long, long)} - Replace field's value with given value</li>
@@ -235,7 +955,9 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
   /**
    * Find index of the record for the given key in the linear probing table.
    *
-   * <p>When a slot in the table is taken, it will never be released nor changed.</p>
+   * <p>When a slot in the table is taken, it will never be released nor changed, unless its record
+   * is evicted with {@link #evictIdle(long)}. The tombstone left in place of an evicted record is
+   * taken over by the next new record probing past it.</p>
    *
    * @param tags key to use for table
    * @return index position in the table for the record. The 64 bit long value has two int values
@@ -243,20 +965,58 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
    * the slot index. And returns {@link #NOT_FOUND} if record not found.
    */
   long index(final String[] tags, final boolean isReading) {
-    final long key = hashCode(tags);
-    for (int tableIndex = 0; tableIndex < tables.size(); tableIndex++) {
-      long[] table = tables.get(tableIndex);
-      AtomicInteger recordCount = recordCounts.get(tableIndex);
-      int tableCapacity = tableCapacities.get(tableIndex);
-      final int slot = getSlot(key, table.length / recordSize);
+    long index;
+    do {
+      index = index(chain, tags, isReading);
+    } while (index == RETRY);
+    return index;
+  }
+
+  /**
+   * Find index of the record for the given key in the given chain of tables.
+   *
+   * @param chain chain of tables to search
+   * @param tags key to use for table
+   * @return index position in the chain for the record, {@link #NOT_FOUND} if record not found, or
+   * {@link #RETRY} if the chain was replaced and the lookup must be retried with the current chain.
+   */
+  private long index(final Chain chain, final String[] tags, final boolean isReading) {
+    return index(chain, tags, key(tags), isReading);
+  }
+
+  /**
+   * Find index of the record for the given key in the given chain of tables.
+   *
+   * @param chain chain of tables to search
+   * @param tags tag set of the record
+   * @param key key of the tag set
+   * @return index position in the chain for the record, {@link #NOT_FOUND} if record not found, or
+   * {@link #RETRY} if the chain was replaced and the lookup must be retried with the current chain.
+   */
+  private long index(final Chain chain, final String[] tags, final long key,
+      final boolean isReading) {
+    if (closed) {
+      return NOT_FOUND;
+    }
+    // An eviction started after this point may create a tombstone the probe has passed already
+    final int evictions = chain.evictions;
+    // The first tombstone on the probe path, reused if the key is not found
+    long tombstone = NOT_FOUND;
+    for (int tableIndex = 0; tableIndex < chain.tables.size(); tableIndex++) {
+      long[] table = chain.tables.get(tableIndex);
+      final long tableOffset = chain.tableOffsets.get(tableIndex);
+      final int tableLength = chain.tableLengths.get(tableIndex);
+      AtomicInteger recordCount = chain.recordCounts.get(tableIndex);
+      int tableCapacity = chain.tableCapacities.get(tableIndex);
+      final int slot = getSlot(key, tableLength / recordSize);
       final int startIndex = slot * recordSize;
       int slotIndex = startIndex;
       for (; ; ) {
-        long offset = Unsafe.ARRAY_LONG_BASE_OFFSET + slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
+        long offset = tableOffset + (long) slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
         long candidate = unsafe.getLongVolatile(table, offset);
 
         // check if we found our key
-        if (key == candidate) {
+        if (key == candidate && (!verifyTags || matches(chain, tableIndex, slotIndex, tags))) {
           // Encode table index and slot index into a long.
           // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
           // This logic is replicated in multiple places for performance reasons.
@@ -271,50 +1031,24 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
             break; // If the slot is empty while reading, skip to the next table.
           } else if (recordCount.get() >= tableCapacity) {
             break; // we're writing but the table is 70% full
+          } else if (tombstone != NOT_FOUND) {
+            // The key is not in the chain, so take over the tombstone instead of the empty slot
+            final long index = insert(chain, tombstone, TOMBSTONE, key, tags, evictions);
+            return index == NOT_FOUND ? RETRY : index;
           } else {
-            ///CLOVER:OFF
-            // No reliable way to test without being able to mock unsafe
-            if (unsafe.compareAndSwapLong(table, offset, 0L, key)) { // try to reserve it
-              ///CLOVER:ON
-
-              //increment the record count
-              recordCount.incrementAndGet();
-
-              // reset update timestamp
-              unsafe.putLongVolatile(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE, 0L);
-              // It is ok if we lose some data from other threads while writing identity
-              for (int j = 0; j < identity.length; j++) {
-                unsafe.putLongVolatile(table,
-                    offset + (RESERVED_FIELDS + j) * Unsafe.ARRAY_LONG_INDEX_SCALE, identity[j]);
-              }
-
-              //increment the total size;
-              int tagIndex = unsafe.getAndAddInt(this, usedOffset, 1);
-              if (tagIndex >= tagSets.length) {
-                // grow tag set
-                synchronized (this) {
-                  if (tagIndex >= tagSets.length) {
-                    final int oldLength = tagSets.length;
-                    final int newLength =
-                        oldLength > TAGSETS_MAX_INCREMENT ? oldLength + TAGSETS_MAX_INCREMENT
-                            : oldLength * 2;
-                    tagSets = Arrays.copyOf(tagSets, newLength);
-                  }
-                }
-              }
-
-              // Store tags in the tag array for iteration purposes only
-              tagSets[tagIndex] = Arrays.copyOf(tags, tags.length);
-
-              // Encode table index and slot index into a long.
-              // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
-              // This logic is replicated in multiple places for performance reasons.
-              return ((long) tableIndex) << 32 | ((long) slotIndex);
+            final long index = insert(chain, ((long) tableIndex) << 32 | ((long) slotIndex), 0L,
+                key, tags, evictions);
+            if (index != NOT_FOUND) {
+              return index;
             }
+            // Another thread took the slot, check it again
           }
         } else {
+          if (TOMBSTONE == candidate && tombstone == NOT_FOUND && !isReading) {
+            tombstone = ((long) tableIndex) << 32 | ((long) slotIndex);
+          }
           slotIndex += recordSize;
-          if (slotIndex >= table.length) {
+          if (slotIndex >= tableLength) {
             slotIndex = 0;
           }
           if (slotIndex == startIndex) {
@@ -325,15 +1059,223 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
     }
     if (isReading) {
       return NOT_FOUND;
+    } else if (tombstone != NOT_FOUND) {
+      final long index = insert(chain, tombstone, TOMBSTONE, key, tags, evictions);
+      return index == NOT_FOUND ? RETRY : index;
     } else {
       if (growTable()) {
-        return index(tags, isReading);
+        return chain == this.chain ? index(chain, tags, key, isReading) : RETRY;
       } else {
         return NOT_FOUND;
       }
     }
   }
 
+  /**
+   * Find index of the record of an entry in {@link #tagSets} in the given chain of tables. The
+   * position stored on insertion is used if the entry still holds the given tag set, and the tag
+   * set is looked up otherwise.
+   *
+   * @param chain chain of tables to search
+   * @param tagIndex index of the entry in {@link #tagSets}
+   * @param tags tag set read from the entry
+   * @return index position in the chain for the record, or {@link #NOT_FOUND} if record not found
+   */
+  private long index(final Chain chain, final int tagIndex, final String[] tags) {
+    final String[][] tagSets = this.tagSets;
+    final long[] positions = chain.positions;
+    if (tagIndex < tagSets.length && tagSets[tagIndex] == tags && tagIndex < positions.length) {
+      final long position = positions[tagIndex];
+      if (position != 0L) {
+        return position - 1;
+      }
+    }
+    return index(chain, tags, true);
+  }
+
+  /**
+   * Insert a new record for the given key to a free slot in the given chain, i.e. to an empty slot
+   * or a tombstone of an evicted record.
+   *
+   * @param chain chain of tables to insert to
+   * @param index index of the free slot in the chain
+   * @param expected current key of the free slot, either {@code 0L} or {@link #TOMBSTONE}
+   * @param key key of the new record
+   * @param tags tag set of the new record
+   * @param evictions value of {@link Chain#evictions} read before the free slot was looked up
+   * @return index of the new record, {@link #NOT_FOUND} if another thread took the slot first, or
+   * {@link #RETRY} if the chain is being consolidated or records were evicted since the lookup
+   */
+  private long insert(final Chain chain, final long index, final long expected, final long key,
+      final String[] tags, final int evictions) {
+    // Decode table index and slot index from a long.
+    // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
+    // This logic is replicated in multiple places for performance reasons.
+    final int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+    final int slotIndex = (int) (index & SLOT_MASK);
+    final long[] table = chain.tables.get(tableIndex);
+    final long offset =
+        chain.tableOffsets.get(tableIndex) + (long) slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
+
+    final String[] copy =
+        tagDictionary != null ? tagDictionary.intern(tags) : Arrays.copyOf(tags, tags.length);
+    final int tagIndex;
+
+    // Announce the insertion, so that the chain is not consolidated or evicted meanwhile
+    chain.inserting.incrementAndGet();
+    if (chain.sealed) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between inserting and consolidating
+      chain.inserting.decrementAndGet();
+      awaitConsolidation(chain);
+      return RETRY;
+      ///CLOVER:ON
+    }
+    if (chain.evictions != evictions || (evictions & 1) != 0) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between inserting and evicting
+      // The lookup may have missed the key in a slot being evicted and a tombstone created behind
+      // it, so another thread could insert the same key to that tombstone
+      chain.inserting.decrementAndGet();
+      awaitEviction(chain);
+      return RETRY;
+      ///CLOVER:ON
+    }
+    try {
+      ///CLOVER:OFF
+      // No reliable way to test without being able to mock unsafe
+      if (!unsafe.compareAndSwapLong(table, offset, expected, key)) { // try to reserve it
+        return NOT_FOUND;
+      }
+      ///CLOVER:ON
+
+      if (expected == 0L) {
+        //increment the record count
+        chain.recordCounts.get(tableIndex).incrementAndGet();
+      } else {
+        // clear the fields of the evicted record
+        chain.tombstones.decrementAndGet();
+        unsafe.setMemory(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE,
+            (long) recordSize * Unsafe.ARRAY_LONG_INDEX_SCALE - Unsafe.ARRAY_LONG_INDEX_SCALE,
+            (byte) 0);
+      }
+
+      // reset update timestamp
+      unsafe.putLongVolatile(table, offset + Unsafe.ARRAY_LONG_INDEX_SCALE, 0L);
+      // It is ok if we lose some data from other threads while writing identity
+      for (int j = 0; j < identity.length; j++) {
+        unsafe.putLongVolatile(table,
+            offset + (RESERVED_FIELDS + j) * Unsafe.ARRAY_LONG_INDEX_SCALE, identity[j]);
+      }
+
+      final Integer releasedTagIndex = releasedTagIndexes.poll();
+      if (releasedTagIndex != null) {
+        // reuse the tag set entry of an evicted record
+        released.decrementAndGet();
+        tagIndex = releasedTagIndex;
+      } else {
+        //increment the total size;
+        tagIndex = unsafe.getAndAddInt(this, usedOffset, 1);
+      }
+      chain.slotTagIndexes.get(tableIndex)[slotIndex / recordSize] = tagIndex;
+
+      if (verifyTags) {
+        unsafe.putObjectVolatile(chain.slotTags.get(tableIndex),
+            Unsafe.ARRAY_OBJECT_BASE_OFFSET
+                + (slotIndex / recordSize) * Unsafe.ARRAY_OBJECT_INDEX_SCALE, copy);
+      }
+    } finally {
+      chain.inserting.decrementAndGet();
+    }
+
+    // Grow the tag sets only after the insertion, as a concurrent consolidation holding the lock
+    // waits for the insertion to complete
+    if (tagIndex >= tagSets.length) {
+      // grow tag set
+      synchronized (this) {
+        if (tagIndex >= tagSets.length) {
+          final int oldLength = tagSets.length;
+          final int newLength =
+              oldLength > TAGSETS_MAX_INCREMENT ? oldLength + TAGSETS_MAX_INCREMENT
+                  : oldLength * 2;
+          tagSets = Arrays.copyOf(tagSets, newLength);
+          final Chain current = this.chain;
+          current.positions =
+              Arrays.copyOf(current.positions, Math.max(newLength, current.positions.length));
+        }
+      }
+    }
+
+    // Store the position of the record, so that cursors need not look it up. A position lost to
+    // a concurrent growth of the array, or stored to a replaced chain, is looked up instead.
+    final long[] positions = chain.positions;
+    if (tagIndex < positions.length) {
+      positions[tagIndex] = index + 1;
+    }
+
+    // Store tags in the tag array for iteration purposes only
+    tagSets[tagIndex] = copy;
+    return index;
+  }
+
+  /**
+   * Compare the tag set stored in the given slot to the given tag set. The slot is reserved before
+   * its tag set is stored, so wait for a concurrent writer to complete storing it.
+   */
+  private boolean matches(final Chain chain, final int tableIndex, final int slotIndex,
+      final String[] tags) {
+    final String[][] stored = chain.slotTags.get(tableIndex);
+    final long offset = Unsafe.ARRAY_OBJECT_BASE_OFFSET
+        + (slotIndex / recordSize) * Unsafe.ARRAY_OBJECT_INDEX_SCALE;
+    String[] candidate;
+    while ((candidate = (String[]) unsafe.getObjectVolatile(stored, offset)) == null) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between reserving the slot and storing the tag set
+      Thread.yield();
+      ///CLOVER:ON
+    }
+    return Arrays.equals(candidate, tags);
+  }
+
+  /**
+   * Wait for a concurrent consolidation of the given chain to complete.
+   */
+  private void awaitConsolidation(final Chain chain) {
+    ///CLOVER:OFF
+    // No reliable way to test the race between inserting and consolidating
+    while (chain == this.chain && chain.sealed) {
+      Thread.yield();
+    }
+    ///CLOVER:ON
+  }
+
+  /**
+   * Wait for a concurrent eviction of records from the given chain to complete.
+   */
+  private void awaitEviction(final Chain chain) {
+    ///CLOVER:OFF
+    // No reliable way to test the race between inserting and evicting
+    while ((chain.evictions & 1) != 0) {
+      Thread.yield();
+    }
+    ///CLOVER:ON
+  }
+
+  /**
+   * Mark the start of an eviction of records from the given chain and wait for the insertions in
+   * progress to complete. Insertions looked up before the mark are retried, as their probe may
+   * have passed a slot that the eviction turns into a tombstone. Must be called with the lock held.
+   */
+  private static void beginEviction(final Chain chain) {
+    chain.evictions++;
+    while (chain.inserting.get() != 0) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between inserting and evicting
+      Thread.yield();
+      ///CLOVER:ON
+    }
+  }
+
   private boolean growTable() {
 
     if (capacity >= maxCapacity) {
@@ -343,13 +1285,20 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
     }
 
     synchronized (this) {
-      int lastTableIndex = tables.size() - 1;
-      int lastRecordCount = recordCounts.get(lastTableIndex).get();
-      int lastTableCapacity = tableCapacities.get(lastTableIndex);
+      ///CLOVER:OFF
+      // No reliable way to test the race between closing and growing the table
+      if (closed) {
+        return false;
+      }
+      ///CLOVER:ON
+      final Chain chain = this.chain;
+      int lastTableIndex = chain.tables.size() - 1;
+      int lastRecordCount = chain.recordCounts.get(lastTableIndex).get();
+      int lastTableCapacity = chain.tableCapacities.get(lastTableIndex);
       if (lastRecordCount >= lastTableCapacity && capacity < maxCapacity) {
         int nextTableCapacity = nextTableCapacity(lastTableCapacity);
         int newCapacity = capacity + nextTableCapacity;
-        addTable(nextTableCapacity, sizeTableFor(nextTableCapacity));
+        addTable(chain, nextTableCapacity, sizeTableFor(nextTableCapacity));
         capacity = newCapacity;
       }
     }
@@ -357,13 +1306,34 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
   }
 
   /**
+   * @param chain, chain of tables to add the table to
    * @param tableCapacity, max number of entries allowed in this table
    * @param tableSize, actual table length. Which is around 30% more than the capacity.
    */
-  private void addTable(final int tableCapacity, final int tableSize) {
-    tables.add(new long[tableSize * recordSize]);
-    recordCounts.add(new AtomicInteger());
-    tableCapacities.add(tableCapacity);
+  private void addTable(final Chain chain, final int tableCapacity, final int tableSize) {
+    final int tableLength = tableSize * recordSize;
+    if (offHeap) {
+      final long bytes = (long) tableLength * Unsafe.ARRAY_LONG_INDEX_SCALE;
+      // Over-allocate to start the first record, and thus every record, on a cache line boundary
+      final long address =
+          unsafe.allocateMemory(alignedRecords ? bytes + CACHE_LINE_SIZE - 1 : bytes);
+      final long tableOffset =
+          alignedRecords ? (address + CACHE_LINE_SIZE - 1) & -CACHE_LINE_SIZE : address;
+      unsafe.setMemory(tableOffset, bytes, (byte) 0);
+      chain.addresses.add(address);
+      chain.tableOffsets.add(tableOffset);
+    } else {
+      chain.tableOffsets.add((long) Unsafe.ARRAY_LONG_BASE_OFFSET);
+    }
+    chain.tableLengths.add(tableLength);
+    chain.recordCounts.add(new AtomicInteger());
+    chain.tableCapacities.add(tableCapacity);
+    chain.slotTagIndexes.add(new int[tableSize]);
+    if (verifyTags) {
+      chain.slotTags.add(new String[tableSize][]);
+    }
+    // Add the table last, as its size bounds the iteration of the other lists
+    chain.tables.add(offHeap ? null : new long[tableLength]);
   }
 
   private int nextTableCapacity(final int lastTableCapacity) {
@@ -396,41 +1366,74 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
   }
 
   /**
-   * Adds a new value to the existing value in the given field index.
+   * Adds a new value to the existing value in the given field index. If the record is contended
+   * repeatedly, it is striped and the value is added to the cell of the calling thread instead.
    *
    * @param table the table containing the values
    * @param baseOffset base offset of the record in the table containing the left hand value
    * @param index index of the field
    * @param value value to be added
-   * @return new accumulated value of the field index
+   * @return new accumulated value of the field index, or of the cell if the record is striped
    */
   protected long add(final long[] table, final long baseOffset, final long index,
       final long value) {
     final long offset = baseOffset + (RESERVED_FIELDS + index) * Unsafe.ARRAY_LONG_INDEX_SCALE;
-    return unsafe.getAndAddLong(table, offset, value) + value;
+    long[] cells = stripe(table, baseOffset);
+    if (cells == null) {
+      final long old = unsafe.getLongVolatile(table, offset);
+      if (unsafe.compareAndSwapLong(table, offset, old, old + value)) {
+        return old + value;
+      }
+      ///CLOVER:OFF
+      // No reliable way to test without being able to mock unsafe
+      cells = contended(table, baseOffset);
+      ///CLOVER:ON
+    }
+    if (cells == null) {
+      return unsafe.getAndAddLong(table, offset, value) + value;
+    }
+    return unsafe.getAndAddLong(cells, cellOffset(index), value) + value;
   }
 
   /**
-   * Adds a new double value to the existing value in the given field index.
+   * Adds a new double value to the existing value in the given field index. If the record is
+   * contended repeatedly, it is striped and the value is added to the cell of the calling thread
+   * instead.
    *
    * @param table the table containing the values
    * @param baseOffset base offset of the record in the table containing the left hand value
    * @param index index of the field
    * @param value value to be added
-   * @return new accumulated value of the field index
+   * @return new accumulated value of the field index, or of the cell if the record is striped
    */
   protected double add(final long[] table, final long baseOffset, final long index,
       final double value) {
     final long offset = ((RESERVED_FIELDS + index) * Unsafe.ARRAY_LONG_INDEX_SCALE) + baseOffset;
+    long[] cells = stripe(table, baseOffset);
+    if (cells == null) {
+      final long old = unsafe.getLongVolatile(table, offset);
+      final double new_d = Double.longBitsToDouble(old) + value;
+      if (unsafe.compareAndSwapLong(table, offset, old, Double.doubleToRawLongBits(new_d))) {
+        return new_d;
+      }
+      ///CLOVER:OFF
+      // No reliable way to test without being able to mock unsafe
+      cells = contended(table, baseOffset);
+      ///CLOVER:ON
+    }
+    return cells == null ? add(table, offset, value) : add(cells, cellOffset(index), value);
+  }
+
+  private static double add(final long[] array, final long offset, final double value) {
     long old;
     double old_d, new_d;
     do {
-      old = unsafe.getLongVolatile(table, offset);
+      old = unsafe.getLongVolatile(array, offset);
       old_d = Double.longBitsToDouble(old);
       new_d = old_d + value;
       ///CLOVER:OFF
       // No reliable way to test without being able to mock unsafe
-    } while (!unsafe.compareAndSwapLong(table, offset, old, Double.doubleToRawLongBits(new_d)));
+    } while (!unsafe.compareAndSwapLong(array, offset, old, Double.doubleToRawLongBits(new_d)));
     ///CLOVER:ON
     return new_d;
   }
@@ -560,13 +1563,154 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
   }
 
   /**
-   * Filter any given tags and return a hash code
+   * Returns the key of the record for a given tag set, which is its fingerprint unless that
+   * collides with a key reserved for evicted records.
+   */
+  private long key(final String[] tags) {
+    return key(hashCode(tags));
+  }
+
+  /**
+   * Returns the key of the record for a tag set with the given fingerprint.
+   */
+  private static long key(final long fingerprint) {
+    return fingerprint == TOMBSTONE || fingerprint == EVICTING ? ~fingerprint : fingerprint;
+  }
+
+  /**
+   * Filter any given tags and return a 64-bit fingerprint of the tag set.
    *
    * @param tags a flattened array of tag key-value pairs
-   * @return hash code
+   * @return fingerprint, never {@code 0L}
+   * @see Hashing#fingerprint(String[])
    */
   long hashCode(final String[] tags) {
-    return Arrays.hashCode(tags);
+    return Hashing.fingerprint(tags);
+  }
+
+  /**
+   * Position of the record of a bound tag set in the chain with the given identifier, valid until
+   * the chain is replaced or a record is evicted from it.
+   */
+  private static final class Position {
+
+    private final long chain;
+    private final int evictions;
+    private final long index;
+
+    private Position(final long chain, final int evictions, final long index) {
+      this.chain = chain;
+      this.evictions = evictions;
+      this.index = index;
+    }
+  }
+
+  /**
+   * A chain of tables holding the records. The hash table grows by adding new tables to the chain,
+   * and the whole chain is replaced when it is consolidated.
+   */
+  private static final class Chain {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    /**
+     * Unique identifier of the chain, so that a record position refers to the chain without keeping
+     * it reachable after it has been replaced.
+     */
+    private final long id = NEXT_ID.incrementAndGet();
+
+    /**
+     * The multiple long array objects to manipulate with the unsafe atomic operations, or nulls if
+     * the tables are stored off-heap.
+     */
+    private final List<long[]> tables = new ArrayList<>();
+
+    /**
+     * Base offset of the corresponding table in {@link #tables}. For off-heap tables this is the
+     * absolute address of the first record in the allocated memory.
+     */
+    private final List<Long> tableOffsets = new ArrayList<>();
+
+    /**
+     * Address of the native memory allocated for the corresponding table in {@link #tables}, which
+     * precedes the first record if the records are aligned, or empty if the tables are on-heap.
+     */
+    private final List<Long> addresses = new ArrayList<>();
+
+    /**
+     * Length in longs of the corresponding table in {@link #tables}.
+     */
+    private final List<Integer> tableLengths = new ArrayList<>();
+
+    /**
+     * Number of entries in the corresponding table in {@link #tables}
+     */
+    private final List<AtomicInteger> recordCounts = new ArrayList<>();
+
+    /**
+     * Max number of entries allowed in the corresponding table in {@link #tables}.
+     */
+    private final List<Integer> tableCapacities = new ArrayList<>();
+
+    /**
+     * The tag set stored in each slot of the corresponding table in {@link #tables}, or null if
+     * tag sets are not verified on lookup.
+     */
+    private final List<String[][]> slotTags;
+    /**
+     * The index in {@link #tagSets} of the tag set stored in each slot of the corresponding table
+     * in {@link #tables}.
+     */
+    private final List<int[]> slotTagIndexes = new ArrayList<>();
+    /**
+     * Position of the record of each entry in {@link #tagSets} in this chain, encoded like the
+     * index returned by {@link #index(Chain, String[], boolean)} plus one, or 0 if unknown.
+     */
+    private volatile long[] positions;
+
+    /**
+     * Number of threads currently inserting a new record to the chain.
+     */
+    private final AtomicInteger inserting = new AtomicInteger();
+
+    /**
+     * Number of tombstones of evicted records in the chain, which are counted as records in
+     * {@link #recordCounts} until they are reused.
+     */
+    private final AtomicInteger tombstones = new AtomicInteger();
+    /**
+     * Whether the chain is being consolidated, and new records must not be inserted to it.
+     */
+    private volatile boolean sealed = false;
+    /**
+     * Number of times an eviction of records from the chain started or completed, which is odd
+     * while tombstones are being created. Modified only under the lock.
+     */
+    private volatile int evictions;
+
+    /**
+     * Number of threads currently writing to the chain, striped by thread, or null if the tables
+     * are on-heap and need not be released explicitly.
+     */
+    private final AtomicLongArray writers;
+
+    private Chain(final boolean verifyTags, final boolean offHeap, final int positionsLength) {
+      this.slotTags = verifyTags ? new ArrayList<>() : null;
+      this.positions = new long[positionsLength];
+      this.writers = offHeap ? new AtomicLongArray(WRITER_STRIPES * LONGS_PER_CACHE_LINE) : null;
+    }
+
+    /**
+     * Returns whether any thread is writing to the chain.
+     */
+    private boolean hasWriters() {
+      for (int i = 0; i < WRITER_STRIPES; i++) {
+        if (writers.get(i * LONGS_PER_CACHE_LINE) != 0L) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 
   private class CursorImpl implements Cursor {
@@ -574,19 +1718,28 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
     final private String[] fields;
     final private Type[] types;
     final private String[][] tagSets;
+    // Index of each sorted tag set in the tag set array of the table, or null if not sorted
+    final private int[] tagIndexes;
     private int i = -1;
     private long base = 0;
     private long[] table;
+    // Whether the current record has been reset, and is to be deflated when the cursor moves on
+    private boolean reset;
 
     private CursorImpl(final String[][] tagSets, final String[] fields, final Type[] types,
         final boolean sorted) {
       this.fields = fields;
       this.types = types;
       if (sorted) {
-        this.tagSets = tagSets.clone();
-        Arrays.sort(this.tagSets, TagSetsHelper::compare);
+        final String[][] snapshot = tagSets.clone();
+        this.tagIndexes = TagSetsHelper.sortedIndexes(snapshot);
+        this.tagSets = new String[snapshot.length][];
+        for (int j = 0; j < snapshot.length; j++) {
+          this.tagSets[j] = snapshot[tagIndexes[j]];
+        }
       } else {
         this.tagSets = tagSets;
+        this.tagIndexes = null;
       }
     }
 
@@ -597,28 +1750,45 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
 
     @Override
     public boolean next() {
-      i++;
-      if (i >= tagSets.length || tagSets[i] == null) {
-        return false;
+      if (reset) {
+        reset = false;
+        deflate(table, base);
       }
+      for (; ; ) {
+        i++;
+        if (i >= tagSets.length || closed) {
+          return false;
+        }
+        if (tagSets[i] == null) {
+          if (idleTimeoutMillis > 0) {
+            continue; // skip the released tag set of an evicted record
+          }
+          return false;
+        }
 
-      long index = index(tagSets[i], true);
+        final Chain chain = ConcurrentMonoidLongTable.this.chain;
+        long index = index(chain, tagIndexes == null ? i : tagIndexes[i], tagSets[i]);
 
-      if (NOT_FOUND == index) {
-        LOGGER.error("Missing index on Read. Tags: {}. Concurrency error or bug",
-            Arrays.asList(tagSets[i]));
-        return false;
-      }
+        if (NOT_FOUND == index) {
+          if (idleTimeoutMillis > 0) {
+            continue; // the record has been evicted after the cursor was created
+          }
+          LOGGER.error("Missing index on Read. Tags: {}. Concurrency error or bug",
+              Arrays.asList(tagSets[i]));
+          return false;
+        }
 
-      // Decode table index and slot index from long.
-      // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
-      // This logic is replicated in multiple places for performance reasons.
-      int tableIndex = (int) ((index & TABLE_MASK) >> 32);
-      int slotIndex = (int) (index & SLOT_MASK);
+        // Decode table index and slot index from long.
+        // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
+        // This logic is replicated in multiple places for performance reasons.
+        int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+        int slotIndex = (int) (index & SLOT_MASK);
 
-      table = tables.get(tableIndex);
-      base = Unsafe.ARRAY_LONG_BASE_OFFSET + slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
-      return true;
+        table = chain.tables.get(tableIndex);
+        base =
+            chain.tableOffsets.get(tableIndex) + (long) slotIndex * Unsafe.ARRAY_LONG_INDEX_SCALE;
+        return true;
+      }
     }
 
     @Override
@@ -645,8 +1815,10 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
       if (index < 0 || index >= fields.length) {
         throw new IndexOutOfBoundsException("Not a valid field index: " + index);
       }
-      return unsafe
+      final long value = unsafe
           .getLongVolatile(table, base + (index + RESERVED_FIELDS) * Unsafe.ARRAY_LONG_INDEX_SCALE);
+      final long[] cells = stripe(table, base);
+      return cells == null ? value : merge(cells, index, value, false);
     }
 
     @Override
@@ -662,9 +1834,12 @@ public abstract class ConcurrentMonoidLongTable implements Aggregator {
       if (index < 0 || index >= fields.length) {
         throw new IndexOutOfBoundsException("Not a valid field index: " + index);
       }
-      return unsafe
+      final long value = unsafe
           .getAndSetLong(table, base + (index + RESERVED_FIELDS) * Unsafe.ARRAY_LONG_INDEX_SCALE,
               identity[index]);
+      reset = true;
+      final long[] cells = stripe(table, base);
+      return cells == null ? value : merge(cells, index, value, true);
     }
 
     @Override
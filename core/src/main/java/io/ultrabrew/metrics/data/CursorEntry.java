@@ -61,6 +61,18 @@ public interface CursorEntry {
    */
   double readAndResetDouble(final int index);
 
+  /**
+   * Retrieves the value of a field at given index, and resets the field's value to monoid's
+   * identity. The value is passed to the sink as a primitive of the type of the field, so that it
+   * can be serialized without allocating a {@link String}.
+   *
+   * @param index index of the field
+   * @param sink sink accepting the value of the field
+   */
+  default void readAndResetInto(final int index, final FieldSink sink) {
+    getTypes()[index].readAndReset(this, index, sink);
+  }
+
   /**
    * Retrieves fields available in all rows.
    *
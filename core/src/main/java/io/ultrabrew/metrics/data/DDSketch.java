@@ -0,0 +1,328 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A mergeable quantile sketch with relative error guarantees, as described in "DDSketch: A Fast and
+ * Fully-Mergeable Quantile Sketch with Relative-Error Guarantees" by Masson, Rim and Lee. Positive
+ * values are counted in logarithmically sized bins, so that any quantile is estimated within the
+ * relative accuracy of the sketch. Values less than 1 are counted as zeros.
+ *
+ * <p>The bin of a value is located with a piecewise linear approximation of the binary logarithm
+ * computed from the exponent and the significand of the value, which avoids calling {@link
+ * Math#log(double)} at the cost of about 1.44 times more bins.</p>
+ *
+ * <p>Sketches with the same relative accuracy can be merged, e.g., by a process collecting the
+ * sketches of many hosts in their {@link #serialize() serialized} form.</p>
+ *
+ * <p>This class is not thread-safe.</p>
+ *
+ * @see DDSketchAggregator
+ */
+public final class DDSketch {
+
+  private static final byte FORMAT_VERSION = 1;
+  private static final long SIGNIFICAND_MASK = 0x000FFFFFFFFFFFFFL;
+  private static final long ONE_BITS = Double.doubleToRawLongBits(1.0);
+
+  private final double relativeAccuracy;
+  private final double multiplier;
+  private long[] bins;
+  private long zeroCount;
+  private long count;
+  private long sum;
+  private long min = Long.MAX_VALUE;
+  private long max = Long.MIN_VALUE;
+
+  /**
+   * Create an empty sketch.
+   *
+   * @param relativeAccuracy relative accuracy of the quantile estimates, greater than 0 and less
+   * than 1
+   */
+  public DDSketch(final double relativeAccuracy) {
+    this.multiplier = multiplier(relativeAccuracy);
+    this.relativeAccuracy = relativeAccuracy;
+    this.bins = new long[0];
+  }
+
+  /**
+   * Add a value to the sketch.
+   *
+   * @param value measurement value
+   */
+  public void accept(final long value) {
+    if (value < 1) {
+      zeroCount++;
+    } else {
+      final int index = index(value, multiplier);
+      if (index >= bins.length) {
+        bins = Arrays.copyOf(bins, index + 1);
+      }
+      bins[index]++;
+    }
+    count++;
+    sum += value;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+  }
+
+  /**
+   * Add all values counted in another sketch to this sketch.
+   *
+   * @param other sketch with the same relative accuracy
+   * @throws IllegalArgumentException if the relative accuracies of the sketches differ
+   */
+  public void merge(final DDSketch other) {
+    if (other.relativeAccuracy != relativeAccuracy) {
+      throw new IllegalArgumentException("Sketches with different relative accuracy");
+    }
+    if (other.bins.length > bins.length) {
+      bins = Arrays.copyOf(bins, other.bins.length);
+    }
+    for (int i = 0; i < other.bins.length; i++) {
+      bins[i] += other.bins[i];
+    }
+    zeroCount += other.zeroCount;
+    count += other.count;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  public double getRelativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getSum() {
+    return sum;
+  }
+
+  /**
+   * @return minimum value, or {@link Long#MAX_VALUE} if the sketch is empty
+   */
+  public long getMin() {
+    return min;
+  }
+
+  /**
+   * @return maximum value, or {@link Long#MIN_VALUE} if the sketch is empty
+   */
+  public long getMax() {
+    return max;
+  }
+
+  /**
+   * Estimate the value at the given quantile. The estimate is within the relative accuracy of the
+   * sketch of the actual value, and within the minimum and maximum values.
+   *
+   * @param quantile quantile from 0 to 1
+   * @return estimated value, or 0 if the sketch is empty
+   */
+  public long getQuantile(final double quantile) {
+    if (quantile < 0.0 || quantile > 1.0) {
+      throw new IllegalArgumentException("Quantile must be between 0 and 1");
+    }
+    if (count == 0L) {
+      return 0L;
+    }
+    final double rank = quantile * (count - 1);
+    long estimate = max;
+    long before = zeroCount;
+    if (before > rank) {
+      estimate = 0L;
+    } else {
+      for (int i = 0; i < bins.length; i++) {
+        before += bins[i];
+        if (before > rank) {
+          estimate = value(i, multiplier);
+          break;
+        }
+      }
+    }
+    return Math.max(min, Math.min(max, estimate));
+  }
+
+  /**
+   * Serialize the sketch into a compact binary form, in which the counts of the non-empty bins are
+   * stored as variable length integers.
+   *
+   * @return serialized sketch
+   * @see #deserialize(byte[])
+   */
+  public byte[] serialize() {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(32);
+    out.write(FORMAT_VERSION);
+    final long accuracyBits = Double.doubleToLongBits(relativeAccuracy);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      out.write((int) (accuracyBits >>> shift));
+    }
+    writeVarLong(out, count);
+    writeVarLong(out, zigZag(sum));
+    writeVarLong(out, zigZag(min));
+    writeVarLong(out, zigZag(max));
+    writeVarLong(out, zeroCount);
+    int nonEmpty = 0;
+    for (final long bin : bins) {
+      if (bin != 0L) {
+        nonEmpty++;
+      }
+    }
+    writeVarLong(out, nonEmpty);
+    int previous = 0;
+    for (int i = 0; i < bins.length; i++) {
+      if (bins[i] != 0L) {
+        writeVarLong(out, i - previous);
+        writeVarLong(out, bins[i]);
+        previous = i;
+      }
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Deserialize a sketch serialized with {@link #serialize()}.
+   *
+   * @param bytes serialized sketch
+   * @return new sketch
+   * @throws IllegalArgumentException if the bytes are not a serialized sketch
+   */
+  public static DDSketch deserialize(final byte[] bytes) {
+    final ByteBuffer in = ByteBuffer.wrap(bytes);
+    try {
+      if (in.get() != FORMAT_VERSION) {
+        throw new IllegalArgumentException("Unknown sketch format");
+      }
+      final DDSketch sketch = new DDSketch(Double.longBitsToDouble(in.getLong()));
+      sketch.count = readVarLong(in);
+      sketch.sum = unZigZag(readVarLong(in));
+      sketch.min = unZigZag(readVarLong(in));
+      sketch.max = unZigZag(readVarLong(in));
+      sketch.zeroCount = readVarLong(in);
+      final long nonEmpty = readVarLong(in);
+      int index = 0;
+      for (long i = 0; i < nonEmpty; i++) {
+        index += (int) readVarLong(in);
+        if (index < 0) {
+          throw new IllegalArgumentException("Malformed sketch bins");
+        }
+        if (index >= sketch.bins.length) {
+          sketch.bins = Arrays.copyOf(sketch.bins, Math.max(index + 1, sketch.bins.length * 2));
+        }
+        sketch.bins[index] = readVarLong(in);
+      }
+      sketch.bins = Arrays.copyOf(sketch.bins, nonEmpty == 0 ? 0 : index + 1);
+      return sketch;
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated sketch", e);
+    }
+  }
+
+  /**
+   * Replace the contents of the sketch with the given counts, reusing the bins of the sketch.
+   */
+  void set(final long zeroCount, final long[] bins, final int length, final long count,
+      final long sum, final long min, final long max) {
+    if (this.bins.length < length) {
+      this.bins = new long[length];
+    }
+    System.arraycopy(bins, 0, this.bins, 0, length);
+    Arrays.fill(this.bins, length, this.bins.length, 0L);
+    this.zeroCount = zeroCount;
+    this.count = count;
+    this.sum = sum;
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * Create a copy of the sketch with bins trimmed to the last non-empty one.
+   */
+  DDSketch copy() {
+    final DDSketch copy = new DDSketch(relativeAccuracy);
+    int length = bins.length;
+    while (length > 0 && bins[length - 1] == 0L) {
+      length--;
+    }
+    copy.set(zeroCount, bins, length, count, sum, min, max);
+    return copy;
+  }
+
+  /**
+   * Get the multiplier of the approximate binary logarithm of a value giving the index of its bin.
+   * The approximation has a slope of at least 1 per doubling of the value relative to the natural
+   * logarithm, so that the values of a bin are within a ratio of gamma.
+   */
+  static double multiplier(final double relativeAccuracy) {
+    if (!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)) {
+      throw new IllegalArgumentException("Relative accuracy must be between 0 and 1");
+    }
+    final double gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    return 1 / Math.log(gamma);
+  }
+
+  /**
+   * Get the index of the bin of a value of at least 1. The binary logarithm of the value is
+   * approximated by its exponent plus its significand minus 1.
+   */
+  static int index(final long value, final double multiplier) {
+    final long bits = Double.doubleToRawLongBits((double) value);
+    final double log2 = ((bits >>> 52) - 1023) + (Double.longBitsToDouble(
+        (bits & SIGNIFICAND_MASK) | ONE_BITS) - 1.0);
+    return (int) Math.ceil(log2 * multiplier);
+  }
+
+  /**
+   * Get the value representing the bin of the given index, which is within the relative accuracy
+   * of all values in the bin.
+   */
+  static long value(final int index, final double multiplier) {
+    final double lower = inverse((index - 1) / multiplier);
+    final double upper = inverse(index / multiplier);
+    return Math.round(2 * lower * upper / (lower + upper));
+  }
+
+  private static double inverse(final double log2) {
+    final double exponent = Math.floor(log2);
+    return Math.scalb(1.0 + (log2 - exponent), (int) exponent);
+  }
+
+  private static long zigZag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unZigZag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private static void writeVarLong(final ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7FL) != 0L) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(final ByteBuffer in) {
+    long value = 0L;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final byte b = in.get();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed variable length integer");
+  }
+}
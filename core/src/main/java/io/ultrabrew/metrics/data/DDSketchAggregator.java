@@ -0,0 +1,343 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import static io.ultrabrew.metrics.Metric.DEFAULT_CARDINALITY;
+import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
+
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A monoid keeping a mergeable quantile sketch of the measurements of a metric, e.g., the durations
+ * of a {@link io.ultrabrew.metrics.Timer}, for each tag set.
+ *
+ * <p>Performs the following aggregation functions on the measurements:</p>
+ * <ul>
+ * <li>count of measurements</li>
+ * <li>sum of the measurement values</li>
+ * <li>minimum measured value</li>
+ * <li>maximum measured value</li>
+ * <li>estimated percentiles of the measurement values</li>
+ * </ul>
+ *
+ * <p>The sketch of each tag set is a fixed array of logarithmically sized bins covering the values
+ * from 1 to the maximum value given to the aggregator, so that the memory of a record is fixed.
+ * Values less than 1 are counted as zeros, and values above the maximum value in the last bin. Each
+ * measurement increments its bin atomically without locking.</p>
+ *
+ * <p>The cursors of the aggregator implement {@link SketchCursorEntry}, through which a reporter
+ * may export the sketch of each row as a {@link DDSketch}. The percentiles are estimated from a
+ * snapshot of the sketch taken when the cursor moves to a row, and the bins are reset when either
+ * the sketch or any percentile is read and reset.</p>
+ *
+ * @see DDSketch
+ */
+public class DDSketchAggregator extends ConcurrentMonoidIntTable implements Aggregator {
+
+  /**
+   * Default relative accuracy of the percentile estimates, 2%.
+   */
+  public static final double DEFAULT_RELATIVE_ACCURACY = 0.02;
+
+  /**
+   * Default maximum value distinguished by the sketches, about 73 minutes in nanoseconds.
+   */
+  public static final long DEFAULT_MAX_VALUE = 1L << 42;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DDSketchAggregator.class);
+  private static final String[] AGGREGATION_FIELDS = {"count", "sum", "min", "max"};
+  private static final long[] IDENTITY = {0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE};
+  // Index of the field counting the zeros, followed by the fields of the bins
+  private static final int ZEROS = AGGREGATION_FIELDS.length;
+
+  private final double relativeAccuracy;
+  private final double multiplier;
+  private final int bins;
+  private final double[] percentiles;
+
+  private final String[] fields;
+  private final Type[] types;
+
+  /**
+   * Creates a monoid for the quantile sketches of a metric with the default relative accuracy and
+   * percentiles.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   */
+  public DDSketchAggregator(final String metricId) {
+    this(metricId, DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_CARDINALITY);
+  }
+
+  /**
+   * Creates a monoid for the quantile sketches of a metric with the default percentiles.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param relativeAccuracy relative accuracy of the sketches, greater than 0 and less than 1
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   */
+  public DDSketchAggregator(final String metricId, final double relativeAccuracy,
+      final int maxCardinality) {
+    this(metricId, relativeAccuracy, DEFAULT_MAX_VALUE, maxCardinality, DEFAULT_CARDINALITY,
+        TableOptions.DEFAULT, BasicHistogramAggregator.DEFAULT_PERCENTILES);
+  }
+
+  /**
+   * Creates a monoid for the quantile sketches of a metric.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param relativeAccuracy relative accuracy of the sketches, greater than 0 and less than 1
+   * @param maxValue maximum value distinguished by the sketches, at least 1
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   * @param percentiles percentiles to estimate, each from 0 to 1
+   */
+  public DDSketchAggregator(final String metricId, final double relativeAccuracy,
+      final long maxValue, final int maxCardinality, final int cardinality,
+      final TableOptions options, final double[] percentiles) {
+    super(metricId, ZEROS + 1 + bins(relativeAccuracy, maxValue), maxCardinality, cardinality,
+        IDENTITY, options);
+    for (final double percentile : percentiles) {
+      if (!(percentile >= 0.0 && percentile <= 1.0)) {
+        throw new IllegalArgumentException("Percentile must be between 0 and 1");
+      }
+    }
+    this.relativeAccuracy = relativeAccuracy;
+    this.multiplier = DDSketch.multiplier(relativeAccuracy);
+    this.bins = bins(relativeAccuracy, maxValue);
+    this.percentiles = percentiles.clone();
+    this.fields = new String[AGGREGATION_FIELDS.length + percentiles.length];
+    System.arraycopy(AGGREGATION_FIELDS, 0, fields, 0, AGGREGATION_FIELDS.length);
+    for (int i = 0; i < percentiles.length; i++) {
+      fields[AGGREGATION_FIELDS.length + i] = BasicHistogramAggregator.percentileName(
+          percentiles[i]);
+    }
+    this.types = new Type[fields.length];
+    Arrays.fill(types, Type.LONG);
+  }
+
+  private static int bins(final double relativeAccuracy, final long maxValue) {
+    if (maxValue < 1) {
+      throw new IllegalArgumentException("Maximum value must be at least 1");
+    }
+    return DDSketch.index(maxValue, DDSketch.multiplier(relativeAccuracy)) + 1;
+  }
+
+  @Override
+  public void apply(final String[] tags, final long value, final long timestamp) {
+    super.apply(tags, value, timestamp);
+  }
+
+  @Override
+  public void applyTagSet(final TagSet tags, final long value, final long timestamp) {
+    super.applyTagSet(tags, value, timestamp);
+  }
+
+  @Override
+  protected void combine(final int[] table, final long baseOffset, final long value) {
+    addToAggField(table, baseOffset, 0, 1);
+    addToAggField(table, baseOffset, 1, value);
+    minAggField(table, baseOffset, 2, value);
+    maxAggField(table, baseOffset, 3, value);
+
+    final int bin = value < 1 ? 0 : 1 + Math.min(DDSketch.index(value, multiplier), bins - 1);
+    addToDataField(table, baseOffset, ZEROS + bin, 1);
+  }
+
+  @Override
+  public Cursor cursor() {
+    return new CursorImpl(tagSets, false);
+  }
+
+  @Override
+  public Cursor sortedCursor() {
+    return new CursorImpl(tagSets, true);
+  }
+
+  private class CursorImpl implements Cursor, SketchCursorEntry {
+
+    private final String[][] tagSets;
+    // Index of each sorted tag set in the tag set array of the table, or null if not sorted
+    private final int[] tagIndexes;
+    private int i = -1;
+    private long base = 0;
+    private int[] table;
+
+    // Snapshot of the sketch of the current row, its estimated percentiles, and whether the
+    // aggregation fields and the bins of the row have been reset by the reader
+    private final DDSketch sketch = new DDSketch(relativeAccuracy);
+    private final long[] counts = new long[bins];
+    private final long[] estimates = new long[percentiles.length];
+    private final boolean[] resetFields = new boolean[AGGREGATION_FIELDS.length];
+    private boolean resetBins;
+
+    private CursorImpl(final String[][] tagSets, final boolean sorted) {
+      if (sorted) {
+        final String[][] snapshot = tagSets.clone();
+        this.tagIndexes = TagSetsHelper.sortedIndexes(snapshot);
+        this.tagSets = new String[snapshot.length][];
+        for (int j = 0; j < snapshot.length; j++) {
+          this.tagSets[j] = snapshot[tagIndexes[j]];
+        }
+      } else {
+        this.tagSets = tagSets;
+        this.tagIndexes = null;
+      }
+    }
+
+    @Override
+    public String getMetricId() {
+      return metricId;
+    }
+
+    @Override
+    public boolean next() {
+      for (; ; ) {
+        i++;
+        if (i >= tagSets.length || isClosed()) {
+          return false;
+        }
+        if (tagSets[i] == null) {
+          if (hasIdleTimeout()) {
+            continue; // skip the released tag set of an evicted record
+          }
+          return false;
+        }
+
+        final Chain chain = currentChain();
+        long index = index(chain, tagIndexes == null ? i : tagIndexes[i], tagSets[i]);
+
+        if (NOT_FOUND == index) {
+          if (hasIdleTimeout()) {
+            continue; // the record has been evicted after the cursor was created
+          }
+          LOGGER.error("Missing index on Read. Tags: {}. Concurrency error or bug",
+              Arrays.asList(tagSets[i]));
+          return false;
+        }
+
+        // Decode table index and slot index from long.
+        // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
+        // This logic is replicated in multiple places for performance reasons.
+        int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+        int slotIndex = (int) (index & SLOT_MASK);
+
+        table = table(chain, tableIndex);
+        base = baseOffset(chain, tableIndex, slotIndex);
+        snapshot();
+        return true;
+      }
+    }
+
+    private void snapshot() {
+      for (int j = 0; j < bins; j++) {
+        counts[j] = read(table, base, ZEROS + 1 + j);
+      }
+      sketch.set(read(table, base, ZEROS), counts, bins, read(table, base, 0),
+          read(table, base, 1), read(table, base, 2), read(table, base, 3));
+      for (int p = 0; p < percentiles.length; p++) {
+        estimates[p] = sketch.getQuantile(percentiles[p]);
+      }
+      Arrays.fill(resetFields, false);
+      resetBins = false;
+    }
+
+    private void checkRow() {
+      if (i < 0 || i >= tagSets.length || tagSets[i] == null) {
+        throw new IndexOutOfBoundsException("Not a valid row index: " + i);
+      }
+    }
+
+    private void checkField(final int index) {
+      checkRow();
+      if (index < 0 || index >= fields.length) {
+        throw new IndexOutOfBoundsException("Not a valid field index: " + index);
+      }
+    }
+
+    @Override
+    public String[] getTags() {
+      checkRow();
+      return tagSets[i];
+    }
+
+    @Override
+    public long lastUpdated() {
+      checkRow();
+      return readTime(table, base);
+    }
+
+    @Override
+    public long readLong(final int index) {
+      checkField(index);
+      if (index >= AGGREGATION_FIELDS.length) {
+        return estimates[index - AGGREGATION_FIELDS.length];
+      }
+      return read(table, base, index);
+    }
+
+    @Override
+    public double readDouble(final int index) {
+      throw new UnsupportedOperationException("Invalid operation");
+    }
+
+    @Override
+    public long readAndResetLong(final int index) {
+      checkField(index);
+      if (index >= AGGREGATION_FIELDS.length) {
+        resetBins();
+        return estimates[index - AGGREGATION_FIELDS.length];
+      }
+      resetFields[index] = true;
+      return readAndReset(table, base, index, IDENTITY[index]);
+    }
+
+    @Override
+    public double readAndResetDouble(final int index) {
+      throw new UnsupportedOperationException("Invalid operation");
+    }
+
+    @Override
+    public DDSketch readSketch() {
+      checkRow();
+      return sketch.copy();
+    }
+
+    @Override
+    public DDSketch readAndResetSketch() {
+      checkRow();
+      for (int j = 0; j < AGGREGATION_FIELDS.length; j++) {
+        if (!resetFields[j]) {
+          readAndReset(table, base, j, IDENTITY[j]);
+          resetFields[j] = true;
+        }
+      }
+      resetBins();
+      return sketch.copy();
+    }
+
+    private void resetBins() {
+      if (!resetBins) {
+        for (int j = 0; j <= bins; j++) {
+          readAndReset(table, base, ZEROS + j, 0L);
+        }
+        resetBins = true;
+      }
+    }
+
+    @Override
+    public String[] getFields() {
+      return fields;
+    }
+
+    @Override
+    public Type[] getTypes() {
+      return types;
+    }
+  }
+}
@@ -131,6 +131,16 @@ public class DistributionBucket implements DistributionBucketIF<DistributionBuck
     return names;
   }
 
+  /**
+   * Get the sorted bucket boundaries, the last of which is the lower bound of the overflow bucket.
+   * The array is not copied and must not be modified.
+   *
+   * @return array of bucket boundaries
+   */
+  long[] getBoundaries() {
+    return buckets;
+  }
+
   @Override
   public Aggregator buildAggregator(String metricId, DistributionBucket bucket, int maxCardinality) {
     return new BasicHistogramAggregator(metricId, bucket, maxCardinality);
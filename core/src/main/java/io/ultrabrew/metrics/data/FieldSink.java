@@ -0,0 +1,30 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+/**
+ * A sink receiving the primitive values of the fields of a row, so that a reporter can serialize
+ * the values without converting each of them to a {@link String} first.
+ *
+ * @see CursorEntry#readAndResetInto(int, FieldSink)
+ */
+public interface FieldSink {
+
+  /**
+   * Accepts the value of a field of type {@link Type#LONG}.
+   *
+   * @param index index of the field
+   * @param value value of the field
+   */
+  void acceptLong(final int index, final long value);
+
+  /**
+   * Accepts the value of a field of type {@link Type#DOUBLE}.
+   *
+   * @param index index of the field
+   * @param value value of the field
+   */
+  void acceptDouble(final int index, final double value);
+}
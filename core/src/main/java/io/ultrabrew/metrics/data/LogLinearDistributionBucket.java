@@ -0,0 +1,169 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+/**
+ * A distribution bucket specification with log-linear buckets, as used by HDR histograms. The range
+ * of values is split into power of two sized ranges, each of which is split linearly into the same
+ * number of buckets, so that the width of a bucket is always within the requested number of
+ * significant decimal digits of the values in it.
+ *
+ * <p>Unlike {@link DistributionBucket}, which searches its bucket boundaries, the bucket of a value
+ * is computed in constant time from the number of leading zeros of the value and a shift, which
+ * keeps emitting to a histogram with hundreds of buckets as cheap as to one with a few.</p>
+ *
+ * <p>For a lowest discernible value of 1, a highest trackable value of 100 and 1 significant
+ * digit, the buckets would be like:</p>
+ * <ul>
+ * <li>[0, 1), [1, 2), ..., [31, 32) for the values {@literal <} 32, one value per bucket
+ * <li>[32, 34), [34, 36), ..., [62, 64) for the values {@literal <} 64
+ * <li>[64, 68), [68, 72), ..., [100, 104) for the values {@literal <} 104
+ * <li>overflow for values {@literal >}= 104
+ * <li>underflow for values {@literal <} 0
+ * </ul>
+ *
+ * @see BasicHistogramAggregator
+ */
+public class LogLinearDistributionBucket extends DistributionBucket {
+
+  /**
+   * Maximum number of significant decimal digits. Each additional digit multiplies the number of
+   * buckets, and thus the size of each histogram record, by about ten.
+   */
+  public static final int MAX_SIGNIFICANT_DIGITS = 3;
+
+  private final int unitMagnitude;
+  private final int subBucketHalfCountMagnitude;
+  private final long subBucketMask;
+  private final int overflowIndex;
+  private final long overflowValue;
+
+  /**
+   * Creates a log-linear distribution for the given range and precision.
+   *
+   * @param lowestDiscernibleValue the smallest positive value distinguished from 0, rounded down to
+   * a power of two
+   * @param highestTrackableValue the highest value counted in a regular bucket, values above which
+   * may be counted in the overflow bucket
+   * @param significantDigits number of significant decimal digits, from 0 to {@link
+   * #MAX_SIGNIFICANT_DIGITS}
+   */
+  public LogLinearDistributionBucket(final long lowestDiscernibleValue,
+      final long highestTrackableValue, final int significantDigits) {
+    this(lowestDiscernibleValue, highestTrackableValue, significantDigits, new DefaultNameSpec());
+  }
+
+  /**
+   * Creates a log-linear distribution for the given range and precision.
+   *
+   * @param lowestDiscernibleValue the smallest positive value distinguished from 0, rounded down to
+   * a power of two
+   * @param highestTrackableValue the highest value counted in a regular bucket, values above which
+   * may be counted in the overflow bucket
+   * @param significantDigits number of significant decimal digits, from 0 to {@link
+   * #MAX_SIGNIFICANT_DIGITS}
+   * @param nameSpec naming of the bucket boundaries
+   */
+  public LogLinearDistributionBucket(final long lowestDiscernibleValue,
+      final long highestTrackableValue, final int significantDigits, final NameSpec nameSpec) {
+    super(boundaries(lowestDiscernibleValue, highestTrackableValue, significantDigits), nameSpec);
+    this.unitMagnitude = unitMagnitude(lowestDiscernibleValue);
+    this.subBucketHalfCountMagnitude = subBucketHalfCountMagnitude(significantDigits);
+    this.subBucketMask = ((2L << subBucketHalfCountMagnitude) - 1) << unitMagnitude;
+    this.overflowIndex = getCount() - 2;
+    this.overflowValue = valueFromIndex(overflowIndex, unitMagnitude, subBucketHalfCountMagnitude);
+  }
+
+  /**
+   * Retrieves the corresponding bucket index for a given measurement value in constant time.
+   *
+   * @param value measurement value
+   * @return bucket index
+   */
+  @Override
+  public int getBucketIndex(final long value) {
+    if (value < 0) {
+      return overflowIndex + 1; // underflow
+    }
+    if (value >= overflowValue) {
+      return overflowIndex;
+    }
+    return index(value, subBucketMask, unitMagnitude, subBucketHalfCountMagnitude);
+  }
+
+  private static long[] boundaries(final long lowestDiscernibleValue,
+      final long highestTrackableValue, final int significantDigits) {
+    if (lowestDiscernibleValue < 1) {
+      throw new IllegalArgumentException("Lowest discernible value must be at least 1");
+    }
+    if (highestTrackableValue < 2 * lowestDiscernibleValue
+        || highestTrackableValue > Long.MAX_VALUE / 4) {
+      throw new IllegalArgumentException(
+          "Highest trackable value must be at least twice the lowest discernible value and at most "
+              + Long.MAX_VALUE / 4);
+    }
+    if (significantDigits < 0 || significantDigits > MAX_SIGNIFICANT_DIGITS) {
+      throw new IllegalArgumentException(
+          "Significant digits must be between 0 and " + MAX_SIGNIFICANT_DIGITS);
+    }
+    final int unitMagnitude = unitMagnitude(lowestDiscernibleValue);
+    final int halfCountMagnitude = subBucketHalfCountMagnitude(significantDigits);
+
+    final long subBucketMask = ((2L << halfCountMagnitude) - 1) << unitMagnitude;
+    final int lastIndex =
+        index(highestTrackableValue, subBucketMask, unitMagnitude, halfCountMagnitude);
+
+    final long[] boundaries = new long[lastIndex + 2];
+    for (int i = 0; i < boundaries.length; i++) {
+      boundaries[i] = valueFromIndex(i, unitMagnitude, halfCountMagnitude);
+    }
+    return boundaries;
+  }
+
+  /**
+   * Get the index of the bucket of a non-negative value, from the power of two range of the value
+   * and the offset of the value within the range. All values below the first range split into
+   * multiple values per bucket fall into range 0.
+   */
+  private static int index(final long value, final long subBucketMask, final int unitMagnitude,
+      final int halfCountMagnitude) {
+    final int pow2Ceiling = 64 - Long.numberOfLeadingZeros(value | subBucketMask);
+    final int bucketIndex = pow2Ceiling - unitMagnitude - (halfCountMagnitude + 1);
+    final int subBucketIndex = (int) (value >>> (bucketIndex + unitMagnitude));
+    return ((bucketIndex + 1) << halfCountMagnitude) + subBucketIndex - (1 << halfCountMagnitude);
+  }
+
+  /**
+   * Get the lowest value of the bucket of the given index.
+   */
+  private static long valueFromIndex(final int index, final int unitMagnitude,
+      final int halfCountMagnitude) {
+    int bucketIndex = (index >> halfCountMagnitude) - 1;
+    int subBucketIndex = (index & ((1 << halfCountMagnitude) - 1)) + (1 << halfCountMagnitude);
+    if (bucketIndex < 0) {
+      subBucketIndex -= 1 << halfCountMagnitude;
+      bucketIndex = 0;
+    }
+    return ((long) subBucketIndex) << (bucketIndex + unitMagnitude);
+  }
+
+  private static int unitMagnitude(final long lowestDiscernibleValue) {
+    return 63 - Long.numberOfLeadingZeros(lowestDiscernibleValue);
+  }
+
+  /**
+   * Get the magnitude of half the number of buckets in each power of two range, such that a single
+   * unit is distinguished up to twice the power of ten of the significant digits.
+   */
+  private static int subBucketHalfCountMagnitude(final int significantDigits) {
+    long largestValueWithSingleUnitResolution = 2;
+    for (int i = 0; i < significantDigits; i++) {
+      largestValueWithSingleUnitResolution *= 10;
+    }
+    final int subBucketCountMagnitude =
+        64 - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+    return Math.max(subBucketCountMagnitude, 1) - 1;
+  }
+}
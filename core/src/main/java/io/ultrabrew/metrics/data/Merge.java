@@ -0,0 +1,72 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+/**
+ * Merge of the values of a field in rows with the same tag set in separate aggregators of the same
+ * monoid, e.g., in the shards of a {@link ShardedAggregator}.
+ */
+public enum Merge {
+  /**
+   * Sum of the values.
+   */
+  SUM {
+    @Override
+    public long merge(final Type type, final long merged, final long value, final boolean newer) {
+      if (type == Type.DOUBLE) {
+        return Double.doubleToRawLongBits(
+            Double.longBitsToDouble(merged) + Double.longBitsToDouble(value));
+      }
+      return merged + value;
+    }
+  },
+  /**
+   * Minimum of the values.
+   */
+  MIN {
+    @Override
+    public long merge(final Type type, final long merged, final long value, final boolean newer) {
+      if (type == Type.DOUBLE) {
+        final double d = Double.longBitsToDouble(merged);
+        return Double.isNaN(d) || Double.longBitsToDouble(value) < d ? value : merged;
+      }
+      return Math.min(merged, value);
+    }
+  },
+  /**
+   * Maximum of the values.
+   */
+  MAX {
+    @Override
+    public long merge(final Type type, final long merged, final long value, final boolean newer) {
+      if (type == Type.DOUBLE) {
+        final double d = Double.longBitsToDouble(merged);
+        return Double.isNaN(d) || Double.longBitsToDouble(value) > d ? value : merged;
+      }
+      return Math.max(merged, value);
+    }
+  },
+  /**
+   * Value of the most recently updated row.
+   */
+  LAST {
+    @Override
+    public long merge(final Type type, final long merged, final long value, final boolean newer) {
+      return newer ? value : merged;
+    }
+  };
+
+  /**
+   * Merge the value of a field in a row to the value merged from the previous rows.
+   *
+   * @param type type of the field
+   * @param merged value merged from the previous rows
+   * @param value value of the field in the row
+   * @param newer whether the row was updated more recently than any of the previous rows
+   * @return merged value
+   */
+  public abstract long merge(final Type type, final long merged, final long value,
+      final boolean newer);
+}
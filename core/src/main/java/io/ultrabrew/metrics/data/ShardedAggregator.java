@@ -0,0 +1,260 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.function.Supplier;
+
+/**
+ * An aggregator that spreads the measurements of a metric over multiple shards, each being a
+ * separate aggregator of the same kind. Each thread applies its measurements to the shard selected
+ * by its identifier, so that threads updating the same tag set rarely contend with each other. The
+ * rows with the same tag set in the shards are merged with {@link Aggregator#merges()} of the shards
+ * when read with a cursor.
+ *
+ * <p>Each shard has the full capacity of the aggregator it is created as, so a sharded aggregator
+ * takes up to the number of shards times the memory of a single aggregator. Sharding is intended
+ * for metrics updated at high rates by many threads.</p>
+ *
+ * <p>Both {@link #cursor()} and {@link #sortedCursor()} return the rows sorted lexically by the tag
+ * sets, as the rows of the shards are merged in order.</p>
+ */
+public class ShardedAggregator implements Aggregator {
+
+  /**
+   * Default number of shards, the number of available processors rounded up to a power of two.
+   */
+  public static final int DEFAULT_SHARDS =
+      Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+  private final Aggregator[] shards;
+  private final Merge[] merges;
+  private final int mask;
+
+  /**
+   * Create an aggregator with the default number of shards.
+   *
+   * @param shard supplier creating a new aggregator for each shard
+   */
+  public ShardedAggregator(final Supplier<? extends Aggregator> shard) {
+    this(DEFAULT_SHARDS, shard);
+  }
+
+  /**
+   * Create an aggregator with the requested number of shards.
+   *
+   * @param shards requested number of shards, rounded up to a power of two
+   * @param shard supplier creating a new aggregator for each shard
+   */
+  public ShardedAggregator(final int shards, final Supplier<? extends Aggregator> shard) {
+    if (shards < 1 || shards > 1 << 16) {
+      throw new IllegalArgumentException("Illegal number of shards");
+    }
+    this.shards = new Aggregator[Integer.highestOneBit(shards * 2 - 1)];
+    for (int i = 0; i < this.shards.length; i++) {
+      this.shards[i] = shard.get();
+    }
+    this.merges = this.shards[0].merges();
+    if (merges == null) {
+      close();
+      throw new IllegalArgumentException("Rows of the aggregator can not be merged");
+    }
+    this.mask = this.shards.length - 1;
+  }
+
+  @Override
+  public void apply(final String[] tags, final long value, final long timestamp) {
+    shards[(int) Thread.currentThread().getId() & mask].apply(tags, value, timestamp);
+  }
+
+  @Override
+  public void applyTagSet(final TagSet tags, final long value, final long timestamp) {
+    shards[(int) Thread.currentThread().getId() & mask].applyTagSet(tags, value, timestamp);
+  }
+
+  @Override
+  public Cursor cursor() {
+    return new CursorImpl();
+  }
+
+  @Override
+  public Cursor sortedCursor() {
+    return new CursorImpl();
+  }
+
+  @Override
+  public Merge[] merges() {
+    return merges;
+  }
+
+  @Override
+  public boolean consolidate() {
+    boolean consolidated = false;
+    for (final Aggregator shard : shards) {
+      consolidated |= shard.consolidate();
+    }
+    return consolidated;
+  }
+
+  @Override
+  public int evictIdle(final long currentTime) {
+    int evicted = 0;
+    for (final Aggregator shard : shards) {
+      evicted += shard.evictIdle(currentTime);
+    }
+    return evicted;
+  }
+
+  @Override
+  public long memoryUsage() {
+    long bytes = 0L;
+    for (final Aggregator shard : shards) {
+      bytes += shard.memoryUsage();
+    }
+    return bytes;
+  }
+
+  @Override
+  public void close() {
+    for (final Aggregator shard : shards) {
+      shard.close();
+    }
+  }
+
+  private class CursorImpl implements Cursor {
+
+    private final Cursor[] cursors;
+    // Tag set of the current row of each cursor, or null if the cursor has no more rows
+    private final String[][] nextTagSets;
+    // Whether the current row of each cursor has the tag set of the current merged row
+    private final boolean[] current;
+    private final String[] fields;
+    private final Type[] types;
+    private String[] tags;
+    private int i = -1;
+
+    private CursorImpl() {
+      cursors = new Cursor[shards.length];
+      nextTagSets = new String[shards.length][];
+      current = new boolean[shards.length];
+      for (int j = 0; j < shards.length; j++) {
+        cursors[j] = shards[j].sortedCursor();
+        nextTagSets[j] = cursors[j].next() ? cursors[j].getTags() : null;
+      }
+      fields = cursors[0].getFields();
+      types = cursors[0].getTypes();
+    }
+
+    @Override
+    public boolean next() {
+      if (tags != null) {
+        for (int j = 0; j < cursors.length; j++) {
+          if (current[j]) {
+            nextTagSets[j] = cursors[j].next() ? cursors[j].getTags() : null;
+          }
+        }
+      }
+
+      // Find the next lexical tag set
+      tags = null;
+      for (final String[] nextTagSet : nextTagSets) {
+        if (nextTagSet != null && (tags == null || TagSetsHelper.compare(nextTagSet, tags) < 0)) {
+          tags = nextTagSet;
+        }
+      }
+      for (int j = 0; j < cursors.length; j++) {
+        current[j] = tags != null && nextTagSets[j] != null
+            && TagSetsHelper.compare(nextTagSets[j], tags) == 0;
+      }
+      i++;
+      return tags != null;
+    }
+
+    @Override
+    public String getMetricId() {
+      return cursors[0].getMetricId();
+    }
+
+    @Override
+    public String[] getTags() {
+      if (tags == null) {
+        throw new IndexOutOfBoundsException("Not a valid row index: " + i);
+      }
+      return tags;
+    }
+
+    @Override
+    public long lastUpdated() {
+      if (tags == null) {
+        throw new IndexOutOfBoundsException("Not a valid row index: " + i);
+      }
+      long lastUpdated = Long.MIN_VALUE;
+      for (int j = 0; j < cursors.length; j++) {
+        if (current[j]) {
+          lastUpdated = Math.max(lastUpdated, cursors[j].lastUpdated());
+        }
+      }
+      return lastUpdated;
+    }
+
+    @Override
+    public long readLong(final int index) {
+      return read(index, false);
+    }
+
+    @Override
+    public double readDouble(final int index) {
+      return Double.longBitsToDouble(readLong(index));
+    }
+
+    @Override
+    public long readAndResetLong(final int index) {
+      return read(index, true);
+    }
+
+    @Override
+    public double readAndResetDouble(final int index) {
+      return Double.longBitsToDouble(readAndResetLong(index));
+    }
+
+    /**
+     * Merge the values of a field in the current rows of the shards in the order they were updated.
+     */
+    private long read(final int index, final boolean reset) {
+      if (tags == null) {
+        throw new IndexOutOfBoundsException("Not a valid row index: " + i);
+      }
+      if (index < 0 || index >= merges.length) {
+        throw new IndexOutOfBoundsException("Not a valid field index: " + index);
+      }
+      long merged = 0L;
+      long lastUpdated = Long.MIN_VALUE;
+      boolean first = true;
+      for (int j = 0; j < cursors.length; j++) {
+        if (!current[j]) {
+          continue;
+        }
+        final long updated = cursors[j].lastUpdated();
+        final long value =
+            reset ? cursors[j].readAndResetLong(index) : cursors[j].readLong(index);
+        merged = first ? value
+            : merges[index].merge(types[index], merged, value, updated >= lastUpdated);
+        lastUpdated = Math.max(lastUpdated, updated);
+        first = false;
+      }
+      return merged;
+    }
+
+    @Override
+    public String[] getFields() {
+      return fields;
+    }
+
+    @Override
+    public Type[] getTypes() {
+      return types;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+/**
+ * A cursor entry of an aggregator keeping a quantile sketch for each row. A reporter may check
+ * whether an entry is an instance of this interface, and export the sketch of the row, e.g., in its
+ * {@link DDSketch#serialize() serialized} form, so that the sketches of many hosts can be merged.
+ *
+ * @see DDSketchAggregator
+ */
+public interface SketchCursorEntry extends CursorEntry {
+
+  /**
+   * Retrieves the quantile sketch of the current row.
+   *
+   * @return a copy of the sketch, as of when the cursor moved to the current row
+   */
+  DDSketch readSketch();
+
+  /**
+   * Retrieves the quantile sketch of the current row and resets the row, unless the fields of the
+   * row have been reset already.
+   *
+   * @return a copy of the sketch, as of when the cursor moved to the current row
+   */
+  DDSketch readAndResetSketch();
+}
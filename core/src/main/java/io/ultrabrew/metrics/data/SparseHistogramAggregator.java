@@ -0,0 +1,423 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import static io.ultrabrew.metrics.Metric.DEFAULT_CARDINALITY;
+import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
+
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sun.misc.Unsafe;
+
+/**
+ * A monoid to generate histogram buckets along with the common aggregation functions for a given
+ * metric, like {@link BasicHistogramAggregator}, storing only the buckets hit by each tag set.
+ *
+ * <p>The record of a tag set holds a small dense core of cells, each of which is claimed by the
+ * first bucket hit that does not have a cell yet, and counts the measurements of that bucket. Once
+ * all cells are claimed, the other buckets of the tag set are counted in an overflow area of the
+ * tag set, which is allocated on the heap in pages of {@value #PAGE_SIZE} buckets when first hit.
+ * The memory of the table thus scales with the number of buckets hit by each tag set rather than
+ * with the number of buckets in the distribution, which suits wide latency histograms with
+ * hundreds of buckets, each series of which hits only a few.</p>
+ *
+ * <p>The cells are claimed and counted atomically without locking. A cell stays claimed by its
+ * bucket when the counts are read and reset, and is only released when the record is evicted.
+ * Reading a bucket looks up its cell, so a reporter reading all buckets of a row costs more than
+ * with a {@link BasicHistogramAggregator}.</p>
+ *
+ * <p>The fields of the rows are the same as those of a {@link BasicHistogramAggregator} with the
+ * same buckets.</p>
+ *
+ * @see DistributionBucket
+ */
+public class SparseHistogramAggregator extends ConcurrentMonoidIntTable implements Aggregator {
+
+  /**
+   * Default number of cells in the dense core of each record, which fill up the record to two
+   * 64-byte cache lines.
+   */
+  public static final int DEFAULT_CELLS = 7;
+
+  /**
+   * Number of buckets in a page of an overflow area.
+   */
+  static final int PAGE_SIZE = 16;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SparseHistogramAggregator.class);
+  private static final String[] AGGREGATION_FIELDS = {"count", "sum", "min", "max", "lastValue"};
+  private static final long[] IDENTITY = {0L, 0L, Long.MAX_VALUE, Long.MIN_VALUE, 0L, 0L};
+  private static final Merge[] MERGES =
+      {Merge.SUM, Merge.SUM, Merge.MIN, Merge.MAX, Merge.LAST};
+  // Index of the agg field holding the identifier of the overflow area of the record, or 0 if none
+  private static final int OVERFLOW = AGGREGATION_FIELDS.length;
+  // Index of the first cell, each of which is a bucket index plus one, followed by its count
+  private static final int CELLS = IDENTITY.length;
+  // Estimated size of the header of an array object
+  private static final int ARRAY_HEADER_SIZE = 16;
+
+  private final DistributionBucket buckets;
+  private final int cells;
+  private final int pages;
+  private final Map<Long, AtomicReferenceArray<AtomicIntegerArray>> overflows =
+      new ConcurrentHashMap<>();
+  private final AtomicLong overflowIds = new AtomicLong();
+
+  private final String[] fields;
+  private final Type[] types;
+  private final Merge[] merges;
+
+  /**
+   * Creates a monoid for the sparse histogram buckets for a metric.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param buckets distribution bucket spec
+   */
+  public SparseHistogramAggregator(final String metricId, final DistributionBucket buckets) {
+    this(metricId, buckets, DEFAULT_MAX_CARDINALITY);
+  }
+
+  /**
+   * Creates a monoid for the sparse histogram buckets for a metric.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param buckets distribution bucket spec
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   */
+  public SparseHistogramAggregator(final String metricId, final DistributionBucket buckets,
+      final int maxCardinality) {
+    this(metricId, buckets, maxCardinality, DEFAULT_CARDINALITY, TableOptions.DEFAULT,
+        DEFAULT_CELLS);
+  }
+
+  /**
+   * Creates a monoid for the sparse histogram buckets for a metric.
+   *
+   * @param metricId identifier of the metric associated with this aggregator
+   * @param buckets distribution bucket spec
+   * @param maxCardinality requested max capacity of table in records. Table doesn't grow beyond
+   * @param cardinality requested capacity of table in records, actual capacity may be higher
+   * @param options optional table settings
+   * @param cells number of buckets counted in the dense core of each record, at least 1
+   */
+  public SparseHistogramAggregator(final String metricId, final DistributionBucket buckets,
+      final int maxCardinality, final int cardinality, final TableOptions options,
+      final int cells) {
+    super(metricId, CELLS + 2 * checkCells(cells, options), maxCardinality, cardinality,
+        IDENTITY, options);
+    this.buckets = buckets;
+    this.cells = cells;
+    this.pages = (buckets.getCount() + PAGE_SIZE - 1) / PAGE_SIZE;
+    this.fields = new String[AGGREGATION_FIELDS.length + buckets.getCount()];
+    System.arraycopy(AGGREGATION_FIELDS, 0, fields, 0, AGGREGATION_FIELDS.length);
+    System.arraycopy(buckets.getBucketNames(), 0, fields, AGGREGATION_FIELDS.length,
+        buckets.getCount());
+    this.types = new Type[fields.length];
+    Arrays.fill(types, Type.LONG);
+    this.merges = new Merge[fields.length];
+    System.arraycopy(MERGES, 0, merges, 0, MERGES.length);
+    Arrays.fill(merges, MERGES.length, merges.length, Merge.SUM);
+  }
+
+  private static int checkCells(final int cells, final TableOptions options) {
+    if (cells < 1) {
+      throw new IllegalArgumentException("Number of cells must be at least 1");
+    }
+    if (options.getCounterBits() != Integer.SIZE) {
+      // The cells hold bucket indexes, which may not fit in narrow counters
+      throw new IllegalArgumentException("Sparse histograms require 32-bit counters");
+    }
+    return cells;
+  }
+
+  @Override
+  public void apply(final String[] tags, final long value, final long timestamp) {
+    super.apply(tags, value, timestamp);
+  }
+
+  @Override
+  public void applyTagSet(final TagSet tags, final long value, final long timestamp) {
+    super.applyTagSet(tags, value, timestamp);
+  }
+
+  @Override
+  protected void combine(final int[] table, final long baseOffset, final long value) {
+    addToAggField(table, baseOffset, 0, 1);
+    addToAggField(table, baseOffset, 1, value);
+    minAggField(table, baseOffset, 2, value);
+    maxAggField(table, baseOffset, 3, value);
+    setAggField(table, baseOffset, 4, value);
+
+    final int bucketIndex = buckets.getBucketIndex(value);
+    final int key = bucketIndex + 1;
+    for (int i = 0; i < cells; i++) {
+      final int cell = CELLS + 2 * i;
+      int current = (int) read(table, baseOffset, cell);
+      if (current == 0) {
+        if (compareAndSetDataField(table, baseOffset, cell, 0, key)) {
+          current = key;
+        } else {
+          ///CLOVER:OFF
+          // No reliable way to test the race between claiming the same cell
+          current = (int) read(table, baseOffset, cell);
+          ///CLOVER:ON
+        }
+      }
+      if (current == key) {
+        addToDataField(table, baseOffset, cell + 1, 1);
+        return;
+      }
+    }
+
+    final AtomicReferenceArray<AtomicIntegerArray> overflow = overflow(table, baseOffset);
+    if (overflow == null) {
+      ///CLOVER:OFF
+      // No reliable way to test the race between updating and evicting a record
+      return; // the record has been evicted meanwhile
+      ///CLOVER:ON
+    }
+    AtomicIntegerArray page = overflow.get(bucketIndex / PAGE_SIZE);
+    if (page == null) {
+      overflow.compareAndSet(bucketIndex / PAGE_SIZE, null, new AtomicIntegerArray(PAGE_SIZE));
+      page = overflow.get(bucketIndex / PAGE_SIZE);
+    }
+    page.incrementAndGet(bucketIndex % PAGE_SIZE);
+  }
+
+  /**
+   * Get the overflow area of a record, allocating it if the record has none yet.
+   */
+  private AtomicReferenceArray<AtomicIntegerArray> overflow(final int[] table,
+      final long baseOffset) {
+    long id = read(table, baseOffset, OVERFLOW);
+    if (id == 0L) {
+      final long newId = overflowIds.incrementAndGet();
+      // Publish the area before its identifier, so that any thread reading the identifier finds it
+      overflows.put(newId, new AtomicReferenceArray<>(pages));
+      if (compareAndSetAggField(table, baseOffset, OVERFLOW, 0L, newId)) {
+        id = newId;
+      } else {
+        ///CLOVER:OFF
+        // No reliable way to test the race between allocating the overflow area of a record
+        overflows.remove(newId);
+        id = read(table, baseOffset, OVERFLOW);
+        ///CLOVER:ON
+      }
+    }
+    return overflows.get(id);
+  }
+
+  /**
+   * Release the overflow area of an evicted record.
+   */
+  @Override
+  protected void evicted(final int[] table, final long baseOffset) {
+    final long id = read(table, baseOffset, OVERFLOW);
+    if (id != 0L) {
+      overflows.remove(id);
+    }
+  }
+
+  /**
+   * Estimate the memory held by the table together with the overflow areas of the records.
+   */
+  @Override
+  public long memoryUsage() {
+    long bytes = super.memoryUsage();
+    for (final AtomicReferenceArray<AtomicIntegerArray> overflow : overflows.values()) {
+      bytes += ARRAY_HEADER_SIZE + (long) pages * Unsafe.ARRAY_OBJECT_INDEX_SCALE;
+      for (int i = 0; i < pages; i++) {
+        if (overflow.get(i) != null) {
+          bytes += ARRAY_HEADER_SIZE + PAGE_SIZE * Unsafe.ARRAY_INT_INDEX_SCALE;
+        }
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public void close() {
+    super.close();
+    overflows.clear();
+  }
+
+  @Override
+  public Cursor cursor() {
+    return new CursorImpl(tagSets, false);
+  }
+
+  @Override
+  public Cursor sortedCursor() {
+    return new CursorImpl(tagSets, true);
+  }
+
+  @Override
+  public Merge[] merges() {
+    return merges;
+  }
+
+  private class CursorImpl implements Cursor {
+
+    private final String[][] tagSets;
+    // Index of each sorted tag set in the tag set array of the table, or null if not sorted
+    private final int[] tagIndexes;
+    private int i = -1;
+    private long base = 0;
+    private int[] table;
+
+    private CursorImpl(final String[][] tagSets, final boolean sorted) {
+      if (sorted) {
+        final String[][] snapshot = tagSets.clone();
+        this.tagIndexes = TagSetsHelper.sortedIndexes(snapshot);
+        this.tagSets = new String[snapshot.length][];
+        for (int j = 0; j < snapshot.length; j++) {
+          this.tagSets[j] = snapshot[tagIndexes[j]];
+        }
+      } else {
+        this.tagSets = tagSets;
+        this.tagIndexes = null;
+      }
+    }
+
+    @Override
+    public String getMetricId() {
+      return metricId;
+    }
+
+    @Override
+    public boolean next() {
+      for (; ; ) {
+        i++;
+        if (i >= tagSets.length || isClosed()) {
+          return false;
+        }
+        if (tagSets[i] == null) {
+          if (hasIdleTimeout()) {
+            continue; // skip the released tag set of an evicted record
+          }
+          return false;
+        }
+
+        final Chain chain = currentChain();
+        long index = index(chain, tagIndexes == null ? i : tagIndexes[i], tagSets[i]);
+
+        if (NOT_FOUND == index) {
+          if (hasIdleTimeout()) {
+            continue; // the record has been evicted after the cursor was created
+          }
+          LOGGER.error("Missing index on Read. Tags: {}. Concurrency error or bug",
+              Arrays.asList(tagSets[i]));
+          return false;
+        }
+
+        // Decode table index and slot index from long.
+        // Upper 32 bits represent the table index and lower 32 bits represent the slot index.
+        // This logic is replicated in multiple places for performance reasons.
+        int tableIndex = (int) ((index & TABLE_MASK) >> 32);
+        int slotIndex = (int) (index & SLOT_MASK);
+
+        table = table(chain, tableIndex);
+        base = baseOffset(chain, tableIndex, slotIndex);
+        return true;
+      }
+    }
+
+    private void checkRow() {
+      if (i < 0 || i >= tagSets.length || tagSets[i] == null) {
+        throw new IndexOutOfBoundsException("Not a valid row index: " + i);
+      }
+    }
+
+    private void checkField(final int index) {
+      checkRow();
+      if (index < 0 || index >= fields.length) {
+        throw new IndexOutOfBoundsException("Not a valid field index: " + index);
+      }
+    }
+
+    @Override
+    public String[] getTags() {
+      checkRow();
+      return tagSets[i];
+    }
+
+    @Override
+    public long lastUpdated() {
+      checkRow();
+      return readTime(table, base);
+    }
+
+    @Override
+    public long readLong(final int index) {
+      checkField(index);
+      if (index < AGGREGATION_FIELDS.length) {
+        return read(table, base, index);
+      }
+      return readBucket(index - AGGREGATION_FIELDS.length, false);
+    }
+
+    @Override
+    public double readDouble(final int index) {
+      throw new UnsupportedOperationException("Invalid operation");
+    }
+
+    @Override
+    public long readAndResetLong(final int index) {
+      checkField(index);
+      if (index < AGGREGATION_FIELDS.length) {
+        return readAndReset(table, base, index, IDENTITY[index]);
+      }
+      return readBucket(index - AGGREGATION_FIELDS.length, true);
+    }
+
+    @Override
+    public double readAndResetDouble(final int index) {
+      throw new UnsupportedOperationException("Invalid operation");
+    }
+
+    /**
+     * Read the count of a bucket from its cell, or from the overflow area if it has no cell.
+     */
+    private long readBucket(final int bucketIndex, final boolean reset) {
+      final int key = bucketIndex + 1;
+      for (int j = 0; j < cells; j++) {
+        final int cell = CELLS + 2 * j;
+        final int current = (int) read(table, base, cell);
+        if (current == key) {
+          return reset ? readAndReset(table, base, cell + 1, 0L) : read(table, base, cell + 1);
+        }
+        if (current == 0) {
+          return 0L; // the cells are claimed in order, so no later cell has the bucket
+        }
+      }
+      final AtomicReferenceArray<AtomicIntegerArray> overflow =
+          overflows.get(read(table, base, OVERFLOW));
+      final AtomicIntegerArray page =
+          overflow == null ? null : overflow.get(bucketIndex / PAGE_SIZE);
+      if (page == null) {
+        return 0L;
+      }
+      return reset ? page.getAndSet(bucketIndex % PAGE_SIZE, 0)
+          : page.get(bucketIndex % PAGE_SIZE);
+    }
+
+    @Override
+    public String[] getFields() {
+      return fields;
+    }
+
+    @Override
+    public Type[] getTypes() {
+      return types;
+    }
+  }
+}
@@ -0,0 +1,242 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import io.ultrabrew.metrics.util.TagDictionary;
+
+/**
+ * Optional settings of the hash tables backing the aggregators, i.e. {@link
+ * ConcurrentMonoidLongTable} and {@link ConcurrentMonoidIntTable}.
+ *
+ * <pre>{@code
+ *     TableOptions options = TableOptions.builder()
+ *         .withVerifyTags(true)
+ *         .withOffHeap(true)
+ *         .withAlignedRecords(true)
+ *         .withIdleTimeoutMillis(TimeUnit.MINUTES.toMillis(10))
+ *         .build();
+ *     Aggregator aggregator = new BasicCounterAggregator("requests", 4096, 128, options);
+ *     ...
+ *     aggregator.close();
+ * }</pre>
+ *
+ * <p>This class is immutable.</p>
+ */
+public final class TableOptions {
+
+  /**
+   * Default options used when none are given.
+   */
+  public static final TableOptions DEFAULT = builder().build();
+
+  private final boolean verifyTags;
+  private final boolean offHeap;
+  private final boolean alignedRecords;
+  private final long idleTimeoutMillis;
+  private final TagDictionary tagDictionary;
+  private final int counterBits;
+
+  private TableOptions(final Builder builder) {
+    this.verifyTags = builder.verifyTags;
+    this.offHeap = builder.offHeap || builder.alignedRecords;
+    this.alignedRecords = builder.alignedRecords;
+    this.idleTimeoutMillis = builder.idleTimeoutMillis;
+    this.tagDictionary = builder.tagDictionary;
+    this.counterBits = builder.counterBits;
+  }
+
+  /**
+   * Create a new builder for constructing {@link TableOptions}.
+   *
+   * @return new builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Whether the tag set stored in a record is compared to the given tag set whenever their
+   * fingerprints match.
+   *
+   * @return true if tag sets are verified on lookup
+   */
+  public boolean isVerifyTags() {
+    return verifyTags;
+  }
+
+  /**
+   * Whether the records are stored in native memory outside of the Java heap.
+   *
+   * @return true if records are stored off-heap
+   */
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /**
+   * Whether each record starts on a cache line boundary. Aligned records are always stored
+   * off-heap.
+   *
+   * @return true if records are aligned to cache lines
+   */
+  public boolean isAlignedRecords() {
+    return alignedRecords;
+  }
+
+  /**
+   * Time after which a record that has not been updated is evicted.
+   *
+   * @return idle timeout in milliseconds, or 0 if records are never evicted
+   */
+  public long getIdleTimeoutMillis() {
+    return idleTimeoutMillis;
+  }
+
+  /**
+   * Dictionary of the tag keys and values stored with the records.
+   *
+   * @return tag dictionary, or null if tag sets are copied as given
+   */
+  public TagDictionary getTagDictionary() {
+    return tagDictionary;
+  }
+
+  /**
+   * Width of the counters of the data fields of {@link ConcurrentMonoidIntTable}, e.g., the bucket
+   * counts of histograms.
+   *
+   * @return 8, 16 or 32 bits
+   */
+  public int getCounterBits() {
+    return counterBits;
+  }
+
+  /**
+   * Builder class for constructing {@link TableOptions} instances.
+   */
+  public static final class Builder {
+
+    private boolean verifyTags = false;
+    private boolean offHeap = false;
+    private boolean alignedRecords = false;
+    private long idleTimeoutMillis = 0;
+    private TagDictionary tagDictionary = null;
+    private int counterBits = Integer.SIZE;
+
+    private Builder() {
+    }
+
+    /**
+     * Sets whether the full tag set is compared on a fingerprint match. Records are identified by a
+     * 64-bit fingerprint of the tag set, so a collision between two different tag sets is very
+     * unlikely. When enabled, a colliding tag set is stored as a separate record at the cost of
+     * comparing the tag keys and values on every lookup.
+     *
+     * @param verifyTags defaults to false
+     * @return builder
+     */
+    public Builder withVerifyTags(final boolean verifyTags) {
+      this.verifyTags = verifyTags;
+      return this;
+    }
+
+    /**
+     * Sets whether the records are stored in native memory outside of the Java heap. Large
+     * long-lived tables on the heap are repeatedly scanned and copied by the garbage collector,
+     * which off-heap tables avoid. The native memory is only released when the aggregator is
+     * closed with {@link Aggregator#close()}, and is leaked otherwise.
+     *
+     * @param offHeap defaults to false
+     * @return builder
+     */
+    public Builder withOffHeap(final boolean offHeap) {
+      this.offHeap = offHeap;
+      return this;
+    }
+
+    /**
+     * Sets whether each record starts on a cache line boundary. The records are padded to a
+     * multiple of a 64-byte cache line in any case, but the tables are not aligned, so a record
+     * may still share a line with each of its neighbours. Threads updating neighbouring records
+     * then contend for the shared lines. The garbage collector may move arrays on the heap, so
+     * only off-heap tables can be aligned, and enabling aligned records also stores the records
+     * off-heap.
+     *
+     * @param alignedRecords defaults to false
+     * @return builder
+     * @see #withOffHeap(boolean)
+     */
+    public Builder withAlignedRecords(final boolean alignedRecords) {
+      this.alignedRecords = alignedRecords;
+      return this;
+    }
+
+    /**
+     * Sets the time after which a record that has not been updated is evicted by {@link
+     * Aggregator#evictIdle(long)}. The slot and the tag set of an evicted record are reused by new
+     * records, so that short-lived tag values, e.g., host or container names, do not fill up the
+     * table to its maximum capacity in a long-running process.
+     *
+     * <p>When the aggregator is used by a {@link
+     * io.ultrabrew.metrics.reporters.TimeWindowReporter} with a ring of N windows, as set by
+     * {@code withWindows(int)} of its builder, the timeout should be longer than N reporting
+     * windows, as each window's aggregator is only written to once every N windows.</p>
+     *
+     * @param idleTimeoutMillis defaults to 0, which disables eviction
+     * @return builder
+     */
+    public Builder withIdleTimeoutMillis(final long idleTimeoutMillis) {
+      if (idleTimeoutMillis < 0) {
+        throw new IllegalArgumentException("Idle timeout must not be negative");
+      }
+      this.idleTimeoutMillis = idleTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Sets the dictionary of the tag keys and values stored with the records. The tag sets of all
+     * aggregators sharing a dictionary refer to its strings, so that each distinct tag key and
+     * value is stored once regardless of how many series, aggregators and reporting windows it
+     * appears in. The tag set of a record is released from the dictionary when the record is
+     * evicted or the aggregator is closed.
+     *
+     * @param tagDictionary defaults to null, which stores a plain copy of each tag set
+     * @return builder
+     */
+    public Builder withTagDictionary(final TagDictionary tagDictionary) {
+      this.tagDictionary = tagDictionary;
+      return this;
+    }
+
+    /**
+     * Sets the width of the counters of the data fields of {@link ConcurrentMonoidIntTable}, e.g.,
+     * the bucket counts of {@link BasicHistogramAggregator}. Narrow counters are packed into the
+     * ints of a record, so that the records of low-rate series take a fraction of the memory. When
+     * a counter of a record overflows, the record is promoted to wide counters on the heap, to
+     * which the overflow is carried atomically, so that no counter ever wraps. Updating a narrow
+     * counter takes a compare-and-swap instead of an atomic add. Does not apply to the tables of
+     * {@link ConcurrentMonoidLongTable}.
+     *
+     * @param counterBits 8, 16 or 32, defaults to 32
+     * @return builder
+     */
+    public Builder withCounterBits(final int counterBits) {
+      if (counterBits != Byte.SIZE && counterBits != Short.SIZE && counterBits != Integer.SIZE) {
+        throw new IllegalArgumentException("Counter bits must be 8, 16 or 32");
+      }
+      this.counterBits = counterBits;
+      return this;
+    }
+
+    /**
+     * Build a new {@link TableOptions} instance.
+     *
+     * @return table options
+     */
+    public TableOptions build() {
+      return new TableOptions(this);
+    }
+  }
+}
@@ -4,6 +4,8 @@
 
 package io.ultrabrew.metrics.data;
 
+import java.util.Arrays;
+
 class TagSetsHelper {
 
   /**
@@ -47,4 +49,23 @@ class TagSetsHelper {
 
     return len1 - len2;
   }
+
+  /**
+   * Returns the indexes of the given tag sets in the sort order of the tag sets.
+   *
+   * @param tagSets tag sets, which must not be modified while sorting
+   * @return indexes of the tag sets sorted by {@link #compare(String[], String[])}
+   */
+  static int[] sortedIndexes(final String[][] tagSets) {
+    final Integer[] indexes = new Integer[tagSets.length];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = i;
+    }
+    Arrays.sort(indexes, (i1, i2) -> compare(tagSets[i1], tagSets[i2]));
+    final int[] result = new int[indexes.length];
+    for (int i = 0; i < indexes.length; i++) {
+      result[i] = indexes[i];
+    }
+    return result;
+  }
 }
@@ -10,12 +10,35 @@ public enum Type {
     public String readAndReset(final CursorEntry cursorEntry, final int index) {
       return String.valueOf(cursorEntry.readAndResetLong(index));
     }
+
+    @Override
+    public void readAndReset(final CursorEntry cursorEntry, final int index,
+        final FieldSink sink) {
+      sink.acceptLong(index, cursorEntry.readAndResetLong(index));
+    }
   }, DOUBLE {
     @Override
     public String readAndReset(final CursorEntry cursorEntry, final int index) {
       return String.valueOf(cursorEntry.readAndResetDouble(index));
     }
+
+    @Override
+    public void readAndReset(final CursorEntry cursorEntry, final int index,
+        final FieldSink sink) {
+      sink.acceptDouble(index, cursorEntry.readAndResetDouble(index));
+    }
   };
 
   public abstract String readAndReset(final CursorEntry cursorEntry, final int index);
+
+  /**
+   * Reads the value of a field of this type and resets it, passing the value to the sink without
+   * boxing or formatting it.
+   *
+   * @param cursorEntry cursor entry of the row
+   * @param index index of the field
+   * @param sink sink accepting the value
+   */
+  public abstract void readAndReset(final CursorEntry cursorEntry, final int index,
+      final FieldSink sink);
 }
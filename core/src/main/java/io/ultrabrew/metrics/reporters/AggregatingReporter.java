@@ -17,8 +17,11 @@ import io.ultrabrew.metrics.data.BasicGaugeDoubleAggregator;
 import io.ultrabrew.metrics.data.BasicHistogramAggregator;
 import io.ultrabrew.metrics.data.BasicTimerAggregator;
 import io.ultrabrew.metrics.data.Cursor;
+import io.ultrabrew.metrics.data.TableOptions;
 import io.ultrabrew.metrics.data.Type;
+import io.ultrabrew.metrics.util.TagSet;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
@@ -41,7 +44,7 @@ import java.util.function.Function;
  *
  * @see BasicHistogramAggregator
  */
-public abstract class AggregatingReporter implements Reporter {
+public abstract class AggregatingReporter implements Reporter, AutoCloseable {
 
   private static final String[] NO_TAGS = new String[]{};
 
@@ -136,6 +139,28 @@ public abstract class AggregatingReporter implements Reporter {
                 put(Timer.class, metric -> new BasicTimerAggregator((Timer) metric));
               }});
 
+  /**
+   * Default aggregators for the default metrics, storing their records with the given options,
+   * e.g., in a tag dictionary shared by the aggregators of a reporter.
+   *
+   * @param options options of the hash tables of the aggregators
+   * @return a map of a metric class to a supplier creating a new aggregator
+   */
+  public static Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>>
+      defaultAggregators(final TableOptions options) {
+    final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> aggregators =
+        new HashMap<>();
+    aggregators.put(Counter.class, metric -> new BasicCounterAggregator(metric.id,
+        metric.maxCardinality, metric.cardinality, options));
+    aggregators.put(Gauge.class, metric -> new BasicGaugeAggregator(metric.id,
+        metric.maxCardinality, metric.cardinality, options));
+    aggregators.put(GaugeDouble.class, metric -> new BasicGaugeDoubleAggregator(metric.id,
+        metric.maxCardinality, metric.cardinality, options));
+    aggregators.put(Timer.class, metric -> new BasicTimerAggregator(metric.id,
+        metric.maxCardinality, metric.cardinality, options));
+    return Collections.unmodifiableMap(aggregators);
+  }
+
   /**
    * Concurrent map of {@link Aggregator}s for each metric. The key of the map is the identifier of
    * the metric and the value is the aggregator to be used for that metric.
@@ -150,6 +175,10 @@ public abstract class AggregatingReporter implements Reporter {
    */
   private final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators;
 
+  // Whether a subclass overrides createAggregator(Metric), so that whether a metric is aggregated
+  // is only known once its aggregator has been created
+  private final boolean overridesCreateAggregator;
+
   /**
    * Create an aggregating reporter with default aggregators for default metrics only.
    */
@@ -165,7 +194,7 @@ public abstract class AggregatingReporter implements Reporter {
    */
   protected AggregatingReporter(
       final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators) {
-    this(defaultAggregators, Collections.EMPTY_MAP);
+    this(defaultAggregators, Collections.emptyMap());
   }
 
   /**
@@ -181,6 +210,22 @@ public abstract class AggregatingReporter implements Reporter {
     this.aggregators = new ConcurrentHashMap<>();
     this.defaultAggregators = Collections.unmodifiableMap(defaultAggregators);
     this.metricAggregators = Collections.unmodifiableMap(metricAggregators);
+    this.overridesCreateAggregator = overridesCreateAggregator(getClass());
+  }
+
+  /**
+   * Returns whether the given subclass overrides {@link #createAggregator(Metric)}.
+   */
+  private static boolean overridesCreateAggregator(final Class<?> type) {
+    for (Class<?> c = type; c != AggregatingReporter.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("createAggregator", Metric.class);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // check the superclass
+      }
+    }
+    return false;
   }
 
   @Override
@@ -193,6 +238,151 @@ public abstract class AggregatingReporter implements Reporter {
     aggregator.apply(tags != null ? tags : NO_TAGS, value, timestamp);
   }
 
+  @Override
+  public void emitTagSet(final Metric metric, final long timestamp, final long value,
+      final TagSet tags) {
+    Aggregator aggregator = aggregators.get(metric.id);
+    if (aggregator == null) {
+      aggregator = aggregators.computeIfAbsent(metric.id, (k) -> createAggregator(metric));
+    }
+    aggregator.applyTagSet(tags, value, timestamp);
+  }
+
+  @Override
+  public void emitBatch(final Metric metric, final long timestamp, final long[] values,
+      final String[][] tags) {
+    Aggregator aggregator = aggregators.get(metric.id);
+    if (aggregator == null) {
+      aggregator = aggregators.computeIfAbsent(metric.id, (k) -> createAggregator(metric));
+    }
+    aggregator.applyBatch(withoutNulls(tags), values, timestamp);
+  }
+
+  /**
+   * Route the measurement events of the metric directly to its aggregator. The aggregator is
+   * created on the first measurement event, so that a metric that is never measured, e.g., in some
+   * of the windows of a {@link TimeWindowReporter}, does not allocate one. A metric is ignored if
+   * it is already known to be aggregated with {@link #NOOP}, or if it has no aggregator supplier
+   * and {@link #createAggregator(Metric)} is not overridden.
+   */
+  @Override
+  public Reporter route(final Metric metric) {
+    final Aggregator aggregator = aggregators.get(metric.id);
+    if (aggregator == NOOP || (aggregator == null && !overridesCreateAggregator
+        && !metricAggregators.containsKey(metric.id)
+        && !defaultAggregators.containsKey(metric.getClass()))) {
+      return null;
+    }
+    return new Route(aggregator);
+  }
+
+  /**
+   * Remove the aggregator of the metric and release its resources. The metric must not be measured
+   * nor its aggregator read by other threads, as the aggregator is closed immediately.
+   */
+  @Override
+  public void remove(final Metric metric) {
+    final Aggregator aggregator = aggregators.remove(metric.id);
+    if (aggregator != null) {
+      aggregator.close();
+    }
+  }
+
+  @Override
+  public long memoryUsage(final Metric metric) {
+    final Aggregator aggregator = aggregators.get(metric.id);
+    return aggregator != null ? aggregator.memoryUsage() : 0L;
+  }
+
+  /**
+   * Consumer of the measurement events of a single metric applying them to its aggregator.
+   */
+  private final class Route implements Reporter {
+
+    private volatile Aggregator aggregator;
+
+    private Route(final Aggregator aggregator) {
+      this.aggregator = aggregator;
+    }
+
+    /**
+     * Get the aggregator of the metric, creating it on the first measurement event.
+     */
+    private Aggregator aggregator(final Metric metric) {
+      Aggregator aggregator = this.aggregator;
+      if (aggregator == null) {
+        aggregator = aggregators.computeIfAbsent(metric.id, (k) -> createAggregator(metric));
+        this.aggregator = aggregator;
+      }
+      return aggregator;
+    }
+
+    @Override
+    public void emit(final Metric metric, final long timestamp, final long value,
+        final String[] tags) {
+      aggregator(metric).apply(tags != null ? tags : NO_TAGS, value, timestamp);
+    }
+
+    @Override
+    public void emitTagSet(final Metric metric, final long timestamp, final long value,
+        final TagSet tags) {
+      aggregator(metric).applyTagSet(tags, value, timestamp);
+    }
+
+    @Override
+    public void emitBatch(final Metric metric, final long timestamp, final long[] values,
+        final String[][] tags) {
+      aggregator(metric).applyBatch(withoutNulls(tags), values, timestamp);
+    }
+  }
+
+  /**
+   * Replace the null tag arrays of a batch with empty ones, copying the batch only if needed.
+   */
+  private static String[][] withoutNulls(final String[][] tags) {
+    String[][] result = tags;
+    for (int i = 0; i < tags.length; i++) {
+      if (tags[i] == null) {
+        if (result == tags) {
+          result = tags.clone();
+        }
+        result[i] = NO_TAGS;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Evict the idle rows of all aggregators of the reporter. The reporter should not be actively
+   * written to while it is evicted.
+   *
+   * @param currentTime current time, measured in milliseconds since midnight, January 1, 1970 UTC.
+   * @see Aggregator#evictIdle(long)
+   */
+  public void evictIdle(final long currentTime) {
+    aggregators.values().forEach(aggregator -> aggregator.evictIdle(currentTime));
+  }
+
+  /**
+   * Consolidate the storage of all aggregators of the reporter to speed up subsequent lookups. The
+   * reporter should not be actively written to while it is consolidated.
+   *
+   * @see Aggregator#consolidate()
+   */
+  public void consolidate() {
+    aggregators.values().forEach(Aggregator::consolidate);
+  }
+
+  /**
+   * Close all aggregators of the reporter to release their resources, e.g., off-heap memory. The
+   * reporter must not be closed while measurement events are emitted to it or its aggregators are
+   * read.
+   */
+  @Override
+  public void close() {
+    aggregators.values().forEach(Aggregator::close);
+  }
+
   /**
    * Create a new aggregator for a metric. Called when an measurement event from previously unseen
    * metric is received in this aggregator.
@@ -0,0 +1,447 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.reporters;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.ultrabrew.metrics.Metric;
+import io.ultrabrew.metrics.Reporter;
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A reporter decorator that publishes the measurement events into preallocated lock-free ring
+ * buffers, from which background drainer threads emit them to the decorated reporter. An emitting
+ * thread only claims a sequence number and stores the event, and each aggregator of the decorated
+ * reporter is only written to by a single drainer thread, so the aggregation is never contended.
+ *
+ * <pre>{@code
+ *     SLF4JReporter reporter = SLF4JReporter.builder().withName("metrics").build();
+ *     AsyncReporter asyncReporter = AsyncReporter.builder()
+ *         .withReporter(reporter)
+ *         .withOverflowPolicy(AsyncReporter.OverflowPolicy.DROP)
+ *         .build();
+ *     metricRegistry.addReporter(asyncReporter);
+ *     ...
+ *     asyncReporter.close();
+ *     reporter.close();
+ * }</pre>
+ *
+ * <p>The events of a metric are always drained by the same thread. Events emitted with a tag array
+ * are published with a copy of the array, as the array may be reused by the caller, e.g., with
+ * {@link io.ultrabrew.metrics.util.TagArray}. Emitting with a {@link TagSet} or through a bound
+ * metric avoids the copy.</p>
+ *
+ * <p>When a ring buffer is full, the event is handled according to the {@link OverflowPolicy}.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class AsyncReporter implements Reporter, AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(AsyncReporter.class);
+
+  public static final int DEFAULT_CAPACITY = 1 << 16;
+  public static final int DEFAULT_DRAINERS = 1;
+
+  private static final int DRAIN_BATCH_SIZE = 256;
+  private static final int IDLE_SPINS = 100;
+  private static final long IDLE_PARK_NANOS = 100_000L;
+
+  /**
+   * Handling of a measurement event emitted when the ring buffer is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Drop the event and count it in {@link #getDropped()}.
+     */
+    DROP,
+    /**
+     * Wait for the drainer thread to make room for the event.
+     */
+    BLOCK,
+    /**
+     * Emit the event to the decorated reporter in the emitting thread.
+     */
+    INLINE
+  }
+
+  private final Reporter reporter;
+  private final OverflowPolicy overflowPolicy;
+  private final Ring[] rings;
+  private final Thread[] drainers;
+  private final LongAdder dropped = new LongAdder();
+  private volatile boolean closed = false;
+
+  private AsyncReporter(final Reporter reporter, final int capacity, final int drainers,
+      final OverflowPolicy overflowPolicy) {
+    this.reporter = reporter;
+    this.overflowPolicy = overflowPolicy;
+    this.rings = new Ring[drainers];
+    this.drainers = new Thread[drainers];
+    for (int i = 0; i < drainers; i++) {
+      final Ring ring = new Ring(capacity);
+      rings[i] = ring;
+      this.drainers[i] = new Thread(() -> drain(ring), "AsyncReporter-" + i);
+      this.drainers[i].setDaemon(true);
+      this.drainers[i].start();
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public void emit(final Metric metric, final long timestamp, final long value,
+      final String[] tags) {
+    publish(ring(metric), reporter, metric, timestamp, value, copy(tags));
+  }
+
+  @Override
+  public void emitTagSet(final Metric metric, final long timestamp, final long value,
+      final TagSet tags) {
+    publish(ring(metric), reporter, metric, timestamp, value, tags);
+  }
+
+  /**
+   * Route the measurement events of the metric through the ring buffer of its drainer thread to
+   * the route of the decorated reporter.
+   */
+  @Override
+  public Reporter route(final Metric metric) {
+    final Reporter route = reporter.route(metric);
+    if (route == null) {
+      return null;
+    }
+    final Ring ring = ring(metric);
+    return new Reporter() {
+      @Override
+      public void emit(final Metric metric, final long timestamp, final long value,
+          final String[] tags) {
+        publish(ring, route, metric, timestamp, value, copy(tags));
+      }
+
+      @Override
+      public void emitTagSet(final Metric metric, final long timestamp, final long value,
+          final TagSet tags) {
+        publish(ring, route, metric, timestamp, value, tags);
+      }
+    };
+  }
+
+  /**
+   * Get the number of measurement events dropped because a ring buffer was full, or because the
+   * reporter was closed.
+   *
+   * @return number of dropped events
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Emit the measurement events of the metric already published, and then remove the metric from
+   * the decorated reporter.
+   */
+  @Override
+  public void remove(final Metric metric) {
+    flush();
+    reporter.remove(metric);
+  }
+
+  @Override
+  public long memoryUsage(final Metric metric) {
+    return reporter.memoryUsage(metric);
+  }
+
+  /**
+   * Wait until all measurement events published before the call have been emitted to the decorated
+   * reporter.
+   */
+  public void flush() {
+    for (final Ring ring : rings) {
+      final long tail = ring.tail.get();
+      while (ring.head.get() < tail && !closed) {
+        Thread.yield();
+      }
+    }
+  }
+
+  /**
+   * Stop the drainer threads after they have emitted the measurement events already published.
+   * Events emitted after the reporter has been closed are dropped. The decorated reporter is not
+   * closed.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (final Thread drainer : drainers) {
+      LockSupport.unpark(drainer);
+      try {
+        drainer.join();
+      } catch (InterruptedException e) {
+        ///CLOVER:OFF
+        Thread.currentThread().interrupt();
+        return;
+        ///CLOVER:ON
+      }
+    }
+  }
+
+  private Ring ring(final Metric metric) {
+    return rings[Math.floorMod(metric.id.hashCode(), rings.length)];
+  }
+
+  private void publish(final Ring ring, final Reporter target, final Metric metric,
+      final long timestamp, final long value, final Object tags) {
+    if (closed) {
+      dropped.increment();
+      return;
+    }
+    long sequence = ring.claim();
+    if (sequence < 0) {
+      switch (overflowPolicy) {
+        case INLINE:
+          deliver(target, metric, timestamp, value, tags);
+          return;
+        case BLOCK:
+          while ((sequence = ring.claim()) < 0) {
+            if (closed) {
+              dropped.increment();
+              return;
+            }
+            Thread.yield();
+          }
+          break;
+        default:
+          dropped.increment();
+          return;
+      }
+    }
+    ring.publish(sequence, target, metric, timestamp, value, tags);
+  }
+
+  private void drain(final Ring ring) {
+    int idle = 0;
+    while (true) {
+      if (ring.drain(DRAIN_BATCH_SIZE) > 0) {
+        idle = 0;
+      } else if (closed) {
+        // Drain the events published before the close
+        if (ring.drain(Integer.MAX_VALUE) == 0) {
+          return;
+        }
+      } else if (++idle < IDLE_SPINS) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(IDLE_PARK_NANOS);
+      }
+    }
+  }
+
+  private static void deliver(final Reporter target, final Metric metric, final long timestamp,
+      final long value, final Object tags) {
+    try {
+      if (tags instanceof TagSet) {
+        target.emitTagSet(metric, timestamp, value, (TagSet) tags);
+      } else {
+        target.emit(metric, timestamp, value, (String[]) tags);
+      }
+    } catch (Throwable t) {
+      logger.error("Error emitting metric " + metric.id, t);
+    }
+  }
+
+  private static String[] copy(final String[] tags) {
+    return tags != null ? tags.clone() : null;
+  }
+
+  /**
+   * A bounded multi-producer single-consumer ring buffer of measurement events. A producer claims a
+   * sequence number by advancing the tail, stores the event into the slot of the sequence and
+   * publishes it by storing the sequence number of the slot. The consumer advances the head over
+   * the published slots.
+   */
+  private static final class Ring {
+
+    private final int capacity;
+    private final int mask;
+    private final Reporter[] targets;
+    private final Metric[] metrics;
+    private final long[] timestamps;
+    private final long[] values;
+    private final Object[] tags;
+    private final AtomicLongArray sequences;
+    private final PaddedSequence tail = new PaddedSequence();
+    private final PaddedSequence head = new PaddedSequence();
+
+    private Ring(final int capacity) {
+      this.capacity = capacity;
+      this.mask = capacity - 1;
+      this.targets = new Reporter[capacity];
+      this.metrics = new Metric[capacity];
+      this.timestamps = new long[capacity];
+      this.values = new long[capacity];
+      this.tags = new Object[capacity];
+      this.sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        sequences.set(i, -1L);
+      }
+    }
+
+    /**
+     * Claim the next sequence number.
+     *
+     * @return sequence number, or -1 if the ring buffer is full
+     */
+    private long claim() {
+      while (true) {
+        final long sequence = tail.get();
+        if (sequence - head.get() >= capacity) {
+          return -1L;
+        }
+        if (tail.compareAndSet(sequence, sequence + 1)) {
+          return sequence;
+        }
+      }
+    }
+
+    private void publish(final long sequence, final Reporter target, final Metric metric,
+        final long timestamp, final long value, final Object tags) {
+      final int i = (int) sequence & mask;
+      targets[i] = target;
+      metrics[i] = metric;
+      timestamps[i] = timestamp;
+      values[i] = value;
+      this.tags[i] = tags;
+      // The ordered store makes the slot visible to the consumer after the event is stored
+      sequences.lazySet(i, sequence);
+    }
+
+    /**
+     * Emit the published events to their targets, at most the given number of them.
+     *
+     * @return number of events emitted
+     */
+    private int drain(final int limit) {
+      long sequence = head.get();
+      int count = 0;
+      while (count < limit) {
+        final int i = (int) sequence & mask;
+        if (sequences.get(i) != sequence) {
+          break;
+        }
+        final Reporter target = targets[i];
+        final Metric metric = metrics[i];
+        final long timestamp = timestamps[i];
+        final long value = values[i];
+        final Object tags = this.tags[i];
+        targets[i] = null;
+        metrics[i] = null;
+        this.tags[i] = null;
+        // Release the slot to the producers before emitting
+        head.lazySet(++sequence);
+        count++;
+        deliver(target, metric, timestamp, value, tags);
+      }
+      return count;
+    }
+  }
+
+  /**
+   * A sequence padded to occupy a cache line of its own, as the tail is written by all producers
+   * and the head by the consumer.
+   */
+  @SuppressFBWarnings(
+      value = {"UUF_UNUSED_FIELD"},
+      justification = "Padding against false sharing")
+  private static final class PaddedSequence extends AtomicLong {
+
+    private static final long serialVersionUID = 1L;
+
+    private long p1, p2, p3, p4, p5, p6, p7;
+  }
+
+  /**
+   * Builder class for constructing {@link AsyncReporter} instances.
+   */
+  public static final class Builder {
+
+    private Reporter reporter;
+    private int capacity = DEFAULT_CAPACITY;
+    private int drainers = DEFAULT_DRAINERS;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    private Builder() {
+    }
+
+    /**
+     * Sets the reporter the measurement events are emitted to by the drainer threads.
+     *
+     * @param reporter decorated reporter
+     * @return builder
+     */
+    public Builder withReporter(final Reporter reporter) {
+      this.reporter = reporter;
+      return this;
+    }
+
+    /**
+     * Sets the number of events each ring buffer holds. The capacity is rounded up to a power of
+     * two.
+     *
+     * @param capacity defaults to 65536
+     * @return builder
+     */
+    public Builder withCapacity(final int capacity) {
+      this.capacity = capacity;
+      return this;
+    }
+
+    /**
+     * Sets the number of drainer threads, each with a ring buffer of its own. The metrics are
+     * distributed between the drainer threads by their identifiers.
+     *
+     * @param drainers defaults to 1
+     * @return builder
+     */
+    public Builder withDrainers(final int drainers) {
+      this.drainers = drainers;
+      return this;
+    }
+
+    /**
+     * Sets the handling of events emitted when a ring buffer is full.
+     *
+     * @param overflowPolicy defaults to {@link OverflowPolicy#DROP}
+     * @return builder
+     */
+    public Builder withOverflowPolicy(final OverflowPolicy overflowPolicy) {
+      this.overflowPolicy = overflowPolicy;
+      return this;
+    }
+
+    public AsyncReporter build() {
+      if (reporter == null) {
+        throw new IllegalArgumentException("Reporter is required");
+      }
+      if (capacity < 1 || capacity > 1 << 30) {
+        throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+      }
+      if (drainers < 1) {
+        throw new IllegalArgumentException("At least one drainer is required");
+      }
+      if (overflowPolicy == null) {
+        throw new IllegalArgumentException("Overflow policy is required");
+      }
+      final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+      return new AsyncReporter(reporter, size, drainers, overflowPolicy);
+    }
+  }
+}
@@ -10,9 +10,11 @@ import io.ultrabrew.metrics.Metric;
 import io.ultrabrew.metrics.data.Aggregator;
 import io.ultrabrew.metrics.data.Cursor;
 import io.ultrabrew.metrics.data.CursorEntry;
-import io.ultrabrew.metrics.data.Type;
+import io.ultrabrew.metrics.data.FieldSink;
+import io.ultrabrew.metrics.data.TableOptions;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +48,8 @@ public class SLF4JReporter extends TimeWindowReporter {
   private CharSequence fieldDelimiter;
   private CharSequence tagFieldDelimiter;
   private long lastSeenTimestamp;
+  // Field formatter of each drain thread
+  private final FieldFormatter[] formatters;
 
 
   /**
@@ -59,20 +63,29 @@ public class SLF4JReporter extends TimeWindowReporter {
    * @param defaultAggregators a map of a metric class to a supplier creating a new aggregator
    * @param metricAggregators a map of a metric identifier to a supplier creating a new aggregator
    * instance
+   * @param windows number of windows in the ring
+   * @param drainThreads number of threads draining the aggregators
+   * @param selfMetrics whether to report the dropped events and the pending windows as metrics
    */
   private SLF4JReporter(final String name, final CharSequence tagDelimiter,
       final CharSequence fieldDelimiter,
       final CharSequence tagFieldDelimiter, final int windowSizeSeconds,
       final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators,
-      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators) {
+      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators,
+      final int windows, final int drainThreads, final boolean selfMetrics) {
 
-    super(name, windowSizeSeconds, defaultAggregators, metricAggregators);
+    super(name, windowSizeSeconds, defaultAggregators, metricAggregators, windows, drainThreads,
+        selfMetrics);
 
     reporter = LoggerFactory.getLogger(name);
     this.tagDelimiter = tagDelimiter;
     this.fieldDelimiter = fieldDelimiter;
     this.tagFieldDelimiter = tagFieldDelimiter;
     this.lastSeenTimestamp = 0;
+    this.formatters = new FieldFormatter[drainThreads];
+    for (int i = 0; i < drainThreads; i++) {
+      this.formatters[i] = new FieldFormatter();
+    }
     this.start();
   }
 
@@ -83,25 +96,27 @@ public class SLF4JReporter extends TimeWindowReporter {
    */
   @Override
   protected void doReport(Map<String, Aggregator> aggregators) {
-    long newestTimestamp = 0;
-    for (final Map.Entry<String, Aggregator> entry : aggregators.entrySet()) {
-      final Aggregator aggregator = entry.getValue();
-      final Cursor cursor = aggregator.cursor();
-      final String metricName = entry.getKey();
-      while (cursor.next()) {
-        if (cursor.lastUpdated() > lastSeenTimestamp) {
-          reporter.info("lastUpdated={} {}{}{} {}",
-              cursor.lastUpdated(),
-              formatTags(cursor.getTags()),
-              tagFieldDelimiter,
-              formatFields(cursor),
-              metricName);
-          newestTimestamp = Math.max(newestTimestamp, cursor.lastUpdated());
+    final LongAccumulator newestTimestamp = new LongAccumulator(Math::max, 0);
+    drain(aggregators, (partition, worker) -> {
+      for (final Map.Entry<String, Aggregator> entry : partition) {
+        final Aggregator aggregator = entry.getValue();
+        final Cursor cursor = aggregator.cursor();
+        final String metricName = entry.getKey();
+        while (cursor.next()) {
+          if (cursor.lastUpdated() > lastSeenTimestamp) {
+            reporter.info("lastUpdated={} {}{}{} {}",
+                cursor.lastUpdated(),
+                formatTags(cursor.getTags()),
+                tagFieldDelimiter,
+                formatters[worker].format(cursor),
+                metricName);
+            newestTimestamp.accumulate(cursor.lastUpdated());
+          }
         }
       }
-    }
-    if (newestTimestamp > 0) {
-      lastSeenTimestamp = newestTimestamp;
+    });
+    if (newestTimestamp.get() > 0) {
+      lastSeenTimestamp = newestTimestamp.get();
     }
   }
 
@@ -121,22 +136,37 @@ public class SLF4JReporter extends TimeWindowReporter {
     return sb == null ? "" : sb.toString();
   }
 
-  private String formatFields(final CursorEntry cursor) {
-    final String[] fields = cursor.getFields();
-    final Type[] types = cursor.getTypes();
-    StringBuilder sb = null;
+  /**
+   * Formats the fields of the rows drained by one drain thread, appending the primitive values to a
+   * builder reused for all rows, without converting each value to a string first.
+   */
+  private final class FieldFormatter implements FieldSink {
 
-    for (int i = 0; i < fields.length; i++) {
-      if (sb == null) {
-        sb = new StringBuilder();
-      } else {
-        sb.append(fieldDelimiter);
+    private final StringBuilder sb = new StringBuilder();
+
+    private String format(final CursorEntry cursor) {
+      final String[] fields = cursor.getFields();
+      sb.setLength(0);
+      for (int i = 0; i < fields.length; i++) {
+        if (i > 0) {
+          sb.append(fieldDelimiter);
+        }
+        sb.append(fields[i]);
+        sb.append('=');
+        cursor.readAndResetInto(i, this);
       }
-      sb.append(fields[i]);
-      sb.append('=');
-      sb.append(types[i].readAndReset(cursor, i));
+      return sb.toString();
+    }
+
+    @Override
+    public void acceptLong(final int index, final long value) {
+      sb.append(value);
+    }
+
+    @Override
+    public void acceptDouble(final int index, final double value) {
+      sb.append(value);
     }
-    return sb == null ? "" : sb.toString();
   }
 
   public static Builder builder() {
@@ -157,6 +187,11 @@ public class SLF4JReporter extends TimeWindowReporter {
     private Builder() {
     }
 
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
     /**
      * Sets the name of the reporter.
      * @param name reporter name
@@ -212,8 +247,10 @@ public class SLF4JReporter extends TimeWindowReporter {
       if (name == null || name.isEmpty()) {
         throw new IllegalArgumentException("Logger name is required");
       }
+      final TableOptions options = buildTableOptions();
       return new SLF4JReporter(name, tagDelimiter, fieldDelimiter, tagFieldDelimiter,
-          windowStepSize, defaultAggregators, metricAggregators);
+          windowStepSize, buildDefaultAggregators(options), buildMetricAggregators(options),
+          windows, drainThreads, selfMetrics);
     }
 
   }
@@ -7,27 +7,62 @@ package io.ultrabrew.metrics.reporters;
 import io.ultrabrew.metrics.Metric;
 import io.ultrabrew.metrics.Reporter;
 import io.ultrabrew.metrics.data.Aggregator;
+import io.ultrabrew.metrics.data.BasicCounterAggregator;
 import io.ultrabrew.metrics.data.BasicDoubleValuedHistogramAggregator;
+import io.ultrabrew.metrics.data.BasicGaugeAggregator;
 import io.ultrabrew.metrics.data.BasicHistogramAggregator;
+import io.ultrabrew.metrics.data.DDSketchAggregator;
 import io.ultrabrew.metrics.data.DistributionBucket;
 import io.ultrabrew.metrics.data.DistributionBucketIF;
 import io.ultrabrew.metrics.data.DoubleValuedDistributionBucket;
+import io.ultrabrew.metrics.data.ShardedAggregator;
+import io.ultrabrew.metrics.data.SparseHistogramAggregator;
+import io.ultrabrew.metrics.data.TableOptions;
 import io.ultrabrew.metrics.util.Intervals;
+import io.ultrabrew.metrics.util.TagDictionary;
+import io.ultrabrew.metrics.util.TagSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
 
+import static io.ultrabrew.metrics.Metric.DEFAULT_CARDINALITY;
 import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
 import static io.ultrabrew.metrics.reporters.AggregatingReporter.DEFAULT_AGGREGATORS;
 
 /**
- * A base reporter that tracks the state over two time-intervals to prevent contention between
- * writes and reads
+ * A base reporter that tracks the state over a ring of time-intervals to prevent contention between
+ * writes and reads.
+ *
+ * <p>Each window of the ring is live while its interval is written to, sealed once the interval
+ * has ended, draining while it is reported, and free once reported, after which the first write of
+ * a later interval mapping to it claims it again. With the default two windows a report has to
+ * finish within a window step; more windows let a slow sink take longer without its report
+ * overlapping the writes of a later interval. Measurement events of an interval whose window is
+ * not free yet are dropped and counted in {@link #getDropped()}, and the number of windows waiting
+ * to be reported is given by {@link #getPendingWindows()}.</p>
+ *
+ * <p>When enabled with {@link TimeWindowReporterBuilder#withSelfMetrics()}, both are also
+ * reported as self-metrics together with the oldest window of each report: the
+ * events dropped since the previous report as the counter {@link #DROPPED_METRIC_ID}, and the
+ * windows pending when the report started as the gauge {@link #PENDING_WINDOWS_METRIC_ID}, each
+ * tagged with the name of the reporter under {@link #REPORTER_TAG}.</p>
  */
 public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
 
@@ -35,15 +70,63 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
 
   public static final int DEFAULT_WINDOW_STEP_SIZE_SEC = 60;
 
+  public static final int DEFAULT_WINDOWS = 2;
+
+  public static final int DEFAULT_DRAIN_THREADS = 1;
+
+  /**
+   * Identifier of the self-metric counting the measurement events dropped by the reporter.
+   */
+  public static final String DROPPED_METRIC_ID = "reporter.dropped";
+
+  /**
+   * Identifier of the self-metric gauging the windows sealed or being reported by the reporter.
+   */
+  public static final String PENDING_WINDOWS_METRIC_ID = "reporter.pendingWindows";
+
+  /**
+   * Tag key of the name of the reporter in its self-metrics.
+   */
+  public static final String REPORTER_TAG = "reporter";
+
   private static final int PADDING_MILLIS = 100;
 
+  // States of a window, kept in the lowest bits of its stamp below the interval of the window
+  private static final int LIVE = 0;
+  private static final int SEALED = 1;
+  private static final int DRAINING = 2;
+  private static final int FREE = 3;
+  private static final int STATE_BITS = 2;
+  private static final long STATE_MASK = (1L << STATE_BITS) - 1;
+
   private final String name;
+  // Tags of the self-metrics, or null if the self-metrics are not reported
+  private final String[] selfTags;
   private final long windowStepSizeMillis;
 
   private AtomicInteger threadId;
   private volatile Thread reportingThread;
+  private boolean reportingThreadActive = false;
+  private boolean closed = false;
+
+  private AggregatingReporter[] reporters;
 
-  private AggregatingReporter[] reporters = new AggregatingReporter[2];
+  /**
+   * Interval and state of each window, the interval being the timestamp divided by the window step.
+   */
+  private final AtomicLongArray stamps;
+  private final LongAdder dropped = new LongAdder();
+  private long reportedDropped = 0L;
+  private long emittedDropped = 0L;
+
+  private final int drainThreads;
+  // Pool of the drain threads besides the reporting thread, or null if draining sequentially
+  private final ExecutorService drainPool;
+
+  /**
+   * Aggregators of removed metrics, closed by the reporting thread once it is done reading them.
+   */
+  private final Queue<Aggregator> removed = new ConcurrentLinkedQueue<>();
 
   public TimeWindowReporter(final String name) {
     this(name, DEFAULT_WINDOW_STEP_SIZE_SEC);
@@ -55,41 +138,433 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
 
   public TimeWindowReporter(final String name, final int windowStepSizeSeconds,
       final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators) {
-    this(name, windowStepSizeSeconds, defaultAggregators, Collections.EMPTY_MAP);
+    this(name, windowStepSizeSeconds, defaultAggregators, Collections.emptyMap());
   }
 
   public TimeWindowReporter(final String name, final int windowStepSizeSeconds,
       final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators,
       final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators) {
+    this(name, windowStepSizeSeconds, defaultAggregators, metricAggregators, DEFAULT_WINDOWS);
+  }
+
+  /**
+   * @param name name of the reporter
+   * @param windowStepSizeSeconds window size in seconds
+   * @param defaultAggregators a map of a metric class to a supplier creating a new aggregator
+   * @param metricAggregators a map of a metric identifier to a supplier creating a new aggregator
+   * @param windows number of windows in the ring, at least 2
+   */
+  public TimeWindowReporter(final String name, final int windowStepSizeSeconds,
+      final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators,
+      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators,
+      final int windows) {
+    this(name, windowStepSizeSeconds, defaultAggregators, metricAggregators, windows,
+        DEFAULT_DRAIN_THREADS);
+  }
+
+  /**
+   * @param name name of the reporter
+   * @param windowStepSizeSeconds window size in seconds
+   * @param defaultAggregators a map of a metric class to a supplier creating a new aggregator
+   * @param metricAggregators a map of a metric identifier to a supplier creating a new aggregator
+   * @param windows number of windows in the ring, at least 2
+   * @param drainThreads number of threads draining the aggregators of a window, at least 1
+   * @see #drain(Map, ObjIntConsumer)
+   */
+  public TimeWindowReporter(final String name, final int windowStepSizeSeconds,
+      final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators,
+      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators,
+      final int windows, final int drainThreads) {
+    this(name, windowStepSizeSeconds, defaultAggregators, metricAggregators, windows, drainThreads,
+        false);
+  }
+
+  /**
+   * @param name name of the reporter
+   * @param windowStepSizeSeconds window size in seconds
+   * @param defaultAggregators a map of a metric class to a supplier creating a new aggregator
+   * @param metricAggregators a map of a metric identifier to a supplier creating a new aggregator
+   * @param windows number of windows in the ring, at least 2
+   * @param drainThreads number of threads draining the aggregators of a window, at least 1
+   * @param selfMetrics whether to report the dropped events and the pending windows as metrics
+   * @see #DROPPED_METRIC_ID
+   * @see #PENDING_WINDOWS_METRIC_ID
+   */
+  public TimeWindowReporter(final String name, final int windowStepSizeSeconds,
+      final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators,
+      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators,
+      final int windows, final int drainThreads, final boolean selfMetrics) {
+    if (drainThreads < 1) {
+      throw new IllegalArgumentException("Number of drain threads must be at least 1");
+    }
+    if (windows < 2) {
+      throw new IllegalArgumentException("Number of windows must be at least 2");
+    }
     this.name = name;
+    this.selfTags = selfMetrics ? new String[]{REPORTER_TAG, name} : null;
     this.windowStepSizeMillis = windowStepSizeSeconds * 1000;
-    this.reporters[0] = new AggregatingReporter(defaultAggregators, metricAggregators) {
-    };
-    this.reporters[1] = new AggregatingReporter(defaultAggregators, metricAggregators) {
-    };
+    this.reporters = new AggregatingReporter[windows];
+    this.stamps = new AtomicLongArray(windows);
+    for (int i = 0; i < windows; i++) {
+      this.reporters[i] = new AggregatingReporter(defaultAggregators, metricAggregators) {
+      };
+      this.stamps.set(i, stamp(-1L, FREE));
+    }
     this.threadId = new AtomicInteger(1);
+    this.drainThreads = drainThreads;
+    if (drainThreads > 1) {
+      final AtomicInteger drainThreadId = new AtomicInteger(1);
+      this.drainPool = Executors.newFixedThreadPool(drainThreads - 1, (runnable) -> {
+        final Thread thread = new Thread(runnable,
+            name + "-drain-" + drainThreadId.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.drainPool = null;
+    }
   }
 
 
   @Override
   public void emit(final Metric metric, final long timestamp, final long value,
       final String[] tags) {
-    AggregatingReporter writer = reporters[getWriterIndex(timestamp)];
-    writer.emit(metric, timestamp, value, tags);
+    final int index = getWriterIndex(timestamp);
+    if (index >= 0) {
+      reporters[index].emit(metric, timestamp, value, tags);
+    }
+  }
+
+  @Override
+  public void emitTagSet(final Metric metric, final long timestamp, final long value,
+      final TagSet tags) {
+    final int index = getWriterIndex(timestamp);
+    if (index >= 0) {
+      reporters[index].emitTagSet(metric, timestamp, value, tags);
+    }
+  }
+
+  @Override
+  public void emitBatch(final Metric metric, final long timestamp, final long[] values,
+      final String[][] tags) {
+    final int index = getWriterIndex(timestamp);
+    if (index >= 0) {
+      reporters[index].emitBatch(metric, timestamp, values, tags);
+    }
+  }
+
+  /**
+   * Route the measurement events of the metric to the aggregator of the current window.
+   */
+  @Override
+  public Reporter route(final Metric metric) {
+    final Reporter[] routes = new Reporter[reporters.length];
+    int found = 0;
+    for (int i = 0; i < reporters.length; i++) {
+      routes[i] = reporters[i].route(metric);
+      if (routes[i] != null) {
+        found++;
+      }
+    }
+    if (found == 0) {
+      return null;
+    }
+    if (found < routes.length) {
+      ///CLOVER:OFF
+      // All windows are created with the same aggregators
+      return this;
+      ///CLOVER:ON
+    }
+    return new Reporter() {
+      @Override
+      public void emit(final Metric metric, final long timestamp, final long value,
+          final String[] tags) {
+        final int index = getWriterIndex(timestamp);
+        if (index >= 0) {
+          routes[index].emit(metric, timestamp, value, tags);
+        }
+      }
+
+      @Override
+      public void emitTagSet(final Metric metric, final long timestamp, final long value,
+          final TagSet tags) {
+        final int index = getWriterIndex(timestamp);
+        if (index >= 0) {
+          routes[index].emitTagSet(metric, timestamp, value, tags);
+        }
+      }
+
+      @Override
+      public void emitBatch(final Metric metric, final long timestamp, final long[] values,
+          final String[][] tags) {
+        final int index = getWriterIndex(timestamp);
+        if (index >= 0) {
+          routes[index].emitBatch(metric, timestamp, values, tags);
+        }
+      }
+    };
   }
 
+  /**
+   * Remove the aggregators of the metric from all windows. The data of the metric not reported yet
+   * is discarded. The aggregators are closed after the next report, so that a report in progress
+   * does not read released resources.
+   */
+  @Override
+  public void remove(final Metric metric) {
+    for (AggregatingReporter reporter : reporters) {
+      final Aggregator aggregator = reporter.aggregators.remove(metric.id);
+      if (aggregator != null) {
+        removed.add(aggregator);
+      }
+    }
+  }
+
+  @Override
+  public long memoryUsage(final Metric metric) {
+    long usage = 0L;
+    for (AggregatingReporter reporter : reporters) {
+      usage += reporter.memoryUsage(metric);
+    }
+    return usage;
+  }
+
+  /**
+   * Get the number of measurement events dropped because the window of their interval was still
+   * being reported, or had already been reported.
+   *
+   * @return number of dropped events
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Get the number of windows sealed or being reported. A reporter keeping up with its windows has
+   * at most one pending window while reporting and none otherwise.
+   *
+   * @return number of pending windows
+   */
+  public int getPendingWindows() {
+    int pending = 0;
+    for (int i = 0; i < reporters.length; i++) {
+      final int state = state(stamps.get(i));
+      if (state == SEALED || state == DRAINING) {
+        pending++;
+      }
+    }
+    return pending;
+  }
+
+  /**
+   * Seal the windows of the intervals that have ended and report them, oldest first. The window of
+   * the previous interval is reported even if nothing was written to it, so that the subclass sees
+   * every interval.
+   */
   protected void report() {
     long currentTimeMillis = System.currentTimeMillis();
-    AggregatingReporter reader = reporters[getReaderIndex(currentTimeMillis)];
-    doReport(reader.aggregators);
+    final long interval = currentTimeMillis / windowStepSizeMillis;
+
+    final int previous = index(interval - 1);
+    final long stamp = stamps.get(previous);
+    if (state(stamp) == FREE && interval(stamp) < interval - 1) {
+      stamps.compareAndSet(previous, stamp, stamp(interval - 1, SEALED));
+    }
+    for (int i = 0; i < reporters.length; i++) {
+      final long live = stamps.get(i);
+      if (state(live) == LIVE && interval(live) < interval) {
+        stamps.compareAndSet(i, live, stamp(interval(live), SEALED));
+      }
+    }
+
+    final long totalDropped = dropped.sum();
+    if (totalDropped > reportedDropped) {
+      logger.warn("{} dropped {} measurement events of windows not free for writing", name,
+          totalDropped - reportedDropped);
+      reportedDropped = totalDropped;
+    }
+
+    final int pendingWindows = getPendingWindows();
+    boolean emittedSelfMetrics = false;
+    int index;
+    while ((index = oldestSealed()) >= 0) {
+      final long sealed = interval(stamps.get(index));
+      stamps.set(index, stamp(sealed, DRAINING));
+      try {
+        final AggregatingReporter reader = reporters[index];
+        if (selfTags != null && !emittedSelfMetrics) {
+          emitSelfMetrics(reader, totalDropped, pendingWindows, currentTimeMillis);
+          emittedSelfMetrics = true;
+        }
+        doReport(reader.aggregators);
+        // The window has been reported and is not written to until it is claimed again
+        reader.evictIdle(currentTimeMillis);
+        reader.consolidate();
+      } finally {
+        stamps.set(index, stamp(sealed, FREE));
+      }
+    }
+    closeRemoved();
+  }
+
+  /**
+   * Apply the self-metrics of the reporter to the aggregators of a window about to be reported, so
+   * that they are reported like the metrics measured in the window.
+   */
+  private void emitSelfMetrics(final AggregatingReporter reader, final long totalDropped,
+      final int pendingWindows, final long timestamp) {
+    reader.aggregators
+        .computeIfAbsent(DROPPED_METRIC_ID, (id) -> new BasicCounterAggregator(id, 1, 1))
+        .apply(selfTags, totalDropped - emittedDropped, timestamp);
+    emittedDropped = totalDropped;
+    reader.aggregators
+        .computeIfAbsent(PENDING_WINDOWS_METRIC_ID, (id) -> new BasicGaugeAggregator(id, 1, 1))
+        .apply(selfTags, pendingWindows, timestamp);
+  }
+
+  /**
+   * Get the number of threads draining the aggregators of a window, including the reporting
+   * thread.
+   *
+   * @return number of drain threads
+   */
+  public int getDrainThreads() {
+    return drainThreads;
   }
 
   /**
-   * Shut down the reporter and release resources.
+   * Drain the aggregators of a window in partitions, one for each drain thread. The partitions are
+   * balanced by the memory usage of their aggregators, and drained concurrently, one of them on the
+   * reporting thread. Each partition is given to the worker with its index, from 0 to the number of
+   * drain threads minus one, so that a subclass may serialize it into a buffer of its own and
+   * submit it as an independent batch. Returns once all partitions have been drained.
+   *
+   * @param aggregators mapping from metric id to aggregator
+   * @param worker drains the aggregators of a partition, called concurrently for different indexes
+   * @throws IllegalStateException if the worker failed to drain a partition on a drain thread
+   */
+  protected void drain(final Map<String, Aggregator> aggregators,
+      final ObjIntConsumer<List<Map.Entry<String, Aggregator>>> worker) {
+    if (drainPool == null || aggregators.size() < 2) {
+      worker.accept(new ArrayList<>(aggregators.entrySet()), 0);
+      return;
+    }
+    final List<List<Map.Entry<String, Aggregator>>> partitions = partition(aggregators);
+    final List<Future<?>> futures = new ArrayList<>(partitions.size() - 1);
+    for (int i = 1; i < partitions.size(); i++) {
+      final List<Map.Entry<String, Aggregator>> partition = partitions.get(i);
+      final int index = i;
+      futures.add(drainPool.submit(() -> worker.accept(partition, index)));
+    }
+
+    RuntimeException failure = null;
+    try {
+      worker.accept(partitions.get(0), 0);
+    } catch (RuntimeException e) {
+      failure = e;
+    }
+    // The window is not released before every partition is drained, even if interrupted
+    boolean interrupted = false;
+    for (final Future<?> future : futures) {
+      for (; ; ) {
+        try {
+          future.get();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = new IllegalStateException("Failed to drain aggregators", e.getCause());
+          }
+          break;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Split the aggregators into partitions of about the same memory usage by assigning the largest
+   * aggregators first, each to the partition with the least memory usage so far.
+   */
+  private List<List<Map.Entry<String, Aggregator>>> partition(
+      final Map<String, Aggregator> aggregators) {
+    final List<Map.Entry<String, Aggregator>> entries = new ArrayList<>(aggregators.entrySet());
+    final long[] sizes = new long[entries.size()];
+    final Integer[] order = new Integer[entries.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      // Count each aggregator at least once, so that aggregators not tracking memory spread too
+      sizes[i] = Math.max(entries.get(i).getValue().memoryUsage(), 1L);
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(sizes[b], sizes[a]));
+
+    final int count = Math.min(drainThreads, entries.size());
+    final List<List<Map.Entry<String, Aggregator>>> partitions = new ArrayList<>(count);
+    final long[] loads = new long[count];
+    for (int i = 0; i < count; i++) {
+      partitions.add(new ArrayList<>());
+    }
+    for (final int i : order) {
+      int least = 0;
+      for (int j = 1; j < count; j++) {
+        if (loads[j] < loads[least]) {
+          least = j;
+        }
+      }
+      partitions.get(least).add(entries.get(i));
+      loads[least] += sizes[i];
+    }
+    return partitions;
+  }
+
+  private int oldestSealed() {
+    int oldest = -1;
+    for (int i = 0; i < reporters.length; i++) {
+      final long stamp = stamps.get(i);
+      if (state(stamp) == SEALED
+          && (oldest < 0 || interval(stamp) < interval(stamps.get(oldest)))) {
+        oldest = i;
+      }
+    }
+    return oldest;
+  }
+
+  /**
+   * Shut down the reporter and release resources. If the reporting thread is running, it finishes
+   * any ongoing report before the aggregators are closed.
    */
   @Override
   public void close() {
-    stop();
+    synchronized (this) {
+      closed = true;
+      stop();
+      if (!reportingThreadActive) {
+        closeReporters();
+      }
+    }
+  }
+
+  private void closeReporters() {
+    if (drainPool != null) {
+      drainPool.shutdown();
+    }
+    for (AggregatingReporter reporter : reporters) {
+      reporter.close();
+    }
+    closeRemoved();
+  }
+
+  private void closeRemoved() {
+    Aggregator aggregator;
+    while ((aggregator = removed.poll()) != null) {
+      aggregator.close();
+    }
   }
 
   /**
@@ -100,8 +575,7 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
    */
   protected abstract void doReport(Map<String, Aggregator> aggregators);
 
-  private void run() {
-    int id = this.threadId.get();
+  private void run(final int id) {
     String threadName = getThreadName(id);
     logger.info("Starting {}", threadName);
 
@@ -127,13 +601,25 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
     }
 
     logger.info("Ending {}", threadName);
+
+    synchronized (this) {
+      if (Thread.currentThread() == reportingThread) {
+        reportingThreadActive = false;
+        if (closed) {
+          closeReporters();
+        }
+      }
+    }
   }
 
   protected void start() {
     synchronized (this) {
       if (!isRunning()) {
-        reportingThread = new Thread(this::run, getThreadName(threadId.get()));
+        // Pass the identifier to the thread, as the reporter may be stopped before the thread runs
+        final int id = threadId.get();
+        reportingThread = new Thread(() -> run(id), getThreadName(id));
         reportingThread.setDaemon(true);
+        reportingThreadActive = true;
         reportingThread.start();
       } else {
         throw new IllegalStateException("Already started");
@@ -158,12 +644,42 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
     return name + "-" + threadId;
   }
 
+  /**
+   * Get the index of the live window of the interval of the timestamp, claiming the window if it is
+   * free and was last used for an earlier interval.
+   *
+   * @return index of the window, or -1 if the event is dropped
+   */
   private int getWriterIndex(final long milliseconds) {
-    return ((milliseconds / windowStepSizeMillis) & 1) == 0 ? 0 : 1;
+    final long interval = milliseconds / windowStepSizeMillis;
+    final int index = index(interval);
+    final long live = stamp(interval, LIVE);
+    final long stamp = stamps.get(index);
+    if (stamp == live) {
+      return index;
+    }
+    if ((state(stamp) == FREE && interval(stamp) < interval
+        && stamps.compareAndSet(index, stamp, live)) || stamps.get(index) == live) {
+      return index;
+    }
+    dropped.increment();
+    return -1;
+  }
+
+  private int index(final long interval) {
+    return (int) Math.floorMod(interval, (long) reporters.length);
+  }
+
+  private static long stamp(final long interval, final int state) {
+    return interval << STATE_BITS | state;
+  }
+
+  private static long interval(final long stamp) {
+    return stamp >> STATE_BITS;
   }
 
-  private int getReaderIndex(final long milliseconds) {
-    return getWriterIndex(milliseconds) == 0 ? 1 : 0;
+  private static int state(final long stamp) {
+    return (int) (stamp & STATE_MASK);
   }
 
   /**
@@ -179,6 +695,73 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
         defaultAggregators = DEFAULT_AGGREGATORS;
     protected Map<String, Function<Metric, ? extends Aggregator>> metricAggregators =
         new HashMap<>();
+    protected int windows = DEFAULT_WINDOWS;
+    protected int drainThreads = DEFAULT_DRAIN_THREADS;
+    protected int tagDictionarySize = 0;
+    protected boolean selfMetrics = false;
+
+    // Suppliers of the aggregators of specific metrics that depend on the table options of the
+    // reporter being built, overriding the suppliers of the same metrics in metricAggregators
+    private final Map<String, Function<TableOptions, Function<Metric, ? extends Aggregator>>>
+        tableAggregators = new HashMap<>();
+
+    /**
+     * Get this builder as its own type, to be returned by the setters.
+     *
+     * @return this builder
+     */
+    @SuppressWarnings("unchecked")
+    protected B self() {
+      return (B) this;
+    }
+
+    /**
+     * Set the number of windows in the ring. More windows give a slow reporter more time to report
+     * a window before its next interval is written to.
+     *
+     * @param windows number of windows, at least 2, defaults to 2
+     */
+    public B withWindows(final int windows) {
+      if (windows < 2) {
+        throw new IllegalArgumentException("Number of windows must be at least 2");
+      }
+      this.windows = windows;
+      return self();
+    }
+
+    /**
+     * Set the number of threads draining the aggregators of a window in parallel, including the
+     * reporting thread. Each drain thread serializes its share of the aggregators into a buffer of
+     * its own, which is submitted as an independent batch.
+     *
+     * @param drainThreads number of drain threads, at least 1, defaults to 1
+     */
+    public B withDrainThreads(final int drainThreads) {
+      if (drainThreads < 1) {
+        throw new IllegalArgumentException("Number of drain threads must be at least 1");
+      }
+      this.drainThreads = drainThreads;
+      return self();
+    }
+
+    /**
+     * Store the tag sets of the aggregators of the reporter in a tag dictionary of its own, shared
+     * by the aggregators of all windows, so that each distinct tag key and value is stored once per
+     * reporter and freed together with it. Each reporter built gets a dictionary of its own. Applies
+     * to the default aggregators, unless they are replaced by {@link #withDefaultAggregators(Map)},
+     * and to the histograms with percentiles, the sparse histograms and the sketches, regardless
+     * of the order they are added in.
+     *
+     * @param maxSize maximum number of strings stored in the dictionary
+     * @see TagDictionary
+     */
+    public B withTagDictionary(final int maxSize) {
+      if (maxSize < 1) {
+        throw new IllegalArgumentException("Tag dictionary size must be at least 1");
+      }
+      this.tagDictionarySize = maxSize;
+      return self();
+    }
 
     /**
      * Set the default aggregator for each metric type
@@ -188,7 +771,7 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
     public B withDefaultAggregators(
         final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators) {
       this.defaultAggregators = defaultAggregators;
-      return (B) this;
+      return self();
     }
 
     /**
@@ -198,10 +781,12 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
      * @param bucket distribution bucket
      * @param maxCardinality maximum cardinality of data in the histogram
      */
-    public B addHistogram(final String metricId, final DistributionBucketIF bucket, final int maxCardinality) {
+    public B addHistogram(final String metricId, final DistributionBucketIF bucket,
+        final int maxCardinality) {
       this.metricAggregators
           .put(metricId, (metric) -> bucket.buildAggregator(metricId, bucket, maxCardinality));
-      return (B) this;
+      this.tableAggregators.remove(metricId);
+      return self();
     }
 
     /**
@@ -214,6 +799,164 @@ public abstract class TimeWindowReporter implements Reporter, AutoCloseable {
       return addHistogram(metricId, bucket, DEFAULT_MAX_CARDINALITY);
     }
 
+    /**
+     * Add histograms to a specific metric, estimating the given percentiles of the measurements of
+     * each window
+     *
+     * @param metricId identifier of the metric
+     * @param bucket distribution bucket
+     * @param maxCardinality maximum cardinality of data in the histogram
+     * @param percentiles percentiles to estimate, each greater than 0 and at most 1
+     * @see BasicHistogramAggregator#DEFAULT_PERCENTILES
+     */
+    public B addHistogram(final String metricId, final DistributionBucket bucket,
+        final int maxCardinality, final double[] percentiles) {
+      putTableAggregator(metricId,
+          (options) -> (metric) -> new BasicHistogramAggregator(metricId, bucket, maxCardinality,
+              DEFAULT_CARDINALITY, options, percentiles));
+      return self();
+    }
+
+    /**
+     * Add histograms to a specific metric, storing only the buckets hit by each tag set, so that
+     * wide distributions with hundreds of buckets take little memory per tag set
+     *
+     * @param metricId identifier of the metric
+     * @param bucket distribution bucket
+     * @param maxCardinality maximum cardinality of data in the histogram
+     * @see SparseHistogramAggregator
+     */
+    public B addSparseHistogram(final String metricId, final DistributionBucket bucket,
+        final int maxCardinality) {
+      putTableAggregator(metricId,
+          (options) -> (metric) -> new SparseHistogramAggregator(metricId, bucket, maxCardinality,
+              DEFAULT_CARDINALITY, options, SparseHistogramAggregator.DEFAULT_CELLS));
+      return self();
+    }
+
+    /**
+     * Add mergeable quantile sketches to a specific metric, e.g., a timer, estimating the default
+     * percentiles of the measurements of each window
+     *
+     * @param metricId identifier of the metric
+     * @see DDSketchAggregator
+     */
+    public B addSketch(final String metricId) {
+      return addSketch(metricId, DDSketchAggregator.DEFAULT_RELATIVE_ACCURACY,
+          DEFAULT_MAX_CARDINALITY);
+    }
+
+    /**
+     * Add mergeable quantile sketches to a specific metric, e.g., a timer, estimating the default
+     * percentiles of the measurements of each window
+     *
+     * @param metricId identifier of the metric
+     * @param relativeAccuracy relative accuracy of the sketches, greater than 0 and less than 1
+     * @param maxCardinality maximum cardinality of data in the sketches
+     * @see DDSketchAggregator
+     */
+    public B addSketch(final String metricId, final double relativeAccuracy,
+        final int maxCardinality) {
+      putTableAggregator(metricId,
+          (options) -> (metric) -> new DDSketchAggregator(metricId, relativeAccuracy,
+              DDSketchAggregator.DEFAULT_MAX_VALUE, maxCardinality, DEFAULT_CARDINALITY, options,
+              BasicHistogramAggregator.DEFAULT_PERCENTILES));
+      return self();
+    }
+
+    /**
+     * Aggregate a specific metric in shards selected by the emitting thread, so that threads
+     * emitting the same tag sets do not contend with each other. The shards are created with the
+     * aggregator added to the metric before, or with the default aggregator of the metric class.
+     *
+     * @param metricId identifier of the metric
+     * @see ShardedAggregator
+     */
+    public B addSharded(final String metricId) {
+      final Function<Metric, ? extends Aggregator> aggregator = metricAggregators.get(metricId);
+      final Function<TableOptions, Function<Metric, ? extends Aggregator>> tableAggregator =
+          tableAggregators.get(metricId);
+      putTableAggregator(metricId, (options) -> {
+        final Function<Metric, ? extends Aggregator> shards =
+            tableAggregator != null ? tableAggregator.apply(options) : aggregator;
+        final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaults =
+            buildDefaultAggregators(options);
+        return (metric) -> {
+          final Function<Metric, ? extends Aggregator> shard =
+              shards != null ? shards : defaults.get(metric.getClass());
+          if (shard == null) {
+            return AggregatingReporter.NOOP;
+          }
+          return new ShardedAggregator(() -> shard.apply(metric));
+        };
+      });
+      return self();
+    }
+
+    private void putTableAggregator(final String metricId,
+        final Function<TableOptions, Function<Metric, ? extends Aggregator>> tableAggregator) {
+      this.tableAggregators.put(metricId, tableAggregator);
+      this.metricAggregators.remove(metricId);
+    }
+
+    /**
+     * Create the table options of a reporter being built, with a tag dictionary of its own if one
+     * was requested by {@link #withTagDictionary(int)}.
+     *
+     * @return table options of the aggregators of the reporter
+     */
+    protected TableOptions buildTableOptions() {
+      if (tagDictionarySize == 0) {
+        return TableOptions.DEFAULT;
+      }
+      return TableOptions.builder().withTagDictionary(new TagDictionary(tagDictionarySize))
+          .build();
+    }
+
+    /**
+     * Get the default aggregators of a reporter being built. The built-in default aggregators are
+     * created with the given table options, the default aggregators set by {@link
+     * #withDefaultAggregators(Map)} are used as is.
+     *
+     * @param options table options returned by {@link #buildTableOptions()}
+     * @return a map of a metric class to a supplier creating a new aggregator
+     */
+    protected Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>>
+        buildDefaultAggregators(final TableOptions options) {
+      if (defaultAggregators != DEFAULT_AGGREGATORS || options == TableOptions.DEFAULT) {
+        return defaultAggregators;
+      }
+      return AggregatingReporter.defaultAggregators(options);
+    }
+
+    /**
+     * Get the aggregators of specific metrics of a reporter being built, with the histograms with
+     * percentiles, the sparse histograms and the sketches created with the given table options.
+     *
+     * @param options table options returned by {@link #buildTableOptions()}
+     * @return a map of a metric identifier to a supplier creating a new aggregator
+     */
+    protected Map<String, Function<Metric, ? extends Aggregator>> buildMetricAggregators(
+        final TableOptions options) {
+      final Map<String, Function<Metric, ? extends Aggregator>> aggregators =
+          new HashMap<>(metricAggregators);
+      tableAggregators.forEach((metricId, tableAggregator) ->
+          aggregators.put(metricId, tableAggregator.apply(options)));
+      return aggregators;
+    }
+
+    /**
+     * Report the number of dropped measurement events and of pending windows as self-metrics
+     * together with the oldest window of each report.
+     *
+     * @see TimeWindowReporter#DROPPED_METRIC_ID
+     * @see TimeWindowReporter#PENDING_WINDOWS_METRIC_ID
+     */
+    public B withSelfMetrics() {
+      this.selfMetrics = true;
+      return self();
+    }
+
     public abstract R build();
 
   }
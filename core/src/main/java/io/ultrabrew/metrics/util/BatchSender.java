@@ -0,0 +1,154 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends batches on background threads with a bounded number of requests in flight, so that a
+ * reporter serializes its next batch while the previous ones are sent.
+ *
+ * <p>The batches are reusable buffers. A full buffer is handed off to a sender thread with {@link
+ * #submit(Object)} in exchange for an empty one, and returns to the free buffers once it has been
+ * sent and reset. When all the buffers are in flight, {@link #submit(Object)} blocks until one of
+ * them returns, which applies backpressure to the thread filling them.</p>
+ *
+ * <p>Failures to send a batch are logged and counted in {@link #getFailed()}, as the thread that
+ * submitted the batch has moved on.</p>
+ *
+ * <p>This class is not thread-safe: buffers must be submitted by one thread at a time.</p>
+ *
+ * @param <B> type of the batch buffer
+ */
+public class BatchSender<B> {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchSender.class);
+
+  private static final long KEEP_ALIVE_SECONDS = 60L;
+
+  /**
+   * Sends a batch to its destination.
+   *
+   * @param <B> type of the batch buffer
+   */
+  @FunctionalInterface
+  public interface Transport<B> {
+
+    /**
+     * Sends the contents of a batch buffer.
+     *
+     * @param batch buffer to send, which is reset after the call
+     * @throws IOException if the batch could not be sent
+     */
+    void send(B batch) throws IOException;
+  }
+
+  private final int maxInFlight;
+  private final BlockingQueue<B> free;
+  private final Transport<B> transport;
+  private final Consumer<B> reset;
+  private final ThreadPoolExecutor executor;
+  private final LongAdder failed = new LongAdder();
+
+  /**
+   * Create a sender with the given number of requests in flight. The buffers are allocated up
+   * front, one for each request in flight besides the buffer being filled by the caller.
+   *
+   * @param name name prefix of the sender threads
+   * @param maxInFlight maximum number of batches sent concurrently, at least 1
+   * @param buffers creates an empty buffer
+   * @param transport sends a batch
+   * @param reset empties a buffer after it has been sent
+   */
+  public BatchSender(final String name, final int maxInFlight, final Supplier<B> buffers,
+      final Transport<B> transport, final Consumer<B> reset) {
+    if (maxInFlight < 1) {
+      throw new IllegalArgumentException("Maximum number of requests in flight must be positive");
+    }
+    this.maxInFlight = maxInFlight;
+    this.free = new ArrayBlockingQueue<>(maxInFlight);
+    for (int i = 0; i < maxInFlight; i++) {
+      free.add(buffers.get());
+    }
+    this.transport = transport;
+    this.reset = reset;
+    final AtomicInteger threadId = new AtomicInteger(1);
+    // Idle sender threads exit, so that a reporter that is not closed does not leak them
+    this.executor = new ThreadPoolExecutor(maxInFlight, maxInFlight, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<>(), (runnable) -> {
+      final Thread thread = new Thread(runnable, name + "-sender-" + threadId.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Hand off a full buffer to be sent, and take an empty buffer in exchange, waiting for a batch in
+   * flight to be sent if there is no empty buffer.
+   *
+   * @param batch full buffer, not to be used by the caller after the call
+   * @return empty buffer
+   * @throws InterruptedException if interrupted while waiting for an empty buffer, in which case
+   *     the full buffer has not been handed off
+   */
+  public B submit(final B batch) throws InterruptedException {
+    final B next = free.take();
+    executor.execute(() -> {
+      try {
+        transport.send(batch);
+      } catch (Exception e) {
+        failed.increment();
+        LOGGER.error("Failed to send batch", e);
+      } finally {
+        reset.accept(batch);
+        free.add(batch);
+      }
+    });
+    return next;
+  }
+
+  /**
+   * Wait until all the batches submitted so far have been sent.
+   *
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public void await() throws InterruptedException {
+    final List<B> returned = new ArrayList<>(maxInFlight);
+    try {
+      for (int i = 0; i < maxInFlight; i++) {
+        returned.add(free.take());
+      }
+    } finally {
+      free.addAll(returned);
+    }
+  }
+
+  public int getMaxInFlight() {
+    return maxInFlight;
+  }
+
+  /**
+   * Get the number of batches that failed to be sent.
+   *
+   * @return number of failed batches
+   */
+  public long getFailed() {
+    return failed.sum();
+  }
+}
@@ -0,0 +1,95 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import io.ultrabrew.metrics.Clock;
+import io.ultrabrew.metrics.MetricRegistry;
+
+/**
+ * A clock returning the system time cached by a background thread at a fixed resolution. The
+ * timestamps of measurement events are only used to select the reporting window and to track when
+ * a series was last updated, so reading a cached value instead of the system time on every event
+ * is accurate enough.
+ *
+ * <pre>{@code
+ *     CachedClock clock = new CachedClock(10);
+ *     MetricRegistry metricRegistry = new MetricRegistry(clock);
+ *     ...
+ *     clock.close();
+ * }</pre>
+ *
+ * <p>Durations measured with {@link #nanoTime()} are not affected by the resolution.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @see MetricRegistry#MetricRegistry(Clock)
+ */
+public class CachedClock implements Clock, AutoCloseable {
+
+  public static final long DEFAULT_RESOLUTION_MILLIS = 1L;
+
+  private final long resolutionMillis;
+  private final Thread thread;
+  private volatile long currentTimeMillis;
+  private volatile boolean closed = false;
+
+  /**
+   * Create a clock cached at the default resolution of 1 millisecond, and start its background
+   * thread.
+   */
+  public CachedClock() {
+    this(DEFAULT_RESOLUTION_MILLIS);
+  }
+
+  /**
+   * Create a clock cached at the given resolution, and start its background thread.
+   *
+   * @param resolutionMillis interval between updates of the cached time in milliseconds
+   */
+  public CachedClock(final long resolutionMillis) {
+    if (resolutionMillis <= 0) {
+      throw new IllegalArgumentException("Resolution must be positive");
+    }
+    this.resolutionMillis = resolutionMillis;
+    this.currentTimeMillis = System.currentTimeMillis();
+    this.thread = new Thread(this::run, "CachedClock");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return currentTimeMillis;
+  }
+
+  /**
+   * Get the interval between updates of the cached time.
+   *
+   * @return resolution in milliseconds
+   */
+  public long getResolutionMillis() {
+    return resolutionMillis;
+  }
+
+  /**
+   * Stop the background thread. The cached time is no longer updated after the clock is closed.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    thread.interrupt();
+  }
+
+  private void run() {
+    while (!closed) {
+      currentTimeMillis = System.currentTimeMillis();
+      try {
+        Thread.sleep(resolutionMillis);
+      } catch (InterruptedException ignored) {
+        // closed, or woken up early
+      }
+    }
+  }
+}
@@ -0,0 +1,90 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+/**
+ * Hash functions used to identify tag sets.
+ */
+public class Hashing {
+
+  private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME64_3 = 0x165667B19E3779F9L;
+  private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+  /**
+   * Length used for {@code null} array elements, distinct from the length of any string.
+   */
+  private static final long NULL_LENGTH = -1L;
+
+  ///CLOVER:OFF
+  private Hashing() {
+    // static class
+  }
+  ///CLOVER:ON
+
+  /**
+   * Calculate a 64-bit fingerprint of a flattened tag key-value array.
+   *
+   * <p>The characters of every tag key and value are hashed in blocks of four with the 64-bit
+   * rounds of xxHash64, each tag prefixed by its length, so that {@code {"ab", "c"}} and {@code
+   * {"a", "bc"}}, or arrays with {@code null} elements, produce different fingerprints. Two
+   * different tag sets produce the same fingerprint with a probability of about 2<sup>-64</sup>,
+   * also when their strings share the same {@link String#hashCode()}, such as {@code "Aa"} and
+   * {@code "BB"}.</p>
+   *
+   * <p>Hashing the characters is more expensive than combining the cached hash codes of the
+   * strings, so a tag set measured repeatedly should be hashed once, e.g., with {@link
+   * TagSet#of(String...)} or a bound metric.</p>
+   *
+   * <p>The fingerprint is never {@code 0L}, so that it can be used to mark an empty slot in a hash
+   * table.</p>
+   *
+   * @param tags a flattened array of tag key-value pairs
+   * @return 64-bit fingerprint of the tag set
+   */
+  public static long fingerprint(final String[] tags) {
+    long h = PRIME64_5 + tags.length;
+    for (final String tag : tags) {
+      if (tag == null) {
+        h = mix(h, NULL_LENGTH);
+        continue;
+      }
+      final int length = tag.length();
+      h = mix(h, length);
+      int i = 0;
+      for (; i + 4 <= length; i += 4) {
+        h = mix(h, tag.charAt(i) | (long) tag.charAt(i + 1) << 16
+            | (long) tag.charAt(i + 2) << 32 | (long) tag.charAt(i + 3) << 48);
+      }
+      if (i < length) {
+        long block = 0L;
+        for (int shift = 0; i < length; i++, shift += 16) {
+          block |= (long) tag.charAt(i) << shift;
+        }
+        h = mix(h, block);
+      }
+    }
+    h = avalanche(h);
+    return h == 0L ? PRIME64_1 : h;
+  }
+
+  private static long mix(final long h, final long block) {
+    long k = block * PRIME64_2;
+    k = Long.rotateLeft(k, 31);
+    k *= PRIME64_1;
+    return Long.rotateLeft(h ^ k, 27) * PRIME64_1 + PRIME64_4;
+  }
+
+  private static long avalanche(long h) {
+    h ^= h >>> 33;
+    h *= PRIME64_2;
+    h ^= h >>> 29;
+    h *= PRIME64_3;
+    h ^= h >>> 32;
+    return h;
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+/**
+ * Formats numbers as ASCII digits into a reusable buffer, so that reporters can serialize values
+ * without allocating a {@link String} for each of them.
+ */
+public class Numbers {
+
+  /**
+   * Length of a buffer large enough for any value formatted by this class.
+   */
+  public static final int MAX_LENGTH = 20;
+
+  // Double.toString uses the computerized scientific notation outside of this range of magnitudes
+  private static final double MIN_PLAIN_DOUBLE = 1e-3;
+  private static final double MAX_PLAIN_DOUBLE = 1e7;
+  // Decimals of up to 15 significant digits map to distinct doubles, so the shortest decimal parsing
+  // back to a double is unique if it has at most that many digits
+  private static final long MAX_SIGNIFICAND = 1_000_000_000_000_000L;
+  // Maximum number of fraction digits of a plain double with at most 15 significant digits
+  private static final int MAX_FRACTION_DIGITS = 17;
+  private static final long NEGATIVE_ZERO_BITS = Double.doubleToRawLongBits(-0.0);
+
+  ///CLOVER:OFF
+  private Numbers() {
+    // static class
+  }
+  ///CLOVER:ON
+
+  /**
+   * Formats a long value into the end of the buffer, as {@link Long#toString(long)} would.
+   *
+   * @param value value to format
+   * @param buffer buffer of at least {@link #MAX_LENGTH} bytes
+   * @return index of the first byte of the formatted value, which ends at the end of the buffer
+   */
+  public static int formatLong(final long value, final byte[] buffer) {
+    return formatLong(value, buffer, buffer.length);
+  }
+
+  /**
+   * Formats a double value into the end of the buffer as the shortest decimal that parses back to
+   * the value, which is what {@link Double#toString(double)} returns for values of at least 0.001
+   * and less than 10^7 in magnitude, if the decimal has at most 15 significant digits. Older
+   * runtimes may return a longer decimal for a few values, which parses back to the same value.
+   *
+   * @param value value to format
+   * @param buffer buffer of at least {@link #MAX_LENGTH} bytes
+   * @return index of the first byte of the formatted value, which ends at the end of the buffer, or
+   *     -1 if the value was not formatted and has to be converted with {@link Double#toString}
+   */
+  public static int formatDouble(final double value, final byte[] buffer) {
+    final double magnitude = Math.abs(value);
+    if (!(magnitude < MAX_PLAIN_DOUBLE)
+        || Double.doubleToRawLongBits(value) == NEGATIVE_ZERO_BITS) {
+      return -1;
+    }
+    if (value == Math.rint(value)) {
+      buffer[buffer.length - 2] = '.';
+      buffer[buffer.length - 1] = '0';
+      return formatLong((long) value, buffer, buffer.length - 2);
+    }
+    if (magnitude < MIN_PLAIN_DOUBLE) {
+      return -1;
+    }
+    // Find the fewest fraction digits of a decimal parsing back to the value. Both the significand
+    // and the power of ten are exact doubles, so their quotient is the double nearest the decimal.
+    long scale = 1L;
+    for (int fractionDigits = 1; fractionDigits <= MAX_FRACTION_DIGITS; fractionDigits++) {
+      scale *= 10L;
+      final long significand = Math.round(magnitude * scale);
+      if (significand >= MAX_SIGNIFICAND) {
+        return -1;
+      }
+      if (significand / (double) scale == magnitude) {
+        return formatDecimal(significand, fractionDigits, value < 0, buffer);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Formats a positive decimal of the given significand and number of fraction digits into the end
+   * of the buffer, with a leading zero if it is less than 1.
+   */
+  private static int formatDecimal(final long significand, final int fractionDigits,
+      final boolean negative, final byte[] buffer) {
+    int position = buffer.length;
+    long remaining = significand;
+    for (int i = 0; i < fractionDigits; i++) {
+      buffer[--position] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    buffer[--position] = '.';
+    position = formatLong(remaining, buffer, position);
+    if (negative) {
+      buffer[--position] = '-';
+    }
+    return position;
+  }
+
+  private static int formatLong(final long value, final byte[] buffer, final int end) {
+    int position = end;
+    // Accumulate the negative value, so that Long.MIN_VALUE does not overflow
+    long remaining = value > 0 ? -value : value;
+    do {
+      buffer[--position] = (byte) ('0' - remaining % 10);
+      remaining /= 10;
+    } while (remaining != 0);
+    if (value < 0) {
+      buffer[--position] = '-';
+    }
+    return position;
+  }
+}
@@ -42,6 +42,8 @@ import java.util.stream.Collectors;
  *         }
  *     }
  * }</pre>
+ * <p>When a measurement is emitted to multiple reporters, {@link #toTagSet()} can be passed instead
+ * of {@link #toArray()}, so that the tags are hashed only once.</p>
  */
 public class TagArray {
 
@@ -83,6 +85,18 @@ public class TagArray {
     return array.get();
   }
 
+  /**
+   * Get a {@link TagSet} of the current values of this {@link TagArray} for passing to a {@link
+   * Metric}. The fingerprint of the tag set is calculated once, when the tag set is created.
+   * <p>The values are copied, so the tag set stays valid after the next call to {@link
+   * #put(VariableKey, String)}.</p>
+   *
+   * @return new tag set
+   */
+  public TagSet toTagSet() {
+    return TagSet.of(array.get().clone());
+  }
+
   private abstract static class Key {
 
     protected String getInitialValue() {
@@ -0,0 +1,159 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrent dictionary of tag keys and values shared by the aggregators of a reporter. Each
+ * distinct string is stored once, and the tag sets stored by the aggregators refer to the stored
+ * instances, so that tag values built at run time, e.g., with {@code String.valueOf(statusCode)},
+ * are not retained once for every series and for every aggregator they appear in.
+ *
+ * <p>Each stored string counts the tag sets interned with {@link #intern(String[])} that refer to
+ * it. The aggregators release the tag set of a record with {@link #release(String[])} when the
+ * record is evicted or the aggregator is closed, and a string no tag set refers to any more is
+ * removed from the dictionary. Once the dictionary holds its maximum number of strings, new
+ * strings are not added and tag sets refer to the strings they were given instead.</p>
+ *
+ * <p>A dictionary should be scoped to a single reporter, e.g., shared by the aggregators of all
+ * windows of a {@link io.ultrabrew.metrics.reporters.TimeWindowReporter}, so that it is freed
+ * together with the reporter.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public final class TagDictionary {
+
+  public static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+  private final ConcurrentHashMap<String, Entry> strings = new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  /**
+   * Create a new dictionary.
+   *
+   * @param maxSize maximum number of strings stored in the dictionary
+   */
+  public TagDictionary(final int maxSize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("Maximum size must not be negative");
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Get a copy of a flattened array of tag key-value pairs referring to the strings stored in this
+   * dictionary. The returned tag set must be released with {@link #release(String[])} once it is no
+   * longer used.
+   *
+   * @param tags a sorted array of tag key-value pairs in a flattened array
+   * @return a new array with equal tag keys and values
+   */
+  public String[] intern(final String[] tags) {
+    final String[] interned = new String[tags.length];
+    for (int i = 0; i < tags.length; i++) {
+      interned[i] = intern(tags[i]);
+    }
+    return interned;
+  }
+
+  /**
+   * Get the string stored in this dictionary equal to the given string, adding it if the dictionary
+   * is not full, and count a reference to it.
+   *
+   * @param s a tag key or value, may be {@code null}
+   * @return the stored string, or the given string if not stored
+   */
+  public String intern(final String s) {
+    if (s == null) {
+      return null;
+    }
+    for (; ; ) {
+      final Entry entry = strings.get(s);
+      if (entry != null) {
+        if (entry.retain()) {
+          return entry.string;
+        }
+        // The last reference to the entry has just been released
+        strings.remove(s, entry);
+        continue;
+      }
+      if (strings.size() >= maxSize) {
+        return s;
+      }
+      if (strings.putIfAbsent(s, new Entry(s)) == null) {
+        return s;
+      }
+    }
+  }
+
+  /**
+   * Release a tag set returned by {@link #intern(String[])}, removing the strings no other tag set
+   * refers to from this dictionary.
+   *
+   * @param tags a flattened array of tag key-value pairs returned by this dictionary
+   */
+  public void release(final String[] tags) {
+    for (final String tag : tags) {
+      release(tag);
+    }
+  }
+
+  /**
+   * Release a reference to a string returned by {@link #intern(String)}, removing the string from
+   * this dictionary if no other reference is left. A string not stored in this dictionary is
+   * ignored.
+   *
+   * @param s a tag key or value returned by this dictionary, may be {@code null}
+   */
+  public void release(final String s) {
+    if (s == null) {
+      return;
+    }
+    final Entry entry = strings.get(s);
+    // Only references to the stored instance are counted
+    if (entry != null && entry.string == s && entry.references.decrementAndGet() <= 0) {
+      strings.remove(s, entry);
+    }
+  }
+
+  /**
+   * Get the number of strings stored in this dictionary.
+   *
+   * @return number of strings
+   */
+  public int size() {
+    return strings.size();
+  }
+
+  /**
+   * A stored string and the number of references to it.
+   */
+  private static final class Entry {
+
+    private final String string;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    private Entry(final String string) {
+      this.string = string;
+    }
+
+    /**
+     * Count a new reference to the string, unless the last reference has been released already.
+     */
+    private boolean retain() {
+      for (; ; ) {
+        final int count = references.get();
+        if (count <= 0) {
+          return false;
+        }
+        if (references.compareAndSet(count, count + 1)) {
+          return true;
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,209 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A flattened array of tag key-value pairs carried together with its 64-bit fingerprint. The
+ * fingerprint is calculated once when the tag set is created, so a measurement event emitted to
+ * multiple reporters and aggregators with a tag set is only hashed once instead of once per
+ * aggregator.
+ *
+ * <pre>{@code
+ *     private static final TagSet TAGS = TagSet.of("endpoint", "/users", "method", "GET");
+ *
+ *     public void handleRequest() {
+ *         requestCounter.inc(TAGS);
+ *     }
+ * }</pre>
+ *
+ * <p>The array is not copied, so it must not be modified after the tag set has been created.</p>
+ *
+ * <p>A tag set created with {@link #bound(String...)} also remembers the positions of its records
+ * in the aggregators it is applied to, so that a measurement emitted repeatedly with the same tag
+ * set goes straight to its records without looking them up again.</p>
+ *
+ * @see TagArray#toTagSet()
+ */
+public final class TagSet {
+
+  /**
+   * Maximum number of aggregators a bound tag set remembers the positions of its records in.
+   */
+  public static final int MAX_POSITIONS = 8;
+
+  private static final AtomicLong NEXT_POSITION_OWNER = new AtomicLong();
+
+  private final String[] tags;
+  private final long fingerprint;
+  // Record positions keyed by the aggregators they are in, or null if the tag set is not bound.
+  // Replaced as a whole, so a thread may miss a position stored by another thread concurrently and
+  // look the record up again.
+  private volatile Positions positions;
+
+  private TagSet(final String[] tags, final Positions positions) {
+    this.tags = tags;
+    this.fingerprint = Hashing.fingerprint(tags);
+    this.positions = positions;
+  }
+
+  /**
+   * Create a tag set of a flattened array of tag key-value pairs.
+   *
+   * @param tags a sorted array of tag key-value pairs in a flattened array
+   * @return new tag set
+   */
+  @SuppressFBWarnings(
+      value = {"EI_EXPOSE_REP2"},
+      justification = "Avoid creating copies for performance reasons.")
+  public static TagSet of(final String... tags) {
+    return new TagSet(tags, null);
+  }
+
+  /**
+   * Create a tag set of a flattened array of tag key-value pairs that remembers the positions of
+   * its records in the aggregators it is applied to. A bound tag set is meant to be created once and
+   * reused for all measurements with the same tags, e.g., by a bound metric.
+   *
+   * @param tags a sorted array of tag key-value pairs in a flattened array
+   * @return new bound tag set
+   */
+  @SuppressFBWarnings(
+      value = {"EI_EXPOSE_REP2"},
+      justification = "Avoid creating copies for performance reasons.")
+  public static TagSet bound(final String... tags) {
+    return new TagSet(tags, Positions.EMPTY);
+  }
+
+  /**
+   * Create a unique key for the record positions of an aggregator in bound tag sets.
+   *
+   * @return position owner key
+   */
+  public static long newPositionOwner() {
+    return NEXT_POSITION_OWNER.incrementAndGet();
+  }
+
+  /**
+   * Returns whether this tag set remembers the positions of its records.
+   *
+   * @return true if created with {@link #bound(String...)}
+   */
+  public boolean isBound() {
+    return positions != null;
+  }
+
+  /**
+   * Get the record position of a bound tag set last stored by the given aggregator.
+   *
+   * @param owner key of the aggregator from {@link #newPositionOwner()}
+   * @return record position or {@code null}, which the aggregator must validate before using it
+   */
+  public Object getPosition(final long owner) {
+    final Positions positions = this.positions;
+    final int i = positions.indexOf(owner);
+    return i < 0 ? null : positions.values[i];
+  }
+
+  /**
+   * Store the record position of a bound tag set in the given aggregator, replacing the position
+   * stored by the aggregator before. Once positions are stored for {@link #MAX_POSITIONS}
+   * aggregators, the position stored first is dropped. The position must be immutable and should
+   * not refer to the aggregator, so that it does not keep a discarded aggregator reachable.
+   *
+   * @param owner key of the aggregator from {@link #newPositionOwner()}
+   * @param position record position
+   */
+  public void setPosition(final long owner, final Object position) {
+    final Positions positions = this.positions;
+    final int i = positions.indexOf(owner);
+    final long[] owners;
+    final Object[] values;
+    if (i >= 0) {
+      owners = positions.owners;
+      values = positions.values.clone();
+      values[i] = position;
+    } else {
+      final int from = positions.owners.length < MAX_POSITIONS ? 0 : 1;
+      owners = Arrays.copyOfRange(positions.owners, from, positions.owners.length + 1);
+      values = Arrays.copyOfRange(positions.values, from, positions.values.length + 1);
+      owners[owners.length - 1] = owner;
+      values[values.length - 1] = position;
+    }
+    this.positions = new Positions(owners, values);
+  }
+
+  /**
+   * Get the raw array representation of this tag set.
+   *
+   * @return a sorted array of tag key-value pairs in a flattened array
+   */
+  @SuppressFBWarnings(
+      value = {"EI_EXPOSE_REP"},
+      justification = "Avoid creating copies for performance reasons.")
+  public String[] toArray() {
+    return tags;
+  }
+
+  /**
+   * Get the 64-bit fingerprint of this tag set.
+   *
+   * @return fingerprint, never {@code 0L}
+   * @see Hashing#fingerprint(String[])
+   */
+  public long fingerprint() {
+    return fingerprint;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof TagSet)) {
+      return false;
+    }
+    final TagSet other = (TagSet) o;
+    return fingerprint == other.fingerprint && Arrays.equals(tags, other.tags);
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(fingerprint);
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(tags);
+  }
+
+  /**
+   * Immutable record positions of a bound tag set, in the order they were first stored.
+   */
+  private static final class Positions {
+
+    private static final Positions EMPTY = new Positions(new long[0], new Object[0]);
+
+    private final long[] owners;
+    private final Object[] values;
+
+    private Positions(final long[] owners, final Object[] values) {
+      this.owners = owners;
+      this.values = values;
+    }
+
+    private int indexOf(final long owner) {
+      for (int i = 0; i < owners.length; i++) {
+        if (owners[i] == owner) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+}
@@ -7,7 +7,13 @@ package io.ultrabrew.metrics;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayContaining;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import mockit.Expectations;
 import mockit.Verifications;
 import org.junit.jupiter.api.Test;
@@ -103,4 +109,113 @@ public class CounterTest {
     metricRegistry.addReporter(reporter);
     c.inc("TEST-key", "test-value");
   }
+
+  @Test
+  public void testEmitTagSet() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Counter c = metricRegistry.counter("test");
+    TagSet tagSet = TagSet.of("TEST-key", "test-value");
+    AtomicLong sum = new AtomicLong();
+
+    Reporter reporter = new Reporter() {
+      @Override
+      public void emit(Metric instance, long timestamp, long value, String[] tags) {
+        throw new AssertionError("Tag set emitted as an array");
+      }
+
+      @Override
+      public void emitTagSet(Metric instance, long timestamp, long value, TagSet tags) {
+        assertEquals(c, instance);
+        assertSame(tagSet, tags);
+        sum.addAndGet(value);
+      }
+    };
+
+    metricRegistry.addReporter(reporter);
+    c.inc(tagSet);
+    c.inc(10L, tagSet);
+    c.dec(tagSet);
+    c.dec(3L, tagSet);
+    assertEquals(7L, sum.get());
+  }
+
+  @Test
+  public void testIncAll() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Counter c = metricRegistry.counter("test");
+    String[][] tagSets = new String[][]{{"host", "web01"}, {"host", "web02"}, null};
+    long[] changes = new long[]{1L, 2L, 3L};
+    List<Long> timestamps = new ArrayList<>();
+
+    Reporter reporter = new Reporter() {
+      @Override
+      public void emit(Metric instance, long timestamp, long value, String[] tags) {
+        throw new AssertionError("Batch emitted value by value");
+      }
+
+      @Override
+      public void emitBatch(Metric instance, long timestamp, long[] values, String[][] tags) {
+        assertEquals(c, instance);
+        assertSame(changes, values);
+        assertSame(tagSets, tags);
+        timestamps.add(timestamp);
+      }
+    };
+
+    metricRegistry.addReporter(reporter);
+    c.incAll(tagSets, changes);
+    c.incAll(new String[0][], new long[0]);
+    assertEquals(1, timestamps.size());
+    assertThrows(IllegalArgumentException.class, () -> c.incAll(tagSets, new long[]{1L}));
+  }
+
+  @Test
+  public void testEmitTagSetAsArray() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Counter c = metricRegistry.counter("test");
+
+    Reporter reporter = (instance, timestamp, value, tags) -> {
+      assertEquals(1L, value);
+      assertThat(tags, arrayContaining("TEST-key", "test-value"));
+    };
+
+    metricRegistry.addReporter(reporter);
+    c.inc(TagSet.of("TEST-key", "test-value"));
+  }
+
+  @Test
+  public void testBind() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Counter c = metricRegistry.counter("test");
+    Counter.Bound bound = c.bind("TEST-key", "test-value");
+    AtomicLong sum = new AtomicLong();
+    List<TagSet> tagSets = new ArrayList<>();
+
+    Reporter reporter = new Reporter() {
+      @Override
+      public void emit(Metric instance, long timestamp, long value, String[] tags) {
+        throw new AssertionError("Bound counter emitted a tag array");
+      }
+
+      @Override
+      public void emitTagSet(Metric instance, long timestamp, long value, TagSet tags) {
+        assertEquals(c, instance);
+        assertThat(tags.toArray(), arrayContaining("TEST-key", "test-value"));
+        tagSets.add(tags);
+        sum.addAndGet(value);
+      }
+    };
+
+    metricRegistry.addReporter(reporter);
+    bound.inc();
+    bound.inc(10L);
+    bound.dec();
+    bound.dec(3L);
+    assertEquals(7L, sum.get());
+    assertEquals(4, tagSets.size());
+    // The tag set, and its fingerprint, are created once
+    for (TagSet tagSet : tagSets) {
+      assertSame(tagSets.get(0), tagSet);
+    }
+  }
 }
@@ -8,6 +8,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayContaining;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import io.ultrabrew.metrics.util.TagSet;
 import mockit.Expectations;
 import mockit.Verifications;
 import org.junit.jupiter.api.Test;
@@ -42,4 +43,26 @@ public class GaugeDoubleTest {
       assertThat(tags, arrayContaining("TEST-key", "test-v1"));
     }};
   }
+
+  @Test
+  public void testBind() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    GaugeDouble gaugeDouble = metricRegistry.gaugeDouble("cpuUsage");
+    String[] tags = new String[]{"TEST-key", "test-v1"};
+    GaugeDouble.Bound bound = gaugeDouble.bind(tags);
+    tags[1] = "changed";
+
+    new Expectations(gaugeDouble) {{
+      gaugeDouble.emitTagSet(anyLong, (TagSet) any);
+    }};
+
+    double v = 12.75;
+    bound.set(v);
+
+    new Verifications() {{
+      TagSet tagSet;
+      gaugeDouble.emitTagSet(Double.doubleToRawLongBits(v), tagSet = withCapture());
+      assertThat(tagSet.toArray(), arrayContaining("TEST-key", "test-v1"));
+    }};
+  }
 }
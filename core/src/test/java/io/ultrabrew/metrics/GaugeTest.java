@@ -8,6 +8,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.arrayContaining;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import io.ultrabrew.metrics.util.TagSet;
 import mockit.Expectations;
 import mockit.Verifications;
 import org.junit.jupiter.api.Test;
@@ -39,4 +40,23 @@ public class GaugeTest {
       assertThat(tags, arrayContaining("TEST-key", "test-value"));
     }};
   }
+
+  @Test
+  public void testBind() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Gauge gauge = metricRegistry.gauge("test");
+    Gauge.Bound bound = gauge.bind("TEST-key", "test-value");
+
+    new Expectations(gauge) {{
+      gauge.emitTagSet(anyLong, (TagSet) any);
+    }};
+
+    bound.set(100L);
+
+    new Verifications() {{
+      TagSet tagSet;
+      gauge.emitTagSet(100L, tagSet = withCapture());
+      assertThat(tagSet.toArray(), arrayContaining("TEST-key", "test-value"));
+    }};
+  }
 }
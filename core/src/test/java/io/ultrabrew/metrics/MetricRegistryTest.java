@@ -5,11 +5,17 @@
 package io.ultrabrew.metrics;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import mockit.Deencapsulation;
 import org.junit.jupiter.api.Test;
 
@@ -137,4 +143,80 @@ public class MetricRegistryTest {
       fail("Test thread succeeded in creating instance");
     }
   }
+
+  @Test
+  public void testClock() {
+    MetricRegistry metricRegistry = new MetricRegistry(() -> 42L);
+    Counter c = metricRegistry.counter("test");
+    AtomicLong timestamp = new AtomicLong();
+    metricRegistry.addReporter((instance, t, value, tags) -> timestamp.set(t));
+    c.inc();
+    assertEquals(42L, timestamp.get());
+    assertEquals(Clock.SYSTEM, new MetricRegistry().getClock());
+  }
+
+  @Test
+  public void testRoutes() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    AtomicLong first = new AtomicLong();
+    AtomicLong second = new AtomicLong();
+    Reporter ignoring = new Reporter() {
+      @Override
+      public void emit(Metric metric, long timestamp, long value, String[] tags) {
+        fail("Ignored metric emitted");
+      }
+
+      @Override
+      public Reporter route(Metric metric) {
+        return null;
+      }
+    };
+    metricRegistry.addReporter((metric, timestamp, value, tags) -> first.addAndGet(value));
+    metricRegistry.addReporter(ignoring);
+    Counter c = metricRegistry.counter("test");
+    assertEquals(1, c.routes.length);
+    c.inc(2L);
+
+    metricRegistry.addReporter((metric, timestamp, value, tags) -> second.addAndGet(value));
+    assertEquals(2, c.routes.length);
+    c.inc(3L);
+    assertEquals(5L, first.get());
+    assertEquals(3L, second.get());
+  }
+
+  @Test
+  public void testRemove() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    AtomicLong sum = new AtomicLong();
+    List<Metric> removed = new ArrayList<>();
+    metricRegistry.addReporter(new Reporter() {
+      @Override
+      public void emit(Metric metric, long timestamp, long value, String[] tags) {
+        sum.addAndGet(value);
+      }
+
+      @Override
+      public void remove(Metric metric) {
+        removed.add(metric);
+      }
+    });
+    Counter c = metricRegistry.counter("test");
+    metricRegistry.gauge("other");
+    assertEquals(2, metricRegistry.size());
+
+    assertSame(c, metricRegistry.remove("test"));
+    assertNull(metricRegistry.remove("test"));
+    assertEquals(1, metricRegistry.size());
+    assertEquals(1, removed.size());
+    assertSame(c, removed.get(0));
+
+    // The removed instance no longer emits, and the id can be registered again
+    c.inc(2L);
+    assertEquals(0L, sum.get());
+    Counter recreated = metricRegistry.counter("test");
+    assertNotSame(c, recreated);
+    recreated.inc(3L);
+    assertEquals(3L, sum.get());
+    assertEquals(0L, metricRegistry.memoryUsage());
+  }
 }
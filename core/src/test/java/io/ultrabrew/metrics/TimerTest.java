@@ -9,6 +9,7 @@ import static org.hamcrest.Matchers.arrayContaining;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import io.ultrabrew.metrics.util.TagSet;
 import mockit.Expectations;
 import mockit.Verifications;
 import org.junit.jupiter.api.Test;
@@ -53,4 +54,82 @@ public class TimerTest {
       assertEquals(0, tags.length);
     }};
   }
+
+  @Test
+  public void testBind() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Timer t = metricRegistry.timer("test");
+    Timer.Bound bound = t.bind("TEST-key", "test-value");
+
+    new Expectations(t) {{
+      t.emitTagSet(anyLong, (TagSet) any);
+    }};
+
+    final long startTime = bound.start();
+    bound.stop(startTime);
+
+    new Verifications() {{
+      TagSet tagSet;
+      long l;
+      t.emitTagSet(l = withCapture(), tagSet = withCapture());
+      assertThat(l, greaterThan(0L));
+      assertThat(tagSet.toArray(), arrayContaining("TEST-key", "test-value"));
+    }};
+
+    bound.update(100L);
+
+    new Verifications() {{
+      t.emitTagSet(100L, (TagSet) any);
+    }};
+  }
+
+  @Test
+  public void testUpdateAll() {
+    MetricRegistry metricRegistry = new MetricRegistry();
+    Timer t = metricRegistry.timer("test");
+    String[][] tagSets = new String[][]{{"TEST-key", "test-value"}, {"TEST-key", "other-value"}};
+    long[] durations = new long[]{100L, 200L};
+
+    new Expectations(t) {{
+      t.emitBatch((long[]) any, (String[][]) any);
+    }};
+
+    t.updateAll(tagSets, durations);
+
+    new Verifications() {{
+      t.emitBatch(durations, tagSets);
+      times = 1;
+    }};
+  }
+
+  @Test
+  public void testClock() {
+    MetricRegistry metricRegistry = new MetricRegistry(new Clock() {
+      private long nanoTime = 1000L;
+
+      @Override
+      public long currentTimeMillis() {
+        return 0L;
+      }
+
+      @Override
+      public long nanoTime() {
+        nanoTime += 500L;
+        return nanoTime;
+      }
+    });
+    Timer t = metricRegistry.timer("test");
+
+    new Expectations(t) {{
+      t.emit(anyLong, (String[]) any);
+    }};
+
+    final long startTime = t.start();
+    assertEquals(1500L, startTime);
+    t.stop(startTime);
+
+    new Verifications() {{
+      t.emit(500L, (String[]) any);
+    }};
+  }
 }
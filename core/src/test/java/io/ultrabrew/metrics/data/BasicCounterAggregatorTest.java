@@ -8,16 +8,24 @@ import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import io.ultrabrew.metrics.util.TagDictionary;
+import io.ultrabrew.metrics.util.TagSet;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.BiFunction;
 import mockit.Deencapsulation;
 import mockit.Expectations;
+import mockit.Verifications;
 import org.junit.jupiter.api.Test;
 
 public class BasicCounterAggregatorTest {
@@ -469,9 +477,10 @@ public class BasicCounterAggregatorTest {
       assertEquals(1L, cursor.readLong(0));
     }
 
-    List<long[]> tables = Deencapsulation.getField(table, "tables");
-    List<AtomicInteger> recordCounts = Deencapsulation.getField(table, "recordCounts");
-    List<Integer> tableCapacities = Deencapsulation.getField(table, "tableCapacities");
+    final Object chain = Deencapsulation.getField(table, "chain");
+    List<long[]> tables = Deencapsulation.getField(chain, "tables");
+    List<AtomicInteger> recordCounts = Deencapsulation.getField(chain, "recordCounts");
+    List<Integer> tableCapacities = Deencapsulation.getField(chain, "tableCapacities");
     assertEquals(2, tables.size());
     assertEquals(2, recordCounts.size());
     assertEquals(3, recordCounts.get(0).get());
@@ -502,4 +511,820 @@ public class BasicCounterAggregatorTest {
     assertEquals(128, aggregator.capacity());
     assertEquals(4096, maxCapacity);
   }
+
+  @Test
+  public void testFingerprintCollisionWithVerifyTags() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY,
+        10, TableOptions.builder().withVerifyTags(true).build());
+    new Expectations(table) {{
+      table.hashCode((String[]) any);
+      result = 42L;
+    }};
+    final String[] tagSet1 = new String[]{"testTag", "value1"};
+    final String[] tagSet2 = new String[]{"testTag", "value2"};
+
+    table.apply(tagSet1, 1L, CURRENT_TIME);
+    table.apply(tagSet2, 2L, CURRENT_TIME);
+    table.apply(tagSet1, 3L, CURRENT_TIME);
+
+    assertEquals(2, table.size());
+    final Cursor cursor = table.sortedCursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet1, cursor.getTags());
+    assertEquals(4L, cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet2, cursor.getTags());
+    assertEquals(2L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testStringHashCodeCollisionWithVerifyTags() {
+    // "Aa" and "BB" share the same String.hashCode(), and thus the same fingerprint
+    final BasicCounterAggregator table = new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY,
+        10, TableOptions.builder().withVerifyTags(true).build());
+    table.apply(new String[]{"testTag", "Aa"}, 1L, CURRENT_TIME);
+    table.apply(new String[]{"testTag", "BB"}, 2L, CURRENT_TIME);
+
+    assertEquals(2, table.size());
+    final Cursor cursor = table.sortedCursor();
+    assertTrue(cursor.next());
+    assertEquals(1L, cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertEquals(2L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testFingerprintCollisionWithoutVerifyTags() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY,
+        10);
+    new Expectations(table) {{
+      table.hashCode((String[]) any);
+      result = 42L;
+    }};
+
+    table.apply(new String[]{"testTag", "value1"}, 1L, CURRENT_TIME);
+    table.apply(new String[]{"testTag", "value2"}, 2L, CURRENT_TIME);
+
+    assertEquals(1, table.size());
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(3L, cursor.readLong(0));
+  }
+
+  @Test
+  public void testVerifyTagsAcrossTables() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY,
+        3, TableOptions.builder().withVerifyTags(true).build());
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"testTag", String.valueOf(i)}, i, CURRENT_TIME);
+      table.apply(new String[]{"testTag", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    assertEquals(10, table.size());
+    final Cursor cursor = table.cursor();
+    while (cursor.next()) {
+      assertEquals(2L * Long.parseLong(cursor.getTags()[1]), cursor.readLong(0));
+    }
+  }
+
+  @Test
+  void testOffHeap() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    for (int i = 0; i < 5; i++) {
+      table.apply(new String[]{"key", "value" + i}, i, CURRENT_TIME);
+      table.apply(new String[]{"key", "value" + i}, 10L, CURRENT_TIME);
+    }
+    final Object chain = Deencapsulation.getField(table, "chain");
+    List<long[]> tables = Deencapsulation.getField(chain, "tables");
+    assertEquals(2, tables.size());
+    assertEquals(5, table.size());
+
+    Cursor cursor = table.sortedCursor();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(cursor.next());
+      assertArrayEquals(new String[]{"key", "value" + i}, cursor.getTags());
+      assertEquals(CURRENT_TIME, cursor.lastUpdated());
+      assertEquals(10L + i, cursor.readAndResetLong(0));
+    }
+    assertFalse(cursor.next());
+
+    cursor = table.cursor();
+    while (cursor.next()) {
+      assertEquals(0L, cursor.readLong(0));
+    }
+
+    table.close();
+    table.close();
+    table.apply(new String[]{"key", "value"}, 1L, CURRENT_TIME);
+    assertEquals(5, table.size());
+    assertFalse(table.cursor().next());
+  }
+
+  @Test
+  void testCloseOnHeap() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    final Cursor cursor = table.cursor();
+    table.apply(new String[]{"key", "value"}, 1L, CURRENT_TIME);
+    table.close();
+    table.apply(new String[]{"key", "value2"}, 1L, CURRENT_TIME);
+    assertEquals(1, table.size());
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testConsolidate() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    for (int i = 0; i < 20; i++) {
+      table.apply(new String[]{"key", "value" + i}, i, CURRENT_TIME);
+    }
+    Object chain = Deencapsulation.getField(table, "chain");
+    List<long[]> tables = Deencapsulation.getField(chain, "tables");
+    assertEquals(3, tables.size());
+
+    assertTrue(table.consolidate());
+    assertFalse(table.consolidate());
+
+    chain = Deencapsulation.getField(table, "chain");
+    tables = Deencapsulation.getField(chain, "tables");
+    List<AtomicInteger> recordCounts = Deencapsulation.getField(chain, "recordCounts");
+    List<Integer> tableCapacities = Deencapsulation.getField(chain, "tableCapacities");
+    assertEquals(1, tables.size());
+    assertEquals(20, recordCounts.get(0).get());
+    assertEquals(table.capacity(), tableCapacities.get(0).intValue());
+
+    for (int i = 0; i < 20; i++) {
+      table.apply(new String[]{"key", "value" + i}, 100L, CURRENT_TIME);
+    }
+    table.apply(new String[]{"key", "value20"}, 20L, CURRENT_TIME);
+    assertEquals(21, table.size());
+
+    final Cursor cursor = table.sortedCursor();
+    final String[][] expected = new String[21][];
+    for (int i = 0; i < 21; i++) {
+      expected[i] = new String[]{"key", "value" + i};
+    }
+    Arrays.sort(expected, (a, b) -> a[1].compareTo(b[1]));
+    for (final String[] tags : expected) {
+      assertTrue(cursor.next());
+      assertArrayEquals(tags, cursor.getTags());
+      final int i = Integer.parseInt(tags[1].substring(5));
+      assertEquals(i < 20 ? 100L + i : 20L, cursor.readLong(0));
+    }
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testConsolidateVerifyTagsOffHeap() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3,
+        TableOptions.builder().withVerifyTags(true).withOffHeap(true).build());
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    assertTrue(table.consolidate());
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    for (int i = 10; i < 30; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    assertTrue(table.consolidate());
+    assertEquals(30, table.size());
+
+    final Cursor cursor = table.cursor();
+    while (cursor.next()) {
+      final long i = Long.parseLong(cursor.getTags()[1]);
+      assertEquals(i < 10 ? 2L * i : i, cursor.readLong(0));
+    }
+
+    table.close();
+    assertFalse(table.consolidate());
+  }
+
+  @Test
+  void testConsolidateWaitsForWritersOffHeap() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    // A writer stalled in the chain replaced by the consolidation
+    final Object chain = Deencapsulation.getField(table, "chain");
+    final AtomicLongArray writers = Deencapsulation.getField(chain, "writers");
+    writers.incrementAndGet(0);
+    assertTrue(table.consolidate());
+    final List<?> retiredChains = Deencapsulation.getField(table, "retiredChains");
+    assertEquals(1, retiredChains.size());
+    assertFalse(table.consolidate());
+    assertEquals(1, retiredChains.size());
+
+    writers.decrementAndGet(0);
+    assertFalse(table.consolidate());
+    assertTrue(retiredChains.isEmpty());
+    table.close();
+  }
+
+  @Test
+  void testCloseWaitsForWritersOffHeap() throws InterruptedException {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    table.apply(new String[]{"key", "value"}, 1L, CURRENT_TIME);
+    // A writer stalled in the chain after passing the closed check
+    final Object chain = Deencapsulation.getField(table, "chain");
+    final AtomicLongArray writers = Deencapsulation.getField(chain, "writers");
+    writers.incrementAndGet(0);
+    final Thread closer = new Thread(table::close);
+    closer.start();
+    closer.join(100L);
+    assertTrue(closer.isAlive());
+    table.apply(new String[]{"key", "value2"}, 1L, CURRENT_TIME);
+    assertEquals(1, table.size());
+
+    writers.decrementAndGet(0);
+    closer.join(10000L);
+    assertFalse(closer.isAlive());
+    final List<?> retiredChains = Deencapsulation.getField(table, "retiredChains");
+    assertTrue(retiredChains.isEmpty());
+  }
+
+  @Test
+  void testEvictIdle() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test", 3, 3,
+        TableOptions.builder().withIdleTimeoutMillis(1000L).build());
+    for (int i = 0; i < 3; i++) {
+      table.apply(new String[]{"key", "value" + i}, 1L, CURRENT_TIME);
+    }
+    // Maximum capacity reached
+    table.apply(new String[]{"key", "value3"}, 1L, CURRENT_TIME);
+    assertEquals(3, table.size());
+
+    assertEquals(0, table.evictIdle(CURRENT_TIME + 500L));
+    table.apply(new String[]{"key", "value0"}, 1L, CURRENT_TIME + 1000L);
+    final Cursor sortedCursor = table.sortedCursor();
+    assertEquals(2, table.evictIdle(CURRENT_TIME + 1500L));
+    assertEquals(1, table.size());
+
+    // The cursor created before eviction skips the evicted records
+    assertTrue(sortedCursor.next());
+    assertArrayEquals(new String[]{"key", "value0"}, sortedCursor.getTags());
+    assertEquals(2L, sortedCursor.readLong(0));
+    assertFalse(sortedCursor.next());
+
+    // The cursor skips the released tag sets
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value0"}, cursor.getTags());
+    assertFalse(cursor.next());
+
+    // New records reuse the tombstones and the released tag sets
+    table.apply(new String[]{"key", "value3"}, 5L, CURRENT_TIME + 1500L);
+    table.apply(new String[]{"key", "value1"}, 7L, CURRENT_TIME + 1500L);
+    assertEquals(3, table.size());
+    String[][] tagSets = Deencapsulation.getField(table, "tagSets");
+    assertEquals(3, tagSets.length);
+
+    cursor = table.sortedCursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value0"}, cursor.getTags());
+    assertEquals(2L, cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value1"}, cursor.getTags());
+    assertEquals(CURRENT_TIME + 1500L, cursor.lastUpdated());
+    assertEquals(7L, cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value3"}, cursor.getTags());
+    assertEquals(5L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testEvictIdleVerifyTagsOffHeap() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withVerifyTags(true).withOffHeap(true)
+        .withIdleTimeoutMillis(1000L).build());
+    for (int i = 0; i < 3; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    table.apply(new String[]{"key", "0"}, 10L, CURRENT_TIME + 2000L);
+    assertEquals(2, table.evictIdle(CURRENT_TIME + 2000L));
+
+    // A single table with tombstones is consolidated
+    assertTrue(table.consolidate());
+    assertFalse(table.consolidate());
+    assertEquals(1, table.size());
+
+    for (int i = 1; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME + 2000L);
+    }
+    assertEquals(10, table.size());
+    final Cursor cursor = table.cursor();
+    while (cursor.next()) {
+      final long i = Long.parseLong(cursor.getTags()[1]);
+      assertEquals(i == 0 ? 10L : i, cursor.readLong(0));
+    }
+
+    table.close();
+    assertEquals(0, table.evictIdle(CURRENT_TIME + 5000L));
+  }
+
+  @Test
+  void testEvictIdleDisabled() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    table.apply(new String[]{"key", "value"}, 1L, CURRENT_TIME);
+    assertEquals(0, table.evictIdle(CURRENT_TIME + 5000L));
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  void testNegativeIdleTimeout() {
+    assertThrows(IllegalArgumentException.class,
+        () -> TableOptions.builder().withIdleTimeoutMillis(-1L));
+  }
+
+  @Test
+  void testCursorUsesStoredPositions() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+
+    new Expectations(table) {{
+    }};
+    Cursor cursor = table.cursor();
+    while (cursor.next()) {
+      assertEquals(Long.parseLong(cursor.getTags()[1]), cursor.readLong(0));
+    }
+    assertTrue(table.consolidate());
+    cursor = table.sortedCursor();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(cursor.next());
+      assertArrayEquals(new String[]{"key", String.valueOf(i)}, cursor.getTags());
+      assertEquals(i, cursor.readLong(0));
+    }
+    assertFalse(cursor.next());
+
+    // The records are located without hashing the tag sets again
+    new Verifications() {{
+      table.hashCode((String[]) any);
+      times = 0;
+    }};
+  }
+
+  @Test
+  void testApplyTagSet() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    final TagSet tagSet = TagSet.of("key", "value");
+    table.apply(tagSet.toArray(), 1L, CURRENT_TIME);
+
+    new Expectations(table) {{
+    }};
+    for (int i = 0; i < 10; i++) {
+      table.applyTagSet(tagSet, 1L, CURRENT_TIME);
+    }
+
+    // The carried fingerprint locates the record created with the tag array
+    new Verifications() {{
+      table.hashCode((String[]) any);
+      times = 0;
+    }};
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value"}, cursor.getTags());
+    assertEquals(11L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testApplyTagSetWithFilteredTags() {
+    // Ignores the values of the "host" tag
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3) {
+      @Override
+      long hashCode(final String[] tags) {
+        return super.hashCode(new String[]{tags[0], tags[2], tags[3]});
+      }
+    };
+    table.apply(new String[]{"host", "a", "key", "value"}, 1L, CURRENT_TIME);
+    table.applyTagSet(TagSet.of("host", "b", "key", "value"), 1L, CURRENT_TIME);
+
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"host", "a", "key", "value"}, cursor.getTags());
+    assertEquals(2L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testApplyBoundTagSet() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 2, TableOptions.builder().withIdleTimeoutMillis(1000L).build());
+    final long owner = Deencapsulation.getField(table, "positionOwner");
+    final TagSet tagSet = TagSet.bound("key", "value");
+    table.applyTagSet(tagSet, 1L, CURRENT_TIME);
+    final Object position = tagSet.getPosition(owner);
+    assertNotNull(position);
+
+    // Another hash table keeps a position of its own
+    final BasicCounterAggregator other = new BasicCounterAggregator("other",
+        DEFAULT_MAX_CARDINALITY, 2);
+    other.applyTagSet(tagSet, 1L, CURRENT_TIME);
+    assertNotNull(tagSet.getPosition((long) Deencapsulation.getField(other, "positionOwner")));
+    assertSame(position, tagSet.getPosition(owner));
+
+    // Growing the table keeps the position
+    table.apply(new String[]{"key", "other0"}, 1L, CURRENT_TIME);
+    table.apply(new String[]{"key", "other1"}, 1L, CURRENT_TIME);
+    table.applyTagSet(tagSet, 1L, CURRENT_TIME);
+    assertSame(position, tagSet.getPosition(owner));
+
+    // Consolidating the table replaces the position
+    assertTrue(table.consolidate());
+    table.applyTagSet(tagSet, 1L, CURRENT_TIME + 1000L);
+    final Object consolidated = tagSet.getPosition(owner);
+    assertNotSame(position, consolidated);
+    assertEquals(3L, readBound(table));
+
+    // Evicting any record replaces the position
+    assertEquals(2, table.evictIdle(CURRENT_TIME + 1500L));
+    table.applyTagSet(tagSet, 1L, CURRENT_TIME + 1000L);
+    assertNotSame(consolidated, tagSet.getPosition(owner));
+    assertEquals(4L, readBound(table));
+
+    // The evicted record of the tag set is created again
+    assertEquals(1, table.evictIdle(CURRENT_TIME + 2500L));
+    table.applyTagSet(tagSet, 1L, CURRENT_TIME + 2500L);
+    assertEquals(1L, readBound(table));
+    assertEquals(1, table.size());
+  }
+
+  private static long readBound(final BasicCounterAggregator table) {
+    final Cursor cursor = table.sortedCursor();
+    while (cursor.next()) {
+      if (Arrays.equals(new String[]{"key", "value"}, cursor.getTags())) {
+        return cursor.readLong(0);
+      }
+    }
+    return fail("Record of the bound tag set not found");
+  }
+
+  @Test
+  void testMemoryUsage() {
+    final BasicCounterAggregator onHeap = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 4);
+    final BasicCounterAggregator offHeap = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 4, TableOptions.builder().withOffHeap(true).build());
+    final long initial = onHeap.memoryUsage();
+    assertTrue(initial > 0L);
+    assertEquals(initial, offHeap.memoryUsage());
+
+    for (int i = 0; i < 100; i++) {
+      onHeap.apply(new String[]{"key", String.valueOf(i)}, 1L, CURRENT_TIME);
+    }
+    assertTrue(onHeap.memoryUsage() > initial);
+    offHeap.close();
+  }
+
+  @Test
+  void testApplyBatch() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 16);
+    final String[][] tags = new String[100][];
+    final long[] values = new long[100];
+    for (int i = 0; i < tags.length; i++) {
+      tags[i] = new String[]{"key", String.valueOf(i % 10)};
+      values[i] = i;
+    }
+
+    table.applyBatch(tags, values, CURRENT_TIME);
+
+    final Cursor cursor = table.sortedCursor();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(cursor.next());
+      assertArrayEquals(new String[]{"key", String.valueOf(i)}, cursor.getTags());
+      assertEquals(CURRENT_TIME, cursor.lastUpdated());
+      // Sum of i, i + 10, ..., i + 90
+      assertEquals(10L * i + 450L, cursor.readLong(0));
+    }
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testCursorLooksUpUnknownPositions() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    for (int i = 0; i < 5; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    final Object chain = Deencapsulation.getField(table, "chain");
+    final long[] positions = Deencapsulation.getField(chain, "positions");
+    Arrays.fill(positions, 0L);
+
+    final Cursor cursor = table.sortedCursor();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(cursor.next());
+      assertArrayEquals(new String[]{"key", String.valueOf(i)}, cursor.getTags());
+      assertEquals(i, cursor.readLong(0));
+    }
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testStripedRecord() throws InterruptedException {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    final String[] tags = new String[]{"key", "value"};
+    table.apply(tags, 1L, CURRENT_TIME);
+
+    final long[] cells = stripe(table, tags);
+    assertNotNull(cells);
+    assertSame(cells, stripe(table, tags));
+
+    table.apply(tags, 2L, CURRENT_TIME);
+    final Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 1000; j++) {
+          table.apply(tags, 1L, CURRENT_TIME);
+        }
+      });
+      threads[i].start();
+    }
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(4002L, Arrays.stream(cells).sum());
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(CURRENT_TIME, cursor.lastUpdated());
+    assertEquals(4003L, cursor.readLong(0));
+    assertEquals(4003L, cursor.readAndResetLong(0));
+    assertEquals(0L, cursor.readLong(0));
+    assertFalse(cursor.next());
+
+    // The record is deflated once it has been reset
+    final long[][] stripes = Deencapsulation.getField(table, "stripes");
+    assertNull(stripes[0]);
+    final long[] cells2 = stripe(table, tags);
+    assertTrue(cells != cells2);
+    assertEquals(1, (int) Deencapsulation.getField(table, "stripeCount"));
+
+    // The record stays striped after consolidation
+    table.apply(new String[]{"key", "value2"}, 1L, CURRENT_TIME);
+    table.apply(new String[]{"key", "value3"}, 1L, CURRENT_TIME);
+    table.apply(new String[]{"key", "value4"}, 1L, CURRENT_TIME);
+    assertTrue(table.consolidate());
+    table.apply(tags, 5L, CURRENT_TIME);
+    assertSame(cells2, stripe(table, tags));
+    cursor = table.sortedCursor();
+    assertTrue(cursor.next());
+    assertEquals(5L, cursor.readLong(0));
+  }
+
+  @Test
+  void testStripeRepeatedlyContendedRecord() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    final String[] tags = new String[]{"key", "value"};
+    table.apply(tags, 1L, CURRENT_TIME);
+
+    for (int i = 1; i < 8; i++) {
+      assertNull(contended(table, tags));
+    }
+    final long[] cells = contended(table, tags);
+    assertNotNull(cells);
+    assertSame(cells, contended(table, tags));
+    assertSame(cells, stripe(table, tags));
+
+    // The contention count of a record that is not striped is cleared when it is reset
+    final String[] tags2 = new String[]{"key", "value2"};
+    table.apply(tags2, 1L, CURRENT_TIME);
+    for (int i = 1; i < 8; i++) {
+      assertNull(contended(table, tags2));
+    }
+    final Cursor cursor = table.sortedCursor();
+    while (cursor.next()) {
+      cursor.readAndResetLong(0);
+    }
+    assertNull(contended(table, tags2));
+    final long[][] stripes = Deencapsulation.getField(table, "stripes");
+    assertNull(stripes[0]);
+  }
+
+  @Test
+  void testDeflateStripedRecord() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    final String[] tags = new String[]{"key", "value"};
+    table.apply(tags, 1L, CURRENT_TIME);
+    stripe(table, tags);
+    table.apply(tags, 2L, CURRENT_TIME);
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(3L, cursor.readAndResetLong(0));
+    // Added to the cells after the reset, and kept in the record when it is deflated
+    table.apply(tags, 4L, CURRENT_TIME);
+    assertFalse(cursor.next());
+
+    cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(4L, cursor.readLong(0));
+    assertEquals(1, (int) Deencapsulation.getField(table, "stripeCount"));
+    final long[][] stripes = Deencapsulation.getField(table, "stripes");
+    assertNull(stripes[0]);
+  }
+
+  @Test
+  void testDeflatedRecordKeepsStripe() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3);
+    final String[] tags = new String[]{"key", "value"};
+    final String[] tags2 = new String[]{"key", "value2"};
+    table.apply(tags, 1L, CURRENT_TIME);
+    table.apply(tags2, 1L, CURRENT_TIME);
+    final long[] cells = stripe(table, tags);
+
+    final Cursor cursor = table.cursor();
+    while (cursor.next()) {
+      cursor.readAndResetLong(0);
+    }
+    // The deflated record keeps its stripe, so that it is not handed to another record
+    final long[][] stripes = Deencapsulation.getField(table, "stripes");
+    assertNull(stripes[0]);
+    assertNull(contended(table, tags));
+    final long[] cells2 = stripe(table, tags2);
+    assertNotSame(cells, cells2);
+    assertEquals(2, (int) Deencapsulation.getField(table, "stripeCount"));
+    assertNull(((long[][]) Deencapsulation.getField(table, "stripes"))[0]);
+
+    // The deflated record is striped into its own stripe again once contended repeatedly
+    for (int i = 2; i < 8; i++) {
+      assertNull(contended(table, tags));
+    }
+    final long[] cells3 = contended(table, tags);
+    assertNotNull(cells3);
+    assertSame(cells3, ((long[][]) Deencapsulation.getField(table, "stripes"))[0]);
+    assertSame(cells2, ((long[][]) Deencapsulation.getField(table, "stripes"))[1]);
+    assertEquals(2, (int) Deencapsulation.getField(table, "stripeCount"));
+  }
+
+  @Test
+  void testStripedRecordOffHeap() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    final String[] tags = new String[]{"key", "value"};
+    table.apply(tags, 1L, CURRENT_TIME);
+    assertNotNull(stripe(table, tags));
+    table.apply(tags, 2L, CURRENT_TIME);
+
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(3L, cursor.readAndResetLong(0));
+    assertEquals(0L, cursor.readLong(0));
+    table.close();
+  }
+
+  @Test
+  void testEvictStripedRecord() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withIdleTimeoutMillis(1000L).build());
+    final String[] tags = new String[]{"key", "value"};
+    table.apply(tags, 1L, CURRENT_TIME);
+    final long[] cells = stripe(table, tags);
+    table.apply(tags, 2L, CURRENT_TIME);
+
+    assertEquals(1, table.evictIdle(CURRENT_TIME + 2000L));
+    final long[][] stripes = Deencapsulation.getField(table, "stripes");
+    assertNull(stripes[0]);
+
+    // The cells of the evicted record are not reused, but its stripe is
+    final String[] tags2 = new String[]{"key", "value2"};
+    table.apply(tags2, 1L, CURRENT_TIME);
+    final long[] cells2 = stripe(table, tags2);
+    assertNotNull(cells2);
+    assertTrue(cells != cells2);
+    assertEquals(1, (int) Deencapsulation.getField(table, "stripeCount"));
+    table.apply(tags2, 1L, CURRENT_TIME);
+
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(tags2, cursor.getTags());
+    assertEquals(2L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  /**
+   * Stripe the record of the given tag set as if it was contended.
+   */
+  static long[] stripe(final ConcurrentMonoidLongTable table, final String[] tags) {
+    return withRecord(table, tags, table::inflate);
+  }
+
+  /**
+   * Count a failed compare-and-swap on the record of the given tag set.
+   */
+  static long[] contended(final ConcurrentMonoidLongTable table, final String[] tags) {
+    return withRecord(table, tags, table::contended);
+  }
+
+  private static long[] withRecord(final ConcurrentMonoidLongTable table, final String[] tags,
+      final BiFunction<long[], Long, long[]> function) {
+    final long index = table.index(tags, true);
+    final Object chain = Deencapsulation.getField(table, "chain");
+    final List<long[]> tables = Deencapsulation.getField(chain, "tables");
+    final List<Long> tableOffsets = Deencapsulation.getField(chain, "tableOffsets");
+    final int tableIndex = (int) (index >> 32);
+    return function.apply(tables.get(tableIndex),
+        tableOffsets.get(tableIndex) + (index & 0xFFFFFFFFL) * Long.BYTES);
+  }
+
+  @Test
+  void testTagDictionary() {
+    final TableOptions options =
+        TableOptions.builder().withTagDictionary(new TagDictionary(16)).build();
+    final BasicCounterAggregator first = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, options);
+    final BasicCounterAggregator second = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, options);
+    first.apply(new String[]{"key", String.valueOf(1)}, 1L, CURRENT_TIME);
+    second.apply(new String[]{"key", String.valueOf(1)}, 2L, CURRENT_TIME);
+
+    // Both aggregators refer to the same strings
+    final Cursor cursor1 = first.cursor();
+    final Cursor cursor2 = second.cursor();
+    assertTrue(cursor1.next());
+    assertTrue(cursor2.next());
+    assertArrayEquals(new String[]{"key", "1"}, cursor1.getTags());
+    assertNotSame(cursor1.getTags(), cursor2.getTags());
+    assertSame(cursor1.getTags()[1], cursor2.getTags()[1]);
+  }
+
+  @Test
+  void testReleaseTagDictionary() {
+    final TagDictionary dictionary = new TagDictionary(16);
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withTagDictionary(dictionary)
+        .withIdleTimeoutMillis(1000L).build());
+    table.apply(new String[]{"key", String.valueOf(1)}, 1L, CURRENT_TIME);
+    table.apply(new String[]{"key", String.valueOf(2)}, 1L, CURRENT_TIME + 1500L);
+    assertEquals(3, dictionary.size());
+
+    // The strings of an evicted record are released
+    assertEquals(1, table.evictIdle(CURRENT_TIME + 2000L));
+    assertEquals(2, dictionary.size());
+
+    // All strings are released when the table is closed
+    table.close();
+    assertEquals(0, dictionary.size());
+  }
+
+  @Test
+  void testNoTagDictionary() {
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withTagDictionary(null).build());
+    final String[] tags = new String[]{"key", String.valueOf(1)};
+    table.apply(tags, 1L, CURRENT_TIME);
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertNotSame(tags, cursor.getTags());
+    assertSame(tags[1], cursor.getTags()[1]);
+  }
+
+  @Test
+  void testAlignedRecords() {
+    final TableOptions options = TableOptions.builder().withAlignedRecords(true).build();
+    assertTrue(options.isAlignedRecords());
+    assertTrue(options.isOffHeap());
+    final BasicCounterAggregator table = new BasicCounterAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 3, options);
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    Object chain = Deencapsulation.getField(table, "chain");
+    List<Long> tableOffsets = Deencapsulation.getField(chain, "tableOffsets");
+    assertEquals(3, tableOffsets.size());
+    for (final long tableOffset : tableOffsets) {
+      assertEquals(0L, tableOffset % 64);
+    }
+
+    assertTrue(table.consolidate());
+    chain = Deencapsulation.getField(table, "chain");
+    tableOffsets = Deencapsulation.getField(chain, "tableOffsets");
+    assertEquals(0L, tableOffsets.get(0) % 64);
+    final Cursor cursor = table.sortedCursor();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(cursor.next());
+      assertEquals(i, cursor.readLong(0));
+    }
+    assertFalse(cursor.next());
+    table.close();
+  }
 }
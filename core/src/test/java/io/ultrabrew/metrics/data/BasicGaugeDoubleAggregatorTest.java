@@ -7,6 +7,7 @@ package io.ultrabrew.metrics.data;
 import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -152,4 +153,44 @@ public class BasicGaugeDoubleAggregatorTest {
     assertEquals(3, aggregator.size());
     assertEquals(3, aggregator.capacity()); // caped at the max capacity.
   }
+
+  @Test
+  void testOffHeap() {
+    final BasicGaugeDoubleAggregator aggregator = new BasicGaugeDoubleAggregator("test",
+        DEFAULT_MAX_CARDINALITY, 10, TableOptions.builder().withOffHeap(true).build());
+
+    aggregator.apply(new String[]{"testTag", "value"}, Double.doubleToRawLongBits(1.5),
+        CURRENT_TIME);
+    aggregator.apply(new String[]{"testTag", "value"}, Double.doubleToRawLongBits(-2.25),
+        CURRENT_TIME);
+
+    final Cursor cursor = aggregator.cursor();
+    assertTrue(cursor.next());
+    assertEquals(2L, cursor.readLong(0)); // count
+    assertEquals(-0.75, cursor.readDouble(1), 0.000001); // sum
+    assertEquals(-2.25, cursor.readDouble(2), 0.000001); // min
+    assertEquals(1.5, cursor.readDouble(3), 0.000001); // max
+    assertEquals(-2.25, cursor.readDouble(4), 0.000001); // lastValue
+    aggregator.close();
+  }
+
+  @Test
+  void testStripedRecord() {
+    final BasicGaugeDoubleAggregator table =
+        new BasicGaugeDoubleAggregator("test", DEFAULT_MAX_CARDINALITY, 10);
+    final String[] tags = new String[]{"testTag", "value"};
+    table.apply(tags, Double.doubleToRawLongBits(-0.5D), CURRENT_TIME);
+    assertNotNull(BasicCounterAggregatorTest.stripe(table, tags));
+    table.apply(tags, Double.doubleToRawLongBits(1.25D), CURRENT_TIME);
+    table.apply(tags, Double.doubleToRawLongBits(2.5D), CURRENT_TIME);
+
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(3L, cursor.readAndResetLong(0)); // count
+    assertEquals(3.25D, cursor.readAndResetDouble(1), 0.0001D); // sum
+    assertEquals(-0.5D, cursor.readAndResetDouble(2), 0.0001D); // min
+    assertEquals(2.5D, cursor.readAndResetDouble(3), 0.0001D); // max
+    assertEquals(2.5D, cursor.readAndResetDouble(4), 0.0001D); // last value
+    assertEquals(0.0D, cursor.readDouble(1), 0.0001D); // sum
+  }
 }
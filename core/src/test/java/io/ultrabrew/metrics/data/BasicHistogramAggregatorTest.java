@@ -9,14 +9,20 @@ import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.ultrabrew.metrics.util.TagSet;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import mockit.Deencapsulation;
 import mockit.Expectations;
+import mockit.Verifications;
 import org.junit.jupiter.api.Test;
 
 public class BasicHistogramAggregatorTest {
@@ -59,6 +65,26 @@ public class BasicHistogramAggregatorTest {
     assertEquals(128, table.capacity());
   }
 
+  @Test
+  void testApplyBoundTagSet() {
+    DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket);
+    final long owner = Deencapsulation.getField(table, "positionOwner");
+    final TagSet tagSet = TagSet.bound("testTag", "value");
+    table.applyTagSet(tagSet, 5L, CURRENT_TIME);
+    final Object position = tagSet.getPosition(owner);
+    assertNotNull(position);
+    table.applyTagSet(tagSet, 50L, CURRENT_TIME);
+    assertSame(position, tagSet.getPosition(owner));
+
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet.toArray(), cursor.getTags());
+    assertEquals(2, cursor.readLong(0)); // count
+    assertEquals(55, cursor.readLong(1)); // sum
+    assertFalse(cursor.next());
+  }
+
   @Test
   void testMinAggregation() {
     DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
@@ -533,9 +559,10 @@ public class BasicHistogramAggregatorTest {
       assertEquals(1, cursor.readLong(0));
     }
 
-    List<long[]> tables = Deencapsulation.getField(table, "tables");
-    List<AtomicInteger> recordCounts = Deencapsulation.getField(table, "recordCounts");
-    List<Integer> tableCapacities = Deencapsulation.getField(table, "tableCapacities");
+    final Object chain = Deencapsulation.getField(table, "chain");
+    List<long[]> tables = Deencapsulation.getField(chain, "tables");
+    List<AtomicInteger> recordCounts = Deencapsulation.getField(chain, "recordCounts");
+    List<Integer> tableCapacities = Deencapsulation.getField(chain, "tableCapacities");
     assertEquals(2, tables.size());
     assertEquals(2, recordCounts.size());
     assertEquals(3, recordCounts.get(0).get());
@@ -663,4 +690,422 @@ public class BasicHistogramAggregatorTest {
     assertEquals(0, cursor.readLong(8)); // underflow
 
   }
+
+  @Test
+  void testFingerprintCollisionWithVerifyTags() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 10, TableOptions.builder().withVerifyTags(true).build());
+    new Expectations(table) {{
+      table.hashCode((String[]) any);
+      result = 42L;
+    }};
+    final String[] tagSet1 = new String[]{"testTag", "value1"};
+    final String[] tagSet2 = new String[]{"testTag", "value2"};
+
+    table.apply(tagSet1, 1L, CURRENT_TIME);
+    table.apply(tagSet2, 20L, CURRENT_TIME);
+    table.apply(tagSet1, 5L, CURRENT_TIME);
+
+    assertEquals(2, table.size());
+    final Cursor cursor = table.sortedCursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet1, cursor.getTags());
+    assertEquals(2L, cursor.readLong(0)); // count
+    assertEquals(2L, cursor.readLong(5)); // [0,10)
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet2, cursor.getTags());
+    assertEquals(1L, cursor.readLong(0)); // count
+    assertEquals(1L, cursor.readLong(6)); // [10,100)
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testOffHeap() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    for (int i = 0; i < 5; i++) {
+      table.apply(new String[]{"key", "value" + i}, i, CURRENT_TIME);
+      table.apply(new String[]{"key", "value" + i}, 50L, CURRENT_TIME);
+    }
+    final Object chain = Deencapsulation.getField(table, "chain");
+    List<int[]> tables = Deencapsulation.getField(chain, "tables");
+    assertEquals(2, tables.size());
+
+    Cursor cursor = table.sortedCursor();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(cursor.next());
+      assertArrayEquals(new String[]{"key", "value" + i}, cursor.getTags());
+      assertEquals(CURRENT_TIME, cursor.lastUpdated());
+      assertEquals(2L, cursor.readAndResetLong(0)); // count
+      assertEquals(50L + i, cursor.readLong(1)); // sum
+      assertEquals(i, cursor.readLong(2)); // min
+      assertEquals(1L, cursor.readAndResetLong(5)); // [0,10)
+      assertEquals(1L, cursor.readLong(6)); // [10,100)
+    }
+    assertFalse(cursor.next());
+
+    table.close();
+    table.close();
+    table.apply(new String[]{"key", "value"}, 1L, CURRENT_TIME);
+    assertEquals(5, table.size());
+    assertFalse(table.cursor().next());
+  }
+
+  @Test
+  void testConsolidate() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    assertTrue(table.consolidate());
+    final Object chain = Deencapsulation.getField(table, "chain");
+    List<int[]> tables = Deencapsulation.getField(chain, "tables");
+    assertEquals(1, tables.size());
+    assertFalse(table.consolidate());
+
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, 50L, CURRENT_TIME);
+    }
+    assertEquals(10, table.size());
+
+    final Cursor cursor = table.cursor();
+    while (cursor.next()) {
+      final long i = Long.parseLong(cursor.getTags()[1]);
+      assertEquals(CURRENT_TIME, cursor.lastUpdated());
+      assertEquals(2L, cursor.readLong(0)); // count
+      assertEquals(50L + i, cursor.readLong(1)); // sum
+      assertEquals(1L, cursor.readLong(5)); // [0,10)
+      assertEquals(1L, cursor.readLong(6)); // [10,100)
+    }
+
+    table.close();
+    assertFalse(table.consolidate());
+  }
+
+  @Test
+  void testConsolidateWaitsForWritersOffHeap() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    // A writer stalled in the chain replaced by the consolidation
+    final Object chain = Deencapsulation.getField(table, "chain");
+    final AtomicLongArray writers = Deencapsulation.getField(chain, "writers");
+    writers.incrementAndGet(0);
+    assertTrue(table.consolidate());
+    final List<?> retiredChains = Deencapsulation.getField(table, "retiredChains");
+    assertEquals(1, retiredChains.size());
+    assertFalse(table.consolidate());
+    assertEquals(1, retiredChains.size());
+
+    writers.decrementAndGet(0);
+    assertFalse(table.consolidate());
+    assertTrue(retiredChains.isEmpty());
+    table.close();
+  }
+
+  @Test
+  void testCloseWaitsForWritersOffHeap() throws InterruptedException {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withOffHeap(true).build());
+    table.apply(new String[]{"key", "value"}, 1L, CURRENT_TIME);
+    // A writer stalled in the chain after passing the closed check
+    final Object chain = Deencapsulation.getField(table, "chain");
+    final AtomicLongArray writers = Deencapsulation.getField(chain, "writers");
+    writers.incrementAndGet(0);
+    final Thread closer = new Thread(table::close);
+    closer.start();
+    closer.join(100L);
+    assertTrue(closer.isAlive());
+    table.apply(new String[]{"key", "value2"}, 1L, CURRENT_TIME);
+    assertEquals(1, table.size());
+
+    writers.decrementAndGet(0);
+    closer.join(10000L);
+    assertFalse(closer.isAlive());
+    final List<?> retiredChains = Deencapsulation.getField(table, "retiredChains");
+    assertTrue(retiredChains.isEmpty());
+  }
+
+  @Test
+  void testEvictIdle() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket, 2, 2,
+        TableOptions.builder().withIdleTimeoutMillis(1000L).build());
+    table.apply(new String[]{"key", "value0"}, 5L, CURRENT_TIME);
+    table.apply(new String[]{"key", "value1"}, 50L, CURRENT_TIME);
+    table.apply(new String[]{"key", "value1"}, 50L, CURRENT_TIME + 1000L);
+    final Cursor sortedCursor = table.sortedCursor();
+    assertEquals(1, table.evictIdle(CURRENT_TIME + 1500L));
+    assertEquals(1, table.size());
+
+    // The cursor created before eviction skips the evicted record
+    assertTrue(sortedCursor.next());
+    assertArrayEquals(new String[]{"key", "value1"}, sortedCursor.getTags());
+    assertFalse(sortedCursor.next());
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value1"}, cursor.getTags());
+    assertFalse(cursor.next());
+
+    // The new record starts from empty buckets
+    table.apply(new String[]{"key", "value2"}, 50L, CURRENT_TIME + 1500L);
+    assertEquals(2, table.size());
+    cursor = table.sortedCursor();
+    assertTrue(cursor.next());
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value2"}, cursor.getTags());
+    assertEquals(1L, cursor.readLong(0)); // count
+    assertEquals(50L, cursor.readLong(1)); // sum
+    assertEquals(0L, cursor.readLong(5)); // [0,10)
+    assertEquals(1L, cursor.readLong(6)); // [10,100)
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  void testCursorUsesStoredPositions() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 3);
+    for (int i = 0; i < 10; i++) {
+      table.apply(new String[]{"key", String.valueOf(i)}, i, CURRENT_TIME);
+    }
+    assertTrue(table.consolidate());
+    new Expectations(table) {{
+    }};
+
+    final Cursor cursor = table.sortedCursor();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(cursor.next());
+      assertArrayEquals(new String[]{"key", String.valueOf(i)}, cursor.getTags());
+      assertEquals(i, cursor.readLong(1)); // sum
+      assertEquals(1L, cursor.readLong(5)); // [0,10)
+    }
+    assertFalse(cursor.next());
+
+    // The records are located without hashing the tag sets again
+    new Verifications() {{
+      table.hashCode((String[]) any);
+      times = 0;
+    }};
+  }
+
+  @Test
+  void testAlignedRecords() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 3, TableOptions.builder().withAlignedRecords(true).build());
+    for (int i = 0; i < 5; i++) {
+      table.apply(new String[]{"key", "value" + i}, i, CURRENT_TIME);
+    }
+    final Object chain = Deencapsulation.getField(table, "chain");
+    final List<Long> tableOffsets = Deencapsulation.getField(chain, "tableOffsets");
+    assertEquals(2, tableOffsets.size());
+    for (final long tableOffset : tableOffsets) {
+      assertEquals(0L, tableOffset % 64);
+    }
+
+    final Cursor cursor = table.sortedCursor();
+    for (int i = 0; i < 5; i++) {
+      assertTrue(cursor.next());
+      assertEquals(1L, cursor.readLong(0)); // count
+      assertEquals(i, cursor.readLong(1)); // sum
+    }
+    assertFalse(cursor.next());
+    table.close();
+  }
+
+  @Test
+  void testNarrowCounters() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    for (final int bits : new int[]{8, 16}) {
+      final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+          DEFAULT_MAX_CARDINALITY, 16, TableOptions.builder().withCounterBits(bits).build());
+      final String[] tagset = {"testTag", "value"};
+      for (int i = 0; i < 70_000; i++) {
+        table.apply(tagset, 5L, CURRENT_TIME);
+        if (i % 2 == 0) {
+          table.apply(tagset, 50L, CURRENT_TIME);
+        }
+      }
+      table.apply(tagset, -1L, CURRENT_TIME);
+
+      Cursor cursor = table.cursor();
+      assertTrue(cursor.next());
+      assertEquals(105_001L, cursor.readLong(0)); // count
+      assertEquals(70_000L, cursor.readAndResetLong(5)); // [0,10)
+      assertEquals(35_000L, cursor.readAndResetLong(6)); // [10,100)
+      assertEquals(0L, cursor.readAndResetLong(7)); // overflow
+      assertEquals(1L, cursor.readAndResetLong(8)); // underflow
+      assertEquals(0L, cursor.readLong(5));
+      assertEquals(0L, cursor.readLong(6));
+      assertEquals(0L, cursor.readLong(8));
+
+      // The record stays promoted, and the counters continue from the reset values
+      table.apply(tagset, 50L, CURRENT_TIME);
+      cursor = table.cursor();
+      assertTrue(cursor.next());
+      assertEquals(0L, cursor.readLong(5));
+      assertEquals(1L, cursor.readLong(6));
+    }
+  }
+
+  @Test
+  void testNarrowCountersMemoryUsage() {
+    final LogLinearDistributionBucket bucket = new LogLinearDistributionBucket(1L, 100L, 1);
+    long previous = Long.MAX_VALUE;
+    for (final int bits : new int[]{32, 16, 8}) {
+      final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+          DEFAULT_MAX_CARDINALITY, 16, TableOptions.builder().withCounterBits(bits).build());
+      table.apply(new String[]{"testTag", "value"}, 5L, CURRENT_TIME);
+      assertTrue(table.memoryUsage() < previous);
+      previous = table.memoryUsage();
+    }
+  }
+
+  @Test
+  void testCounterPromotion() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket);
+    final String[] tagset = {"testTag", "value"};
+    table.apply(tagset, 5L, CURRENT_TIME);
+    final ConcurrentMonoidIntTable.Chain chain = table.currentChain();
+    final long index = table.index(chain, tagset, true);
+    final int tableIndex = (int) ((index & ConcurrentMonoidIntTable.TABLE_MASK) >> 32);
+    final int[] records = table.table(chain, tableIndex);
+    final long base = table.baseOffset(chain, tableIndex,
+        (int) (index & ConcurrentMonoidIntTable.SLOT_MASK));
+    final long before = table.memoryUsage();
+
+    // An unsigned 32-bit counter of a hot series is promoted instead of wrapping
+    table.addToDataField(records, base, 5, Integer.MAX_VALUE);
+    table.addToDataField(records, base, 5, Integer.MAX_VALUE);
+    assertEquals(0xFFFFFFFFL, table.read(records, base, 5));
+    assertEquals(before, table.memoryUsage());
+    table.apply(tagset, 5L, CURRENT_TIME);
+    assertEquals(1L << 32, table.read(records, base, 5));
+    assertTrue(table.memoryUsage() > before);
+    table.apply(tagset, 5L, CURRENT_TIME);
+    assertEquals((1L << 32) + 1, table.readAndReset(records, base, 5, 0L));
+    assertEquals(0L, table.read(records, base, 5));
+
+    final BasicHistogramAggregator narrow = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 16, TableOptions.builder().withCounterBits(8).build());
+    narrow.apply(tagset, 50L, CURRENT_TIME);
+    final ConcurrentMonoidIntTable.Chain narrowChain = narrow.currentChain();
+    final long narrowIndex = narrow.index(narrowChain, tagset, true);
+    final int[] narrowRecords = narrow.table(narrowChain, 0);
+    final long narrowBase = narrow.baseOffset(narrowChain, 0,
+        (int) (narrowIndex & ConcurrentMonoidIntTable.SLOT_MASK));
+    assertFalse(narrow.compareAndSetDataField(narrowRecords, narrowBase, 5, 1, 7));
+    assertTrue(narrow.compareAndSetDataField(narrowRecords, narrowBase, 5, 0, 7));
+    assertEquals(7L, narrow.read(narrowRecords, narrowBase, 5));
+    assertEquals(1L, narrow.read(narrowRecords, narrowBase, 6));
+
+    assertThrows(IllegalArgumentException.class,
+        () -> TableOptions.builder().withCounterBits(4));
+  }
+
+  @Test
+  void testEvictIdleReleasesPromotedCounters() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 16,
+        TableOptions.builder().withCounterBits(8).withIdleTimeoutMillis(1000L).build());
+    for (int i = 0; i < 300; i++) {
+      table.apply(new String[]{"key", "value0"}, 5L, CURRENT_TIME);
+    }
+    final Map<?, ?> promoted = Deencapsulation.getField(table, "promoted");
+    assertEquals(1, promoted.size());
+    assertEquals(1, table.evictIdle(CURRENT_TIME + 1500L));
+    assertTrue(promoted.isEmpty());
+
+    table.apply(new String[]{"key", "value1"}, 5L, CURRENT_TIME + 1500L);
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(1L, cursor.readLong(5));
+    table.close();
+  }
+
+  @Test
+  public void testPercentiles() {
+    DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100, 1000});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 16, TableOptions.DEFAULT,
+        BasicHistogramAggregator.DEFAULT_PERCENTILES);
+    for (int i = 1; i <= 100; i++) {
+      table.apply(new String[]{"testTag", "value"}, i, CURRENT_TIME);
+    }
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    String[] fields = cursor.getFields();
+    assertEquals(5 + 5 + 4, fields.length);
+    assertArrayEquals(new String[]{"p50", "p90", "p99", "p99.9"},
+        Arrays.copyOfRange(fields, 10, 14));
+    assertEquals(Type.LONG, cursor.getTypes()[13]);
+    assertEquals(51L, cursor.readLong(10));
+    assertEquals(91L, cursor.readLong(11));
+    assertEquals(100L, cursor.readLong(12));
+    // Interpolated within [100, 1000), but bounded by the maximum
+    assertEquals(100L, cursor.readLong(13));
+
+    // The estimates are taken before the reader resets the buckets
+    for (int i = 0; i < fields.length; i++) {
+      long value = cursor.readAndResetLong(i);
+      if (i == 10) {
+        assertEquals(51L, value);
+      }
+    }
+    assertFalse(cursor.next());
+
+    cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(0L, cursor.readLong(10));
+    assertNull(table.merges());
+  }
+
+  @Test
+  public void testPercentilesResetBuckets() {
+    DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final BasicHistogramAggregator table = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 16, TableOptions.DEFAULT, new double[]{0.125, 1.0});
+    table.apply(new String[]{}, -50, CURRENT_TIME);
+    table.apply(new String[]{}, 5, CURRENT_TIME);
+    table.apply(new String[]{}, 50, CURRENT_TIME);
+    table.apply(new String[]{}, 5000, CURRENT_TIME);
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"p12.5", "p100"}, Arrays.copyOfRange(cursor.getFields(), 9, 11));
+    // The underflow bucket spans from the minimum, the overflow bucket up to the maximum
+    assertEquals(-25L, cursor.readAndResetLong(9));
+    assertEquals(5000L, cursor.readAndResetLong(10));
+    // Reading only the estimates resets the buckets too
+    for (int i = 5; i < 9; i++) {
+      assertEquals(0L, cursor.readLong(i));
+    }
+  }
+
+  @Test
+  public void testInvalidPercentiles() {
+    DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    assertThrows(IllegalArgumentException.class,
+        () -> new BasicHistogramAggregator("test", bucket, DEFAULT_MAX_CARDINALITY, 16,
+            TableOptions.DEFAULT, new double[]{0.0}));
+    assertThrows(IllegalArgumentException.class,
+        () -> new BasicHistogramAggregator("test", bucket, DEFAULT_MAX_CARDINALITY, 16,
+            TableOptions.DEFAULT, new double[]{1.5}));
+    assertThrows(IllegalArgumentException.class,
+        () -> new ShardedAggregator(2, () -> new BasicHistogramAggregator("test", bucket,
+            DEFAULT_MAX_CARDINALITY, 16, TableOptions.DEFAULT, new double[]{0.5})));
+  }
 }
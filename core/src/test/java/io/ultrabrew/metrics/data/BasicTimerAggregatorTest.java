@@ -7,6 +7,7 @@ package io.ultrabrew.metrics.data;
 import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -113,4 +114,32 @@ public class BasicTimerAggregatorTest {
     assertEquals(3, aggregator.size());
     assertEquals(3, aggregator.capacity()); // caped at the max capacity.
   }
+
+  @Test
+  public void testStripedRecord() {
+    final BasicTimerAggregator table = new BasicTimerAggregator("test", DEFAULT_MAX_CARDINALITY, 10);
+    final String[] tags = new String[]{"testTag", "value"};
+    table.apply(tags, 100L, CURRENT_TIME);
+    assertNotNull(BasicCounterAggregatorTest.stripe(table, tags));
+    table.apply(tags, 10L, CURRENT_TIME);
+    table.apply(tags, 1000L, CURRENT_TIME);
+
+    final Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(3L, cursor.readLong(0)); // count
+    assertEquals(1110L, cursor.readLong(1)); // sum
+    assertEquals(10L, cursor.readLong(2)); // min
+    assertEquals(1000L, cursor.readLong(3)); // max
+
+    assertEquals(3L, cursor.readAndResetLong(0)); // count
+    assertEquals(1110L, cursor.readAndResetLong(1)); // sum
+    assertEquals(10L, cursor.readAndResetLong(2)); // min
+    assertEquals(1000L, cursor.readAndResetLong(3)); // max
+
+    // Assert that identity is set
+    assertEquals(0L, cursor.readLong(0)); // count
+    assertEquals(0L, cursor.readLong(1)); // sum
+    assertEquals(Long.MAX_VALUE, cursor.readLong(2)); // min
+    assertEquals(Long.MIN_VALUE, cursor.readLong(3)); // max
+  }
 }
@@ -0,0 +1,173 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import static io.ultrabrew.metrics.Metric.DEFAULT_CARDINALITY;
+import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ultrabrew.metrics.Metric;
+import io.ultrabrew.metrics.MetricRegistry;
+import io.ultrabrew.metrics.reporters.SLF4JReporter;
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.Map;
+import java.util.function.Function;
+import mockit.Deencapsulation;
+import org.junit.jupiter.api.Test;
+
+public class DDSketchAggregatorTest {
+
+  private long CURRENT_TIME = System.currentTimeMillis();
+
+  @Test
+  void testAggregation() {
+    DDSketchAggregator table = new DDSketchAggregator("test");
+    String[] tagset = {"testTag", "value"};
+    for (long i = 1; i <= 1000; i++) {
+      table.apply(tagset, i * 1000, CURRENT_TIME);
+    }
+    table.applyTagSet(TagSet.of("testTag", "other"), 0L, CURRENT_TIME);
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"count", "sum", "min", "max", "p50", "p90", "p99", "p99.9"},
+        cursor.getFields());
+    assertArrayEquals(tagset, cursor.getTags());
+    assertEquals(CURRENT_TIME, cursor.lastUpdated());
+    assertEquals(1000L, cursor.readLong(0));
+    assertEquals(500_500_000L, cursor.readLong(1));
+    assertEquals(1000L, cursor.readLong(2));
+    assertEquals(1_000_000L, cursor.readLong(3));
+    assertEstimate(500_000L, cursor.readLong(4));
+    assertEstimate(900_000L, cursor.readLong(5));
+    assertEstimate(990_000L, cursor.readLong(6));
+    assertEstimate(999_000L, cursor.readLong(7));
+
+    assertTrue(cursor.next());
+    assertEquals(1L, cursor.readLong(0));
+    assertEquals(0L, cursor.readLong(4));
+    assertFalse(cursor.next());
+    assertNull(table.merges());
+  }
+
+  @Test
+  void testReadSketch() {
+    DDSketchAggregator table = new DDSketchAggregator("test");
+    DDSketch expected = new DDSketch(DDSketchAggregator.DEFAULT_RELATIVE_ACCURACY);
+    for (long value : new long[]{-1L, 0L, 1L, 17L, 12_345L, 9_876_543L}) {
+      table.apply(new String[0], value, CURRENT_TIME);
+      expected.accept(value);
+    }
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    DDSketch sketch = ((SketchCursorEntry) cursor).readSketch();
+    assertArrayEquals(expected.serialize(), sketch.serialize());
+
+    // Sketches of many series can be merged after a round trip through the serialized form
+    DDSketch merged = DDSketch.deserialize(sketch.serialize());
+    merged.merge(expected);
+    assertEquals(12L, merged.getCount());
+    assertEquals(-1L, merged.getMin());
+  }
+
+  @Test
+  void testReadAndResetSketch() {
+    DDSketchAggregator table = new DDSketchAggregator("test");
+    String[] tagset = {"testTag", "value"};
+    table.apply(tagset, 100L, CURRENT_TIME);
+    table.apply(tagset, 200L, CURRENT_TIME);
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(2L, cursor.readAndResetLong(0));
+    DDSketch sketch = ((SketchCursorEntry) cursor).readAndResetSketch();
+    assertEquals(2L, sketch.getCount());
+    assertEquals(300L, sketch.getSum());
+    assertEstimate(200L, sketch.getQuantile(1.0));
+
+    table.apply(tagset, 5000L, CURRENT_TIME);
+    cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(1L, cursor.readLong(0));
+    assertEquals(5000L, cursor.readLong(1));
+    assertEquals(5000L, cursor.readLong(2));
+    assertEquals(5000L, cursor.readLong(3));
+    assertEquals(5000L, cursor.readLong(4));
+    assertEquals(1L, ((SketchCursorEntry) cursor).readSketch().getCount());
+  }
+
+  @Test
+  void testPercentilesResetBins() {
+    DDSketchAggregator table = new DDSketchAggregator("test", 0.01, 1000L,
+        DEFAULT_MAX_CARDINALITY, DEFAULT_CARDINALITY, TableOptions.DEFAULT, new double[]{1.0});
+    String[] tagset = {"testTag", "value"};
+    table.apply(tagset, 10L, CURRENT_TIME);
+    // Counted in the last bin, and estimated as the maximum value of the sketches
+    table.apply(tagset, 1_000_000L, CURRENT_TIME);
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    long estimate = cursor.readAndResetLong(4);
+    assertEstimate(1000L, estimate);
+    assertEquals(estimate, cursor.readAndResetLong(4));
+    assertEquals(2L, cursor.readAndResetLong(0));
+
+    table.apply(tagset, 10L, CURRENT_TIME);
+    cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(10L, cursor.readLong(4));
+    assertEquals(1L, ((SketchCursorEntry) cursor).readSketch().getCount());
+  }
+
+  @Test
+  void testInvalidFieldIndex() {
+    DDSketchAggregator table = new DDSketchAggregator("test");
+    Cursor cursor = table.cursor();
+    assertThrows(IndexOutOfBoundsException.class, () -> cursor.readLong(0));
+    table.apply(new String[0], 1L, CURRENT_TIME);
+    Cursor next = table.cursor();
+    assertTrue(next.next());
+    assertThrows(IndexOutOfBoundsException.class, () -> next.readLong(8));
+    assertThrows(IndexOutOfBoundsException.class, () -> next.readAndResetLong(-1));
+    assertThrows(UnsupportedOperationException.class, () -> next.readDouble(0));
+    assertThrows(UnsupportedOperationException.class, () -> next.readAndResetDouble(0));
+  }
+
+  @Test
+  void testInvalidArguments() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new DDSketchAggregator("test", 0.0, DEFAULT_MAX_CARDINALITY));
+    assertThrows(IllegalArgumentException.class,
+        () -> new DDSketchAggregator("test", 0.02, 0L, DEFAULT_MAX_CARDINALITY,
+            DEFAULT_CARDINALITY, TableOptions.DEFAULT, new double[]{0.5}));
+    assertThrows(IllegalArgumentException.class,
+        () -> new DDSketchAggregator("test", 0.02, 1000L, DEFAULT_MAX_CARDINALITY,
+            DEFAULT_CARDINALITY, TableOptions.DEFAULT, new double[]{1.5}));
+  }
+
+  @Test
+  void testBuilder() {
+    SLF4JReporter.Builder builder = SLF4JReporter.builder().withName("testSketch")
+        .addSketch("latency").addSketch("other", 0.01, 1000);
+    Map<String, Function<TableOptions, Function<Metric, ? extends Aggregator>>> aggregators =
+        Deencapsulation.getField(builder, "tableAggregators");
+    Metric metric = new MetricRegistry().timer("latency");
+    assertTrue(aggregators.get("latency").apply(TableOptions.DEFAULT).apply(metric)
+        instanceof DDSketchAggregator);
+    assertTrue(aggregators.get("other").apply(TableOptions.DEFAULT).apply(metric)
+        instanceof DDSketchAggregator);
+  }
+
+  private static void assertEstimate(final long expected, final long actual) {
+    assertTrue(Math.abs(actual - expected) <= DDSketchAggregator.DEFAULT_RELATIVE_ACCURACY
+        * expected, "estimated " + actual + ", expected " + expected);
+  }
+}
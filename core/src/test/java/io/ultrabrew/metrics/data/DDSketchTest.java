@@ -0,0 +1,127 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class DDSketchTest {
+
+  private static final double[] QUANTILES = {0.0, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1.0};
+
+  @Test
+  void testRelativeAccuracy() {
+    for (double accuracy : new double[]{0.01, 0.02, 0.05}) {
+      DDSketch sketch = new DDSketch(accuracy);
+      Random random = new Random(42);
+      long[] values = new long[10_000];
+      for (int i = 0; i < values.length; i++) {
+        // Log-normally distributed, like latencies in nanoseconds
+        values[i] = 1000L + (long) Math.exp(10 + 2 * random.nextGaussian());
+        sketch.accept(values[i]);
+      }
+      Arrays.sort(values);
+      for (double quantile : QUANTILES) {
+        long expected = values[(int) (quantile * (values.length - 1))];
+        long actual = sketch.getQuantile(quantile);
+        assertTrue(Math.abs(actual - expected) <= accuracy * expected,
+            quantile + " estimated as " + actual + ", expected " + expected);
+      }
+      assertEquals(values.length, sketch.getCount());
+      assertEquals(values[0], sketch.getMin());
+      assertEquals(values[values.length - 1], sketch.getMax());
+    }
+  }
+
+  @Test
+  void testBinValues() {
+    double multiplier = DDSketch.multiplier(0.02);
+    for (long value = 1000L; value < 1L << 50; value += value / 7) {
+      long estimate = DDSketch.value(DDSketch.index(value, multiplier), multiplier);
+      assertTrue(Math.abs(estimate - value) <= 0.02 * value,
+          value + " estimated as " + estimate);
+    }
+  }
+
+  @Test
+  void testZeros() {
+    DDSketch sketch = new DDSketch(0.02);
+    assertEquals(0L, sketch.getQuantile(0.5));
+    sketch.accept(-5L);
+    sketch.accept(0L);
+    sketch.accept(100L);
+    // All values less than 1 are estimated as 0
+    assertEquals(0L, sketch.getQuantile(0.0));
+    assertEquals(0L, sketch.getQuantile(0.5));
+    assertEquals(100L, sketch.getQuantile(1.0));
+    assertEquals(95L, sketch.getSum());
+  }
+
+  @Test
+  void testMerge() {
+    DDSketch first = new DDSketch(0.02);
+    DDSketch second = new DDSketch(0.02);
+    DDSketch all = new DDSketch(0.02);
+    Random random = new Random(7);
+    for (int i = 0; i < 1000; i++) {
+      long value = random.nextInt(1_000_000);
+      (i % 3 == 0 ? first : second).accept(value);
+      all.accept(value);
+    }
+    first.merge(second);
+    assertArrayEquals(all.serialize(), first.serialize());
+    for (double quantile : QUANTILES) {
+      assertEquals(all.getQuantile(quantile), first.getQuantile(quantile));
+    }
+    assertThrows(IllegalArgumentException.class, () -> first.merge(new DDSketch(0.01)));
+  }
+
+  @Test
+  void testSerialize() {
+    DDSketch sketch = new DDSketch(0.01);
+    sketch.accept(0L);
+    sketch.accept(-3L);
+    sketch.accept(1L);
+    sketch.accept(1234L);
+    sketch.accept(Long.MAX_VALUE / 2);
+    byte[] bytes = sketch.serialize();
+
+    DDSketch copy = DDSketch.deserialize(bytes);
+    assertEquals(0.01, copy.getRelativeAccuracy());
+    assertEquals(sketch.getCount(), copy.getCount());
+    assertEquals(sketch.getSum(), copy.getSum());
+    assertEquals(sketch.getMin(), copy.getMin());
+    assertEquals(sketch.getMax(), copy.getMax());
+    for (double quantile : QUANTILES) {
+      assertEquals(sketch.getQuantile(quantile), copy.getQuantile(quantile));
+    }
+    assertArrayEquals(bytes, copy.serialize());
+
+    DDSketch empty = DDSketch.deserialize(new DDSketch(0.02).serialize());
+    assertEquals(0L, empty.getCount());
+    assertEquals(Long.MAX_VALUE, empty.getMin());
+    assertEquals(Long.MIN_VALUE, empty.getMax());
+  }
+
+  @Test
+  void testInvalidInput() {
+    assertThrows(IllegalArgumentException.class, () -> new DDSketch(0.0));
+    assertThrows(IllegalArgumentException.class, () -> new DDSketch(1.0));
+    assertThrows(IllegalArgumentException.class, () -> new DDSketch(Double.NaN));
+    assertThrows(IllegalArgumentException.class, () -> new DDSketch(0.02).getQuantile(1.5));
+
+    byte[] bytes = new DDSketch(0.02).serialize();
+    assertThrows(IllegalArgumentException.class,
+        () -> DDSketch.deserialize(Arrays.copyOf(bytes, bytes.length - 1)));
+    bytes[0] = 2;
+    assertThrows(IllegalArgumentException.class, () -> DDSketch.deserialize(bytes));
+  }
+}
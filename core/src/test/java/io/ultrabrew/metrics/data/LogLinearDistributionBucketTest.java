@@ -0,0 +1,131 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class LogLinearDistributionBucketTest {
+
+  @Test
+  void testBuckets() {
+    LogLinearDistributionBucket bucket = new LogLinearDistributionBucket(1L, 100L, 1);
+    // 32 single value buckets, 16 buckets of width 2 and 10 buckets of width 4
+    assertEquals(32 + 16 + 10 + 2, bucket.getCount());
+    String[] names = bucket.getBucketNames();
+    assertEquals("0_1", names[0]);
+    assertEquals("31_32", names[31]);
+    assertEquals("32_34", names[32]);
+    assertEquals("100_104", names[57]);
+    assertEquals(DistributionBucketIF.OVERFLOW, names[58]);
+    assertEquals(DistributionBucketIF.UNDERFLOW, names[59]);
+  }
+
+  @Test
+  void testGetIndex() {
+    LogLinearDistributionBucket bucket = new LogLinearDistributionBucket(1L, 100L, 1);
+    assertEquals(0, bucket.getBucketIndex(0));
+    assertEquals(31, bucket.getBucketIndex(31));
+    assertEquals(32, bucket.getBucketIndex(32));
+    assertEquals(32, bucket.getBucketIndex(33));
+    assertEquals(48, bucket.getBucketIndex(64));
+    assertEquals(57, bucket.getBucketIndex(103));
+    assertEquals(58, bucket.getBucketIndex(104));
+    assertEquals(58, bucket.getBucketIndex(Long.MAX_VALUE));
+    assertEquals(59, bucket.getBucketIndex(-1));
+    assertEquals(59, bucket.getBucketIndex(Long.MIN_VALUE));
+  }
+
+  @Test
+  void testGetIndexMatchesBoundaries() {
+    LogLinearDistributionBucket bucket =
+        new LogLinearDistributionBucket(1000L, 3_600_000_000_000L, 2);
+    DistributionBucket searched = new DistributionBucket(boundaries(bucket));
+    Random random = new Random(42);
+    for (int i = 0; i < 100_000; i++) {
+      long value = random.nextLong() >>> random.nextInt(64);
+      assertEquals(searched.getBucketIndex(value), bucket.getBucketIndex(value));
+      assertEquals(searched.getBucketIndex(-value - 1), bucket.getBucketIndex(-value - 1));
+    }
+  }
+
+  @Test
+  void testRelativeError() {
+    for (int digits = 0; digits <= LogLinearDistributionBucket.MAX_SIGNIFICANT_DIGITS; digits++) {
+      LogLinearDistributionBucket bucket = new LogLinearDistributionBucket(1L, 1L << 40, digits);
+      long[] boundaries = boundaries(bucket);
+      double maxError = Math.pow(10, -digits);
+      for (int i = 1; i < boundaries.length - 1; i++) {
+        assertTrue(boundaries[i] < boundaries[i + 1]);
+        double width = boundaries[i + 1] - boundaries[i];
+        assertTrue(width == 1 || width / boundaries[i] <= maxError,
+            "bucket " + boundaries[i] + " too wide for " + digits + " digits");
+      }
+    }
+  }
+
+  @Test
+  void testLowestDiscernibleValue() {
+    LogLinearDistributionBucket bucket = new LogLinearDistributionBucket(1000L, 1_000_000L, 0);
+    // Rounded down to 512, so that values below 1024 fall into the first two buckets
+    assertArrayEquals(new long[]{0L, 512L, 1024L, 2048L},
+        Arrays.copyOf(boundaries(bucket), 4));
+    assertEquals(0, bucket.getBucketIndex(511));
+    assertEquals(1, bucket.getBucketIndex(512));
+  }
+
+  @Test
+  void testInvalidArguments() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new LogLinearDistributionBucket(0L, 100L, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LogLinearDistributionBucket(100L, 150L, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LogLinearDistributionBucket(1L, Long.MAX_VALUE, 1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LogLinearDistributionBucket(1L, 100L, -1));
+    assertThrows(IllegalArgumentException.class,
+        () -> new LogLinearDistributionBucket(1L, 100L, 4));
+  }
+
+  @Test
+  void testBuildAggregator() {
+    LogLinearDistributionBucket bucket = new LogLinearDistributionBucket(1L, 100L, 1);
+    Aggregator aggregator = bucket.buildAggregator("test", bucket, DEFAULT_MAX_CARDINALITY);
+    aggregator.apply(new String[]{"key", "value"}, 33L, 0L);
+    aggregator.apply(new String[]{"key", "value"}, 1000L, 0L);
+
+    Cursor cursor = aggregator.cursor();
+    assertTrue(cursor.next());
+    String[] fields = cursor.getFields();
+    // Aggregation fields followed by the buckets
+    assertEquals("32_34", fields[5 + 32]);
+    assertEquals(1L, cursor.readLong(5 + 32));
+    assertEquals(1L, cursor.readLong(5 + 58));
+    assertFalse(cursor.next());
+  }
+
+  /**
+   * Recover the boundaries of the buckets from their names.
+   */
+  private static long[] boundaries(final LogLinearDistributionBucket bucket) {
+    String[] names = bucket.getBucketNames();
+    long[] boundaries = new long[names.length - 1];
+    for (int i = 0; i < names.length - 2; i++) {
+      String[] range = names[i].split("_");
+      boundaries[i] = Long.parseLong(range[0]);
+      boundaries[i + 1] = Long.parseLong(range[1]);
+    }
+    return boundaries;
+  }
+}
@@ -0,0 +1,200 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ultrabrew.metrics.reporters.AggregatingReporter;
+import java.util.concurrent.atomic.AtomicInteger;
+import mockit.Deencapsulation;
+import org.junit.jupiter.api.Test;
+
+public class ShardedAggregatorTest {
+
+  private long CURRENT_TIME = System.currentTimeMillis();
+
+  @Test
+  public void testShards() {
+    final AtomicInteger created = new AtomicInteger();
+    final ShardedAggregator aggregator = new ShardedAggregator(3, () -> {
+      created.incrementAndGet();
+      return new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY, 10);
+    });
+    assertEquals(4, created.get());
+    final Aggregator[] shards = Deencapsulation.getField(aggregator, "shards");
+    assertEquals(4, shards.length);
+    assertArrayEquals(new Merge[]{Merge.SUM}, aggregator.merges());
+
+    assertEquals(ShardedAggregator.DEFAULT_SHARDS,
+        ((Aggregator[]) Deencapsulation.getField(new ShardedAggregator(
+            () -> new BasicCounterAggregator("test")), "shards")).length);
+  }
+
+  @Test
+  public void testInvalidShards() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new ShardedAggregator(0, () -> new BasicCounterAggregator("test")));
+    assertThrows(IllegalArgumentException.class,
+        () -> new ShardedAggregator(1 << 17, () -> new BasicCounterAggregator("test")));
+    assertThrows(IllegalArgumentException.class,
+        () -> new ShardedAggregator(2, () -> AggregatingReporter.NOOP));
+  }
+
+  @Test
+  public void testMergeCounter() {
+    final ShardedAggregator aggregator = new ShardedAggregator(4,
+        () -> new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY, 10));
+    final Aggregator[] shards = Deencapsulation.getField(aggregator, "shards");
+    final String[] tagSet1 = new String[]{"testTag", "value"};
+    final String[] tagSet2 = new String[]{"testTag", "value2"};
+    final String[] tagSet3 = new String[]{"testTag", "value3"};
+
+    shards[0].apply(tagSet2, 1L, CURRENT_TIME);
+    shards[1].apply(tagSet1, 10L, CURRENT_TIME);
+    shards[1].apply(tagSet2, 100L, CURRENT_TIME + 1);
+    shards[3].apply(tagSet3, 1000L, CURRENT_TIME);
+    aggregator.apply(tagSet1, 10000L, CURRENT_TIME);
+
+    final Cursor cursor = aggregator.cursor();
+    assertEquals("test", cursor.getMetricId());
+    assertArrayEquals(new String[]{"sum"}, cursor.getFields());
+    assertArrayEquals(new Type[]{Type.LONG}, cursor.getTypes());
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet1, cursor.getTags());
+    assertEquals(10010L, cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet2, cursor.getTags());
+    assertEquals(CURRENT_TIME + 1, cursor.lastUpdated());
+    assertEquals(101L, cursor.readAndResetLong(0));
+    assertEquals(0L, cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertArrayEquals(tagSet3, cursor.getTags());
+    assertEquals(1000L, cursor.readLong(0));
+    assertFalse(cursor.next());
+    assertThrows(IndexOutOfBoundsException.class, cursor::getTags);
+  }
+
+  @Test
+  public void testMergeTimer() {
+    final ShardedAggregator aggregator = new ShardedAggregator(2,
+        () -> new BasicTimerAggregator("test", DEFAULT_MAX_CARDINALITY, 10));
+    final Aggregator[] shards = Deencapsulation.getField(aggregator, "shards");
+    final String[] tags = new String[]{"testTag", "value"};
+
+    shards[0].apply(tags, 100L, CURRENT_TIME);
+    shards[0].apply(tags, 10L, CURRENT_TIME);
+    shards[1].apply(tags, 5L, CURRENT_TIME);
+    shards[1].apply(tags, 50L, CURRENT_TIME);
+
+    final Cursor cursor = aggregator.sortedCursor();
+    assertTrue(cursor.next());
+    assertEquals(4L, cursor.readAndResetLong(0)); // count
+    assertEquals(165L, cursor.readAndResetLong(1)); // sum
+    assertEquals(5L, cursor.readAndResetLong(2)); // min
+    assertEquals(100L, cursor.readAndResetLong(3)); // max
+    assertEquals(Long.MAX_VALUE, cursor.readLong(2)); // min
+    assertEquals(Long.MIN_VALUE, cursor.readLong(3)); // max
+    assertFalse(cursor.next());
+
+    // Identity of a reset shard does not affect the merged values
+    shards[1].apply(tags, 7L, CURRENT_TIME);
+    final Cursor cursor2 = aggregator.cursor();
+    assertTrue(cursor2.next());
+    assertEquals(1L, cursor2.readLong(0)); // count
+    assertEquals(7L, cursor2.readLong(2)); // min
+    assertEquals(7L, cursor2.readLong(3)); // max
+  }
+
+  @Test
+  public void testMergeGaugeDouble() {
+    final ShardedAggregator aggregator = new ShardedAggregator(4,
+        () -> new BasicGaugeDoubleAggregator("test", DEFAULT_MAX_CARDINALITY, 10));
+    final Aggregator[] shards = Deencapsulation.getField(aggregator, "shards");
+    final String[] tags = new String[]{"testTag", "value"};
+
+    shards[2].apply(tags, Double.doubleToRawLongBits(-1.5D), CURRENT_TIME + 1);
+    shards[0].apply(tags, Double.doubleToRawLongBits(2.25D), CURRENT_TIME);
+    shards[3].apply(tags, Double.doubleToRawLongBits(10.5D), CURRENT_TIME);
+    final Cursor reset = shards[3].cursor();
+    assertTrue(reset.next());
+    for (int i = 0; i < reset.getFields().length; i++) {
+      reset.readAndResetLong(i);
+    }
+
+    final Cursor cursor = aggregator.cursor();
+    assertTrue(cursor.next());
+    assertEquals(2L, cursor.readLong(0)); // count
+    assertEquals(0.75D, cursor.readDouble(1), 0.0001D); // sum
+    assertEquals(-1.5D, cursor.readDouble(2), 0.0001D); // min
+    assertEquals(2.25D, cursor.readDouble(3), 0.0001D); // max
+    assertEquals(-1.5D, cursor.readAndResetDouble(4), 0.0001D); // lastValue
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testMergeHistogram() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final ShardedAggregator aggregator =
+        new ShardedAggregator(2, () -> new BasicHistogramAggregator("test", bucket));
+    final Aggregator[] shards = Deencapsulation.getField(aggregator, "shards");
+    final String[] tags = new String[]{"testTag", "value"};
+
+    shards[0].apply(tags, 5L, CURRENT_TIME);
+    shards[1].apply(tags, 50L, CURRENT_TIME);
+    shards[1].apply(tags, 500L, CURRENT_TIME);
+
+    final Cursor cursor = aggregator.cursor();
+    assertTrue(cursor.next());
+    assertEquals(Merge.SUM, aggregator.merges()[5]);
+    assertEquals(3L, cursor.readLong(0)); // count
+    assertEquals(555L, cursor.readLong(1)); // sum
+    assertEquals(5L, cursor.readLong(2)); // min
+    assertEquals(500L, cursor.readLong(3)); // max
+    assertEquals(1L, cursor.readLong(5)); // 0_10
+    assertEquals(1L, cursor.readLong(6)); // 10_100
+    assertEquals(1L, cursor.readLong(7)); // overflow
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testInvalidIndex() {
+    final ShardedAggregator aggregator = new ShardedAggregator(2,
+        () -> new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY, 10));
+    aggregator.apply(new String[]{"testTag", "value"}, 1L, CURRENT_TIME);
+
+    final Cursor cursor = aggregator.cursor();
+    assertThrows(IndexOutOfBoundsException.class, cursor::getTags);
+    assertThrows(IndexOutOfBoundsException.class, cursor::lastUpdated);
+    assertThrows(IndexOutOfBoundsException.class, () -> cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertThrows(IndexOutOfBoundsException.class, () -> cursor.readLong(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> cursor.readAndResetLong(-1));
+  }
+
+  @Test
+  public void testMaintenance() {
+    final ShardedAggregator aggregator = new ShardedAggregator(2,
+        () -> new BasicCounterAggregator("test", DEFAULT_MAX_CARDINALITY, 3,
+            TableOptions.builder().withIdleTimeoutMillis(1000L).build()));
+    final Aggregator[] shards = Deencapsulation.getField(aggregator, "shards");
+    assertFalse(aggregator.consolidate());
+    for (int i = 0; i < 10; i++) {
+      shards[0].apply(new String[]{"testTag", "value" + i}, 1L, CURRENT_TIME);
+      shards[1].apply(new String[]{"testTag", "value" + i}, 1L, CURRENT_TIME + 2000L);
+    }
+    assertTrue(aggregator.consolidate());
+    assertEquals(10, aggregator.evictIdle(CURRENT_TIME + 2000L));
+
+    aggregator.close();
+    assertSame(shards[0], ((Aggregator[]) Deencapsulation.getField(aggregator, "shards"))[0]);
+    assertFalse(aggregator.cursor().next());
+  }
+}
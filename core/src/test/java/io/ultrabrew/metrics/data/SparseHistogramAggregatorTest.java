@@ -0,0 +1,226 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.data;
+
+import static io.ultrabrew.metrics.Metric.DEFAULT_MAX_CARDINALITY;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import mockit.Deencapsulation;
+import org.junit.jupiter.api.Test;
+
+public class SparseHistogramAggregatorTest {
+
+  private long CURRENT_TIME = System.currentTimeMillis();
+
+  @Test
+  void testAggregation() {
+    DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final SparseHistogramAggregator table = new SparseHistogramAggregator("test", bucket);
+
+    String[] tagset = {"testTag", "value"};
+    table.apply(tagset, -1, CURRENT_TIME);
+    table.apply(tagset, 0, CURRENT_TIME);
+    table.apply(tagset, 1L, CURRENT_TIME);
+    table.apply(tagset, 10, CURRENT_TIME);
+    table.applyTagSet(TagSet.of("testTag", "value"), 50, CURRENT_TIME);
+    table.apply(tagset, 100, CURRENT_TIME);
+    table.apply(tagset, 150, CURRENT_TIME);
+    table.apply(tagset, 101, CURRENT_TIME);
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(
+        new String[]{"count", "sum", "min", "max", "lastValue", "0_10", "10_100", "overflow", "underflow"},
+        cursor.getFields());
+    assertArrayEquals(tagset, cursor.getTags());
+    assertEquals(CURRENT_TIME, cursor.lastUpdated());
+    assertEquals(8, cursor.readLong(0)); // count
+    assertEquals(411, cursor.readLong(1)); // sum
+    assertEquals(-1, cursor.readLong(2)); // min
+    assertEquals(150, cursor.readLong(3)); // max
+    assertEquals(101, cursor.readLong(4)); // lastValue
+    assertEquals(2, cursor.readLong(5)); // [0,10)
+    assertEquals(2, cursor.readLong(6)); // [10,100)
+    assertEquals(3, cursor.readLong(7)); // overflow
+    assertEquals(1, cursor.readLong(8)); // underflow
+    assertFalse(cursor.next());
+    assertEquals(1, table.size());
+  }
+
+  @Test
+  void testMatchesDenseHistogram() {
+    // 1 microsecond to 1 minute in nanoseconds, more buckets than cells
+    LogLinearDistributionBucket bucket =
+        new LogLinearDistributionBucket(1_000L, 60_000_000_000L, 1);
+    SparseHistogramAggregator sparse = new SparseHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 4, TableOptions.DEFAULT, 2);
+    BasicHistogramAggregator dense = new BasicHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 4);
+    Random random = new Random(42);
+    for (int i = 0; i < 10_000; i++) {
+      String[] tags = {"host", "web" + random.nextInt(20)};
+      long value = random.nextLong() >> random.nextInt(64);
+      sparse.apply(tags, value, CURRENT_TIME);
+      dense.apply(tags, value, CURRENT_TIME);
+    }
+
+    for (int round = 0; round < 2; round++) {
+      Cursor expected = dense.sortedCursor();
+      Cursor actual = sparse.sortedCursor();
+      assertArrayEquals(expected.getFields(), actual.getFields());
+      while (expected.next()) {
+        assertTrue(actual.next());
+        assertArrayEquals(expected.getTags(), actual.getTags());
+        for (int i = 0; i < expected.getFields().length; i++) {
+          assertEquals(expected.readAndResetLong(i), actual.readAndResetLong(i),
+              expected.getFields()[i]);
+        }
+      }
+      assertFalse(actual.next());
+    }
+  }
+
+  @Test
+  void testMemoryUsage() {
+    LogLinearDistributionBucket bucket =
+        new LogLinearDistributionBucket(1_000L, 60_000_000_000L, 2);
+    SparseHistogramAggregator sparse = new SparseHistogramAggregator("test", bucket, 20_000);
+    BasicHistogramAggregator dense = new BasicHistogramAggregator("test", bucket, 20_000);
+    for (int i = 0; i < 10_000; i++) {
+      String[] tags = {"host", String.valueOf(i)};
+      for (int j = 0; j < 4; j++) {
+        long value = 1_000_000L * (1 + (i + j) % 10);
+        sparse.apply(tags, value, CURRENT_TIME);
+        dense.apply(tags, value, CURRENT_TIME);
+      }
+    }
+    assertTrue(bucket.getCount() > 200);
+    assertTrue(sparse.memoryUsage() * 4 < dense.memoryUsage());
+
+    // Memory grows with the buckets hit beyond the cells, not with the buckets of the distribution
+    long before = sparse.memoryUsage();
+    for (int j = 0; j < 100; j++) {
+      sparse.apply(new String[]{"host", "0"}, 1_000L << (j % 30), CURRENT_TIME);
+    }
+    long overflow = sparse.memoryUsage() - before;
+    assertTrue(overflow > 0L);
+    assertTrue(overflow < 4L * bucket.getCount());
+  }
+
+  @Test
+  void testOverflowReset() {
+    DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 20, 30, 40, 50});
+    SparseHistogramAggregator table = new SparseHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 4, TableOptions.DEFAULT, 1);
+    String[] tagset = {"testTag", "value"};
+    table.apply(tagset, 45L, CURRENT_TIME);
+    table.apply(tagset, 5L, CURRENT_TIME);
+    table.apply(tagset, 5L, CURRENT_TIME);
+    table.apply(tagset, 100L, CURRENT_TIME);
+
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(2L, cursor.readAndResetLong(5)); // [0,10) in overflow
+    assertEquals(0L, cursor.readAndResetLong(6)); // [10,20) not hit
+    assertEquals(1L, cursor.readAndResetLong(9)); // [40,50) in cell
+    assertEquals(1L, cursor.readAndResetLong(10)); // overflow
+    assertEquals(0L, cursor.readLong(5));
+    assertEquals(0L, cursor.readLong(9));
+
+    table.apply(tagset, 45L, CURRENT_TIME);
+    table.apply(tagset, 5L, CURRENT_TIME);
+    cursor = table.cursor();
+    assertTrue(cursor.next());
+    assertEquals(1L, cursor.readLong(5));
+    assertEquals(1L, cursor.readLong(9));
+    assertEquals(0L, cursor.readLong(10));
+  }
+
+  @Test
+  void testEvictIdleReleasesOverflow() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    final SparseHistogramAggregator table = new SparseHistogramAggregator("test", bucket, 2, 2,
+        TableOptions.builder().withIdleTimeoutMillis(1000L).build(), 1);
+    table.apply(new String[]{"key", "value0"}, 5L, CURRENT_TIME);
+    table.apply(new String[]{"key", "value0"}, 50L, CURRENT_TIME);
+    table.apply(new String[]{"key", "value1"}, 50L, CURRENT_TIME + 1000L);
+    Map<?, ?> overflows = Deencapsulation.getField(table, "overflows");
+    assertEquals(1, overflows.size());
+
+    assertEquals(1, table.evictIdle(CURRENT_TIME + 1500L));
+    assertTrue(overflows.isEmpty());
+
+    // The new record starts from empty cells
+    table.apply(new String[]{"key", "value2"}, 150L, CURRENT_TIME + 1500L);
+    Cursor cursor = table.sortedCursor();
+    assertTrue(cursor.next());
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"key", "value2"}, cursor.getTags());
+    assertEquals(1L, cursor.readLong(0)); // count
+    assertEquals(0L, cursor.readLong(5)); // [0,10)
+    assertEquals(0L, cursor.readLong(6)); // [10,100)
+    assertEquals(1L, cursor.readLong(7)); // overflow
+    assertFalse(cursor.next());
+    assertTrue(overflows.isEmpty());
+
+    table.close();
+    assertFalse(table.cursor().next());
+  }
+
+  @Test
+  void testConcurrentCells() throws InterruptedException {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 20, 30, 40, 50});
+    final SparseHistogramAggregator table = new SparseHistogramAggregator("test", bucket,
+        DEFAULT_MAX_CARDINALITY, 4, TableOptions.DEFAULT, 2);
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      final int offset = t;
+      Thread thread = new Thread(() -> {
+        for (int i = 0; i < 10_000; i++) {
+          table.apply(new String[]{"testTag", "value"}, ((i + offset) % 7) * 10L, CURRENT_TIME);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    Cursor cursor = table.cursor();
+    assertTrue(cursor.next());
+    long total = 0L;
+    for (int i = 5; i < cursor.getFields().length; i++) {
+      total += cursor.readLong(i);
+    }
+    assertEquals(40_000L, cursor.readLong(0));
+    assertEquals(40_000L, total);
+  }
+
+  @Test
+  void testInvalidArguments() {
+    final DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 100});
+    assertThrows(IllegalArgumentException.class, () -> new SparseHistogramAggregator("test",
+        bucket, DEFAULT_MAX_CARDINALITY, 4, TableOptions.DEFAULT, 0));
+    final SparseHistogramAggregator table = new SparseHistogramAggregator("test", bucket);
+    table.apply(new String[0], 1L, CURRENT_TIME);
+    final Cursor cursor = table.cursor();
+    assertThrows(IndexOutOfBoundsException.class, () -> cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertThrows(IndexOutOfBoundsException.class, () -> cursor.readLong(9));
+    assertThrows(IndexOutOfBoundsException.class, () -> cursor.readAndResetLong(-1));
+    assertThrows(UnsupportedOperationException.class, () -> cursor.readDouble(0));
+    assertThrows(UnsupportedOperationException.class, () -> cursor.readAndResetDouble(0));
+    assertEquals(5, table.merges().length - bucket.getCount());
+  }
+}
@@ -7,6 +7,7 @@ package io.ultrabrew.metrics.data;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import org.junit.jupiter.api.Test;
@@ -72,4 +73,16 @@ public class TagSetsHelperTest {
     assertThat(TagSetsHelper.compare(tagSet3, tagSet1), greaterThan(0));
     assertThat(TagSetsHelper.compare(tagSet3, tagSet2), greaterThan(0));
   }
+
+  @Test
+  public void testSortedIndexes() {
+    final String[][] tagSets = new String[][]{
+        new String[]{"testTag", "value2"},
+        null,
+        new String[]{"testTag", "value"},
+        new String[]{"testTag", "value3"}};
+
+    assertArrayEquals(new int[]{2, 0, 3, 1}, TagSetsHelper.sortedIndexes(tagSets));
+    assertArrayEquals(new int[0], TagSetsHelper.sortedIndexes(new String[0][]));
+  }
 }
@@ -48,4 +48,34 @@ public class TypeTest {
     assertEquals(String.valueOf(2), types[0].readAndReset(cursor, 0));
     assertEquals(String.valueOf(d2), types[1].readAndReset(cursor, 3));
   }
+
+  @Test
+  public void readAndResetIntoSink() {
+    final BasicGaugeDoubleAggregator table = new BasicGaugeDoubleAggregator("test");
+    table.apply(new String[]{"testTag", "value"}, Double.doubleToLongBits(1.5), CURRENT_TIME);
+    table.apply(new String[]{"testTag", "value"}, Double.doubleToLongBits(2.0), CURRENT_TIME);
+    Cursor cursor = table.cursor();
+    cursor.next();
+
+    final StringBuilder sb = new StringBuilder();
+    final FieldSink sink = new FieldSink() {
+      @Override
+      public void acceptLong(final int index, final long value) {
+        sb.append(index).append(":long=").append(value).append(' ');
+      }
+
+      @Override
+      public void acceptDouble(final int index, final double value) {
+        sb.append(index).append(":double=").append(value).append(' ');
+      }
+    };
+    for (int i = 0; i < cursor.getFields().length; i++) {
+      cursor.readAndResetInto(i, sink);
+    }
+    assertEquals("0:long=2 1:double=3.5 2:double=1.5 3:double=2.0 4:double=2.0 ", sb.toString());
+
+    sb.setLength(0);
+    cursor.readAndResetInto(0, sink);
+    assertEquals("0:long=0 ", sb.toString());
+  }
 }
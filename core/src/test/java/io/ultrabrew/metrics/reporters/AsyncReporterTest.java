@@ -0,0 +1,233 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.reporters;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.ultrabrew.metrics.Counter;
+import io.ultrabrew.metrics.Metric;
+import io.ultrabrew.metrics.MetricRegistry;
+import io.ultrabrew.metrics.Reporter;
+import io.ultrabrew.metrics.data.Cursor;
+import io.ultrabrew.metrics.reporters.AsyncReporter.OverflowPolicy;
+import io.ultrabrew.metrics.util.TagSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import mockit.Deencapsulation;
+import org.junit.jupiter.api.Test;
+
+public class AsyncReporterTest {
+
+  @Test
+  public void testAggregate() throws InterruptedException {
+    AggregatingReporter reporter = new AggregatingReporter() {
+    };
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter)
+        .withCapacity(1000).withDrainers(2).withOverflowPolicy(OverflowPolicy.BLOCK).build();
+    MetricRegistry metricRegistry = new MetricRegistry();
+    metricRegistry.addReporter(asyncReporter);
+    Counter counter = metricRegistry.counter("counter");
+    Counter.Bound bound = counter.bind("host", "web01");
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread thread = new Thread(() -> {
+        String[] tags = new String[]{"host", "web01"};
+        for (int j = 0; j < 10_000; j++) {
+          counter.inc(tags);
+          bound.inc();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    asyncReporter.flush();
+
+    Cursor cursor = reporter.aggregators.get("counter").cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"host", "web01"}, cursor.getTags());
+    assertEquals(80_000L, cursor.readLong(0));
+    assertFalse(cursor.next());
+    assertEquals(0L, asyncReporter.getDropped());
+    asyncReporter.close();
+  }
+
+  @Test
+  public void testEmit() {
+    Map<Long, Object> received = Collections.synchronizedMap(new HashMap<>());
+    Reporter reporter = new Reporter() {
+      @Override
+      public void emit(Metric metric, long timestamp, long value, String[] tags) {
+        received.put(value, tags);
+      }
+
+      @Override
+      public void emitTagSet(Metric metric, long timestamp, long value, TagSet tags) {
+        received.put(value, tags);
+      }
+    };
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter).build();
+    Counter counter = new MetricRegistry().counter("counter");
+    String[] tags = new String[]{"host", "web01"};
+    TagSet tagSet = TagSet.of("host", "web02");
+
+    asyncReporter.emit(counter, 0L, 1L, tags);
+    asyncReporter.emitTagSet(counter, 0L, 2L, tagSet);
+    asyncReporter.emit(counter, 0L, 3L, null);
+    tags[1] = "changed";
+    asyncReporter.flush();
+
+    assertArrayEquals(new String[]{"host", "web01"}, (String[]) received.get(1L));
+    assertSame(tagSet, received.get(2L));
+    assertTrue(received.containsKey(3L));
+    assertNull(received.get(3L));
+    asyncReporter.close();
+  }
+
+  @Test
+  public void testIgnoredMetric() {
+    AggregatingReporter reporter = new AggregatingReporter(Collections.emptyMap()) {
+    };
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter).build();
+    Counter counter = new MetricRegistry().counter("counter");
+    assertNull(asyncReporter.route(counter));
+    asyncReporter.close();
+  }
+
+  @Test
+  public void testDropOnOverflow() throws InterruptedException {
+    BlockingReporter reporter = new BlockingReporter();
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter)
+        .withCapacity(1).withOverflowPolicy(OverflowPolicy.DROP).build();
+    Counter counter = new MetricRegistry().counter("counter");
+
+    fill(asyncReporter, reporter, counter);
+    asyncReporter.emit(counter, 0L, 3L, null);
+    assertEquals(1L, asyncReporter.getDropped());
+
+    reporter.release.countDown();
+    asyncReporter.flush();
+    assertEquals(3L, reporter.sum.get());
+    asyncReporter.close();
+  }
+
+  @Test
+  public void testInlineOnOverflow() throws InterruptedException {
+    BlockingReporter reporter = new BlockingReporter();
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter)
+        .withCapacity(1).withOverflowPolicy(OverflowPolicy.INLINE).build();
+    Counter counter = new MetricRegistry().counter("counter");
+
+    fill(asyncReporter, reporter, counter);
+    reporter.release.countDown();
+    asyncReporter.emit(counter, 0L, 3L, null);
+    asyncReporter.flush();
+    assertEquals(6L, reporter.sum.get());
+    assertEquals(0L, asyncReporter.getDropped());
+    asyncReporter.close();
+  }
+
+  @Test
+  public void testBlockOnOverflow() throws InterruptedException {
+    BlockingReporter reporter = new BlockingReporter();
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter)
+        .withCapacity(1).withOverflowPolicy(OverflowPolicy.BLOCK).build();
+    Counter counter = new MetricRegistry().counter("counter");
+
+    fill(asyncReporter, reporter, counter);
+    Thread thread = new Thread(() -> asyncReporter.emit(counter, 0L, 3L, null));
+    thread.start();
+    thread.join(100);
+    assertTrue(thread.isAlive());
+
+    reporter.release.countDown();
+    thread.join(5_000);
+    assertFalse(thread.isAlive());
+    asyncReporter.flush();
+    assertEquals(6L, reporter.sum.get());
+    asyncReporter.close();
+  }
+
+  @Test
+  public void testClose() throws InterruptedException {
+    BlockingReporter reporter = new BlockingReporter();
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter)
+        .withCapacity(1).withOverflowPolicy(OverflowPolicy.BLOCK).build();
+    Counter counter = new MetricRegistry().counter("counter");
+
+    fill(asyncReporter, reporter, counter);
+    reporter.release.countDown();
+    asyncReporter.close();
+    assertEquals(3L, reporter.sum.get());
+
+    asyncReporter.emit(counter, 0L, 3L, null);
+    assertEquals(1L, asyncReporter.getDropped());
+    assertEquals(3L, reporter.sum.get());
+  }
+
+  @Test
+  public void testBuilder() {
+    Reporter reporter = (metric, timestamp, value, tags) -> {
+    };
+    assertThrows(IllegalArgumentException.class, () -> AsyncReporter.builder().build());
+    assertThrows(IllegalArgumentException.class,
+        () -> AsyncReporter.builder().withReporter(reporter).withCapacity(0).build());
+    assertThrows(IllegalArgumentException.class,
+        () -> AsyncReporter.builder().withReporter(reporter).withDrainers(0).build());
+    assertThrows(IllegalArgumentException.class,
+        () -> AsyncReporter.builder().withReporter(reporter).withOverflowPolicy(null).build());
+
+    AsyncReporter asyncReporter = AsyncReporter.builder().withReporter(reporter).withCapacity(1000)
+        .build();
+    Object[] rings = Deencapsulation.getField(asyncReporter, "rings");
+    assertEquals(1024, (int) Deencapsulation.getField(rings[0], "capacity"));
+    asyncReporter.close();
+  }
+
+  /**
+   * Publish two events, the first of which blocks the drainer thread, so that the ring buffer of
+   * capacity 1 is full.
+   */
+  private static void fill(final AsyncReporter asyncReporter, final BlockingReporter reporter,
+      final Metric metric) throws InterruptedException {
+    asyncReporter.emit(metric, 0L, 1L, null);
+    assertTrue(reporter.entered.await(5, TimeUnit.SECONDS));
+    asyncReporter.emit(metric, 0L, 2L, null);
+    assertEquals(0L, asyncReporter.getDropped());
+  }
+
+  private static final class BlockingReporter implements Reporter {
+
+    private final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicLong sum = new AtomicLong();
+
+    @Override
+    public void emit(Metric metric, long timestamp, long value, String[] tags) {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      sum.addAndGet(value);
+    }
+  }
+}
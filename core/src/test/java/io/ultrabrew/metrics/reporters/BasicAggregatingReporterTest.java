@@ -7,16 +7,28 @@ package io.ultrabrew.metrics.reporters;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.ultrabrew.metrics.Counter;
 import io.ultrabrew.metrics.Gauge;
 import io.ultrabrew.metrics.GaugeDouble;
+import io.ultrabrew.metrics.Metric;
 import io.ultrabrew.metrics.MetricRegistry;
+import io.ultrabrew.metrics.Reporter;
 import io.ultrabrew.metrics.data.Aggregator;
 import io.ultrabrew.metrics.data.Cursor;
 import io.ultrabrew.metrics.data.CursorEntry;
 import io.ultrabrew.metrics.data.MultiCursor;
+import io.ultrabrew.metrics.data.TableOptions;
+import io.ultrabrew.metrics.util.TagDictionary;
+import io.ultrabrew.metrics.util.TagSet;
 import java.util.Collections;
+import mockit.Deencapsulation;
+import mockit.Mocked;
+import mockit.Verifications;
 import org.junit.jupiter.api.Test;
 
 public class BasicAggregatingReporterTest {
@@ -30,12 +42,33 @@ public class BasicAggregatingReporterTest {
     registry.addReporter(reporter);
     Gauge gauge = registry.gauge("gauge");
     String[] tagSets = new String[]{"k1", "v1"};
-    gauge.set(123, tagSets);
+    // The gauge is not routed to the reporter, which aggregates events emitted to it with NOOP
+    reporter.emit(gauge, 0L, 123, tagSets);
     Aggregator aggregator = reporter.aggregators.values().iterator().next();
     assertFalse(aggregator.cursor().next());
     assertFalse(aggregator.sortedCursor().next());
   }
 
+  @Test
+  public void testDefaultAggregatorsWithTagDictionary() {
+    final TagDictionary dictionary = new TagDictionary(16);
+    AggregatingReporter reporter = new AggregatingReporter(AggregatingReporter.defaultAggregators(
+        TableOptions.builder().withTagDictionary(dictionary).build())) {
+    };
+
+    MetricRegistry registry = new MetricRegistry();
+    registry.addReporter(reporter);
+    registry.counter("counter").inc("status", String.valueOf(200));
+    registry.gauge("gauge").set(1L, "status", String.valueOf(200));
+    assertEquals(2, dictionary.size());
+
+    final Cursor counter = reporter.aggregators.get("counter").cursor();
+    final Cursor gauge = reporter.aggregators.get("gauge").cursor();
+    assertTrue(counter.next());
+    assertTrue(gauge.next());
+    assertSame(counter.getTags()[1], gauge.getTags()[1]);
+  }
+
   @Test
   public void testNullTags() {
     AggregatingReporter reporter = new AggregatingReporter() {
@@ -80,4 +113,145 @@ public class BasicAggregatingReporterTest {
       }
     }
   }
+
+  @Test
+  public void testClose(@Mocked final Aggregator aggregator) {
+    AggregatingReporter reporter = new AggregatingReporter() {
+    };
+    reporter.aggregators.put("test", aggregator);
+
+    reporter.close();
+
+    new Verifications() {{
+      aggregator.close();
+      times = 1;
+    }};
+  }
+
+  @Test
+  public void testConsolidate(@Mocked final Aggregator aggregator) {
+    AggregatingReporter reporter = new AggregatingReporter() {
+    };
+    reporter.aggregators.put("test", aggregator);
+
+    reporter.consolidate();
+
+    new Verifications() {{
+      aggregator.consolidate();
+      times = 1;
+    }};
+  }
+
+  @Test
+  public void testEvictIdle(@Mocked final Aggregator aggregator) {
+    AggregatingReporter reporter = new AggregatingReporter() {
+    };
+    reporter.aggregators.put("test", aggregator);
+
+    reporter.evictIdle(1000L);
+
+    new Verifications() {{
+      aggregator.evictIdle(1000L);
+      times = 1;
+    }};
+  }
+
+  @Test
+  public void testRouteIgnoresNoop() {
+    AggregatingReporter reporter = new AggregatingReporter(Collections.emptyMap()) {
+    };
+
+    MetricRegistry registry = new MetricRegistry();
+    registry.addReporter(reporter);
+    Gauge gauge = registry.gauge("gauge");
+    Reporter[] routes = Deencapsulation.getField(gauge, "routes");
+    assertEquals(0, routes.length);
+    gauge.set(1L);
+    assertNull(reporter.aggregators.get("gauge"));
+
+    // A subclass creating the aggregators may aggregate any metric, which is known to be ignored
+    // once its aggregator has been created
+    AggregatingReporter custom = new AggregatingReporter(Collections.emptyMap()) {
+      @Override
+      protected Aggregator createAggregator(final Metric metric) {
+        return NOOP;
+      }
+    };
+    assertNotNull(custom.route(gauge));
+    custom.emit(gauge, 0L, 1L, null);
+    assertSame(AggregatingReporter.NOOP, custom.aggregators.get("gauge"));
+    assertNull(custom.route(gauge));
+  }
+
+  @Test
+  public void testRouteToAggregator() {
+    AggregatingReporter reporter = new AggregatingReporter() {
+    };
+
+    MetricRegistry registry = new MetricRegistry();
+    Counter counter = registry.counter("counter");
+    registry.addReporter(reporter);
+    Reporter[] routes = Deencapsulation.getField(counter, "routes");
+    assertEquals(1, routes.length);
+    assertNull(reporter.aggregators.get("counter"));
+
+    counter.inc("k1", "v1");
+    counter.inc(TagSet.of("k1", "v1"));
+    Cursor cursor = reporter.aggregators.get("counter").cursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"k1", "v1"}, cursor.getTags());
+    assertEquals(2L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testEmitBatch() {
+    AggregatingReporter reporter = new AggregatingReporter() {
+    };
+
+    MetricRegistry registry = new MetricRegistry();
+    Counter counter = registry.counter("counter");
+    String[][] tagSets = new String[][]{{"k1", "v1"}, null, {"k1", "v1"}};
+    long[] changes = new long[]{1L, 2L, 3L};
+
+    reporter.emitBatch(counter, 0L, changes, tagSets);
+    registry.addReporter(reporter);
+    counter.incAll(tagSets, changes);
+    assertNull(tagSets[1]);
+
+    Cursor cursor = reporter.aggregators.get("counter").sortedCursor();
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{}, cursor.getTags());
+    assertEquals(4L, cursor.readLong(0));
+    assertTrue(cursor.next());
+    assertArrayEquals(new String[]{"k1", "v1"}, cursor.getTags());
+    assertEquals(8L, cursor.readLong(0));
+    assertFalse(cursor.next());
+  }
+
+  @Test
+  public void testRemove() {
+    AggregatingReporter reporter = new AggregatingReporter() {
+    };
+
+    MetricRegistry registry = new MetricRegistry();
+    registry.addReporter(reporter);
+    Counter counter = registry.counter("counter");
+    counter.inc("k1", "v1");
+    Aggregator aggregator = reporter.aggregators.get("counter");
+    assertTrue(reporter.memoryUsage(counter) > 0L);
+    assertEquals(aggregator.memoryUsage(), registry.memoryUsage());
+
+    registry.remove("counter");
+    assertNull(reporter.aggregators.get("counter"));
+    assertEquals(0L, reporter.memoryUsage(counter));
+    // The closed aggregator drops late updates
+    aggregator.apply(new String[]{"k1", "v1"}, 1L, 0L);
+    assertFalse(aggregator.cursor().next());
+
+    registry.counter("counter").inc("k1", "v1");
+    Cursor cursor = reporter.aggregators.get("counter").cursor();
+    assertTrue(cursor.next());
+    assertEquals(1L, cursor.readLong(0));
+  }
 }
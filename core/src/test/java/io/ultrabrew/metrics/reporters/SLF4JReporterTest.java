@@ -8,7 +8,10 @@ import static io.ultrabrew.metrics.reporters.AggregatingReporter.DEFAULT_AGGREGA
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import io.ultrabrew.metrics.Counter;
 import io.ultrabrew.metrics.Gauge;
@@ -20,8 +23,12 @@ import io.ultrabrew.metrics.data.Aggregator;
 import io.ultrabrew.metrics.data.Cursor;
 import io.ultrabrew.metrics.data.DistributionBucket;
 import io.ultrabrew.metrics.data.DoubleValuedDistributionBucket;
+import io.ultrabrew.metrics.data.TableOptions;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import mockit.Capturing;
 import mockit.Deencapsulation;
 import mockit.Expectations;
@@ -405,6 +412,92 @@ public class SLF4JReporterTest {
     };
   }
 
+  @Test
+  void testTagDictionary() {
+    final MetricRegistry metricRegistry = new MetricRegistry();
+    final Counter counter = metricRegistry.counter("counter");
+    final Timer timer = metricRegistry.timer("timer");
+    final SLF4JReporter.Builder builder = SLF4JReporter.builder().withName("testTagDictionary")
+        .addSketch("timer")
+        .withTagDictionary(16);
+
+    // Each reporter built gets a dictionary of its own, also used by the sketches added before
+    final TableOptions options = builder.buildTableOptions();
+    assertNotNull(options.getTagDictionary());
+    assertNotSame(options.getTagDictionary(), builder.buildTableOptions().getTagDictionary());
+    final Aggregator sketch = builder.buildMetricAggregators(options).get("timer").apply(timer);
+    assertSame(options.getTagDictionary(), Deencapsulation.getField(sketch, "tagDictionary"));
+    final Aggregator aggregator =
+        builder.buildDefaultAggregators(options).get(Counter.class).apply(counter);
+    assertSame(options.getTagDictionary(), Deencapsulation.getField(aggregator, "tagDictionary"));
+
+    // Default aggregators set explicitly are kept
+    builder.withDefaultAggregators(DEFAULT_AGGREGATORS);
+    assertSame(DEFAULT_AGGREGATORS, builder.buildDefaultAggregators(TableOptions.DEFAULT));
+    final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaults =
+        Collections.emptyMap();
+    builder.withDefaultAggregators(defaults);
+    assertSame(defaults, builder.buildDefaultAggregators(builder.buildTableOptions()));
+
+    assertThrows(IllegalArgumentException.class, () -> builder.withTagDictionary(0));
+  }
+
+  @Test
+  void testSharded(@Injectable Logger logger) throws InterruptedException {
+
+    String metricId = "latency";
+    DistributionBucket bucket = new DistributionBucket(new long[]{0, 10, 50, 100});
+
+    reporter = SLF4JReporter.builder().withName("testSharded").withStepSize(1)
+        .addHistogram(metricId, bucket)
+        .addSharded(metricId)
+        .addSharded("counter")
+        .addSharded("unknown")
+        .build();
+
+    Deencapsulation.setField(this.reporter, "reporter", logger);
+    MetricRegistry metricRegistry = new MetricRegistry();
+    metricRegistry.addReporter(this.reporter);
+
+    long start = System.currentTimeMillis();
+
+    Gauge gauge = metricRegistry.gauge(metricId);
+    Counter counter = metricRegistry.counter("counter");
+    TestMetric unknown = metricRegistry.custom("unknown", TestMetric.class);
+    Thread[] threads = new Thread[4];
+    for (int i = 0; i < threads.length; i++) {
+      final long value = i * 20;
+      threads[i] = new Thread(() -> {
+        for (int j = 0; j < 100; j++) {
+          gauge.set(value, "tag", "100");
+          counter.inc("tag", "100");
+          unknown.send(1L);
+        }
+      });
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Thread.sleep(calculateDelay(1000, start) + 150);
+
+    new Verifications() {{
+      List<Object[]> objects = new ArrayList<>();
+      logger.info("lastUpdated={} {}{}{} {}", withCapture(objects));
+
+      assertEquals(2, objects.size());
+      objects.sort((o1, o2) -> ((String) o1[4]).compareTo((String) o2[4]));
+
+      compare(objects.get(0), "tag=100", "sum=400", "counter");
+      assertEquals("tag=100", objects.get(1)[1]);
+      assertTrue(((String) objects.get(1)[3]).startsWith(
+          "count=400 sum=12000 min=0 max=60 lastValue="));
+      assertTrue(((String) objects.get(1)[3]).endsWith(
+          " 0_10=100 10_50=200 50_100=100 overflow=0 underflow=0"));
+    }};
+  }
+
   private void compare(final Object[] o, final String tags, final String fields,
       final String metric) {
     assertEquals(5, o.length);
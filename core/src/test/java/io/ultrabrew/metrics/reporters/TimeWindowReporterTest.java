@@ -4,9 +4,13 @@
 
 package io.ultrabrew.metrics.reporters;
 
+import static io.ultrabrew.metrics.reporters.TimeWindowReporter.DEFAULT_WINDOW_STEP_SIZE_SEC;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -14,18 +18,26 @@ import static org.junit.jupiter.api.Assertions.fail;
 import io.ultrabrew.metrics.Counter;
 import io.ultrabrew.metrics.MetricRegistry;
 import io.ultrabrew.metrics.data.Aggregator;
+import io.ultrabrew.metrics.data.Cursor;
 import io.ultrabrew.metrics.data.CursorEntry;
 import io.ultrabrew.metrics.data.MultiCursor;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import mockit.Capturing;
 import mockit.Deencapsulation;
 import mockit.Expectations;
+import mockit.Mocked;
 import mockit.Verifications;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -451,4 +463,416 @@ public class TimeWindowReporterTest {
     long delay = windowSizeMillis - (currentTimeMillis % windowSizeMillis);
     return delay + 10;
   }
+
+  @Test
+  public void reportEvictsAndConsolidatesAggregatorsOfThePreviousWindow(
+      @Mocked final Aggregator aggregator) {
+    reporters[0].aggregators.put("test", aggregator);
+    reporters[1].aggregators.put("test", aggregator);
+
+    reporter.report();
+
+    new Verifications() {{
+      aggregator.evictIdle(anyLong);
+      times = 1;
+      aggregator.consolidate();
+      times = 1;
+    }};
+  }
+
+  @Test
+  public void closeReleasesAggregators(@Mocked final Aggregator aggregator) {
+    reporters[0].aggregators.put("test", aggregator);
+    reporters[1].aggregators.put("test", aggregator);
+
+    reporter.close();
+
+    new Verifications() {{
+      aggregator.close();
+      times = 2;
+    }};
+  }
+
+  @Test
+  public void closeReleasesAggregatorsAfterReporting(@Mocked final Aggregator aggregator)
+      throws Exception {
+    reporter = new TimeWindowReporter("testReport", 1) {
+      @Override
+      protected void doReport(Map<String, Aggregator> aggregators) {
+      }
+    };
+    reporters = Deencapsulation.getField(reporter, "reporters");
+    reporters[0].aggregators.put("test", aggregator);
+    reporters[1].aggregators.put("test", aggregator);
+
+    reporter.start();
+    Thread reportingThread = Deencapsulation.getField(reporter, "reportingThread");
+    reporter.close();
+    reportingThread.join(5000);
+
+    assertFalse(reportingThread.isAlive());
+    new Verifications() {{
+      aggregator.close();
+      times = 2;
+    }};
+  }
+
+  @Test
+  public void routesToTheWindowOfTheTimestamp() {
+    long windowSizeMillis = TimeUnit.MINUTES.toMillis(1);
+    AtomicInteger window = new AtomicInteger();
+    MetricRegistry metricRegistry = new MetricRegistry(() -> window.get() * windowSizeMillis);
+    Counter counter = metricRegistry.counter("counter");
+    metricRegistry.addReporter(reporter);
+
+    counter.inc("testTag", "value");
+    window.set(1);
+    counter.inc(2L, "testTag", "value");
+    counter.inc(3L, "testTag", "value");
+
+    for (int i = 0; i < 2; i++) {
+      MultiCursor cursor = new MultiCursor(reporters[i].aggregators.values());
+      assertTrue(cursor.next());
+      assertEquals(i == 0 ? 1L : 5L, cursor.nextCursorEntry().readLong(0));
+      assertFalse(cursor.next());
+    }
+  }
+
+  @Test
+  public void createsAggregatorsOnlyInMeasuredWindows() {
+    MetricRegistry metricRegistry = new MetricRegistry(() -> 0L);
+    Counter counter = metricRegistry.counter("counter");
+    metricRegistry.addReporter(reporter);
+    assertNull(reporters[0].aggregators.get("counter"));
+    assertNull(reporters[1].aggregators.get("counter"));
+
+    counter.inc("testTag", "value");
+    assertNotNull(reporters[0].aggregators.get("counter"));
+    assertNull(reporters[1].aggregators.get("counter"));
+  }
+
+  @Test
+  public void closesRemovedAggregatorsAfterReport() {
+    long windowSizeMillis = TimeUnit.MINUTES.toMillis(1);
+    AtomicInteger window = new AtomicInteger();
+    MetricRegistry metricRegistry = new MetricRegistry(() -> window.get() * windowSizeMillis);
+    metricRegistry.addReporter(reporter);
+    Counter counter = metricRegistry.counter("counter");
+    counter.inc("testTag", "value");
+    window.set(1);
+    counter.inc("testTag", "value");
+    Aggregator first = reporters[0].aggregators.get("counter");
+    Aggregator second = reporters[1].aggregators.get("counter");
+    assertTrue(metricRegistry.memoryUsage() > 0L);
+
+    new Expectations(first, second) {
+    };
+
+    assertSame(counter, metricRegistry.remove("counter"));
+    assertNull(reporters[0].aggregators.get("counter"));
+    assertNull(reporters[1].aggregators.get("counter"));
+    assertEquals(0L, metricRegistry.memoryUsage());
+    new Verifications() {{
+      first.close();
+      times = 0;
+      second.close();
+      times = 0;
+    }};
+
+    reporter.report();
+    new Verifications() {{
+      first.close();
+      times = 1;
+      second.close();
+      times = 1;
+    }};
+  }
+
+  @Test
+  public void reportsSelfMetrics() {
+    long windowSizeMillis = TimeUnit.MINUTES.toMillis(1);
+    long interval = System.currentTimeMillis() / windowSizeMillis;
+    AtomicLong time = new AtomicLong((interval - 2) * windowSizeMillis);
+    MetricRegistry metricRegistry = new MetricRegistry(time::get);
+    List<long[]> reported = new ArrayList<>();
+    reporter = new TimeWindowReporter("testReport", DEFAULT_WINDOW_STEP_SIZE_SEC,
+        AggregatingReporter.DEFAULT_AGGREGATORS, Collections.emptyMap(), 2, 1, true) {
+      @Override
+      protected void doReport(Map<String, Aggregator> aggregators) {
+        if (!aggregators.containsKey(DROPPED_METRIC_ID)) {
+          return;
+        }
+        Cursor dropped = aggregators.get(DROPPED_METRIC_ID).cursor();
+        Cursor pending = aggregators.get(PENDING_WINDOWS_METRIC_ID).cursor();
+        if (dropped.next() && pending.next()) {
+          assertArrayEquals(new String[]{REPORTER_TAG, "testReport"}, dropped.getTags());
+          assertArrayEquals(new String[]{REPORTER_TAG, "testReport"}, pending.getTags());
+          reported.add(new long[]{dropped.readAndResetLong(0), pending.readLong(4)});
+        }
+      }
+    };
+    metricRegistry.addReporter(reporter);
+    Counter counter = metricRegistry.counter("counter");
+
+    counter.inc(3L);
+    time.set(interval * windowSizeMillis);
+    counter.inc(5L);
+    reporter.report();
+
+    // Reported with the oldest window only, while the previous window is pending too
+    assertEquals(1, reported.size());
+    assertArrayEquals(new long[]{1L, 2L}, reported.get(0));
+  }
+
+  @Test
+  public void dropsWritesToAWindowStillBeingReported() {
+    long windowSizeMillis = TimeUnit.MINUTES.toMillis(1);
+    long interval = System.currentTimeMillis() / windowSizeMillis;
+    AtomicLong time = new AtomicLong((interval - 2) * windowSizeMillis);
+    MetricRegistry metricRegistry = new MetricRegistry(time::get);
+    List<Long> reported = new ArrayList<>();
+    List<Long> dropped = new ArrayList<>();
+    reporter = new TimeWindowReporter("testReport") {
+      @Override
+      protected void doReport(Map<String, Aggregator> aggregators) {
+        if (reported.isEmpty()) {
+          // The current interval maps to the window being reported
+          metricRegistry.counter("counter").inc(7L);
+          dropped.add(getDropped());
+        }
+        MultiCursor cursor = new MultiCursor(aggregators.values());
+        reported.add(cursor.next() ? cursor.nextCursorEntry().readAndResetLong(0) : 0L);
+      }
+    };
+    metricRegistry.addReporter(reporter);
+    Counter counter = metricRegistry.counter("counter");
+
+    counter.inc(3L);
+    time.set(interval * windowSizeMillis);
+    counter.inc(5L);
+    assertEquals(1L, reporter.getDropped());
+    assertEquals(0, reporter.getPendingWindows());
+
+    reporter.report();
+
+    // The window left behind and the idle previous window are reported, oldest first
+    assertEquals(2, reported.size());
+    assertEquals(3L, (long) reported.get(0));
+    assertEquals(0L, (long) reported.get(1));
+    assertEquals(2L, (long) dropped.get(0));
+    assertEquals(0, reporter.getPendingWindows());
+
+    counter.inc(11L);
+    assertEquals(2L, reporter.getDropped());
+    reporters = Deencapsulation.getField(reporter, "reporters");
+    MultiCursor cursor = new MultiCursor(reporters[(int) (interval % 2)].aggregators.values());
+    assertTrue(cursor.next());
+    assertEquals(11L, cursor.nextCursorEntry().readLong(0));
+  }
+
+  @Test
+  public void slowReportDoesNotOverlapWritesWithMoreWindows() {
+    long windowSizeMillis = TimeUnit.MINUTES.toMillis(1);
+    long interval = System.currentTimeMillis() / windowSizeMillis;
+    AtomicLong time = new AtomicLong((interval - 1) * windowSizeMillis);
+    MetricRegistry metricRegistry = new MetricRegistry(time::get);
+    List<Long> reported = new ArrayList<>();
+    List<Integer> pending = new ArrayList<>();
+    reporter = new TimeWindowReporter("testReport", 60, AggregatingReporter.DEFAULT_AGGREGATORS,
+        new HashMap<>(), 3) {
+      @Override
+      protected void doReport(Map<String, Aggregator> aggregators) {
+        pending.add(getPendingWindows());
+        // Writes of the following intervals continue while the window is reported
+        time.set((interval + 1) * windowSizeMillis);
+        metricRegistry.counter("counter").inc(7L);
+        MultiCursor cursor = new MultiCursor(aggregators.values());
+        reported.add(cursor.next() ? cursor.nextCursorEntry().readAndResetLong(0) : 0L);
+      }
+    };
+    metricRegistry.addReporter(reporter);
+    Counter counter = metricRegistry.counter("counter");
+
+    counter.inc(3L);
+    time.set(interval * windowSizeMillis);
+    counter.inc(5L);
+
+    reporter.report();
+
+    assertEquals(1, reported.size());
+    assertEquals(3L, (long) reported.get(0));
+    assertEquals(1, (int) pending.get(0));
+    assertEquals(0L, reporter.getDropped());
+    assertEquals(0, reporter.getPendingWindows());
+
+    reporters = Deencapsulation.getField(reporter, "reporters");
+    assertEquals(3, reporters.length);
+    for (long i = interval; i <= interval + 1; i++) {
+      MultiCursor cursor = new MultiCursor(reporters[(int) (i % 3)].aggregators.values());
+      assertTrue(cursor.next());
+      assertEquals(i == interval ? 5L : 7L, cursor.nextCursorEntry().readLong(0));
+    }
+  }
+
+  @Test
+  public void invalidNumberOfWindows() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new TimeWindowReporter("testReport", 60, AggregatingReporter.DEFAULT_AGGREGATORS,
+            new HashMap<>(), 1) {
+          @Override
+          protected void doReport(Map<String, Aggregator> aggregators) {
+          }
+        });
+    assertThrows(IllegalArgumentException.class, () -> SLF4JReporter.builder().withWindows(1));
+  }
+
+  @Test
+  public void drainsPartitionsOfAggregatorsConcurrently() throws Exception {
+    reporter = new TimeWindowReporter("testReport", 60, AggregatingReporter.DEFAULT_AGGREGATORS,
+        new HashMap<>(), 2, 3) {
+      @Override
+      protected void doReport(Map<String, Aggregator> aggregators) {
+      }
+    };
+    Map<String, Aggregator> aggregators = new HashMap<>();
+    for (String id : new String[]{"a", "b", "c", "d", "e"}) {
+      aggregators.put(id, aggregator(1L));
+    }
+    CyclicBarrier barrier = new CyclicBarrier(3);
+    Map<Integer, List<String>> partitions = new ConcurrentHashMap<>();
+    Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+
+    reporter.drain(aggregators, (partition, worker) -> {
+      threads.put(worker, Thread.currentThread());
+      List<String> ids = new ArrayList<>();
+      partition.forEach(entry -> ids.add(entry.getKey()));
+      partitions.put(worker, ids);
+      try {
+        // All partitions are drained at the same time
+        barrier.await(5, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    assertEquals(3, reporter.getDrainThreads());
+    assertEquals(3, partitions.size());
+    List<String> drained = new ArrayList<>();
+    partitions.values().forEach(drained::addAll);
+    drained.sort(String::compareTo);
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), drained);
+    assertEquals(2, partitions.get(0).size());
+    assertEquals(2, partitions.get(1).size());
+    assertEquals(1, partitions.get(2).size());
+    assertSame(Thread.currentThread(), threads.get(0));
+    assertTrue(threads.get(1).getName().startsWith("testReport-drain-"));
+    assertTrue(threads.get(2).getName().startsWith("testReport-drain-"));
+
+    ExecutorService drainPool = Deencapsulation.getField(reporter, "drainPool");
+    reporter.close();
+    assertTrue(drainPool.isShutdown());
+  }
+
+  @Test
+  public void balancesPartitionsByMemoryUsage() {
+    reporter = new TimeWindowReporter("testReport", 60, AggregatingReporter.DEFAULT_AGGREGATORS,
+        new HashMap<>(), 2, 2) {
+      @Override
+      protected void doReport(Map<String, Aggregator> aggregators) {
+      }
+    };
+    Map<String, Aggregator> aggregators = new HashMap<>();
+    aggregators.put("a", aggregator(100L));
+    aggregators.put("b", aggregator(60L));
+    aggregators.put("c", aggregator(50L));
+    aggregators.put("d", aggregator(10L));
+    Map<Integer, Long> loads = new ConcurrentHashMap<>();
+
+    reporter.drain(aggregators, (partition, worker) -> loads.put(worker,
+        partition.stream().mapToLong(entry -> entry.getValue().memoryUsage()).sum()));
+
+    assertEquals(110L, (long) loads.get(0));
+    assertEquals(110L, (long) loads.get(1));
+    reporter.close();
+  }
+
+  @Test
+  public void drainsSequentiallyWithOneThread() {
+    Map<String, Aggregator> aggregators = new HashMap<>();
+    aggregators.put("a", aggregator(1L));
+    aggregators.put("b", aggregator(1L));
+    List<Integer> workers = new ArrayList<>();
+
+    reporter.drain(aggregators, (partition, worker) -> {
+      assertEquals(2, partition.size());
+      workers.add(worker);
+    });
+
+    assertEquals(Collections.singletonList(0), workers);
+  }
+
+  @Test
+  public void drainRethrowsFailuresOfWorkers() {
+    reporter = new TimeWindowReporter("testReport", 60, AggregatingReporter.DEFAULT_AGGREGATORS,
+        new HashMap<>(), 2, 2) {
+      @Override
+      protected void doReport(Map<String, Aggregator> aggregators) {
+      }
+    };
+    Map<String, Aggregator> aggregators = new HashMap<>();
+    aggregators.put("a", aggregator(1L));
+    aggregators.put("b", aggregator(1L));
+    UnsupportedOperationException failure = new UnsupportedOperationException();
+
+    IllegalStateException e = assertThrows(IllegalStateException.class,
+        () -> reporter.drain(aggregators, (partition, worker) -> {
+          if (worker == 1) {
+            throw failure;
+          }
+        }));
+    assertSame(failure, e.getCause());
+    assertSame(failure, assertThrows(UnsupportedOperationException.class,
+        () -> reporter.drain(aggregators, (partition, worker) -> {
+          if (worker == 0) {
+            throw failure;
+          }
+        })));
+    reporter.close();
+  }
+
+  @Test
+  public void invalidNumberOfDrainThreads() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new TimeWindowReporter("testReport", 60, AggregatingReporter.DEFAULT_AGGREGATORS,
+            new HashMap<>(), 2, 0) {
+          @Override
+          protected void doReport(Map<String, Aggregator> aggregators) {
+          }
+        });
+    assertThrows(IllegalArgumentException.class,
+        () -> SLF4JReporter.builder().withDrainThreads(0));
+  }
+
+  private static Aggregator aggregator(long memoryUsage) {
+    return new Aggregator() {
+      @Override
+      public void apply(String[] tags, long value, long timestamp) {
+      }
+
+      @Override
+      public Cursor cursor() {
+        return null;
+      }
+
+      @Override
+      public Cursor sortedCursor() {
+        return null;
+      }
+
+      @Override
+      public long memoryUsage() {
+        return memoryUsage;
+      }
+    };
+  }
 }
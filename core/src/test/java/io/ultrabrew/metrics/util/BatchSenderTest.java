@@ -0,0 +1,98 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+public class BatchSenderTest {
+
+  @Test
+  public void sendsSubmittedBatchesInTheBackground() throws Exception {
+    final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+    final BatchSender<StringBuilder> sender = new BatchSender<>("test", 2, StringBuilder::new,
+        (batch) -> sent.add(batch.toString()), (batch) -> batch.setLength(0));
+    assertEquals(2, sender.getMaxInFlight());
+
+    StringBuilder batch = new StringBuilder("a");
+    for (String next : new String[]{"b", "c", "d"}) {
+      final StringBuilder empty = sender.submit(batch);
+      assertNotSame(batch, empty);
+      assertEquals(0, empty.length());
+      batch = empty.append(next);
+    }
+    sender.await();
+
+    assertEquals(3, sent.size());
+    assertTrue(sent.containsAll(Arrays.asList("a", "b", "c")));
+    assertEquals(0L, sender.getFailed());
+  }
+
+  @Test
+  public void submitWaitsForABatchInFlight() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final BatchSender<StringBuilder> sender = new BatchSender<>("test", 1, StringBuilder::new,
+        (batch) -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        }, (batch) -> batch.setLength(0));
+
+    final StringBuilder second = sender.submit(new StringBuilder("a"));
+    final AtomicBoolean submitted = new AtomicBoolean();
+    final Thread thread = new Thread(() -> {
+      try {
+        sender.submit(second.append("b"));
+        submitted.set(true);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    thread.start();
+    thread.join(100L);
+    assertFalse(submitted.get());
+
+    release.countDown();
+    thread.join(TimeUnit.SECONDS.toMillis(10));
+    assertTrue(submitted.get());
+    sender.await();
+  }
+
+  @Test
+  public void countsFailedBatches() throws Exception {
+    final BatchSender<StringBuilder> sender = new BatchSender<>("test", 1, StringBuilder::new,
+        (batch) -> {
+          throw new IOException("failed");
+        }, (batch) -> batch.setLength(0));
+
+    final StringBuilder batch = sender.submit(new StringBuilder("a"));
+    sender.submit(batch.append("b"));
+    sender.await();
+
+    assertEquals(2L, sender.getFailed());
+  }
+
+  @Test
+  public void invalidMaxInFlight() {
+    assertThrows(IllegalArgumentException.class,
+        () -> new BatchSender<>("test", 0, StringBuilder::new, (batch) -> {
+        }, (batch) -> batch.setLength(0)));
+  }
+}
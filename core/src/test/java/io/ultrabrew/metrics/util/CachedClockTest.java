@@ -0,0 +1,53 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import mockit.Deencapsulation;
+import org.junit.jupiter.api.Test;
+
+public class CachedClockTest {
+
+  @Test
+  public void testTicks() throws InterruptedException {
+    final long start = System.currentTimeMillis();
+    final CachedClock clock = new CachedClock(5);
+    assertEquals(5L, clock.getResolutionMillis());
+    assertTrue(clock.currentTimeMillis() >= start);
+
+    final long first = clock.currentTimeMillis();
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (clock.currentTimeMillis() == first && System.currentTimeMillis() < deadline) {
+      Thread.sleep(1);
+    }
+    assertTrue(clock.currentTimeMillis() > first);
+
+    clock.close();
+    final Thread thread = Deencapsulation.getField(clock, "thread");
+    thread.join(5_000);
+    assertFalse(thread.isAlive());
+    final long last = clock.currentTimeMillis();
+    Thread.sleep(20);
+    assertEquals(last, clock.currentTimeMillis());
+  }
+
+  @Test
+  public void testDefaultResolution() {
+    final CachedClock clock = new CachedClock();
+    assertEquals(CachedClock.DEFAULT_RESOLUTION_MILLIS, clock.getResolutionMillis());
+    final long nanoTime = System.nanoTime();
+    assertTrue(clock.nanoTime() >= nanoTime);
+    clock.close();
+  }
+
+  @Test
+  public void testInvalidResolution() {
+    assertThrows(IllegalArgumentException.class, () -> new CachedClock(0));
+  }
+}
@@ -0,0 +1,79 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class HashingTest {
+
+  @Test
+  public void testDeterministic() {
+    assertEquals(Hashing.fingerprint(new String[]{"host", "web01", "status", "200"}),
+        Hashing.fingerprint(new String[]{"host", new String("web01"), "status", "200"}));
+  }
+
+  @Test
+  public void testArraysHashCodeCollision() {
+    // Different tag hashes folded into the same 32-bit array hash
+    final String[] first = {"a", "b"};
+    final String[] second = {"b", "C"};
+    assertEquals(Arrays.hashCode(first), Arrays.hashCode(second));
+    assertNotEquals(Hashing.fingerprint(first), Hashing.fingerprint(second));
+  }
+
+  @Test
+  public void testStringHashCodeCollision() {
+    // "Aa" and "BB" share the same String.hashCode(), which must not merge their tag sets
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    assertNotEquals(Hashing.fingerprint(new String[]{"key", "Aa"}),
+        Hashing.fingerprint(new String[]{"key", "BB"}));
+
+    // Every combination of the colliding blocks shares the same String.hashCode()
+    final Set<Long> fingerprints = new HashSet<>();
+    for (int i = 0; i < 1 << 16; i++) {
+      final StringBuilder value = new StringBuilder();
+      for (int bit = 0; bit < 16; bit++) {
+        value.append((i & 1 << bit) == 0 ? "Aa" : "BB");
+      }
+      fingerprints.add(Hashing.fingerprint(new String[]{"key", value.toString()}));
+    }
+    assertEquals(1 << 16, fingerprints.size());
+  }
+
+  @Test
+  public void testElementOrder() {
+    assertNotEquals(Hashing.fingerprint(new String[]{"host", "web01"}),
+        Hashing.fingerprint(new String[]{"web01", "host"}));
+  }
+
+  @Test
+  public void testElementBoundaries() {
+    assertNotEquals(Hashing.fingerprint(new String[]{"ab", "c"}),
+        Hashing.fingerprint(new String[]{"a", "bc"}));
+    assertNotEquals(Hashing.fingerprint(new String[]{"a", ""}),
+        Hashing.fingerprint(new String[]{"a"}));
+    assertNotEquals(Hashing.fingerprint(new String[]{"a", null}),
+        Hashing.fingerprint(new String[]{"a", ""}));
+    assertNotEquals(Hashing.fingerprint(new String[]{}),
+        Hashing.fingerprint(new String[]{""}));
+  }
+
+  @Test
+  public void testNoCollisionsForSequentialValues() {
+    final Set<Long> fingerprints = new HashSet<>();
+    for (int i = 0; i < 100_000; i++) {
+      fingerprints.add(Hashing.fingerprint(new String[]{"key", String.valueOf(i)}));
+    }
+    assertEquals(100_000, fingerprints.size());
+    assertFalse(fingerprints.contains(0L));
+  }
+}
@@ -0,0 +1,69 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class NumbersTest {
+
+  private final byte[] buffer = new byte[Numbers.MAX_LENGTH];
+
+  @Test
+  public void testFormatLong() {
+    for (long value : new long[]{0L, 1L, -1L, 9L, 10L, -10L, 123456789L, Long.MAX_VALUE,
+        Long.MIN_VALUE}) {
+      assertEquals(Long.toString(value), formatLong(value));
+    }
+  }
+
+  @Test
+  public void testFormatDouble() {
+    for (double value : new double[]{0.0, 1.0, -1.0, 42.0, 9999999.0, -9999999.0, 0.5, -0.5,
+        0.001, -0.001, 0.1, 0.2, 0.3, 154.3, 74.3, 1234567.25, 9999999.5, 0.0012345,
+        123.456789012345}) {
+      assertEquals(Double.toString(value), formatDouble(value));
+    }
+  }
+
+  @Test
+  public void testFormatDoubleMatchesToString() {
+    final Random random = new Random(42L);
+    for (int i = 0; i < 100_000; i++) {
+      // Sums of values with a few decimals, like aggregated measurements
+      final double value = (random.nextInt(2_000_000) - 1_000_000) / 1000.0
+          + (random.nextInt(1000) - 500) / 100.0;
+      final int position = Numbers.formatDouble(value, buffer);
+      if (position >= 0) {
+        final String formatted =
+            new String(buffer, position, buffer.length - position, StandardCharsets.US_ASCII);
+        assertEquals(value, Double.parseDouble(formatted));
+        assertEquals(Double.toString(value), formatted);
+      }
+    }
+  }
+
+  @Test
+  public void testFormatDoubleFallsBack() {
+    for (double value : new double[]{-0.0, 1e7, -1e7, 0.000999, Double.NaN,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Math.PI, 0.1 + 0.2,
+        1.0 / 3.0}) {
+      assertEquals(-1, Numbers.formatDouble(value, buffer));
+    }
+  }
+
+  private String formatLong(long value) {
+    final int position = Numbers.formatLong(value, buffer);
+    return new String(buffer, position, buffer.length - position, StandardCharsets.US_ASCII);
+  }
+
+  private String formatDouble(double value) {
+    final int position = Numbers.formatDouble(value, buffer);
+    return new String(buffer, position, buffer.length - position, StandardCharsets.US_ASCII);
+  }
+}
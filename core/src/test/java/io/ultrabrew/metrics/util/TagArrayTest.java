@@ -5,6 +5,7 @@
 package io.ultrabrew.metrics.util;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import io.ultrabrew.metrics.util.TagArray.VariableKey;
 import org.junit.jupiter.api.Test;
@@ -30,4 +31,18 @@ public class TagArrayTest {
     s.put(v2, "456");
     assertArrayEquals(new String[]{"var1", "123", "var2", "456"}, s.toArray());
   }
+
+  @Test
+  public void testToTagSet() {
+    TagArray.Builder b = TagArray.builder();
+    b.constant("host", "web01");
+    VariableKey v = b.variable("status");
+    TagArray s = b.build();
+    s.put(v, "200");
+    TagSet tagSet = s.toTagSet();
+    s.put(v, "500");
+    assertArrayEquals(new String[]{"host", "web01", "status", "200"}, tagSet.toArray());
+    assertEquals(Hashing.fingerprint(new String[]{"host", "web01", "status", "200"}),
+        tagSet.fingerprint());
+  }
 }
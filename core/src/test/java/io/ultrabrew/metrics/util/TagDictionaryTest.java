@@ -0,0 +1,72 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class TagDictionaryTest {
+
+  @Test
+  public void testIntern() {
+    final TagDictionary dictionary = new TagDictionary(10);
+    final String[] tags = new String[]{"status", String.valueOf(200), "host", null};
+    final String[] interned = dictionary.intern(tags);
+    assertNotSame(tags, interned);
+    assertArrayEquals(tags, interned);
+    assertEquals(3, dictionary.size());
+
+    final String[] other = dictionary.intern(new String[]{"status", String.valueOf(200)});
+    assertSame(interned[0], other[0]);
+    assertSame(interned[1], other[1]);
+    assertNull(dictionary.intern((String) null));
+    assertEquals(3, dictionary.size());
+  }
+
+  @Test
+  public void testMaxSize() {
+    final TagDictionary dictionary = new TagDictionary(1);
+    final String a = new String("a");
+    final String b = new String("b");
+    assertSame(a, dictionary.intern(a));
+    assertSame(a, dictionary.intern(new String("a")));
+    assertSame(b, dictionary.intern(b));
+    assertNotSame(b, dictionary.intern(new String("b")));
+    assertEquals(1, dictionary.size());
+  }
+
+  @Test
+  public void testRelease() {
+    final TagDictionary dictionary = new TagDictionary(10);
+    final String[] first = dictionary.intern(new String[]{"status", String.valueOf(200)});
+    final String[] second = dictionary.intern(new String[]{"status", String.valueOf(404)});
+    assertEquals(3, dictionary.size());
+
+    dictionary.release(first);
+    assertEquals(2, dictionary.size());
+    assertSame(second[0], dictionary.intern("status"));
+    dictionary.release(second);
+    dictionary.release(second[0]);
+    assertEquals(0, dictionary.size());
+
+    // Strings not stored in the dictionary are ignored
+    final String stored = dictionary.intern(new String("status"));
+    dictionary.release(new String("status"));
+    dictionary.release((String) null);
+    assertSame(stored, dictionary.intern(new String("status")));
+    assertEquals(1, dictionary.size());
+  }
+
+  @Test
+  public void testNegativeMaxSize() {
+    assertThrows(IllegalArgumentException.class, () -> new TagDictionary(-1));
+  }
+}
@@ -0,0 +1,73 @@
+// Copyright 2026, Oath Inc.
+// Licensed under the terms of the Apache License 2.0 license. See LICENSE file in Ultrabrew Metrics
+// for terms.
+
+package io.ultrabrew.metrics.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TagSetTest {
+
+  @Test
+  public void testFingerprint() {
+    final String[] tags = new String[]{"host", "web01", "status", "200"};
+    final TagSet tagSet = TagSet.of(tags);
+    assertArrayEquals(tags, tagSet.toArray());
+    assertEquals(Hashing.fingerprint(tags), tagSet.fingerprint());
+    assertNotEquals(0L, TagSet.of().fingerprint());
+  }
+
+  @Test
+  public void testEquals() {
+    final TagSet tagSet = TagSet.of("host", "web01");
+    assertEquals(tagSet, tagSet);
+    assertEquals(tagSet, TagSet.of("host", new String("web01")));
+    assertEquals(tagSet.hashCode(), TagSet.of("host", "web01").hashCode());
+    assertNotEquals(tagSet, TagSet.of("host", "web02"));
+    assertNotEquals(tagSet, new String[]{"host", "web01"});
+    assertEquals("[host, web01]", tagSet.toString());
+  }
+
+  @Test
+  public void testBound() {
+    final TagSet tagSet = TagSet.bound("host", "web01");
+    assertTrue(tagSet.isBound());
+    assertFalse(TagSet.of("host", "web01").isBound());
+    assertEquals(TagSet.of("host", "web01"), tagSet);
+
+    final long owner = TagSet.newPositionOwner();
+    final long other = TagSet.newPositionOwner();
+    assertNotEquals(owner, other);
+    assertNull(tagSet.getPosition(owner));
+    final Object position = new Object();
+    tagSet.setPosition(owner, position);
+    assertSame(position, tagSet.getPosition(owner));
+    assertNull(tagSet.getPosition(other));
+
+    // A position replaces the one stored by the same owner before
+    final Object position2 = new Object();
+    tagSet.setPosition(other, position);
+    tagSet.setPosition(owner, position2);
+    assertSame(position2, tagSet.getPosition(owner));
+    assertSame(position, tagSet.getPosition(other));
+
+    // The position stored first is dropped once the maximum number of owners is reached
+    for (int i = 2; i < TagSet.MAX_POSITIONS; i++) {
+      tagSet.setPosition(TagSet.newPositionOwner(), new Object());
+    }
+    assertSame(position2, tagSet.getPosition(owner));
+    final long last = TagSet.newPositionOwner();
+    tagSet.setPosition(last, position);
+    assertNull(tagSet.getPosition(owner));
+    assertSame(position, tagSet.getPosition(other));
+    assertSame(position, tagSet.getPosition(last));
+  }
+}
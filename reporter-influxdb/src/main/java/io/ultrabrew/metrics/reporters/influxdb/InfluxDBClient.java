@@ -4,9 +4,14 @@
 
 package io.ultrabrew.metrics.reporters.influxdb;
 
+import io.ultrabrew.metrics.data.CursorEntry;
+import io.ultrabrew.metrics.data.FieldSink;
+import io.ultrabrew.metrics.util.BatchSender;
+import io.ultrabrew.metrics.util.Numbers;
 import io.ultrabrew.metrics.util.Strings;
 import java.util.Arrays;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
@@ -35,17 +40,56 @@ public class InfluxDBClient {
   private static final byte NEWLINE = '\n';
   private static final byte[] NULL_STRING = new byte[] { 'N', 'U', 'L', 'L' };
 
-  private final ByteBuffer byteBuffer;
+  private ByteBuffer byteBuffer;
   private final URI dbUri;
   private final CloseableHttpClient httpClient;
+  // Sends the full buffers in the background, or null if sending them synchronously
+  private final BatchSender<ByteBuffer> sender;
+
+  private final byte[] digits = new byte[Numbers.MAX_LENGTH];
+  // Values of the fields of the row being written, read from the cursor before serializing them so
+  // that a write retried after flushing the buffer serializes the same values
+  private long[] longValues = new long[0];
+  private double[] doubleValues = new double[0];
+  private boolean[] doubleFields = new boolean[0];
+  // Encoded field names of the last written field name array, shared by the rows of an aggregator
+  private String[] encodedFieldNames = null;
+  private byte[][] fieldNameBytes = new byte[0][];
+  private final FieldSink fieldSink = new FieldSink() {
+    @Override
+    public void acceptLong(final int index, final long value) {
+      longValues[index] = value;
+      doubleFields[index] = false;
+    }
+
+    @Override
+    public void acceptDouble(final int index, final double value) {
+      doubleValues[index] = value;
+      doubleFields[index] = true;
+    }
+  };
 
   InfluxDBClient(final URI dbUri, final int bufferSize) {
-    this.httpClient = getHttpClient();
+    this(dbUri, bufferSize, 0);
+  }
+
+  /**
+   * @param dbUri URI of the write endpoint
+   * @param bufferSize size of each buffer in bytes
+   * @param maxInFlight maximum number of requests sent concurrently in the background, or 0 to send
+   *     each buffer synchronously on flush
+   */
+  InfluxDBClient(final URI dbUri, final int bufferSize, final int maxInFlight) {
+    this.httpClient = getHttpClient(Math.max(2 * 3, maxInFlight));
     this.byteBuffer = ByteBuffer.allocate(bufferSize);
     this.dbUri = dbUri;
+    this.sender = maxInFlight > 0
+        ? new BatchSender<>("InfluxDBClient", maxInFlight,
+        () -> ByteBuffer.allocate(bufferSize), this::send, ByteBuffer::clear)
+        : null;
   }
 
-  private CloseableHttpClient getHttpClient() {
+  private CloseableHttpClient getHttpClient(final int maxConnections) {
     RequestConfig httpRequestConfig = RequestConfig.custom()
         .setConnectTimeout(3000)
         .setSocketTimeout(3000)
@@ -54,14 +98,18 @@ public class InfluxDBClient {
 
     return HttpClients.custom()
         .disableCookieManagement()
-        .setMaxConnPerRoute(2 * 3)
-        .setMaxConnTotal(2 * 3)
+        .setMaxConnPerRoute(maxConnections)
+        .setMaxConnTotal(maxConnections)
         .setDefaultRequestConfig(httpRequestConfig)
         .build();
   }
 
+  /**
+   * Write a measurement with either the given field name-value pairs, or the given field names and
+   * the values read from a cursor.
+   */
   private void doWrite(final String measurement, final String[] tags, final String[] fields,
-      final long timestamp)
+      final String[] fieldNames, final long timestamp)
       throws IOException {
     if (Strings.isNullOrEmpty(measurement)) {
       LOGGER.warn("Null or empty measurement.");
@@ -89,8 +137,24 @@ public class InfluxDBClient {
     }
     byteBuffer.put(WHITESPACE);
 
+    if (fieldNames != null) {
+      for (int i = 0; i < fieldNames.length; i++) {
+        if (i > 0) {
+          byteBuffer.put(COMMA);
+        }
+        if (Strings.isNullOrEmpty(fieldNames[i])) {
+          LOGGER.warn("Null or empty field name in array: {} for measurement {}",
+              Arrays.toString(fieldNames), measurement);
+          byteBuffer.position(rollback);
+          return;
+        }
+        byteBuffer.put(fieldNameBytes[i]).put(EQUALS);
+        putValue(i);
+      }
+    }
+
     boolean f = true;
-    for (int i = 0; i < fields.length; i += 2) {
+    for (int i = 0; fields != null && i < fields.length; i += 2) {
       if (!f) {
         byteBuffer.put(COMMA);
       }
@@ -112,22 +176,72 @@ public class InfluxDBClient {
       f = false;
     }
     if (timestamp > 0) {
+      final int position = Numbers.formatLong(timestamp, digits);
       byteBuffer.put(WHITESPACE)
-          .put(Long.toString(timestamp).getBytes(UTF_8));
+          .put(digits, position, digits.length - position);
     }
     byteBuffer.put(NEWLINE);
   }
 
+  private void putValue(final int index) throws IOException {
+    final int position = doubleFields[index]
+        ? Numbers.formatDouble(doubleValues[index], digits)
+        : Numbers.formatLong(longValues[index], digits);
+    if (position < 0) {
+      byteBuffer.put(Double.toString(doubleValues[index]).getBytes(UTF_8));
+    } else {
+      byteBuffer.put(digits, position, digits.length - position);
+    }
+  }
+
   public void write(final String measurement, final String[] tags, final String[] fields,
       final long timestamp)
       throws IOException {
+    write(measurement, tags, fields, null, timestamp);
+  }
+
+  /**
+   * Write the current row of the cursor as a measurement, reading and resetting the fields of the
+   * row. The values of the fields are formatted directly into the buffer, without converting them
+   * to strings.
+   *
+   * @param measurement name of the measurement
+   * @param cursor cursor positioned at the row
+   * @param timestamp timestamp of the measurement, or a non-positive value for the server time
+   */
+  public void write(final String measurement, final CursorEntry cursor, final long timestamp)
+      throws IOException {
+    final String[] fieldNames = cursor.getFields();
+    if (longValues.length < fieldNames.length) {
+      longValues = new long[fieldNames.length];
+      doubleValues = new double[fieldNames.length];
+      doubleFields = new boolean[fieldNames.length];
+    }
+    if (fieldNames != encodedFieldNames) {
+      fieldNameBytes = new byte[fieldNames.length][];
+      for (int i = 0; i < fieldNames.length; i++) {
+        if (!Strings.isNullOrEmpty(fieldNames[i])) {
+          fieldNameBytes[i] = fieldNames[i].getBytes(UTF_8);
+        }
+      }
+      encodedFieldNames = fieldNames;
+    }
+    for (int i = 0; i < fieldNames.length; i++) {
+      cursor.readAndResetInto(i, fieldSink);
+    }
+    write(measurement, cursor.getTags(), null, fieldNames, timestamp);
+  }
+
+  private void write(final String measurement, final String[] tags, final String[] fields,
+      final String[] fieldNames, final long timestamp)
+      throws IOException {
     // CLOVER:OFF
     // The loop exit condition is supposed to be unreachable
     for (int retry = 0; retry < 2; retry++) {
       // CLOVER:ON
       byteBuffer.mark();
       try {
-        doWrite(measurement, tags, fields, timestamp);
+        doWrite(measurement, tags, fields, fieldNames, timestamp);
         return;
       } catch (BufferOverflowException e) {
         byteBuffer.reset();
@@ -144,29 +258,61 @@ public class InfluxDBClient {
     // CLOVER:ON
   }
 
+  /**
+   * Send the measurements in the buffer. If requests are sent in the background, the buffer is
+   * handed off to a sender thread, waiting for a request in flight to complete if there are as
+   * many as allowed, and failures are logged instead of thrown.
+   */
   public void flush() throws IOException {
     if (byteBuffer.position() == 0) {
       return;
     }
     byteBuffer.flip();
-    HttpPost httpPost = new HttpPost(this.dbUri);
-    httpPost.setEntity(
-        new ByteArrayEntity(byteBuffer.array(), 0, byteBuffer.limit(), ContentType.DEFAULT_TEXT));
-    try {
-      CloseableHttpResponse response = httpClient.execute(httpPost);
-      EntityUtils.consumeQuietly(response.getEntity());
-      int statusCode = response.getStatusLine().getStatusCode();
-      if (statusCode / 100 != 2) {
-        throw new IOException(
-            "InfluxDB write failed: " + statusCode + " " + response.getStatusLine()
-                .getReasonPhrase());
+    if (sender == null) {
+      try {
+        send(byteBuffer);
+      } finally {
+        // Always clear the buffer. But this will lead to data loss in case of non 2xx response (i.e write operation failed)
+        // received from the InfluxDB server. Ideally non 2xx server response should be rare but revisit this part
+        // if data loss occurs frequently.
+        byteBuffer.clear();
       }
-    } finally {
-      // Always clear the buffer. But this will lead to data loss in case of non 2xx response (i.e write operation failed)
-      // received from the InfluxDB server. Ideally non 2xx server response should be rare but revisit this part
-      // if data loss occurs frequently.
+      return;
+    }
+    try {
+      byteBuffer = sender.submit(byteBuffer);
+    } catch (InterruptedException e) {
       byteBuffer.clear();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a request in flight");
+    }
+  }
+
+  /**
+   * Wait until the measurements flushed so far have been sent.
+   */
+  void awaitSent() throws InterruptedIOException {
+    if (sender != null) {
+      try {
+        sender.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for requests in flight");
+      }
+    }
+  }
+
+  private void send(final ByteBuffer buffer) throws IOException {
+    HttpPost httpPost = new HttpPost(this.dbUri);
+    httpPost.setEntity(
+        new ByteArrayEntity(buffer.array(), 0, buffer.limit(), ContentType.DEFAULT_TEXT));
+    CloseableHttpResponse response = httpClient.execute(httpPost);
+    EntityUtils.consumeQuietly(response.getEntity());
+    int statusCode = response.getStatusLine().getStatusCode();
+    if (statusCode / 100 != 2) {
+      throw new IOException(
+          "InfluxDB write failed: " + statusCode + " " + response.getStatusLine()
+              .getReasonPhrase());
     }
   }
-  
 }
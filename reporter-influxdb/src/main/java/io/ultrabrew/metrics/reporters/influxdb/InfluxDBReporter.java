@@ -7,13 +7,13 @@ package io.ultrabrew.metrics.reporters.influxdb;
 import io.ultrabrew.metrics.Metric;
 import io.ultrabrew.metrics.data.Aggregator;
 import io.ultrabrew.metrics.data.Cursor;
-import io.ultrabrew.metrics.data.CursorEntry;
-import io.ultrabrew.metrics.data.Type;
+import io.ultrabrew.metrics.data.TableOptions;
 import io.ultrabrew.metrics.reporters.TimeWindowReporter;
 import io.ultrabrew.metrics.util.Strings;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,14 +26,23 @@ public class InfluxDBReporter extends TimeWindowReporter {
   private static final Logger LOGGER = LoggerFactory.getLogger(InfluxDBReporter.class);
 
   private final InfluxDBClient dbClient;
+  // Client of each drain thread, each with its own buffer, the first one being dbClient
+  private final InfluxDBClient[] dbClients;
   private long lastReportedTimestamp = 0;
 
   private InfluxDBReporter(final URI dbUri, final int windowSeconds, final int bufferSize,
       final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators,
-      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators) {
-
-    super(dbUri.toString(), windowSeconds, defaultAggregators, metricAggregators);
-    this.dbClient = new InfluxDBClient(dbUri, bufferSize);
+      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators,
+      final int windows, final int drainThreads, final int maxInFlight,
+      final boolean selfMetrics) {
+
+    super(dbUri.toString(), windowSeconds, defaultAggregators, metricAggregators, windows,
+        drainThreads, selfMetrics);
+    this.dbClients = new InfluxDBClient[drainThreads];
+    for (int i = 0; i < drainThreads; i++) {
+      this.dbClients[i] = new InfluxDBClient(dbUri, bufferSize, maxInFlight);
+    }
+    this.dbClient = dbClients[0];
     this.start();
   }
 
@@ -46,40 +55,32 @@ public class InfluxDBReporter extends TimeWindowReporter {
 
   @Override
   protected void doReport(Map<String, Aggregator> aggregators) {
-    long newestTimestamp = 0;
-    try {
-      for (final Map.Entry<String, Aggregator> entry : aggregators.entrySet()) {
-        final Aggregator aggregator = entry.getValue();
-        final Cursor cursor = aggregator.cursor();
-        final String metricName = entry.getKey();
-        while (cursor.next()) {
-          if (cursor.lastUpdated() > lastReportedTimestamp) {
-            dbClient.write(metricName, cursor.getTags(), buildFields(cursor), -1);
-            newestTimestamp = Math.max(newestTimestamp, cursor.lastUpdated());
+    final LongAccumulator newestTimestamp = new LongAccumulator(Math::max, 0);
+    drain(aggregators, (partition, worker) -> {
+      final InfluxDBClient client = dbClients[worker];
+      try {
+        for (final Map.Entry<String, Aggregator> entry : partition) {
+          final Aggregator aggregator = entry.getValue();
+          final Cursor cursor = aggregator.cursor();
+          final String metricName = entry.getKey();
+          while (cursor.next()) {
+            if (cursor.lastUpdated() > lastReportedTimestamp) {
+              client.write(metricName, cursor, -1);
+              newestTimestamp.accumulate(cursor.lastUpdated());
+            }
           }
         }
+        client.flush();
+        client.awaitSent();
+      } catch (IOException e) {
+        LOGGER.error("Failed to send data", e);
       }
-      dbClient.flush();
-    } catch (IOException e) {
-      LOGGER.error("Failed to send data", e);
-    }
-    if (newestTimestamp > 0) {
-      lastReportedTimestamp = newestTimestamp;
+    });
+    if (newestTimestamp.get() > 0) {
+      lastReportedTimestamp = newestTimestamp.get();
     }
   }
 
-  private String[] buildFields(CursorEntry cursor) {
-    final String[] fields = cursor.getFields();
-    final Type[] types = cursor.getTypes();
-
-    String[] result = new String[fields.length * 2];
-    for (int i = 0; i < fields.length; i++) {
-      result[i * 2] = fields[i];
-      result[i * 2 + 1] = types[i].readAndReset(cursor, i);
-    }
-    return result;
-  }
-
   public static class Builder extends TimeWindowReporterBuilder<Builder, InfluxDBReporter> {
 
     private URI baseUri = null;
@@ -87,10 +88,16 @@ public class InfluxDBReporter extends TimeWindowReporter {
     private String database = null;
     private int windowSeconds = 1;
     private int bufferSize = 64 * 1024;
+    private int maxInFlight = 0;
 
     private Builder() {
     }
 
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
     /**
      * Set the base URI of the InfluxDB installation, for example "http://localhost:8086".
      *
@@ -143,6 +150,24 @@ public class InfluxDBReporter extends TimeWindowReporter {
       return this;
     }
 
+    /**
+     * Set the maximum number of requests sent concurrently in the background by each drain thread,
+     * so that the next buffer is filled while the previous ones are sent. Each request in flight
+     * takes a buffer of its own. When all of them are in flight, filling the next buffer waits for
+     * one to be sent.
+     *
+     * @param maxInFlight maximum number of requests in flight, or 0 to send each buffer
+     *     synchronously, defaults to 0
+     */
+    public Builder withMaxInFlight(int maxInFlight) {
+      if (maxInFlight < 0) {
+        throw new IllegalArgumentException(
+            "Maximum number of requests in flight must not be negative");
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
     /**
      * Create an {@link InfluxDBReporter} instance.
      */
@@ -155,12 +180,15 @@ public class InfluxDBReporter extends TimeWindowReporter {
           Strings.isNullOrEmpty(endpoint)) {
         throw new IllegalArgumentException("Invalid database");
       }
+      final TableOptions options = buildTableOptions();
       if (!Strings.isNullOrEmpty(endpoint)) {
-        return new InfluxDBReporter(baseUri.resolve(endpoint), windowSeconds,
-            bufferSize, defaultAggregators, metricAggregators);
+        return new InfluxDBReporter(baseUri.resolve(endpoint), windowSeconds, bufferSize,
+            buildDefaultAggregators(options), buildMetricAggregators(options), windows,
+            drainThreads, maxInFlight, selfMetrics);
       }
       return new InfluxDBReporter(baseUri.resolve("/write?db=" + database), windowSeconds,
-          bufferSize, defaultAggregators, metricAggregators);
+          bufferSize, buildDefaultAggregators(options), buildMetricAggregators(options), windows,
+          drainThreads, maxInFlight, selfMetrics);
     }
   }
 }
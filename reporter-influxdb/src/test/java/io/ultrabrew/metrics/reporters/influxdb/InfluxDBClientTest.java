@@ -6,7 +6,10 @@ package io.ultrabrew.metrics.reporters.influxdb;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.ultrabrew.metrics.data.BasicGaugeDoubleAggregator;
+import io.ultrabrew.metrics.data.Cursor;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
@@ -97,6 +100,33 @@ public class InfluxDBClientTest {
     }};
   }
 
+  @Test
+  public void testWriteInTheBackground() throws Exception {
+    new Expectations(EntityUtils.class) {{
+      httpClient.execute((HttpUriRequest) any);
+      result = closeableHttpResponse;
+      closeableHttpResponse.getStatusLine();
+      result = statusLine;
+      statusLine.getStatusCode();
+      result = 500;
+      closeableHttpResponse.getEntity();
+      result = new BasicHttpEntity();
+    }};
+    client = new InfluxDBClient(URI.create("http://localhost:8086/write?db=test"), 64 * 1024, 1);
+    String[] tags = {"host", "server01", "region", "us-west"};
+    String[] fields = {"temp", "80", "fanSpeed", "743"};
+    client.write("cpu_load_short", tags, fields, 1534055562000000003L);
+    client.flush();
+    client.write("cpu_load_short", tags, fields, 1534055562000000007L);
+    client.flush();
+    client.awaitSent();
+
+    new Verifications() {{
+      EntityUtils.consumeQuietly((HttpEntity) any);
+      times = 2;
+    }};
+  }
+
   @Test
   public void testWriteFailsIllegalHttpResponse() throws Exception {
     new Expectations(EntityUtils.class) {{
@@ -247,4 +277,34 @@ public class InfluxDBClientTest {
 
     assertEquals("test_longer,foo=bar val=1 123\n", EntityUtils.toString(requests.get(1).getEntity()));
   }
+
+  @Test
+  public void testWriteCursor() throws Exception {
+    List<HttpPost> requests = new ArrayList<>();
+    new Expectations() {{
+      httpClient.execute(withCapture(requests));
+      result = closeableHttpResponse;
+      closeableHttpResponse.getStatusLine();
+      result = statusLine;
+      statusLine.getStatusCode();
+      result = 200;
+    }};
+    BasicGaugeDoubleAggregator aggregator = new BasicGaugeDoubleAggregator("test");
+    aggregator.apply(new String[]{"foo", "bar"}, Double.doubleToLongBits(1.5), 123L);
+    aggregator.apply(new String[]{"foo", "baz"}, Double.doubleToLongBits(2.0), 123L);
+    Cursor cursor = aggregator.sortedCursor();
+
+    // The second row does not fit, and is written again with the same values after a flush
+    InfluxDBClient c = new InfluxDBClient(URI.create("http://localhost:8086/write?db=test"), 100);
+    assertTrue(cursor.next());
+    c.write("test", cursor, 456L);
+    assertTrue(cursor.next());
+    c.write("test", cursor, 456L);
+    c.flush();
+
+    assertEquals(2, requests.size());
+    assertEquals("test,foo=baz count=1,sum=2.0,min=2.0,max=2.0,lastValue=2.0 456\n",
+        EntityUtils.toString(requests.get(1).getEntity()));
+    assertEquals(0L, cursor.readLong(0));
+  }
 }
@@ -4,10 +4,15 @@
 
 package io.ultrabrew.metrics.reporters.opentsdb;
 
+import io.ultrabrew.metrics.data.CursorEntry;
+import io.ultrabrew.metrics.data.FieldSink;
+import io.ultrabrew.metrics.util.BatchSender;
+import io.ultrabrew.metrics.util.Numbers;
 import io.ultrabrew.metrics.util.Strings;
 import java.util.Arrays;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.URI;
@@ -38,28 +43,116 @@ class OpenTSDBHttpClient {
   private static final char[] VALUE = "\"value\":".toCharArray();
   private static final char[] TAGS = "\"tags\":{".toCharArray();
 
-  protected final ByteArrayOutputStream buffer;
   private final CloseableHttpClient httpClient;
   private final URI dbUri;
   private final int batchSize;
   private final boolean timestampsInMilliseconds;
-  protected final PrintWriter writer;
+  // Sends the full batches in the background, or null if sending them synchronously
+  private final BatchSender<Batch> sender;
+  // Batch being written, and its buffer and writer
+  private Batch batch;
+  protected Buffer buffer;
+  protected PrintWriter writer;
   protected int currentBatchSize = 0;
 
+  // Resets the fields of rejected data points, so that their values are not carried over
+  private static final FieldSink DISCARD = new FieldSink() {
+    @Override
+    public void acceptLong(final int index, final long value) {
+    }
+
+    @Override
+    public void acceptDouble(final int index, final double value) {
+    }
+  };
+
+  private final byte[] digits = new byte[Numbers.MAX_LENGTH];
+  private final FieldSink valueWriter = new FieldSink() {
+    @Override
+    public void acceptLong(final int index, final long value) {
+      writeDigits(Numbers.formatLong(value, digits));
+    }
+
+    @Override
+    public void acceptDouble(final int index, final double value) {
+      final int position = Numbers.formatDouble(value, digits);
+      if (position < 0) {
+        writer.write(Double.toString(value));
+      } else {
+        writeDigits(position);
+      }
+    }
+  };
+
   public OpenTSDBHttpClient(final URI dbUri, int batchSize, boolean timestampsInMilliseconds) {
+    this(dbUri, batchSize, timestampsInMilliseconds, 0);
+  }
+
+  /**
+   * @param dbUri URI of the put endpoint
+   * @param batchSize number of data points in each batch
+   * @param timestampsInMilliseconds whether to send the timestamps in milliseconds or seconds
+   * @param maxInFlight maximum number of batches sent concurrently in the background, or 0 to send
+   *     each batch synchronously on flush
+   */
+  public OpenTSDBHttpClient(final URI dbUri, int batchSize, boolean timestampsInMilliseconds,
+      int maxInFlight) {
     this.dbUri = dbUri;
     this.batchSize = batchSize;
     this.timestampsInMilliseconds = timestampsInMilliseconds;
-    this.httpClient = getHttpClient();
-    buffer = new ByteArrayOutputStream(batchSize * 256);
-    final OutputStreamWriter utf8_writer = new OutputStreamWriter(buffer,
-        StandardCharsets.UTF_8.newEncoder());
-    writer = new PrintWriter(utf8_writer);
-    writer.write('[');
+    this.httpClient = getHttpClient(Math.max(2 * 3, maxInFlight));
+    this.sender = maxInFlight > 0
+        ? new BatchSender<>("OpenTSDBHttpClient", maxInFlight, () -> new Batch(batchSize),
+        this::send, Batch::reset)
+        : null;
+    use(new Batch(batchSize));
+  }
+
+  /**
+   * A buffer exposing its array, so that a batch is sent without copying it.
+   */
+  static final class Buffer extends ByteArrayOutputStream {
+
+    private Buffer(final int size) {
+      super(size);
+    }
+
+    private byte[] array() {
+      return buf;
+    }
+  }
+
+  /**
+   * A batch buffer with the writer encoding the data points into it.
+   */
+  private static final class Batch {
+
+    private final Buffer buffer;
+    private final PrintWriter writer;
+
+    private Batch(final int batchSize) {
+      buffer = new Buffer(batchSize * 256);
+      final OutputStreamWriter utf8_writer = new OutputStreamWriter(buffer,
+          StandardCharsets.UTF_8.newEncoder());
+      writer = new PrintWriter(utf8_writer);
+      writer.write('[');
+    }
+
+    private void reset() {
+      buffer.reset();
+      writer.write('[');
+    }
+  }
+
+  private void use(final Batch batch) {
+    this.batch = batch;
+    this.buffer = batch.buffer;
+    this.writer = batch.writer;
+    this.currentBatchSize = 0;
   }
 
   // TODO - configs for these values.
-  private CloseableHttpClient getHttpClient() {
+  private CloseableHttpClient getHttpClient(final int maxConnections) {
     RequestConfig httpRequestConfig = RequestConfig.custom()
         .setConnectTimeout(3000)
         .setSocketTimeout(3000)
@@ -68,8 +161,8 @@ class OpenTSDBHttpClient {
 
     return HttpClients.custom()
         .disableCookieManagement()
-        .setMaxConnPerRoute(2 * 3)
-        .setMaxConnTotal(2 * 3)
+        .setMaxConnPerRoute(maxConnections)
+        .setMaxConnTotal(maxConnections)
         .setDefaultRequestConfig(httpRequestConfig)
         .setRetryHandler(new DefaultHttpRequestRetryHandler())
         .build();
@@ -88,18 +181,56 @@ class OpenTSDBHttpClient {
       LOG.warn("Null or empty value.");
       return;
     }
+    if (!writeHead(metricName, tags, timestamp)) {
+      return;
+    }
+    writer.write(value);
+    writeTail();
+  }
+
+  /**
+   * Write the value of a field of the current row of the cursor as a data point, reading and
+   * resetting the field. The value is formatted directly into the buffer, without converting it to
+   * a string. The field is reset even if the data point is rejected.
+   */
+  void write(final String metricName,
+      final String[] tags,
+      final long timestamp,
+      final CursorEntry cursor,
+      final int index) throws IOException {
+    if (Strings.isNullOrEmpty(metricName)) {
+      LOG.warn("Null or empty metric name.");
+      cursor.readAndResetInto(index, DISCARD);
+      return;
+    }
+    if (!writeHead(metricName, tags, timestamp)) {
+      cursor.readAndResetInto(index, DISCARD);
+      return;
+    }
+    cursor.readAndResetInto(index, valueWriter);
+    writeTail();
+  }
+
+  /**
+   * Validate the tags and write the data point up to its value.
+   *
+   * @return whether the data point was started
+   */
+  private boolean writeHead(final String metricName,
+      final String[] tags,
+      final long timestamp) {
     if (tags == null) {
       LOG.warn("At least one tag pair must be present.");
-      return;
+      return false;
     }
     if (tags.length % 2 != 0) {
       LOG.warn("Uneven tag count: {} for metric {}", Arrays.toString(tags), metricName);
-      return;
+      return false;
     }
     for (int i = 0; i < tags.length; i++) {
       if (i % 2 == 0 && Strings.isNullOrEmpty(tags[i])) {
         LOG.warn("Null tag key in: {} for metric {}", Arrays.toString(tags), metricName);
-        return;
+        return false;
       }
     }
     
@@ -111,8 +242,8 @@ class OpenTSDBHttpClient {
     writeEscapedString(metricName);
     writer.write(',');
     writer.write(TIMESTAMP);
-    // TODO we could optimize this out to write directly but... yuk
-    writer.write(Long.toString((timestampsInMilliseconds ? timestamp : timestamp / 1_000)));
+    writeDigits(Numbers.formatLong(timestampsInMilliseconds ? timestamp : timestamp / 1_000,
+        digits));
     writer.write(',');
     writer.write(TAGS);
     boolean toggle = true;
@@ -132,7 +263,10 @@ class OpenTSDBHttpClient {
     writer.write('}'); // end tags
     writer.write(',');
     writer.write(VALUE);
-    writer.write(value);
+    return true;
+  }
+
+  private void writeTail() throws IOException {
     writer.write('}'); // end obj
 
     // see if we need to flush it.
@@ -141,6 +275,17 @@ class OpenTSDBHttpClient {
     }
   }
 
+  private void writeDigits(final int position) {
+    for (int i = position; i < digits.length; i++) {
+      writer.write(digits[i]);
+    }
+  }
+
+  /**
+   * Send the data points of the batch. If batches are sent in the background, the batch is handed
+   * off to a sender thread, waiting for a batch in flight to be sent if there are as many as
+   * allowed, and failures are logged instead of thrown.
+   */
   void flush() throws IOException {
     if (currentBatchSize < 1) {
       return;
@@ -149,8 +294,44 @@ class OpenTSDBHttpClient {
     // flush
     writer.write(']');
     writer.flush();
+    if (sender == null) {
+      try {
+        send(batch);
+      } finally {
+        // reset our buffer and batch size
+        batch.reset();
+        currentBatchSize = 0;
+      }
+      return;
+    }
+    try {
+      use(sender.submit(batch));
+    } catch (InterruptedException e) {
+      batch.reset();
+      currentBatchSize = 0;
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a batch in flight");
+    }
+  }
+
+  /**
+   * Wait until the batches flushed so far have been sent.
+   */
+  void awaitSent() throws InterruptedIOException {
+    if (sender != null) {
+      try {
+        sender.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for batches in flight");
+      }
+    }
+  }
+
+  private void send(final Batch batch) throws IOException {
     HttpPost httpPost = new HttpPost(dbUri);
-    httpPost.setEntity(new ByteArrayEntity(buffer.toByteArray(), ContentType.APPLICATION_JSON));
+    httpPost.setEntity(new ByteArrayEntity(batch.buffer.array(), 0, batch.buffer.size(),
+        ContentType.APPLICATION_JSON));
     final StatusLine status;
     CloseableHttpResponse response = null;
     try {
@@ -167,10 +348,6 @@ class OpenTSDBHttpClient {
       if (response != null) {
         EntityUtils.consumeQuietly(response.getEntity());
       }
-      // reset our buffer and batch size
-      currentBatchSize = 0;
-      buffer.reset();
-      writer.write('[');
     }
     if (status.getStatusCode() / 100 != 2) {
       throw new IllegalStateException(String.format(
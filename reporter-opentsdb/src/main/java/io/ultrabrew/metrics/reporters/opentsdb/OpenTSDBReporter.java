@@ -7,11 +7,12 @@ package io.ultrabrew.metrics.reporters.opentsdb;
 import io.ultrabrew.metrics.Metric;
 import io.ultrabrew.metrics.data.Aggregator;
 import io.ultrabrew.metrics.data.Cursor;
-import io.ultrabrew.metrics.data.Type;
+import io.ultrabrew.metrics.data.TableOptions;
 import io.ultrabrew.metrics.reporters.TimeWindowReporter;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
 import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,15 +36,20 @@ public class OpenTSDBReporter extends TimeWindowReporter {
   private static final String DEFAULT_API_ENDPOINT = "api/v1/put";
   private static final int DEFAULT_BATCH_SIZE = 64;
   private final OpenTSDBHttpClient client;
+  // Client of each drain thread, each with its own buffer, the first one being client
+  private final OpenTSDBHttpClient[] clients;
   private long lastReportedTimestamp = 0;
 
-  private OpenTSDBReporter(final String name, final OpenTSDBHttpClient client,
+  private OpenTSDBReporter(final String name, final OpenTSDBHttpClient[] clients,
       final int windowSeconds,
       final Map<Class<? extends Metric>, Function<Metric, ? extends Aggregator>> defaultAggregators,
-      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators) {
+      final Map<String, Function<Metric, ? extends Aggregator>> metricAggregators,
+      final int windows, final boolean selfMetrics) {
 
-    super(name, windowSeconds, defaultAggregators, metricAggregators);
-    this.client = client;
+    super(name, windowSeconds, defaultAggregators, metricAggregators, windows, clients.length,
+        selfMetrics);
+    this.clients = clients;
+    this.client = clients[0];
     this.start();
   }
 
@@ -53,30 +59,32 @@ public class OpenTSDBReporter extends TimeWindowReporter {
 
   @Override
   protected void doReport(final Map<String, Aggregator> aggregators) {
-    long newestTimestamp = 0;
-    try {
-      for (final Map.Entry<String, Aggregator> entry : aggregators.entrySet()) {
-        final Aggregator aggregator = entry.getValue();
-        final Cursor cursor = aggregator.cursor();
-        final String metricName = entry.getKey();
-        while (cursor.next()) {
-          if (cursor.lastUpdated() > lastReportedTimestamp) {
-            final String[] fields = cursor.getFields();
-            final Type[] types = cursor.getTypes();
-            for (int i = 0; i < fields.length; i++) {
-              client.write(metricName, cursor.getTags(), cursor.lastUpdated(),
-                  types[i].readAndReset(cursor, i));
+    final LongAccumulator newestTimestamp = new LongAccumulator(Math::max, 0);
+    drain(aggregators, (partition, worker) -> {
+      final OpenTSDBHttpClient client = clients[worker];
+      try {
+        for (final Map.Entry<String, Aggregator> entry : partition) {
+          final Aggregator aggregator = entry.getValue();
+          final Cursor cursor = aggregator.cursor();
+          final String metricName = entry.getKey();
+          while (cursor.next()) {
+            if (cursor.lastUpdated() > lastReportedTimestamp) {
+              final String[] fields = cursor.getFields();
+              for (int i = 0; i < fields.length; i++) {
+                client.write(metricName, cursor.getTags(), cursor.lastUpdated(), cursor, i);
+              }
+              newestTimestamp.accumulate(cursor.lastUpdated());
             }
-            newestTimestamp = Math.max(newestTimestamp, cursor.lastUpdated());
           }
         }
+        client.flush();
+        client.awaitSent();
+      } catch (IOException t) {
+        LOGGER.error("Failed to send data", t);
       }
-      client.flush();
-    } catch (IOException t) {
-      LOGGER.error("Failed to send data", t);
-    }
-    if (newestTimestamp > 0) {
-      lastReportedTimestamp = newestTimestamp;
+    });
+    if (newestTimestamp.get() > 0) {
+      lastReportedTimestamp = newestTimestamp.get();
     }
   }
 
@@ -87,6 +95,12 @@ public class OpenTSDBReporter extends TimeWindowReporter {
     private int batchSize = DEFAULT_BATCH_SIZE;
     private boolean timestampsInMilliseconds = true;
     private int windowSeconds = 1;
+    private int maxInFlight = 0;
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
 
     /**
      * Set the base URI of the OpenTSDB installation. The path component of the URI must end with a
@@ -133,6 +147,23 @@ public class OpenTSDBReporter extends TimeWindowReporter {
       return this;
     }
 
+    /**
+     * Set the maximum number of batches each drain thread has in flight. When positive, full
+     * batches are sent on background threads while the next batches are serialized, and the drain
+     * threads wait for a batch in flight to complete when they have as many as allowed.
+     *
+     * @param maxInFlight maximum number of requests in flight, or 0 to send each batch
+     *     synchronously, defaults to 0
+     */
+    public Builder withMaxInFlight(int maxInFlight) {
+      if (maxInFlight < 0) {
+        throw new IllegalArgumentException(
+            "Maximum number of requests in flight must not be negative");
+      }
+      this.maxInFlight = maxInFlight;
+      return this;
+    }
+
     /**
      * Create an {@link OpenTSDBReporter} instance.
      */
@@ -142,10 +173,15 @@ public class OpenTSDBReporter extends TimeWindowReporter {
         throw new IllegalArgumentException("Invalid baseUri");
       }
       URI dbUri = baseUri.resolve(apiEndpoint);
-      OpenTSDBHttpClient client = new OpenTSDBHttpClient(dbUri, batchSize,
-          timestampsInMilliseconds);
-      return new OpenTSDBReporter(dbUri.toString(), client, windowSeconds, defaultAggregators,
-          metricAggregators);
+      OpenTSDBHttpClient[] clients = new OpenTSDBHttpClient[drainThreads];
+      for (int i = 0; i < drainThreads; i++) {
+        clients[i] = new OpenTSDBHttpClient(dbUri, batchSize, timestampsInMilliseconds,
+            maxInFlight);
+      }
+      final TableOptions options = buildTableOptions();
+      return new OpenTSDBReporter(dbUri.toString(), clients, windowSeconds,
+          buildDefaultAggregators(options), buildMetricAggregators(options), windows,
+          selfMetrics);
     }
   }
 }
@@ -6,7 +6,10 @@ package io.ultrabrew.metrics.reporters.opentsdb;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.ultrabrew.metrics.data.BasicGaugeDoubleAggregator;
+import io.ultrabrew.metrics.data.Cursor;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import mockit.Capturing;
@@ -90,6 +93,33 @@ public class OpenTSDBHttpClientTest {
     assertEquals(0, client.currentBatchSize);
   }
 
+  @Test
+  public void testWriteInTheBackground() throws Exception {
+    new Expectations() {{
+      httpClient.execute((HttpUriRequest) any);
+      result = closeableHttpResponse;
+      closeableHttpResponse.getStatusLine();
+      result = statusLine;
+      statusLine.getStatusCode();
+      result = 500;
+    }};
+    OpenTSDBHttpClient client = new OpenTSDBHttpClient(DUMMY_DB_URI, 64, true, 1);
+    String[] tags = {"host", "server01", "region", "us-west"};
+    client.write("cpu_load_short.temp", tags, 1534055562000000003L, "80");
+    client.flush();
+    assertEquals(0, client.currentBatchSize);
+    client.writer.flush();
+    assertEquals("[", new String(client.buffer.toByteArray(), StandardCharsets.UTF_8));
+    client.write("cpu_load_short.fanSpeed", tags, 1534055562000000004L, "74.3");
+    client.flush();
+    client.awaitSent();
+
+    new Verifications() {{
+      httpClient.execute((HttpUriRequest) any);
+      times = 2;
+    }};
+  }
+
   @Test
   public void testNullStringsAndTagsValidation() throws Exception {
     new Expectations() {{
@@ -154,4 +184,46 @@ public class OpenTSDBHttpClientTest {
     assertThrows(IllegalArgumentException.class, () -> c
         .write("test\nmetric", new String[]{"host", "web\\01", "colo", "phx"}, 1000000, "42.5"));
   }
+
+  @Test
+  public void testWriteCursor() throws Exception {
+    BasicGaugeDoubleAggregator aggregator = new BasicGaugeDoubleAggregator("test");
+    aggregator.apply(new String[]{"host", "server01"}, Double.doubleToLongBits(74.3), 1000L);
+    aggregator.apply(new String[]{"host", "server01"}, Double.doubleToLongBits(80.0), 1000L);
+    Cursor cursor = aggregator.cursor();
+    assertTrue(cursor.next());
+
+    OpenTSDBHttpClient client = new OpenTSDBHttpClient(DUMMY_DB_URI, 64, false);
+    String[] tags = cursor.getTags();
+    for (int i = 0; i < 3; i++) {
+      client.write("cpu", tags, 1534055562003L, cursor, i);
+    }
+    client.writer.flush();
+
+    assertEquals("[{\"metric\":\"cpu\",\"timestamp\":1534055562,\"tags\":{\"host\":\"server01\"},"
+            + "\"value\":2},{\"metric\":\"cpu\",\"timestamp\":1534055562,"
+            + "\"tags\":{\"host\":\"server01\"},\"value\":154.3},{\"metric\":\"cpu\","
+            + "\"timestamp\":1534055562,\"tags\":{\"host\":\"server01\"},\"value\":74.3}",
+        new String(client.buffer.toByteArray(), StandardCharsets.UTF_8));
+    assertEquals(3, client.currentBatchSize);
+    assertEquals(0L, cursor.readLong(0));
+  }
+
+  @Test
+  public void testWriteCursorResetsRejectedDataPoint() throws Exception {
+    BasicGaugeDoubleAggregator aggregator = new BasicGaugeDoubleAggregator("test");
+    aggregator.apply(new String[]{"host", "server01", "colo"}, Double.doubleToLongBits(74.3),
+        1000L);
+    Cursor cursor = aggregator.cursor();
+    assertTrue(cursor.next());
+
+    OpenTSDBHttpClient client = new OpenTSDBHttpClient(DUMMY_DB_URI, 64, false);
+    client.write("cpu", cursor.getTags(), 1534055562003L, cursor, 0);
+    client.write("", cursor.getTags(), 1534055562003L, cursor, 1);
+
+    // The values of the rejected data points are not carried over to the next window
+    assertEquals(0, client.currentBatchSize);
+    assertEquals(0L, cursor.readLong(0));
+    assertEquals(0.0, cursor.readDouble(1));
+  }
 }
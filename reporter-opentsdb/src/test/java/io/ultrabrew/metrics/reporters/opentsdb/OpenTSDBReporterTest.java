@@ -5,10 +5,13 @@
 package io.ultrabrew.metrics.reporters.opentsdb;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import io.ultrabrew.metrics.Counter;
 import io.ultrabrew.metrics.MetricRegistry;
+import io.ultrabrew.metrics.util.BatchSender;
 import java.io.IOException;
 import java.net.URI;
 import mockit.Capturing;
@@ -203,6 +206,42 @@ public class OpenTSDBReporterTest {
     assertEquals(123, actualBatchSize);
   }
 
+  @Test
+  public void testSetDrainThreads() {
+    OpenTSDBReporter r = OpenTSDBReporter.builder()
+        .withBaseUri(TEST_URI)
+        .withBatchSize(123)
+        .withDrainThreads(3)
+        .build();
+
+    assertEquals(3, r.getDrainThreads());
+    OpenTSDBHttpClient[] clients = Deencapsulation.getField(r, "clients");
+    assertEquals(3, clients.length);
+    assertSame(clients[0], Deencapsulation.getField(r, "client"));
+    for (OpenTSDBHttpClient client : clients) {
+      int actualBatchSize = Deencapsulation.getField(client, "batchSize");
+      assertEquals(123, actualBatchSize);
+    }
+    assertNotSame(clients[1], clients[2]);
+    r.close();
+  }
+
+  @Test
+  public void testSetMaxInFlight() {
+    OpenTSDBReporter r = OpenTSDBReporter.builder()
+        .withBaseUri(TEST_URI)
+        .withMaxInFlight(2)
+        .build();
+
+    OpenTSDBHttpClient client = Deencapsulation.getField(r, "client");
+    BatchSender<?> sender = Deencapsulation.getField(client, "sender");
+    assertEquals(2, sender.getMaxInFlight());
+    r.close();
+
+    assertThrows(IllegalArgumentException.class,
+        () -> OpenTSDBReporter.builder().withMaxInFlight(-1));
+  }
+
   @Test
   public void testMissingBaseUri() {
     assertThrows(IllegalArgumentException.class, () -> OpenTSDBReporter.builder().build());